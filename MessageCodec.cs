@@ -0,0 +1,850 @@
+// GENERATED from src/main/schema/messages.json by CodecGenerator, do not edit by hand.
+
+using System;
+using System.Buffers.Binary;
+using System.Text;
+
+/// <summary>
+/// Binary codec for the high frequency messages, sent as binary argument of the SocketIO events.<br/>
+/// Every message starts with its id byte, numbers are big endian and varints are unsigned LEB128.
+/// Encoding writes directly into a span, decoding reads from it without copying byte fields.
+/// </summary>
+public static class MessageCodec
+{
+    /// <summary>
+    /// Returns the id of the message in the buffer or -1 if the buffer is empty.
+    /// </summary>
+    public static int PeekId(ReadOnlySpan<byte> buffer)
+    {
+        return buffer.Length > 0 ? buffer[0] : -1;
+    }
+
+    /// <summary>
+    /// A player input.<br/>
+    /// See: <see cref="MessageConstants.EVENT_PLAYER_INPUT_REQUEST"/>
+    /// </summary>
+    public ref struct PlayerInput
+    {
+        public const byte ID = 1;
+        /// <summary>
+        /// The maximum encoded size.
+        /// </summary>
+        public const int MAX_SIZE = 7;
+
+        /// <summary>
+        /// one of the INPUT_DIRECTION constants
+        /// </summary>
+        public int Direction;
+        /// <summary>
+        /// sequence number, increasing with every input
+        /// </summary>
+        public int Sequence;
+
+        /// <summary>
+        /// Writes a message to the start of the buffer.
+        /// </summary>
+        /// <returns>the amount of bytes written</returns>
+        public static int Encode(Span<byte> buffer, int direction, int sequence)
+        {
+            int pos = 0;
+            buffer[pos++] = ID;
+            buffer[pos++] = (byte)direction;
+            WriteVarInt(buffer, ref pos, sequence);
+            return pos;
+        }
+
+        /// <summary>
+        /// Reads a message from the start of the buffer.
+        /// </summary>
+        /// <returns>false if the buffer does not contain a complete message of this type</returns>
+        public static bool TryDecode(ReadOnlySpan<byte> buffer, out PlayerInput message)
+        {
+            message = default;
+            if (PeekId(buffer) != ID)
+                return false;
+
+            int pos = 1;
+            if (pos + 1 > buffer.Length) return false;
+            message.Direction = buffer[pos++];
+            if (!TryReadVarInt(buffer, ref pos, out message.Sequence)) return false;
+            return true;
+        }
+    }
+
+    /// <summary>
+    /// Acknowledges a received room state.<br/>
+    /// See: <see cref="MessageConstants.EVENT_ROOM_STATE_ACK_REQUEST"/>
+    /// </summary>
+    public ref struct RoomStateAck
+    {
+        public const byte ID = 2;
+        /// <summary>
+        /// The maximum encoded size.
+        /// </summary>
+        public const int MAX_SIZE = 10;
+
+        /// <summary>
+        /// sequence number of the received snapshot
+        /// </summary>
+        public int Sequence;
+        /// <summary>
+        /// epoch of the received snapshot
+        /// </summary>
+        public int Epoch;
+
+        /// <summary>
+        /// Writes a message to the start of the buffer.
+        /// </summary>
+        /// <returns>the amount of bytes written</returns>
+        public static int Encode(Span<byte> buffer, int sequence, int epoch)
+        {
+            int pos = 0;
+            buffer[pos++] = ID;
+            WriteVarInt(buffer, ref pos, sequence);
+            BinaryPrimitives.WriteInt32BigEndian(buffer.Slice(pos), epoch); pos += 4;
+            return pos;
+        }
+
+        /// <summary>
+        /// Reads a message from the start of the buffer.
+        /// </summary>
+        /// <returns>false if the buffer does not contain a complete message of this type</returns>
+        public static bool TryDecode(ReadOnlySpan<byte> buffer, out RoomStateAck message)
+        {
+            message = default;
+            if (PeekId(buffer) != ID)
+                return false;
+
+            int pos = 1;
+            if (!TryReadVarInt(buffer, ref pos, out message.Sequence)) return false;
+            if (pos + 4 > buffer.Length) return false;
+            message.Epoch = BinaryPrimitives.ReadInt32BigEndian(buffer.Slice(pos)); pos += 4;
+            return true;
+        }
+    }
+
+    /// <summary>
+    /// A room state snapshot or delta.<br/>
+    /// See: <see cref="MessageConstants.EVENT_ROOM_FRAME_BROADCAST"/>
+    /// </summary>
+    public ref struct RoomState
+    {
+        public const byte ID = 3;
+        /// <summary>
+        /// The maximum encoded size without the Body.
+        /// </summary>
+        public const int MAX_SIZE = 14;
+
+        /// <summary>
+        /// ROOM_STATE_KEYFRAME or ROOM_STATE_DELTA
+        /// </summary>
+        public int Type;
+        /// <summary>
+        /// sequence number of this snapshot
+        /// </summary>
+        public int Sequence;
+        /// <summary>
+        /// sequence number of the snapshot the delta is based on, -1 for keyframes
+        /// </summary>
+        public int BaseSequence;
+        /// <summary>
+        /// the epoch of the sequence numbers, new for every room, the sequence starts at 0 again in a new epoch
+        /// </summary>
+        public int Epoch;
+        /// <summary>
+        /// the snapshot or the delta runs, until the end of the message
+        /// </summary>
+        public ReadOnlySpan<byte> Body;
+
+        /// <summary>
+        /// Writes a message to the start of the buffer.
+        /// The Body has to be written by the caller right after it.
+        /// </summary>
+        /// <returns>the amount of bytes written</returns>
+        public static int Encode(Span<byte> buffer, int type, int sequence, int baseSequence, int epoch)
+        {
+            int pos = 0;
+            buffer[pos++] = ID;
+            buffer[pos++] = (byte)type;
+            BinaryPrimitives.WriteInt32BigEndian(buffer.Slice(pos), sequence); pos += 4;
+            BinaryPrimitives.WriteInt32BigEndian(buffer.Slice(pos), baseSequence); pos += 4;
+            BinaryPrimitives.WriteInt32BigEndian(buffer.Slice(pos), epoch); pos += 4;
+            return pos;
+        }
+
+        /// <summary>
+        /// Reads a message from the start of the buffer.
+        /// </summary>
+        /// <returns>false if the buffer does not contain a complete message of this type</returns>
+        public static bool TryDecode(ReadOnlySpan<byte> buffer, out RoomState message)
+        {
+            message = default;
+            if (PeekId(buffer) != ID)
+                return false;
+
+            int pos = 1;
+            if (pos + 1 > buffer.Length) return false;
+            message.Type = buffer[pos++];
+            if (pos + 4 > buffer.Length) return false;
+            message.Sequence = BinaryPrimitives.ReadInt32BigEndian(buffer.Slice(pos)); pos += 4;
+            if (pos + 4 > buffer.Length) return false;
+            message.BaseSequence = BinaryPrimitives.ReadInt32BigEndian(buffer.Slice(pos)); pos += 4;
+            if (pos + 4 > buffer.Length) return false;
+            message.Epoch = BinaryPrimitives.ReadInt32BigEndian(buffer.Slice(pos)); pos += 4;
+            message.Body = buffer.Slice(pos);
+            return true;
+        }
+    }
+
+    /// <summary>
+    /// All events of one room tick.<br/>
+    /// See: <see cref="MessageConstants.EVENT_ROOM_FRAME_BROADCAST"/>
+    /// </summary>
+    public ref struct RoomFrame
+    {
+        public const byte ID = 4;
+        /// <summary>
+        /// The maximum encoded size without the Events.
+        /// </summary>
+        public const int MAX_SIZE = 14;
+
+        /// <summary>
+        /// the tick of the room this frame belongs to
+        /// </summary>
+        public int Tick;
+        /// <summary>
+        /// the server time in milliseconds since the epoch when the frame was sent
+        /// </summary>
+        public long ServerTime;
+        /// <summary>
+        /// the events, each prefixed with its varint length, until the end of the message
+        /// </summary>
+        public ReadOnlySpan<byte> Events;
+
+        /// <summary>
+        /// Writes a message to the start of the buffer.
+        /// The Events has to be written by the caller right after it.
+        /// </summary>
+        /// <returns>the amount of bytes written</returns>
+        public static int Encode(Span<byte> buffer, int tick, long serverTime)
+        {
+            int pos = 0;
+            buffer[pos++] = ID;
+            WriteVarInt(buffer, ref pos, tick);
+            BinaryPrimitives.WriteInt64BigEndian(buffer.Slice(pos), serverTime); pos += 8;
+            return pos;
+        }
+
+        /// <summary>
+        /// Reads a message from the start of the buffer.
+        /// </summary>
+        /// <returns>false if the buffer does not contain a complete message of this type</returns>
+        public static bool TryDecode(ReadOnlySpan<byte> buffer, out RoomFrame message)
+        {
+            message = default;
+            if (PeekId(buffer) != ID)
+                return false;
+
+            int pos = 1;
+            if (!TryReadVarInt(buffer, ref pos, out message.Tick)) return false;
+            if (pos + 8 > buffer.Length) return false;
+            message.ServerTime = BinaryPrimitives.ReadInt64BigEndian(buffer.Slice(pos)); pos += 8;
+            message.Events = buffer.Slice(pos);
+            return true;
+        }
+    }
+
+    /// <summary>
+    /// A player joined the room.<br/>
+    /// See: <see cref="MessageConstants.EVENT_ROOM_FRAME_BROADCAST"/>
+    /// </summary>
+    public ref struct RoomPlayerJoin
+    {
+        public const byte ID = 5;
+        /// <summary>
+        /// The maximum encoded size.
+        /// </summary>
+        public const int MAX_SIZE = 134;
+
+        /// <summary>
+        /// name of the player who joined the room
+        /// </summary>
+        public string Name;
+
+        /// <summary>
+        /// Writes a message to the start of the buffer.
+        /// </summary>
+        /// <returns>the amount of bytes written</returns>
+        public static int Encode(Span<byte> buffer, string name)
+        {
+            int pos = 0;
+            buffer[pos++] = ID;
+            WriteString(buffer, ref pos, name, 128);
+            return pos;
+        }
+
+        /// <summary>
+        /// Reads a message from the start of the buffer.
+        /// </summary>
+        /// <returns>false if the buffer does not contain a complete message of this type</returns>
+        public static bool TryDecode(ReadOnlySpan<byte> buffer, out RoomPlayerJoin message)
+        {
+            message = default;
+            if (PeekId(buffer) != ID)
+                return false;
+
+            int pos = 1;
+            if (!TryReadString(buffer, ref pos, 128, out message.Name)) return false;
+            return true;
+        }
+    }
+
+    /// <summary>
+    /// A player left the room.<br/>
+    /// See: <see cref="MessageConstants.EVENT_ROOM_FRAME_BROADCAST"/>
+    /// </summary>
+    public ref struct RoomPlayerLeave
+    {
+        public const byte ID = 6;
+        /// <summary>
+        /// The maximum encoded size.
+        /// </summary>
+        public const int MAX_SIZE = 134;
+
+        /// <summary>
+        /// name of the player who left the room
+        /// </summary>
+        public string Name;
+
+        /// <summary>
+        /// Writes a message to the start of the buffer.
+        /// </summary>
+        /// <returns>the amount of bytes written</returns>
+        public static int Encode(Span<byte> buffer, string name)
+        {
+            int pos = 0;
+            buffer[pos++] = ID;
+            WriteString(buffer, ref pos, name, 128);
+            return pos;
+        }
+
+        /// <summary>
+        /// Reads a message from the start of the buffer.
+        /// </summary>
+        /// <returns>false if the buffer does not contain a complete message of this type</returns>
+        public static bool TryDecode(ReadOnlySpan<byte> buffer, out RoomPlayerLeave message)
+        {
+            message = default;
+            if (PeekId(buffer) != ID)
+                return false;
+
+            int pos = 1;
+            if (!TryReadString(buffer, ref pos, 128, out message.Name)) return false;
+            return true;
+        }
+    }
+
+    /// <summary>
+    /// The score of a snake changed.<br/>
+    /// See: <see cref="MessageConstants.EVENT_ROOM_FRAME_BROADCAST"/>
+    /// </summary>
+    public ref struct RoomScore
+    {
+        public const byte ID = 7;
+        /// <summary>
+        /// The maximum encoded size.
+        /// </summary>
+        public const int MAX_SIZE = 7;
+
+        /// <summary>
+        /// the slot of the snake
+        /// </summary>
+        public int Slot;
+        /// <summary>
+        /// the new score
+        /// </summary>
+        public int Score;
+
+        /// <summary>
+        /// Writes a message to the start of the buffer.
+        /// </summary>
+        /// <returns>the amount of bytes written</returns>
+        public static int Encode(Span<byte> buffer, int slot, int score)
+        {
+            int pos = 0;
+            buffer[pos++] = ID;
+            buffer[pos++] = (byte)slot;
+            WriteVarInt(buffer, ref pos, score);
+            return pos;
+        }
+
+        /// <summary>
+        /// Reads a message from the start of the buffer.
+        /// </summary>
+        /// <returns>false if the buffer does not contain a complete message of this type</returns>
+        public static bool TryDecode(ReadOnlySpan<byte> buffer, out RoomScore message)
+        {
+            message = default;
+            if (PeekId(buffer) != ID)
+                return false;
+
+            int pos = 1;
+            if (pos + 1 > buffer.Length) return false;
+            message.Slot = buffer[pos++];
+            if (!TryReadVarInt(buffer, ref pos, out message.Score)) return false;
+            return true;
+        }
+    }
+
+    /// <summary>
+    /// A page of the room list or the changes since a version.<br/>
+    /// See: <see cref="MessageConstants.EVENT_ROOM_LIST_RESPONSE"/>
+    /// </summary>
+    public ref struct RoomList
+    {
+        public const byte ID = 8;
+        /// <summary>
+        /// The maximum encoded size without the Entries.
+        /// </summary>
+        public const int MAX_SIZE = 17;
+
+        /// <summary>
+        /// the version of the list, send it with the next request to only get the changes
+        /// </summary>
+        public int Version;
+        /// <summary>
+        /// ROOM_LIST_FULL or ROOM_LIST_CHANGES
+        /// </summary>
+        public int Type;
+        /// <summary>
+        /// the page of the full list, 0 for changes
+        /// </summary>
+        public int Page;
+        /// <summary>
+        /// the amount of pages of the full list, 1 for changes
+        /// </summary>
+        public int PageCount;
+        /// <summary>
+        /// the entries, each prefixed with its varint length, until the end of the message
+        /// </summary>
+        public ReadOnlySpan<byte> Entries;
+
+        /// <summary>
+        /// Writes a message to the start of the buffer.
+        /// The Entries has to be written by the caller right after it.
+        /// </summary>
+        /// <returns>the amount of bytes written</returns>
+        public static int Encode(Span<byte> buffer, int version, int type, int page, int pageCount)
+        {
+            int pos = 0;
+            buffer[pos++] = ID;
+            WriteVarInt(buffer, ref pos, version);
+            buffer[pos++] = (byte)type;
+            WriteVarInt(buffer, ref pos, page);
+            WriteVarInt(buffer, ref pos, pageCount);
+            return pos;
+        }
+
+        /// <summary>
+        /// Reads a message from the start of the buffer.
+        /// </summary>
+        /// <returns>false if the buffer does not contain a complete message of this type</returns>
+        public static bool TryDecode(ReadOnlySpan<byte> buffer, out RoomList message)
+        {
+            message = default;
+            if (PeekId(buffer) != ID)
+                return false;
+
+            int pos = 1;
+            if (!TryReadVarInt(buffer, ref pos, out message.Version)) return false;
+            if (pos + 1 > buffer.Length) return false;
+            message.Type = buffer[pos++];
+            if (!TryReadVarInt(buffer, ref pos, out message.Page)) return false;
+            if (!TryReadVarInt(buffer, ref pos, out message.PageCount)) return false;
+            message.Entries = buffer.Slice(pos);
+            return true;
+        }
+    }
+
+    /// <summary>
+    /// A listed room.<br/>
+    /// See: <see cref="MessageConstants.EVENT_ROOM_LIST_RESPONSE"/>
+    /// </summary>
+    public ref struct RoomListEntry
+    {
+        public const byte ID = 9;
+        /// <summary>
+        /// The maximum encoded size.
+        /// </summary>
+        public const int MAX_SIZE = 35;
+
+        /// <summary>
+        /// the id to join the room with
+        /// </summary>
+        public string Id;
+        /// <summary>
+        /// 1 if the room is a quickplay room, otherwise 0
+        /// </summary>
+        public int Quickplay;
+        /// <summary>
+        /// the amount of taken slots, including players on their way into the room
+        /// </summary>
+        public int Players;
+        /// <summary>
+        /// the amount of slots
+        /// </summary>
+        public int MaxPlayers;
+        /// <summary>
+        /// 0 waiting for the first player, 1 running, 2 empty
+        /// </summary>
+        public int State;
+        /// <summary>
+        /// 1 if the room is an arena, otherwise 0
+        /// </summary>
+        public int Arena;
+
+        /// <summary>
+        /// Writes a message to the start of the buffer.
+        /// </summary>
+        /// <returns>the amount of bytes written</returns>
+        public static int Encode(Span<byte> buffer, string id, int quickplay, int players, int maxPlayers, int state, int arena)
+        {
+            int pos = 0;
+            buffer[pos++] = ID;
+            WriteString(buffer, ref pos, id, 16);
+            buffer[pos++] = (byte)quickplay;
+            WriteVarInt(buffer, ref pos, players);
+            WriteVarInt(buffer, ref pos, maxPlayers);
+            buffer[pos++] = (byte)state;
+            buffer[pos++] = (byte)arena;
+            return pos;
+        }
+
+        /// <summary>
+        /// Reads a message from the start of the buffer.
+        /// </summary>
+        /// <returns>false if the buffer does not contain a complete message of this type</returns>
+        public static bool TryDecode(ReadOnlySpan<byte> buffer, out RoomListEntry message)
+        {
+            message = default;
+            if (PeekId(buffer) != ID)
+                return false;
+
+            int pos = 1;
+            if (!TryReadString(buffer, ref pos, 16, out message.Id)) return false;
+            if (pos + 1 > buffer.Length) return false;
+            message.Quickplay = buffer[pos++];
+            if (!TryReadVarInt(buffer, ref pos, out message.Players)) return false;
+            if (!TryReadVarInt(buffer, ref pos, out message.MaxPlayers)) return false;
+            if (pos + 1 > buffer.Length) return false;
+            message.State = buffer[pos++];
+            if (pos + 1 > buffer.Length) return false;
+            message.Arena = buffer[pos++];
+            return true;
+        }
+    }
+
+    /// <summary>
+    /// A room that is no longer listed.<br/>
+    /// See: <see cref="MessageConstants.EVENT_ROOM_LIST_RESPONSE"/>
+    /// </summary>
+    public ref struct RoomListRemoved
+    {
+        public const byte ID = 10;
+        /// <summary>
+        /// The maximum encoded size.
+        /// </summary>
+        public const int MAX_SIZE = 22;
+
+        /// <summary>
+        /// the id of the room
+        /// </summary>
+        public string Id;
+
+        /// <summary>
+        /// Writes a message to the start of the buffer.
+        /// </summary>
+        /// <returns>the amount of bytes written</returns>
+        public static int Encode(Span<byte> buffer, string id)
+        {
+            int pos = 0;
+            buffer[pos++] = ID;
+            WriteString(buffer, ref pos, id, 16);
+            return pos;
+        }
+
+        /// <summary>
+        /// Reads a message from the start of the buffer.
+        /// </summary>
+        /// <returns>false if the buffer does not contain a complete message of this type</returns>
+        public static bool TryDecode(ReadOnlySpan<byte> buffer, out RoomListRemoved message)
+        {
+            message = default;
+            if (PeekId(buffer) != ID)
+                return false;
+
+            int pos = 1;
+            if (!TryReadString(buffer, ref pos, 16, out message.Id)) return false;
+            return true;
+        }
+    }
+
+    /// <summary>
+    /// The rectangle of cells of an arena a player is sent, the client forgets the cells outside of it.<br/>
+    /// See: <see cref="MessageConstants.EVENT_ROOM_FRAME_BROADCAST"/>
+    /// </summary>
+    public ref struct RoomArenaView
+    {
+        public const byte ID = 11;
+        /// <summary>
+        /// The maximum encoded size.
+        /// </summary>
+        public const int MAX_SIZE = 31;
+
+        /// <summary>
+        /// the column of the top left cell
+        /// </summary>
+        public int X;
+        /// <summary>
+        /// the row of the top left cell
+        /// </summary>
+        public int Y;
+        /// <summary>
+        /// the width in cells
+        /// </summary>
+        public int Width;
+        /// <summary>
+        /// the height in cells
+        /// </summary>
+        public int Height;
+        /// <summary>
+        /// the width of the whole arena in cells
+        /// </summary>
+        public int ArenaWidth;
+        /// <summary>
+        /// the height of the whole arena in cells
+        /// </summary>
+        public int ArenaHeight;
+
+        /// <summary>
+        /// Writes a message to the start of the buffer.
+        /// </summary>
+        /// <returns>the amount of bytes written</returns>
+        public static int Encode(Span<byte> buffer, int x, int y, int width, int height, int arenaWidth, int arenaHeight)
+        {
+            int pos = 0;
+            buffer[pos++] = ID;
+            WriteVarInt(buffer, ref pos, x);
+            WriteVarInt(buffer, ref pos, y);
+            WriteVarInt(buffer, ref pos, width);
+            WriteVarInt(buffer, ref pos, height);
+            WriteVarInt(buffer, ref pos, arenaWidth);
+            WriteVarInt(buffer, ref pos, arenaHeight);
+            return pos;
+        }
+
+        /// <summary>
+        /// Reads a message from the start of the buffer.
+        /// </summary>
+        /// <returns>false if the buffer does not contain a complete message of this type</returns>
+        public static bool TryDecode(ReadOnlySpan<byte> buffer, out RoomArenaView message)
+        {
+            message = default;
+            if (PeekId(buffer) != ID)
+                return false;
+
+            int pos = 1;
+            if (!TryReadVarInt(buffer, ref pos, out message.X)) return false;
+            if (!TryReadVarInt(buffer, ref pos, out message.Y)) return false;
+            if (!TryReadVarInt(buffer, ref pos, out message.Width)) return false;
+            if (!TryReadVarInt(buffer, ref pos, out message.Height)) return false;
+            if (!TryReadVarInt(buffer, ref pos, out message.ArenaWidth)) return false;
+            if (!TryReadVarInt(buffer, ref pos, out message.ArenaHeight)) return false;
+            return true;
+        }
+    }
+
+    /// <summary>
+    /// A rectangle of cells of an arena that changed.<br/>
+    /// See: <see cref="MessageConstants.EVENT_ROOM_FRAME_BROADCAST"/>
+    /// </summary>
+    public ref struct RoomArenaCells
+    {
+        public const byte ID = 12;
+        /// <summary>
+        /// The maximum encoded size without the Cells.
+        /// </summary>
+        public const int MAX_SIZE = 13;
+
+        /// <summary>
+        /// the column of the top left cell
+        /// </summary>
+        public int X;
+        /// <summary>
+        /// the row of the top left cell
+        /// </summary>
+        public int Y;
+        /// <summary>
+        /// the width in cells
+        /// </summary>
+        public int Width;
+        /// <summary>
+        /// the height in cells
+        /// </summary>
+        public int Height;
+        /// <summary>
+        /// row by row, runs of (varint: amount of cells, varint: cell + 1), where a cell is 0 = empty, -1 = food, otherwise slot + 1
+        /// </summary>
+        public ReadOnlySpan<byte> Cells;
+
+        /// <summary>
+        /// Writes a message to the start of the buffer.
+        /// The Cells has to be written by the caller right after it.
+        /// </summary>
+        /// <returns>the amount of bytes written</returns>
+        public static int Encode(Span<byte> buffer, int x, int y, int width, int height)
+        {
+            int pos = 0;
+            buffer[pos++] = ID;
+            WriteVarInt(buffer, ref pos, x);
+            WriteVarInt(buffer, ref pos, y);
+            buffer[pos++] = (byte)width;
+            buffer[pos++] = (byte)height;
+            return pos;
+        }
+
+        /// <summary>
+        /// Reads a message from the start of the buffer.
+        /// </summary>
+        /// <returns>false if the buffer does not contain a complete message of this type</returns>
+        public static bool TryDecode(ReadOnlySpan<byte> buffer, out RoomArenaCells message)
+        {
+            message = default;
+            if (PeekId(buffer) != ID)
+                return false;
+
+            int pos = 1;
+            if (!TryReadVarInt(buffer, ref pos, out message.X)) return false;
+            if (!TryReadVarInt(buffer, ref pos, out message.Y)) return false;
+            if (pos + 1 > buffer.Length) return false;
+            message.Width = buffer[pos++];
+            if (pos + 1 > buffer.Length) return false;
+            message.Height = buffer[pos++];
+            message.Cells = buffer.Slice(pos);
+            return true;
+        }
+    }
+
+    /// <summary>
+    /// A snake of an arena with its head in the view of the player.<br/>
+    /// See: <see cref="MessageConstants.EVENT_ROOM_FRAME_BROADCAST"/>
+    /// </summary>
+    public ref struct RoomArenaSnake
+    {
+        public const byte ID = 13;
+        /// <summary>
+        /// The maximum encoded size.
+        /// </summary>
+        public const int MAX_SIZE = 22;
+
+        /// <summary>
+        /// the slot of the snake, its cells contain slot + 1
+        /// </summary>
+        public int Slot;
+        /// <summary>
+        /// the direction the snake moves in
+        /// </summary>
+        public int Direction;
+        /// <summary>
+        /// the score of the snake
+        /// </summary>
+        public int Score;
+        /// <summary>
+        /// the amount of cells of the snake
+        /// </summary>
+        public int Length;
+        /// <summary>
+        /// the cell of the head, y * arena width + x
+        /// </summary>
+        public int Head;
+
+        /// <summary>
+        /// Writes a message to the start of the buffer.
+        /// </summary>
+        /// <returns>the amount of bytes written</returns>
+        public static int Encode(Span<byte> buffer, int slot, int direction, int score, int length, int head)
+        {
+            int pos = 0;
+            buffer[pos++] = ID;
+            WriteVarInt(buffer, ref pos, slot);
+            buffer[pos++] = (byte)direction;
+            WriteVarInt(buffer, ref pos, score);
+            WriteVarInt(buffer, ref pos, length);
+            WriteVarInt(buffer, ref pos, head);
+            return pos;
+        }
+
+        /// <summary>
+        /// Reads a message from the start of the buffer.
+        /// </summary>
+        /// <returns>false if the buffer does not contain a complete message of this type</returns>
+        public static bool TryDecode(ReadOnlySpan<byte> buffer, out RoomArenaSnake message)
+        {
+            message = default;
+            if (PeekId(buffer) != ID)
+                return false;
+
+            int pos = 1;
+            if (!TryReadVarInt(buffer, ref pos, out message.Slot)) return false;
+            if (pos + 1 > buffer.Length) return false;
+            message.Direction = buffer[pos++];
+            if (!TryReadVarInt(buffer, ref pos, out message.Score)) return false;
+            if (!TryReadVarInt(buffer, ref pos, out message.Length)) return false;
+            if (!TryReadVarInt(buffer, ref pos, out message.Head)) return false;
+            return true;
+        }
+    }
+
+    private static void WriteVarInt(Span<byte> buffer, ref int pos, int value)
+    {
+        uint v = (uint)value;
+        while (v >= 0x80)
+        {
+            buffer[pos++] = (byte)(v | 0x80);
+            v >>= 7;
+        }
+        buffer[pos++] = (byte)v;
+    }
+
+    private static bool TryReadVarInt(ReadOnlySpan<byte> buffer, ref int pos, out int value)
+    {
+        value = 0;
+        for (int shift = 0; shift < 35 && pos < buffer.Length; shift += 7)
+        {
+            byte b = buffer[pos++];
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+                return true;
+        }
+        return false;
+    }
+
+    private static void WriteString(Span<byte> buffer, ref int pos, string value, int maxBytes)
+    {
+        int length = Encoding.UTF8.GetByteCount(value);
+        if (length > maxBytes)
+            throw new ArgumentException("string longer than " + maxBytes + " bytes");
+        WriteVarInt(buffer, ref pos, length);
+        pos += Encoding.UTF8.GetBytes(value, buffer.Slice(pos));
+    }
+
+    private static bool TryReadString(ReadOnlySpan<byte> buffer, ref int pos, int maxBytes, out string value)
+    {
+        value = null;
+        if (!TryReadVarInt(buffer, ref pos, out int length) || length < 0 || length > maxBytes || pos + length > buffer.Length)
+            return false;
+        value = Encoding.UTF8.GetString(buffer.Slice(pos, length));
+        pos += length;
+        return true;
+    }
+}
@@ -1,11 +1,6 @@
-/*
-REGEX TO SEARCH FOR JAVA STYLE COMMENTS: "    /// ((.|\n)+?)public"
-REPLACE WITH: "    /// <summary>\n    /// $1/// </summary>\n    public"
-
-REGEX TO SEARCH FOR @see: "\n    /// @see MessageConstants#(.*)"
-REGEX TO REPLACE: "<br/>\n    /// See: <see cref="$1"/>"
-*/
+// GENERATED from src/main/schema/messages.json by CodecGenerator, do not edit by hand.
 
+using System;
 
 /// <summary>
 /// This class contains possible messages that can be send via SocketIO.<br/>
@@ -34,12 +29,20 @@ public class MessageConstants
     /// </summary>
     public const String SERVERSIDE_EVENT_DISCONNECT = "disconnect";
 
+
     /// <summary>
     /// Error message if the player sent invalid data.<br/>
-    /// See: <see cref="EVENT_ERROR_RESPONSE"/>
+    /// See: <see cref="MessageConstants.EVENT_ERROR_RESPONSE"/>
     /// </summary>
     public const String ERROR_INVALID_DATA = "error_invalid_data";
 
+    /// <summary>
+    /// Error message if the player sent an event more often than allowed, the events are dropped until the limit recovers.<br/>
+    /// Sent at most once per second and event while dropping.<br/>
+    /// See: <see cref="MessageConstants.EVENT_ERROR_RESPONSE"/>
+    /// </summary>
+    public const String ERROR_RATE_LIMITED = "error_rate_limited";
+
 
 
     //
@@ -58,15 +61,52 @@ public class MessageConstants
     /// <summary>
     /// Response event for a name change request.<br/>
     /// Arguments (1):<br/>
-    /// - string: new name or a (future) error starting with ERROR_PLAYER
+    /// - string: new name or an error starting with ERROR_PLAYER
     /// </summary>
     public const String EVENT_PLAYER_SET_NAME_RESPONSE = "player_set_name_response";
 
     /// <summary>
-    /// Event for requesting to apply e.g. player input on the next tick.
+    /// Error message if another player already has the requested name.<br/>
+    /// See: <see cref="MessageConstants.EVENT_PLAYER_SET_NAME_RESPONSE"/>
+    /// </summary>
+    public const String ERROR_PLAYER_NAME_TAKEN = "error_player_name_taken";
+
+
+    /// <summary>
+    /// Event for requesting to apply player input on the next tick.<br/>
+    /// At most one turn is applied per tick, further turns are applied on the following ticks.<br/>
+    /// Arguments (1):<br/>
+    /// - binary: a <see cref="MessageCodec.PlayerInput"/> message<br/>
+    /// or Arguments (2):<br/>
+    /// - int: direction, one of the INPUT_DIRECTION constants<br/>
+    /// - int: sequence number, increasing with every input. Inputs with an old sequence number are dropped.
     /// </summary>
     public const String EVENT_PLAYER_INPUT_REQUEST = "player_input_request";
 
+    /// <summary>
+    /// Direction for moving up.<br/>
+    /// See: <see cref="MessageConstants.EVENT_PLAYER_INPUT_REQUEST"/>
+    /// </summary>
+    public const int INPUT_DIRECTION_UP = 0;
+
+    /// <summary>
+    /// Direction for moving right.<br/>
+    /// See: <see cref="MessageConstants.EVENT_PLAYER_INPUT_REQUEST"/>
+    /// </summary>
+    public const int INPUT_DIRECTION_RIGHT = 1;
+
+    /// <summary>
+    /// Direction for moving down.<br/>
+    /// See: <see cref="MessageConstants.EVENT_PLAYER_INPUT_REQUEST"/>
+    /// </summary>
+    public const int INPUT_DIRECTION_DOWN = 2;
+
+    /// <summary>
+    /// Direction for moving left.<br/>
+    /// See: <see cref="MessageConstants.EVENT_PLAYER_INPUT_REQUEST"/>
+    /// </summary>
+    public const int INPUT_DIRECTION_LEFT = 3;
+
 
 
     //
@@ -77,39 +117,100 @@ public class MessageConstants
 
     /// <summary>
     /// Event for requesting a room creation.<br/>
-    /// Arguments: 0<br/>
+    /// Arguments: 0
     /// </summary>
     public const String EVENT_ROOM_CREATE_REQUEST = "room_create_request";
 
+
     /// <summary>
     /// Event for requesting to join an existing room.<br/>
     /// Arguments (1):<br/>
-    /// - string: room id to join or <see cref="ROOM_QUICKPLAY"/> if the room should be a quickplay room.
+    /// - string: room id to join, <see cref="ROOM_QUICKPLAY"/> if the room should be a quickplay room or <see cref="ROOM_ARENA"/>.<br/>
+    /// A room of another server of the cluster is answered with <see cref="EVENT_ROOM_REDIRECT_RESPONSE"/>.
     /// </summary>
     public const String EVENT_ROOM_JOIN_REQUEST = "room_join_request";
 
     /// <summary>
     /// Message for joining a quickplay room.<br/>
-    /// See: <see cref="EVENT_ROOM_JOIN_REQUEST"/>
+    /// See: <see cref="MessageConstants.EVENT_ROOM_JOIN_REQUEST"/>
     /// </summary>
     public const String ROOM_QUICKPLAY = "room_quickplay";
 
     /// <summary>
-    /// Response event for a room join request.<br/>
-    /// Arguments (1):<br/>
-    /// - string: the id of the joined room or an error starting with ERROR_ROOM
+    /// Message for joining an arena, a big room with hundreds of snakes. A player is only sent the part of the arena
+    /// around its snake, see <see cref="EVENT_ROOM_FRAME_BROADCAST"/>.<br/>
+    /// See: <see cref="MessageConstants.EVENT_ROOM_JOIN_REQUEST"/>
+    /// </summary>
+    public const String ROOM_ARENA = "room_arena";
+
+    /// <summary>
+    /// Response event for a room join or resume request.<br/>
+    /// Arguments (1-2):<br/>
+    /// - string: the id of the joined room or an error starting with ERROR_ROOM<br/>
+    /// - string: only after a successful join, the token to resume the room with after a server restart,
+    /// see <see cref="EVENT_ROOM_RESUME_REQUEST"/>
     /// </summary>
     public const String EVENT_ROOM_JOIN_RESPONSE = "room_join_response";
 
+
+    /// <summary>
+    /// Event for requesting to get back into a room after the server restarted, with the snake and score the player had.<br/>
+    /// The rooms are restored for a short time after the restart, until then the room waits for its players.<br/>
+    /// Answered with <see cref="EVENT_ROOM_JOIN_RESPONSE"/>, <see cref="ERROR_ROOM_INVALID_ID"/> if the room or the player's place in
+    /// it is gone, the client should join again then.<br/>
+    /// Arguments (1):<br/>
+    /// - string: the resume token of the last join response
+    /// </summary>
+    public const String EVENT_ROOM_RESUME_REQUEST = "room_resume_request";
+
+
+    /// <summary>
+    /// Event for requesting to watch a room without taking a player slot, leaving the current room.<br/>
+    /// The spectator gets <see cref="EVENT_ROOM_FRAME_BROADCAST"/> frames like a player, but every room state is a keyframe
+    /// and must not be acknowledged.<br/>
+    /// Arguments (1-2):<br/>
+    /// - string: room id to watch<br/>
+    /// - int: <see cref="SPECTATE_FEED_LIVE"/> (default) or <see cref="SPECTATE_FEED_DELAYED"/><br/>
+    /// A room of another server of the cluster is answered with <see cref="EVENT_ROOM_REDIRECT_RESPONSE"/>.
+    /// </summary>
+    public const String EVENT_ROOM_SPECTATE_REQUEST = "room_spectate_request";
+
+    /// <summary>
+    /// Spectator feed with a frame after every tick of the room.<br/>
+    /// See: <see cref="MessageConstants.EVENT_ROOM_SPECTATE_REQUEST"/>
+    /// </summary>
+    public const int SPECTATE_FEED_LIVE = 0;
+
+    /// <summary>
+    /// Spectator feed a few seconds behind the room, with a frame after every few ticks. The frames contain the events
+    /// of the skipped ticks.<br/>
+    /// See: <see cref="MessageConstants.EVENT_ROOM_SPECTATE_REQUEST"/>
+    /// </summary>
+    public const int SPECTATE_FEED_DELAYED = 1;
+
     /// <summary>
-    /// Event broadcasting a player joining a room.<br/>
+    /// Response event for a room spectate request.<br/>
     /// Arguments (1):<br/>
-    /// - string: name of player who joined the room
+    /// - string: the id of the watched room or an error starting with ERROR_ROOM<br/>
+    /// Also sent with <see cref="ERROR_ROOM_INVALID_ID"/> when the watched room closed.
     /// </summary>
-    public const String EVENT_ROOM_PLAYER_JOIN_BROADCAST = "room_player_join_broadcast";
+    public const String EVENT_ROOM_SPECTATE_RESPONSE = "room_spectate_response";
+
 
     /// <summary>
-    /// Event for requesting to leave a room.<br/>
+    /// Sent instead of the response to a join, spectate or resume request, if the room lives on another server of the cluster.<br/>
+    /// The client connects to the given url and sends the request there again.<br/>
+    /// Arguments (3):<br/>
+    /// - string: the redirected request, <see cref="EVENT_ROOM_JOIN_REQUEST"/>, <see cref="EVENT_ROOM_SPECTATE_REQUEST"/> or
+    /// <see cref="EVENT_ROOM_RESUME_REQUEST"/><br/>
+    /// - string: the room id or resume token of the request<br/>
+    /// - string: the url of the server owning the room
+    /// </summary>
+    public const String EVENT_ROOM_REDIRECT_RESPONSE = "room_redirect_response";
+
+
+    /// <summary>
+    /// Event for requesting to leave the room the player plays or spectates in.<br/>
     /// Arguments: 0
     /// </summary>
     public const String EVENT_ROOM_LEAVE_REQUEST = "room_leave_request";
@@ -121,28 +222,99 @@ public class MessageConstants
     /// </summary>
     public const String EVENT_ROOM_LEAVE_RESPONSE = "room_leave_response";
 
+
     /// <summary>
-    /// Event broadcasting a player left a room.<br/>
+    /// Event broadcasting everything that happened in a room during one tick, sent to every player after every tick.<br/>
     /// Arguments (1):<br/>
-    /// - string: name of player who left the room
+    /// - binary: a <see cref="MessageCodec.RoomFrame"/> message. Its events contain, each prefixed with its varint length:<br/>
+    /// -- <see cref="MessageCodec.RoomPlayerJoin"/> and <see cref="MessageCodec.RoomPlayerLeave"/> for players that joined or left the room<br/>
+    /// -- <see cref="MessageCodec.RoomScore"/> for every changed score<br/>
+    /// -- one <see cref="MessageCodec.RoomState"/>, acknowledge its sequence with <see cref="EVENT_ROOM_STATE_ACK_REQUEST"/><br/>
+    /// The body of a keyframe is the full snapshot, the body of a delta contains runs of (varint: unchanged bytes since the
+    /// last run, varint: run length, bytes) to apply to the base snapshot.<br/>
+    /// Snapshot layout: short width, short height, byte slot count, per slot (byte alive, byte direction, short score,
+    /// short length, short head cell), then one byte per cell (0 = empty, -1 = food, otherwise slot + 1).<br/>
+    /// A frame of an arena has no room state and no scores, the events contain the part of the arena around the
+    /// player's snake instead:<br/>
+    /// -- one <see cref="MessageCodec.RoomArenaView"/> with the cells the player is sent, cells outside of it are no longer updated<br/>
+    /// -- <see cref="MessageCodec.RoomArenaCells"/> for every bucket of cells in the view that changed since it was last sent<br/>
+    /// -- <see cref="MessageCodec.RoomArenaSnake"/> for every snake with its head in the view, including the player's own<br/>
+    /// Frames must be applied in order, a frame replaced before it was sent is merged into the next one. Spectators of an
+    /// arena get the whole arena as view.
+    /// </summary>
+    public const String EVENT_ROOM_FRAME_BROADCAST = "room_frame_broadcast";
+
+    /// <summary>
+    /// Room state type of a full snapshot.<br/>
+    /// See: <see cref="MessageConstants.EVENT_ROOM_FRAME_BROADCAST"/>
+    /// </summary>
+    public const int ROOM_STATE_KEYFRAME = 0;
+
+    /// <summary>
+    /// Room state type of a delta against an acknowledged snapshot.<br/>
+    /// See: <see cref="MessageConstants.EVENT_ROOM_FRAME_BROADCAST"/>
     /// </summary>
-    public const String EVENT_ROOM_PLAYER_LEAVE_BROADCAST = "room_player_leave_broadcast";
+    public const int ROOM_STATE_DELTA = 1;
+
+    /// <summary>
+    /// Event for acknowledging a received room state, future states are sent as delta against it.<br/>
+    /// Acks of another epoch than the one of the current room, e.g. of the previous room, are ignored.<br/>
+    /// Arguments (1-2):<br/>
+    /// - binary: a <see cref="MessageCodec.RoomStateAck"/> message or int: sequence number of the received snapshot<br/>
+    /// - int: only with a sequence number, the epoch of the received snapshot
+    /// </summary>
+    public const String EVENT_ROOM_STATE_ACK_REQUEST = "room_state_ack_request";
+
+
+    /// <summary>
+    /// Event for requesting the list of rooms, answered with <see cref="EVENT_ROOM_LIST_RESPONSE"/>.<br/>
+    /// Arguments (2):<br/>
+    /// - int: the list version the client already has, 0 for none. If the server still knows the changes since it,
+    /// only the changes are sent, otherwise a page of the full list.<br/>
+    /// - int: the page of the full list, starting at 0
+    /// </summary>
+    public const String EVENT_ROOM_LIST_REQUEST = "room_list_request";
+
+    /// <summary>
+    /// Response event for a room list request. Only quickplay rooms and arenas are listed, a private room can only
+    /// be joined with its id.<br/>
+    /// Arguments (1):<br/>
+    /// - binary: a <see cref="MessageCodec.RoomList"/> message. Its entries contain, each prefixed with its varint length:<br/>
+    /// -- <see cref="MessageCodec.RoomListEntry"/> for every listed room, or every room that was added or changed<br/>
+    /// -- <see cref="MessageCodec.RoomListRemoved"/> for every room that was removed, only in a list of changes<br/>
+    /// The pages of a full list all belong to the version in the response. If a later page has a newer version,
+    /// request the changes since the version of the first page to catch up.
+    /// </summary>
+    public const String EVENT_ROOM_LIST_RESPONSE = "room_list_response";
+
+    /// <summary>
+    /// Room list type of a page of the full list, it replaces the rooms the client knew.<br/>
+    /// See: <see cref="MessageConstants.EVENT_ROOM_LIST_RESPONSE"/>
+    /// </summary>
+    public const int ROOM_LIST_FULL = 0;
+
+    /// <summary>
+    /// Room list type of the changes since the version the client sent.<br/>
+    /// See: <see cref="MessageConstants.EVENT_ROOM_LIST_RESPONSE"/>
+    /// </summary>
+    public const int ROOM_LIST_CHANGES = 1;
+
 
     /// <summary>
     /// Error message if the room id generation failed.<br/>
-    /// See: <see cref="EVENT_ERROR_RESPONSE"/>
+    /// See: <see cref="MessageConstants.EVENT_ERROR_RESPONSE"/>
     /// </summary>
     public const String ERROR_ROOM_ID_GENERATION_FAILED = "error_room_id_generation_failed";
 
     /// <summary>
     /// Error message if the room id doesn't exist or is invalid.<br/>
-    /// See: <see cref="EVENT_ERROR_RESPONSE"/>
+    /// See: <see cref="MessageConstants.EVENT_ERROR_RESPONSE"/>
     /// </summary>
     public const String ERROR_ROOM_INVALID_ID = "error_room_invalid_id";
 
     /// <summary>
-    /// Error message if the room is full.<br/><br/>
-    /// See: <see cref="EVENT_ERROR_RESPONSE"/>
+    /// Error message if the room is full.<br/>
+    /// See: <see cref="MessageConstants.EVENT_ERROR_RESPONSE"/>
     /// </summary>
     public const String ERROR_ROOM_FULL = "error_room_full";
-}
\ No newline at end of file
+}
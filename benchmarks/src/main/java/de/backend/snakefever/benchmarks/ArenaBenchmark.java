@@ -0,0 +1,91 @@
+package de.backend.snakefever.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.backend.snakefever.Room;
+import de.backend.snakefever.game.ArenaEncoder;
+import de.backend.snakefever.game.IngamePlayer;
+import de.backend.snakefever.game.World;
+
+/**
+ * One tick of an arena: stepping the world and encoding what the players are sent. Every player
+ * gets the part of the arena around its snake, compared to encoding the whole arena once, which is
+ * what every player would get without the area of interest.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ArenaBenchmark {
+    @Param({ "64", "256", "512" })
+    public int snakes;
+
+    private World world;
+    private ArenaEncoder encoder;
+    private final List<IngamePlayer> players = new ArrayList<>();
+    private int sequence;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        this.world = new World(Room.ARENA_SIZE, Room.ARENA_SIZE, Room.ARENA_MAX_PLAYERS, Room.ARENA_FOOD_COUNT, Room.ARENA_BUCKET_SIZE, 42);
+        for (int i = 0; i < this.snakes; i++) {
+            IngamePlayer player = new IngamePlayer();
+            this.world.attach(player);
+            this.players.add(player);
+        }
+        this.encoder = new ArenaEncoder(this.world);
+
+        // let the snakes spawn and grow a bit
+        for (int i = 0; i < 100; i++) {
+            this.step();
+        }
+    }
+
+    private void step() {
+        // keep the snakes turning, so they don't all run into the walls
+        IngamePlayer mover = this.players.get(ThreadLocalRandom.current().nextInt(this.players.size()));
+        mover.offerInput(ThreadLocalRandom.current().nextInt(4), ++this.sequence);
+        mover.tick();
+        this.world.step();
+    }
+
+    /**
+     * Returns the bytes sent to all players.
+     */
+    @Benchmark
+    public long tickWithViews() {
+        this.step();
+        long bytes = 0;
+        for (IngamePlayer player : this.players) {
+            bytes += this.encoder.encodeView(player).remaining();
+        }
+        return bytes;
+    }
+
+    /**
+     * Returns the bytes that would be sent to all players.
+     */
+    @Benchmark
+    public long tickWithWholeArena() {
+        this.step();
+        return (long) this.encoder.encodeAll().remaining() * this.players.size();
+    }
+}
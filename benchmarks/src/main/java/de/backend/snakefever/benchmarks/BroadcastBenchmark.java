@@ -0,0 +1,100 @@
+package de.backend.snakefever.benchmarks;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.backend.snakefever.Player;
+import de.backend.snakefever.Room;
+import de.backend.snakefever.Server;
+import de.backend.snakefever.game.IngamePlayer;
+import de.backend.snakefever.game.SnapshotHistory;
+import de.backend.snakefever.game.World;
+import de.backend.snakefever.messageConstants.MessageConstants;
+import de.backend.snakefever.tick.TickMetrics;
+
+/**
+ * How the room state sent every tick is serialized: snapshot encoding on its own and a full room
+ * tick, which builds the frames and pushes them through socket io and engine io.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BroadcastBenchmark {
+    /**
+     * If the players acknowledge every state, so they receive deltas instead of keyframes.
+     */
+    @Param({ "true", "false" })
+    public boolean acking;
+
+    private World world;
+    private SnapshotHistory snapshots;
+
+    private Population population;
+    private Room room;
+    private TickMetrics metrics;
+    // the snapshot sequence of the room, the room captures one per tick
+    private int sequence = -1;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        this.world = new World(World.DEFAULT_WIDTH, World.DEFAULT_HEIGHT, Room.MAX_PLAYERS, 42);
+        for (int i = 0; i < Room.MAX_PLAYERS; i++) {
+            this.world.attach(new IngamePlayer());
+        }
+        this.snapshots = new SnapshotHistory(this.world, SnapshotHistory.DEFAULT_SIZE);
+        for (int i = 0; i < SnapshotHistory.DEFAULT_SIZE; i++) {
+            this.world.step();
+            this.snapshots.capture(this.world);
+        }
+
+        this.population = new Population(1);
+        this.population.seat(Room.MAX_PLAYERS, false);
+        this.room = this.population.players.get(0).getRoom();
+        this.metrics = new TickMetrics(TimeUnit.MILLISECONDS.toNanos(Server.TICK_INTERVAL_MILLIS));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        this.population.shutdown();
+    }
+
+    @Benchmark
+    public ByteBuffer encodeSnapshot() {
+        int latest = this.snapshots.getLatest();
+        return this.snapshots.encode(latest, this.acking ? latest - 1 : -1);
+    }
+
+    @Benchmark
+    public void tickRoom() {
+        if (this.acking && this.sequence >= 0) {
+            for (Player player : this.population.players) {
+                player.getSocket().emit(MessageConstants.EVENT_ROOM_STATE_ACK_REQUEST, this.sequence, this.room.getSnapshotEpoch());
+            }
+        }
+
+        // keep the snakes turning, so the state keeps changing like in a real game
+        Player mover = this.population.players.get(ThreadLocalRandom.current().nextInt(Room.MAX_PLAYERS));
+        mover.getIngamePlayer().onPlayerInput(ThreadLocalRandom.current().nextInt(4), this.sequence + 1);
+
+        this.room.tick(this.metrics);
+        this.sequence++;
+    }
+}
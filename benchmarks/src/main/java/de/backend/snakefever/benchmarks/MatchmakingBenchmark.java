@@ -0,0 +1,90 @@
+package de.backend.snakefever.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.backend.snakefever.Matchmaker;
+import de.backend.snakefever.Player;
+import de.backend.snakefever.Room;
+
+/**
+ * Quickplay: a batch of players is queued, placed by one matchmaker tick and leaves again, while
+ * the rest of the population sits in half filled quickplay rooms. The joins and leaves are applied to
+ * the rooms after every invocation, outside of the measurement, so the mailboxes do not grow.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MatchmakingBenchmark {
+    private static final int BATCH = 64;
+
+    @Param({ "10", "1000", "10000", "100000" })
+    public int players;
+
+    private Population population;
+    private List<Player> batch;
+    // the rooms the batch joined in the last invocation
+    private final List<Room> joined = new ArrayList<>(BATCH);
+
+    @Setup(Level.Trial)
+    public void setup() {
+        this.population = new Population(1);
+        this.population.seat(this.players, true);
+
+        // free every second slot, so the matchmaker has partially filled rooms to choose from
+        for (int i = 0; i < this.players; i += 2) {
+            this.population.players.get(i).leaveRoom();
+        }
+        this.population.server.getMatchmaker().tick();
+        this.population.settle(null);
+
+        this.population.connect(BATCH, "queued");
+        this.batch = this.population.players.subList(this.players, this.players + BATCH);
+    }
+
+    @TearDown(Level.Invocation)
+    public void settle() {
+        this.population.settle(this.joined);
+        this.joined.clear();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        this.population.shutdown();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void quickplay() {
+        Matchmaker matchmaker = this.population.server.getMatchmaker();
+        for (Player player : this.batch) {
+            matchmaker.enqueue(player);
+        }
+        matchmaker.tick();
+
+        for (Player player : this.batch) {
+            if (player.getRoom() != null)
+                this.joined.add(player.getRoom());
+            player.leaveRoom();
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package de.backend.snakefever.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import de.backend.snakefever.Player;
+import de.backend.snakefever.Room;
+import de.backend.snakefever.Server;
+import de.backend.snakefever.limits.SocketLimits;
+import de.backend.snakefever.tick.TickShard;
+
+/**
+ * A headless server filled with synthetic players on in-memory sockets.
+ */
+final class Population {
+    final StubSockets sockets = new StubSockets();
+    final Server server;
+    final List<Player> players = new ArrayList<>();
+
+    /**
+     * Creates a headless server, it is never started and must be ticked by the benchmark.
+     * @param shardCount the amount of tick shards
+     */
+    Population(int shardCount) {
+        this.server = new Server(shardCount);
+        // the benchmarks emit far more events than a real client, none of them may be dropped
+        this.server.setSocketLimits(new SocketLimits());
+    }
+
+    /**
+     * Connects players without putting them in a room.
+     * @param count the amount of players to connect
+     * @param namePrefix the prefix of the player names, followed by the player index
+     */
+    void connect(int count, String namePrefix) {
+        for (int i = 0; i < count; i++) {
+            Player player = this.sockets.connect(this.server);
+            this.server.renamePlayer(player, namePrefix + this.players.size());
+            this.players.add(player);
+        }
+    }
+
+    /**
+     * Connects players and seats them in full rooms, the last room may not be full.
+     * @param count the amount of players to connect
+     * @param quickplay if the rooms are quickplay rooms
+     */
+    void seat(int count, boolean quickplay) {
+        Room room = null;
+        for (int i = 0; i < count; i++) {
+            if (room == null || room.isFull())
+                room = this.server.createRoom(quickplay);
+
+            Player player = this.sockets.connect(this.server);
+            room.tryReserveSlot();
+            player.joinRoom(room);
+            this.players.add(player);
+        }
+    }
+
+    /**
+     * Applies the joins and leaves posted to the rooms, like the start of their next tick would, without
+     * ticking any room. The shards run on a clock that never moves, so they only take over new rooms and
+     * drop the wakeups, and no room timer fires.
+     * @param rooms the rooms to update, null for all rooms
+     */
+    void settle(Iterable<Room> rooms) {
+        for (TickShard shard : this.server.getShards()) {
+            shard.tick(0);
+            if (rooms == null) {
+                for (Room room : shard.getRooms()) {
+                    room.updateLifecycle(System.nanoTime());
+                }
+            }
+        }
+
+        if (rooms != null) {
+            for (Room room : rooms) {
+                room.updateLifecycle(System.nanoTime());
+            }
+        }
+    }
+
+    void shutdown() {
+        this.sockets.shutdown();
+    }
+}
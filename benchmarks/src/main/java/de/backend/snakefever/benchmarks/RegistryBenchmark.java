@@ -0,0 +1,82 @@
+package de.backend.snakefever.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.backend.snakefever.Room;
+
+/**
+ * The lookups done on every room creation, join and rename, with a populated server.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RegistryBenchmark {
+    @Param({ "10", "1000", "10000", "100000" })
+    public int players;
+
+    private Population population;
+    private String[] roomIds;
+    private String[] takenNames;
+    private String[] freeNames;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        this.population = new Population(1);
+        this.population.seat(this.players, false);
+        this.population.connect(this.players, "player");
+
+        this.roomIds = this.population.server.getRoomIds().toArray(new String[0]);
+        this.takenNames = new String[this.players];
+        this.freeNames = new String[this.players];
+        for (int i = 0; i < this.players; i++) {
+            this.takenNames[i] = "player" + i;
+            this.freeNames[i] = "free" + i;
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        this.population.shutdown();
+    }
+
+    @Benchmark
+    public String findEmptyRoomId() {
+        return this.population.server.findEmptyRoomId();
+    }
+
+    @Benchmark
+    public Room getRoom() {
+        this.next = (this.next + 1) % this.roomIds.length;
+        return this.population.server.getRoom(this.roomIds[this.next]);
+    }
+
+    @Benchmark
+    public boolean isNameTakenHit() {
+        this.next = (this.next + 1) % this.players;
+        return this.population.server.isNameTaken(this.takenNames[this.next]);
+    }
+
+    @Benchmark
+    public boolean isNameTakenMiss() {
+        this.next = (this.next + 1) % this.players;
+        return this.population.server.isNameTaken(this.freeNames[this.next]);
+    }
+}
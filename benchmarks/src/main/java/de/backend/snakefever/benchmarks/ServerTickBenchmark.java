@@ -0,0 +1,52 @@
+package de.backend.snakefever.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * A whole headless server tick: matchmaking, player input, world step and the frame sent to every
+ * player, for full rooms. The tick budget is {@link de.backend.snakefever.Server#TICK_INTERVAL_MILLIS}
+ * per shard.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ServerTickBenchmark {
+    @Param({ "10", "1000", "10000", "100000" })
+    public int players;
+
+    private Population population;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        // one shard, the headless tick runs all shards on the calling thread anyway
+        this.population = new Population(1);
+        this.population.seat(this.players, false);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        this.population.shutdown();
+    }
+
+    @Benchmark
+    public void tick() {
+        this.population.server.tick();
+    }
+}
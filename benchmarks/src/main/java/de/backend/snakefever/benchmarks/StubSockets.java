@@ -0,0 +1,121 @@
+package de.backend.snakefever.benchmarks;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import de.backend.snakefever.Player;
+import de.backend.snakefever.Server;
+import io.socket.engineio.server.EngineIoServer;
+import io.socket.engineio.server.EngineIoServerOptions;
+import io.socket.engineio.server.EngineIoWebSocket;
+import io.socket.socketio.server.SocketIoNamespace;
+import io.socket.socketio.server.SocketIoServer;
+import io.socket.socketio.server.SocketIoSocket;
+
+/**
+ * Connects players without a network.<p>
+ * {@link SocketIoSocket} can't be created directly, so every player gets a real engine io and
+ * socket io session over an in-memory web socket. Everything sent to the player still goes through
+ * the socket io and engine io encoders and ends up in {@link StubWebSocket#write}, where it is
+ * counted and dropped.
+ */
+public final class StubSockets {
+    private final EngineIoServer engineIoServer;
+    private final SocketIoNamespace namespace;
+
+    // the socket of the last connection, set by the namespace listener
+    private SocketIoSocket connected;
+
+    public StubSockets() {
+        EngineIoServerOptions options = EngineIoServerOptions.newFromDefault();
+        // the stubs never answer pings, so don't send any during a benchmark
+        options.setPingInterval(Integer.MAX_VALUE);
+        options.setPingTimeout(Integer.MAX_VALUE);
+
+        this.engineIoServer = new EngineIoServer(options);
+        this.namespace = new SocketIoServer(this.engineIoServer).namespace("/");
+        this.namespace.on("connection", args -> this.connected = (SocketIoSocket) args[0]);
+    }
+
+    /**
+     * Opens a new in-memory connection.
+     * @return the socket io socket of the connection
+     */
+    public synchronized SocketIoSocket connect() {
+        StubWebSocket webSocket = new StubWebSocket();
+        this.engineIoServer.handleWebSocket(webSocket);
+
+        // engine io message (4) with a socket io connect (0) to the main namespace
+        this.connected = null;
+        webSocket.emit("message", "40");
+
+        if (this.connected == null)
+            throw new IllegalStateException("The in-memory socket did not connect.");
+        return this.connected;
+    }
+
+    /**
+     * Opens a new in-memory connection and registers a player for it.
+     * @return the registered player
+     */
+    public Player connect(Server server) {
+        SocketIoSocket socket = this.connect();
+        server.registerPlayer(socket);
+        return server.getPlayer(socket.getId());
+    }
+
+    /**
+     * Stops the timers of the engine io server.
+     */
+    public void shutdown() {
+        this.engineIoServer.shutdown();
+    }
+
+    /**
+     * A web socket that drops everything written to it.
+     */
+    public static final class StubWebSocket extends EngineIoWebSocket {
+        private static final Map<String, String> QUERY;
+
+        static {
+            Map<String, String> query = new HashMap<>();
+            query.put("EIO", "4");
+            query.put("transport", "websocket");
+            QUERY = Collections.unmodifiableMap(query);
+        }
+
+        // the bytes written to this socket, text counted as chars
+        private long writtenBytes;
+
+        @Override
+        public Map<String, String> getQuery() {
+            return QUERY;
+        }
+
+        @Override
+        public Map<String, List<String>> getConnectionHeaders() {
+            return Collections.emptyMap();
+        }
+
+        @Override
+        public void write(String message) {
+            this.writtenBytes += message.length();
+        }
+
+        @Override
+        public void write(byte[] message) {
+            this.writtenBytes += message.length;
+        }
+
+        @Override
+        public void close() {
+            this.emit("close");
+        }
+
+        public long getWrittenBytes() {
+            return this.writtenBytes;
+        }
+    }
+}
@@ -0,0 +1,702 @@
+package de.backend.snakefever.codegen;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+/**
+ * Generates the message constants and the binary message codec for the server (Java) and the client (C#)
+ * from one schema, so both sides can't drift apart.<p>
+ * The generator is build tooling and not part of the server. Every build compiles and runs it in the
+ * generate-sources phase and fails if the checked in files differ from what the schema generates,
+ * {@code mvn generate-sources -Dcodegen.mode=--write} writes them after the schema was changed.<p>
+ * Usage: {@code CodecGenerator [--check|--write] [schema] [project root]}, --write is the default.<p>
+ * The schema defaults to {@value #DEFAULT_SCHEMA}. Generated files:<p>
+ * - src/main/java/.../messageConstants/MessageConstants.java and MessageCodec.java<p>
+ * - MessageConstants.cs and MessageCodec.cs in the project root<p>
+ * Binary messages start with their id byte, numbers are big endian and varints are unsigned LEB128.
+ * Supported field types: u8, u16, i32, i64, varint, string (varint length and UTF-8 bytes, at most maxBytes)
+ * and bytes (the rest of the message, only as last field).
+ */
+public final class CodecGenerator {
+    /**
+     * The default schema location, relative to the project root.
+     */
+    public static final String DEFAULT_SCHEMA = "src/main/schema/messages.json";
+
+    // marks a link in the schema docs, e.g. {@link EVENT_ERROR_RESPONSE}
+    private static final Pattern LINK = Pattern.compile("\\{@link ([\\w.]+)\\}");
+
+    private final JsonObject schema;
+    private final String schemaPath;
+
+    private CodecGenerator(JsonObject schema, String schemaPath) {
+        this.schema = schema;
+        this.schemaPath = schemaPath;
+    }
+
+    public static void main(String[] args) throws IOException {
+        boolean check = args.length > 0 && args[0].equals("--check");
+        if (args.length > 0 && (check || args[0].equals("--write")))
+            args = Arrays.copyOfRange(args, 1, args.length);
+
+        String schemaPath = args.length > 0 ? args[0] : DEFAULT_SCHEMA;
+        Path root = Paths.get(args.length > 1 ? args[1] : ".");
+
+        JsonObject schema;
+        try (Reader reader = Files.newBufferedReader(root.resolve(schemaPath), StandardCharsets.UTF_8)) {
+            schema = JsonParser.parseReader(reader).getAsJsonObject();
+        }
+
+        CodecGenerator generator = new CodecGenerator(schema, schemaPath);
+        String javaPackage = schema.get("javaPackage").getAsString();
+        Path javaDir = root.resolve("src/main/java").resolve(javaPackage.replace('.', '/'));
+
+        Map<Path, String> files = new LinkedHashMap<>();
+        files.put(javaDir.resolve("MessageConstants.java"), generator.javaConstants(javaPackage));
+        files.put(javaDir.resolve("MessageCodec.java"), generator.javaCodec(javaPackage));
+        files.put(root.resolve("MessageConstants.cs"), generator.csConstants());
+        files.put(root.resolve("MessageCodec.cs"), generator.csCodec());
+
+        if (!check) {
+            for (Map.Entry<Path, String> file : files.entrySet()) {
+                Files.write(file.getKey(), file.getValue().getBytes(StandardCharsets.UTF_8));
+                System.out.println("Generated " + file.getKey());
+            }
+            return;
+        }
+
+        List<Path> stale = new ArrayList<>();
+        for (Map.Entry<Path, String> file : files.entrySet()) {
+            if (!Files.exists(file.getKey()) || !Arrays.equals(Files.readAllBytes(file.getKey()), file.getValue().getBytes(StandardCharsets.UTF_8)))
+                stale.add(file.getKey());
+        }
+        if (!stale.isEmpty()) {
+            System.err.println("The generated files " + stale + " differ from " + schemaPath
+                + ", regenerate them with: mvn generate-sources -Dcodegen.mode=--write");
+            System.exit(1);
+        }
+    }
+
+    //
+    // JAVA
+    //
+
+    private String javaConstants(String javaPackage) {
+        StringBuilder out = new StringBuilder();
+        out.append("// GENERATED from ").append(this.schemaPath).append(" by CodecGenerator, do not edit by hand.\n");
+        out.append("package ").append(javaPackage).append(";\n\n");
+        out.append("/**\n");
+        appendJavaDoc(out, "", strings(this.schema.getAsJsonArray("classDoc")), null);
+        out.append(" */\n");
+        out.append("public final class MessageConstants {\n");
+
+        boolean firstSection = true;
+        for (JsonElement sectionElement : this.schema.getAsJsonArray("sections")) {
+            JsonObject section = sectionElement.getAsJsonObject();
+            if (!firstSection)
+                out.append("\n\n\n");
+            firstSection = false;
+
+            out.append("    //\n    // ").append(section.get("title").getAsString()).append("\n    //\n\n\n");
+
+            boolean firstGroup = true;
+            for (JsonElement group : section.getAsJsonArray("groups")) {
+                out.append(firstGroup ? "\n" : "\n\n");
+                firstGroup = false;
+
+                boolean firstConstant = true;
+                for (JsonElement constantElement : group.getAsJsonArray()) {
+                    JsonObject constant = constantElement.getAsJsonObject();
+                    if (!firstConstant)
+                        out.append("\n");
+                    firstConstant = false;
+
+                    out.append("    /**\n");
+                    appendJavaDoc(out, "    ", docLines(constant.get("doc")), optString(constant, "see"));
+                    out.append("     */\n");
+                    out.append("    public static final ").append(isString(constant) ? "String" : "int").append(" ")
+                        .append(constant.get("name").getAsString()).append(" = ").append(constantValue(constant)).append(";\n");
+                }
+            }
+        }
+
+        out.append("}\n");
+        return out.toString();
+    }
+
+    private String javaCodec(String javaPackage) {
+        StringBuilder out = new StringBuilder();
+        out.append("// GENERATED from ").append(this.schemaPath).append(" by CodecGenerator, do not edit by hand.\n");
+        out.append("package ").append(javaPackage).append(";\n\n");
+        out.append("import java.nio.BufferUnderflowException;\n");
+        out.append("import java.nio.ByteBuffer;\n");
+        out.append("import java.nio.charset.StandardCharsets;\n\n");
+        out.append("/**\n");
+        out.append(" * Binary codec for the high frequency messages, sent as binary argument of the SocketIO events.<p>\n");
+        out.append(" * Every message starts with its id byte, numbers are big endian and varints are unsigned LEB128.\n");
+        out.append(" * Encoding writes directly into a {@link ByteBuffer}, decoding reads from it into a reusable message\n");
+        out.append(" * object without copying byte fields.\n");
+        out.append(" */\n");
+        out.append("public final class MessageCodec {\n");
+        out.append("    private MessageCodec() {\n    }\n\n");
+        out.append("    /**\n     * Returns the id of the message at the position of the buffer, without moving the position.\n");
+        out.append("     * @return the id or -1 if the buffer is empty.\n     */\n");
+        out.append("    public static int peekId(ByteBuffer buffer) {\n");
+        out.append("        return buffer.hasRemaining() ? buffer.get(buffer.position()) & 0xFF : -1;\n    }\n");
+
+        for (JsonElement messageElement : this.schema.getAsJsonArray("messages")) {
+            JsonObject message = messageElement.getAsJsonObject();
+            String name = message.get("name").getAsString();
+            List<JsonObject> fields = objects(message.getAsJsonArray("fields"));
+            JsonObject body = bodyField(fields);
+
+            out.append("\n    /**\n");
+            appendMessageJavaDoc(out, message);
+            out.append("     */\n");
+            out.append("    public static final class ").append(name).append(" {\n");
+            out.append("        public static final int ID = ").append(message.get("id").getAsInt()).append(";\n");
+            out.append("        /**\n         * The maximum encoded size").append(body != null ? " without the " + body.get("name").getAsString() : "")
+                .append(".\n         */\n");
+            out.append("        public static final int MAX_SIZE = ").append(maxSize(fields)).append(";\n\n");
+
+            for (JsonObject field : fields) {
+                out.append("        /**\n         * ").append(javaLinks(field.get("doc").getAsString())).append("\n         */\n");
+                out.append("        public ").append(javaType(field)).append(" ").append(field.get("name").getAsString()).append(";\n");
+            }
+
+            // static encoder
+            out.append("\n        /**\n         * Writes a message at the position of the buffer.\n");
+            if (body != null)
+                out.append("         * The ").append(body.get("name").getAsString()).append(" has to be written by the caller right after it.\n");
+            out.append("         */\n");
+            out.append("        public static void encode(ByteBuffer buffer");
+            for (JsonObject field : fields) {
+                if (field != body)
+                    out.append(", ").append(javaType(field)).append(" ").append(field.get("name").getAsString());
+            }
+            out.append(") {\n");
+            out.append("            buffer.put((byte) ID);\n");
+            for (JsonObject field : fields) {
+                if (field != body)
+                    out.append("            ").append(javaWrite(field)).append("\n");
+            }
+            out.append("        }\n\n");
+
+            // decoder
+            out.append("        /**\n         * Reads a message from the position of the buffer into this object.\n");
+            out.append("         * @return false if the buffer does not contain a complete message of this type.\n         */\n");
+            out.append("        public boolean decode(ByteBuffer buffer) {\n");
+            out.append("            if (peekId(buffer) != ID)\n                return false;\n\n");
+            out.append("            int start = buffer.position();\n");
+            out.append("            try {\n");
+            out.append("                buffer.get();\n");
+            for (JsonObject field : fields) {
+                out.append("                ").append(javaRead(field)).append("\n");
+            }
+            out.append("                return true;\n");
+            out.append("            } catch (BufferUnderflowException | IllegalArgumentException e) {\n");
+            out.append("                buffer.position(start);\n");
+            out.append("                return false;\n");
+            out.append("            }\n");
+            out.append("        }\n");
+            out.append("    }\n");
+        }
+
+        out.append("\n    /**\n     * Writes an unsigned LEB128 varint, used e.g. for length prefixes.\n     */\n");
+        out.append("    public static void putVarInt(ByteBuffer buffer, int value) {\n");
+        out.append("        while ((value & ~0x7F) != 0) {\n");
+        out.append("            buffer.put((byte) ((value & 0x7F) | 0x80));\n");
+        out.append("            value >>>= 7;\n");
+        out.append("        }\n");
+        out.append("        buffer.put((byte) value);\n");
+        out.append("    }\n\n");
+        out.append("    /**\n     * Reads an unsigned LEB128 varint.\n     * @throws IllegalArgumentException if the varint is longer than 5 bytes\n     */\n");
+        out.append("    public static int getVarInt(ByteBuffer buffer) {\n");
+        out.append("        int value = 0;\n");
+        out.append("        for (int shift = 0; shift < 35; shift += 7) {\n");
+        out.append("            byte b = buffer.get();\n");
+        out.append("            value |= (b & 0x7F) << shift;\n");
+        out.append("            if ((b & 0x80) == 0)\n");
+        out.append("                return value;\n");
+        out.append("        }\n");
+        out.append("        throw new IllegalArgumentException(\"varint too long\");\n");
+        out.append("    }\n\n");
+        out.append("    static void putString(ByteBuffer buffer, String value, int maxBytes) {\n");
+        out.append("        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);\n");
+        out.append("        if (bytes.length > maxBytes)\n");
+        out.append("            throw new IllegalArgumentException(\"string longer than \" + maxBytes + \" bytes\");\n");
+        out.append("        putVarInt(buffer, bytes.length);\n");
+        out.append("        buffer.put(bytes);\n");
+        out.append("    }\n\n");
+        out.append("    static String getString(ByteBuffer buffer, int maxBytes) {\n");
+        out.append("        int length = getVarInt(buffer);\n");
+        out.append("        if (length < 0 || length > maxBytes || length > buffer.remaining())\n");
+        out.append("            throw new IllegalArgumentException(\"invalid string length\");\n");
+        out.append("        byte[] bytes = new byte[length];\n");
+        out.append("        buffer.get(bytes);\n");
+        out.append("        return new String(bytes, StandardCharsets.UTF_8);\n");
+        out.append("    }\n");
+        out.append("}\n");
+        return out.toString();
+    }
+
+    private void appendMessageJavaDoc(StringBuilder out, JsonObject message) {
+        List<String> lines = new ArrayList<>();
+        String see = null;
+        for (String line : strings(message.getAsJsonArray("doc"))) {
+            if (line.startsWith("@see "))
+                see = line.substring(5);
+            else
+                lines.add(line);
+        }
+
+        List<List<String>> doc = new ArrayList<>();
+        for (String line : lines) {
+            List<String> paragraph = new ArrayList<>();
+            paragraph.add(line);
+            doc.add(paragraph);
+        }
+        appendJavaDoc(out, "    ", doc, see);
+    }
+
+    private static void appendJavaDoc(StringBuilder out, String indent, List<?> paragraphs, String see) {
+        for (int i = 0; i < paragraphs.size(); i++) {
+            Object paragraph = paragraphs.get(i);
+            List<String> lines = paragraph instanceof List ? castStrings((List<?>) paragraph) : singleton((String) paragraph);
+            for (int j = 0; j < lines.size(); j++) {
+                out.append(indent).append(" * ").append(javaLinks(lines.get(j)));
+                if (j == lines.size() - 1 && i < paragraphs.size() - 1)
+                    out.append("<p>");
+                out.append("\n");
+            }
+        }
+        if (see != null)
+            out.append(indent).append(" * @see MessageConstants#").append(see).append("\n");
+    }
+
+    private static String javaLinks(String text) {
+        Matcher matcher = LINK.matcher(text);
+        StringBuffer result = new StringBuffer();
+        while (matcher.find()) {
+            String target = matcher.group(1);
+            String link = target.contains(".") ? "{@link " + target + "}" : "{@link MessageConstants#" + target + "}";
+            matcher.appendReplacement(result, Matcher.quoteReplacement(link));
+        }
+        matcher.appendTail(result);
+        return result.toString();
+    }
+
+    private static String javaType(JsonObject field) {
+        switch (field.get("type").getAsString()) {
+            case "i64":
+                return "long";
+            case "bytes":
+                return "ByteBuffer";
+            case "string":
+                return "String";
+            default:
+                return "int";
+        }
+    }
+
+    private static String javaWrite(JsonObject field) {
+        String name = field.get("name").getAsString();
+        switch (field.get("type").getAsString()) {
+            case "u8":
+                return "buffer.put((byte) " + name + ");";
+            case "u16":
+                return "buffer.putShort((short) " + name + ");";
+            case "i32":
+                return "buffer.putInt(" + name + ");";
+            case "i64":
+                return "buffer.putLong(" + name + ");";
+            case "varint":
+                return "putVarInt(buffer, " + name + ");";
+            case "string":
+                return "putString(buffer, " + name + ", " + field.get("maxBytes").getAsInt() + ");";
+            default:
+                throw new IllegalArgumentException("Unknown field type of " + name);
+        }
+    }
+
+    private static String javaRead(JsonObject field) {
+        String name = "this." + field.get("name").getAsString();
+        switch (field.get("type").getAsString()) {
+            case "u8":
+                return name + " = buffer.get() & 0xFF;";
+            case "u16":
+                return name + " = buffer.getShort() & 0xFFFF;";
+            case "i32":
+                return name + " = buffer.getInt();";
+            case "i64":
+                return name + " = buffer.getLong();";
+            case "varint":
+                return name + " = getVarInt(buffer);";
+            case "string":
+                return name + " = getString(buffer, " + field.get("maxBytes").getAsInt() + ");";
+            case "bytes":
+                return name + " = buffer.slice();\n                buffer.position(buffer.limit());";
+            default:
+                throw new IllegalArgumentException("Unknown field type of " + name);
+        }
+    }
+
+    //
+    // C#
+    //
+
+    private String csConstants() {
+        StringBuilder out = new StringBuilder();
+        out.append("// GENERATED from ").append(this.schemaPath).append(" by CodecGenerator, do not edit by hand.\n\n");
+        out.append("using System;\n\n");
+        out.append("/// <summary>\n");
+        appendCsDoc(out, "", strings(this.schema.getAsJsonArray("classDoc")), null);
+        out.append("/// </summary>\n");
+        out.append("public class MessageConstants\n{\n");
+
+        boolean firstSection = true;
+        for (JsonElement sectionElement : this.schema.getAsJsonArray("sections")) {
+            JsonObject section = sectionElement.getAsJsonObject();
+            if (!firstSection)
+                out.append("\n\n\n");
+            firstSection = false;
+
+            out.append("    //\n    // ").append(section.get("title").getAsString()).append("\n    //\n\n\n");
+
+            boolean firstGroup = true;
+            for (JsonElement group : section.getAsJsonArray("groups")) {
+                out.append(firstGroup ? "\n" : "\n\n");
+                firstGroup = false;
+
+                boolean firstConstant = true;
+                for (JsonElement constantElement : group.getAsJsonArray()) {
+                    JsonObject constant = constantElement.getAsJsonObject();
+                    if (!firstConstant)
+                        out.append("\n");
+                    firstConstant = false;
+
+                    out.append("    /// <summary>\n");
+                    appendCsDoc(out, "    ", docLines(constant.get("doc")), optString(constant, "see"));
+                    out.append("    /// </summary>\n");
+                    out.append("    public const ").append(isString(constant) ? "String" : "int").append(" ")
+                        .append(constant.get("name").getAsString()).append(" = ").append(constantValue(constant)).append(";\n");
+                }
+            }
+        }
+
+        out.append("}\n");
+        return out.toString();
+    }
+
+    private String csCodec() {
+        StringBuilder out = new StringBuilder();
+        out.append("// GENERATED from ").append(this.schemaPath).append(" by CodecGenerator, do not edit by hand.\n\n");
+        out.append("using System;\n");
+        out.append("using System.Buffers.Binary;\n");
+        out.append("using System.Text;\n\n");
+        out.append("/// <summary>\n");
+        out.append("/// Binary codec for the high frequency messages, sent as binary argument of the SocketIO events.<br/>\n");
+        out.append("/// Every message starts with its id byte, numbers are big endian and varints are unsigned LEB128.\n");
+        out.append("/// Encoding writes directly into a span, decoding reads from it without copying byte fields.\n");
+        out.append("/// </summary>\n");
+        out.append("public static class MessageCodec\n{\n");
+        out.append("    /// <summary>\n    /// Returns the id of the message in the buffer or -1 if the buffer is empty.\n    /// </summary>\n");
+        out.append("    public static int PeekId(ReadOnlySpan<byte> buffer)\n    {\n");
+        out.append("        return buffer.Length > 0 ? buffer[0] : -1;\n    }\n");
+
+        for (JsonElement messageElement : this.schema.getAsJsonArray("messages")) {
+            JsonObject message = messageElement.getAsJsonObject();
+            String name = message.get("name").getAsString();
+            List<JsonObject> fields = objects(message.getAsJsonArray("fields"));
+            JsonObject body = bodyField(fields);
+
+            List<String> lines = new ArrayList<>();
+            String see = null;
+            for (String line : strings(message.getAsJsonArray("doc"))) {
+                if (line.startsWith("@see "))
+                    see = line.substring(5);
+                else
+                    lines.add(line);
+            }
+
+            out.append("\n    /// <summary>\n");
+            appendCsDoc(out, "    ", lines, see);
+            out.append("    /// </summary>\n");
+            out.append("    public ref struct ").append(name).append("\n    {\n");
+            out.append("        public const byte ID = ").append(message.get("id").getAsInt()).append(";\n");
+            out.append("        /// <summary>\n        /// The maximum encoded size").append(body != null ? " without the " + pascal(body) : "")
+                .append(".\n        /// </summary>\n");
+            out.append("        public const int MAX_SIZE = ").append(maxSize(fields)).append(";\n\n");
+
+            for (JsonObject field : fields) {
+                out.append("        /// <summary>\n        /// ").append(csLinks(field.get("doc").getAsString())).append("\n        /// </summary>\n");
+                out.append("        public ").append(csType(field)).append(" ").append(pascal(field)).append(";\n");
+            }
+
+            // encoder
+            out.append("\n        /// <summary>\n        /// Writes a message to the start of the buffer.\n");
+            if (body != null)
+                out.append("        /// The ").append(pascal(body)).append(" has to be written by the caller right after it.\n");
+            out.append("        /// </summary>\n        /// <returns>the amount of bytes written</returns>\n");
+            out.append("        public static int Encode(Span<byte> buffer");
+            for (JsonObject field : fields) {
+                if (field != body)
+                    out.append(", ").append(csType(field)).append(" ").append(field.get("name").getAsString());
+            }
+            out.append(")\n        {\n");
+            out.append("            int pos = 0;\n");
+            out.append("            buffer[pos++] = ID;\n");
+            for (JsonObject field : fields) {
+                if (field != body)
+                    out.append("            ").append(csWrite(field)).append("\n");
+            }
+            out.append("            return pos;\n");
+            out.append("        }\n\n");
+
+            // decoder
+            out.append("        /// <summary>\n        /// Reads a message from the start of the buffer.\n        /// </summary>\n");
+            out.append("        /// <returns>false if the buffer does not contain a complete message of this type</returns>\n");
+            out.append("        public static bool TryDecode(ReadOnlySpan<byte> buffer, out ").append(name).append(" message)\n        {\n");
+            out.append("            message = default;\n");
+            out.append("            if (PeekId(buffer) != ID)\n                return false;\n\n");
+            out.append("            int pos = 1;\n");
+            for (JsonObject field : fields) {
+                out.append("            ").append(csRead(field)).append("\n");
+            }
+            out.append("            return true;\n");
+            out.append("        }\n");
+            out.append("    }\n");
+        }
+
+        out.append("\n    private static void WriteVarInt(Span<byte> buffer, ref int pos, int value)\n    {\n");
+        out.append("        uint v = (uint)value;\n");
+        out.append("        while (v >= 0x80)\n        {\n");
+        out.append("            buffer[pos++] = (byte)(v | 0x80);\n");
+        out.append("            v >>= 7;\n        }\n");
+        out.append("        buffer[pos++] = (byte)v;\n    }\n\n");
+        out.append("    private static bool TryReadVarInt(ReadOnlySpan<byte> buffer, ref int pos, out int value)\n    {\n");
+        out.append("        value = 0;\n");
+        out.append("        for (int shift = 0; shift < 35 && pos < buffer.Length; shift += 7)\n        {\n");
+        out.append("            byte b = buffer[pos++];\n");
+        out.append("            value |= (b & 0x7F) << shift;\n");
+        out.append("            if ((b & 0x80) == 0)\n                return true;\n");
+        out.append("        }\n");
+        out.append("        return false;\n    }\n\n");
+        out.append("    private static void WriteString(Span<byte> buffer, ref int pos, string value, int maxBytes)\n    {\n");
+        out.append("        int length = Encoding.UTF8.GetByteCount(value);\n");
+        out.append("        if (length > maxBytes)\n");
+        out.append("            throw new ArgumentException(\"string longer than \" + maxBytes + \" bytes\");\n");
+        out.append("        WriteVarInt(buffer, ref pos, length);\n");
+        out.append("        pos += Encoding.UTF8.GetBytes(value, buffer.Slice(pos));\n    }\n\n");
+        out.append("    private static bool TryReadString(ReadOnlySpan<byte> buffer, ref int pos, int maxBytes, out string value)\n    {\n");
+        out.append("        value = null;\n");
+        out.append("        if (!TryReadVarInt(buffer, ref pos, out int length) || length < 0 || length > maxBytes || pos + length > buffer.Length)\n");
+        out.append("            return false;\n");
+        out.append("        value = Encoding.UTF8.GetString(buffer.Slice(pos, length));\n");
+        out.append("        pos += length;\n");
+        out.append("        return true;\n    }\n");
+        out.append("}\n");
+        return out.toString();
+    }
+
+    private static void appendCsDoc(StringBuilder out, String indent, List<?> paragraphs, String see) {
+        for (int i = 0; i < paragraphs.size(); i++) {
+            Object paragraph = paragraphs.get(i);
+            List<String> lines = paragraph instanceof List ? castStrings((List<?>) paragraph) : singleton((String) paragraph);
+            for (int j = 0; j < lines.size(); j++) {
+                out.append(indent).append("/// ").append(csLinks(lines.get(j)));
+                if (j == lines.size() - 1 && (i < paragraphs.size() - 1 || see != null))
+                    out.append("<br/>");
+                out.append("\n");
+            }
+        }
+        if (see != null)
+            out.append(indent).append("/// See: <see cref=\"MessageConstants.").append(see).append("\"/>\n");
+    }
+
+    private static String csLinks(String text) {
+        Matcher matcher = LINK.matcher(text);
+        StringBuffer result = new StringBuffer();
+        while (matcher.find()) {
+            matcher.appendReplacement(result, Matcher.quoteReplacement("<see cref=\"" + matcher.group(1) + "\"/>"));
+        }
+        matcher.appendTail(result);
+        return result.toString();
+    }
+
+    private static String csType(JsonObject field) {
+        switch (field.get("type").getAsString()) {
+            case "i64":
+                return "long";
+            case "bytes":
+                return "ReadOnlySpan<byte>";
+            case "string":
+                return "string";
+            default:
+                return "int";
+        }
+    }
+
+    private static String csWrite(JsonObject field) {
+        String name = field.get("name").getAsString();
+        switch (field.get("type").getAsString()) {
+            case "u8":
+                return "buffer[pos++] = (byte)" + name + ";";
+            case "u16":
+                return "BinaryPrimitives.WriteUInt16BigEndian(buffer.Slice(pos), (ushort)" + name + "); pos += 2;";
+            case "i32":
+                return "BinaryPrimitives.WriteInt32BigEndian(buffer.Slice(pos), " + name + "); pos += 4;";
+            case "i64":
+                return "BinaryPrimitives.WriteInt64BigEndian(buffer.Slice(pos), " + name + "); pos += 8;";
+            case "varint":
+                return "WriteVarInt(buffer, ref pos, " + name + ");";
+            case "string":
+                return "WriteString(buffer, ref pos, " + name + ", " + field.get("maxBytes").getAsInt() + ");";
+            default:
+                throw new IllegalArgumentException("Unknown field type of " + name);
+        }
+    }
+
+    private static String csRead(JsonObject field) {
+        String name = "message." + pascal(field);
+        switch (field.get("type").getAsString()) {
+            case "u8":
+                return "if (pos + 1 > buffer.Length) return false;\n            " + name + " = buffer[pos++];";
+            case "u16":
+                return "if (pos + 2 > buffer.Length) return false;\n            " + name
+                    + " = BinaryPrimitives.ReadUInt16BigEndian(buffer.Slice(pos)); pos += 2;";
+            case "i32":
+                return "if (pos + 4 > buffer.Length) return false;\n            " + name
+                    + " = BinaryPrimitives.ReadInt32BigEndian(buffer.Slice(pos)); pos += 4;";
+            case "i64":
+                return "if (pos + 8 > buffer.Length) return false;\n            " + name
+                    + " = BinaryPrimitives.ReadInt64BigEndian(buffer.Slice(pos)); pos += 8;";
+            case "varint":
+                return "if (!TryReadVarInt(buffer, ref pos, out " + name + ")) return false;";
+            case "string":
+                return "if (!TryReadString(buffer, ref pos, " + field.get("maxBytes").getAsInt() + ", out " + name + ")) return false;";
+            case "bytes":
+                return name + " = buffer.Slice(pos);";
+            default:
+                throw new IllegalArgumentException("Unknown field type of " + name);
+        }
+    }
+
+    //
+    // SCHEMA HELPERS
+    //
+
+    private static JsonObject bodyField(List<JsonObject> fields) {
+        for (int i = 0; i < fields.size(); i++) {
+            if (fields.get(i).get("type").getAsString().equals("bytes")) {
+                if (i != fields.size() - 1)
+                    throw new IllegalArgumentException("bytes fields must be the last field");
+                return fields.get(i);
+            }
+        }
+        return null;
+    }
+
+    private static int maxSize(List<JsonObject> fields) {
+        int size = 1;
+        for (JsonObject field : fields) {
+            switch (field.get("type").getAsString()) {
+                case "u8":
+                    size += 1;
+                    break;
+                case "u16":
+                    size += 2;
+                    break;
+                case "i32":
+                    size += 4;
+                    break;
+                case "i64":
+                    size += 8;
+                    break;
+                case "varint":
+                    size += 5;
+                    break;
+                case "string":
+                    size += 5 + field.get("maxBytes").getAsInt();
+                    break;
+                default:
+                    break;
+            }
+        }
+        return size;
+    }
+
+    private static String pascal(JsonObject field) {
+        String name = field.get("name").getAsString();
+        return Character.toUpperCase(name.charAt(0)) + name.substring(1);
+    }
+
+    private static boolean isString(JsonObject constant) {
+        return constant.get("type").getAsString().equals("string");
+    }
+
+    private static String constantValue(JsonObject constant) {
+        return isString(constant) ? "\"" + constant.get("value").getAsString() + "\"" : String.valueOf(constant.get("value").getAsInt());
+    }
+
+    private static String optString(JsonObject object, String key) {
+        return object.has(key) ? object.get(key).getAsString() : null;
+    }
+
+    /**
+     * Returns the doc paragraphs, every paragraph is a string or a list of lines.
+     */
+    private static List<Object> docLines(JsonElement doc) {
+        List<Object> paragraphs = new ArrayList<>();
+        for (JsonElement element : doc.getAsJsonArray()) {
+            paragraphs.add(element.isJsonArray() ? strings(element.getAsJsonArray()) : element.getAsString());
+        }
+        return paragraphs;
+    }
+
+    private static List<String> strings(JsonArray array) {
+        List<String> strings = new ArrayList<>();
+        for (JsonElement element : array) {
+            strings.add(element.getAsString());
+        }
+        return strings;
+    }
+
+    private static List<JsonObject> objects(JsonArray array) {
+        List<JsonObject> objects = new ArrayList<>();
+        for (JsonElement element : array) {
+            objects.add(element.getAsJsonObject());
+        }
+        return objects;
+    }
+
+    private static List<String> castStrings(List<?> list) {
+        List<String> strings = new ArrayList<>();
+        for (Object object : list) {
+            strings.add((String) object);
+        }
+        return strings;
+    }
+
+    private static List<String> singleton(String string) {
+        List<String> strings = new ArrayList<>();
+        strings.add(string);
+        return strings;
+    }
+}
@@ -0,0 +1,157 @@
+package de.backend.snakefever;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import de.backend.snakefever.messageConstants.MessageConstants;
+
+/**
+ * Places players in quickplay rooms.<p>
+ * Quickplay requests are queued from the socket threads and assigned in one batch per tick.
+ * Open quickplay rooms are indexed in buckets by their amount of reserved slots and the fullest room
+ * is always filled first, so rooms fill up densely instead of leaving many half empty rooms.<p>
+ * The buckets are only touched by the thread calling {@link #tick()}. Entries can become stale when
+ * a room fills up through a direct join or a player leaves, so every room remembers the bucket it was
+ * last filed in and entries pointing to another bucket are skipped.
+ */
+public final class Matchmaker {
+    // the server to create new quickplay rooms on
+    private final Server server;
+
+    // players waiting for a quickplay room
+    private final Queue<Player> pendingPlayers = new ConcurrentLinkedQueue<>();
+    // quickplay rooms that got a slot freed and need to be filed again
+    private final Queue<Room> freedRooms = new ConcurrentLinkedQueue<>();
+
+    // open quickplay rooms by their amount of reserved slots
+    private final ArrayDeque<Room>[] buckets;
+
+    /**
+     * Creates a matchmaker.
+     * @param server the server to create new quickplay rooms on
+     */
+    @SuppressWarnings("unchecked")
+    public Matchmaker(Server server) {
+        this.server = server;
+        this.buckets = new ArrayDeque[Room.MAX_PLAYERS];
+        for (int i = 0; i < this.buckets.length; i++) {
+            this.buckets[i] = new ArrayDeque<>();
+        }
+    }
+
+    /**
+     * Queues a player to be placed in a quickplay room on the next tick.
+     * @param player the player to place
+     */
+    public void enqueue(Player player) {
+        this.pendingPlayers.add(player);
+    }
+
+    /**
+     * Tells the matchmaker that a quickplay room has a free slot again.
+     * @param room the room with the freed slot
+     */
+    public void onSlotFreed(Room room) {
+        if (room.isQuickplay())
+            this.freedRooms.add(room);
+    }
+
+    /**
+     * Returns the amount of players waiting for a quickplay room.
+     */
+    public int getPendingCount() {
+        return this.pendingPlayers.size();
+    }
+
+    /**
+     * Files freed rooms and places all waiting players.
+     */
+    public void tick() {
+        Room freed;
+        while ((freed = this.freedRooms.poll()) != null) {
+            this.file(freed);
+        }
+
+        Player player;
+        Room room = null;
+        while ((player = this.pendingPlayers.poll()) != null) {
+            if (!player.isConnected())
+                continue;
+
+            room = this.reserveSlot(room);
+            if (room == null) {
+                player.sendJoinError(MessageConstants.ERROR_ROOM_ID_GENERATION_FAILED);
+                SnakeFever.LOGGER.error("Room ID generation failed for Player: " + player.getName());
+                continue;
+            }
+
+            player.joinRoom(room);
+        }
+
+        // the last room may still have free slots
+        if (room != null)
+            this.file(room);
+    }
+
+    /**
+     * Reserves a slot for one player, in the current room if it has space left, otherwise in the fullest open room.
+     * @param current the room the last player was placed in, may be null
+     * @return the room with the reserved slot or null, if no new room could be created.
+     */
+    private Room reserveSlot(Room current) {
+        // keep filling the same room until it is full
+        if (current != null && current.tryReserveSlot())
+            return current;
+
+        Room room;
+        while ((room = this.takeFullestRoom()) != null) {
+            if (room.tryReserveSlot())
+                return room;
+        }
+
+        room = this.server.createRoom(true);
+        if (room != null && room.tryReserveSlot())
+            return room;
+
+        return null;
+    }
+
+    /**
+     * Files a room in the bucket matching its reserved slots.
+     */
+    private void file(Room room) {
+        // a freed room may have finished and been recycled as a private room since
+        int reserved = room.getReservedSlots();
+        if (!room.isQuickplay() || reserved < 0 || reserved >= Room.MAX_PLAYERS || reserved == room.getMatchmakingBucket())
+            return;
+
+        room.setMatchmakingBucket(reserved);
+        this.buckets[reserved].add(room);
+    }
+
+    /**
+     * Removes the fullest open room from the index.
+     * @return the room or null, if there is no open quickplay room.
+     */
+    private Room takeFullestRoom() {
+        for (int bucket = this.buckets.length - 1; bucket >= 0; bucket--) {
+            Room room;
+            while ((room = this.buckets[bucket].poll()) != null) {
+                // skip stale entries, the room was filed in another bucket since
+                if (room.getMatchmakingBucket() != bucket)
+                    continue;
+
+                room.setMatchmakingBucket(Room.NOT_MATCHMAKING);
+
+                // the fill level may have changed through direct joins or leaves
+                int reserved = room.getReservedSlots();
+                if (reserved == bucket)
+                    return room;
+                this.file(room);
+            }
+        }
+
+        return null;
+    }
+}
@@ -1,18 +1,44 @@
 package de.backend.snakefever;
 
+import java.nio.ByteBuffer;
+import java.security.SecureRandom;
+
+import de.backend.snakefever.cluster.Cluster;
+import de.backend.snakefever.cluster.NodeSummary;
 import de.backend.snakefever.game.IngamePlayer;
+import de.backend.snakefever.limits.InboundLimiter;
+import de.backend.snakefever.messageConstants.MessageCodec;
 import de.backend.snakefever.messageConstants.MessageConstants;
 import io.socket.socketio.server.SocketIoSocket;
 
 public class Player {
+    // generates the resume secrets, they must not be guessable
+    private static final SecureRandom RESUME_SECRETS = new SecureRandom();
+
     private final SocketIoSocket socket;
     private final Server server;
-    private Room room;
+    // the messages waiting to be written to the socket
+    private final PlayerOutbox outbox;
+    // changed by the socket thread and the matchmaker, guarded by this player
+    private volatile Room room;
+    // the spectators of the watched room, guarded by this player like the room
+    private volatile SpectatorGroup spectating;
 
-    private final IngamePlayer ingamePlayer = new IngamePlayer();
+    // the snake in the current room, new for every room joined, so no inputs or sequence numbers
+    // are carried over and only the ticking thread of one room drains its input buffer
+    private volatile IngamePlayer ingamePlayer = new IngamePlayer();
 
     private String name;
 
+    // false after the socket disconnected
+    private volatile boolean connected = true;
+
+    // the last room state snapshot the client acknowledged, its epoch in the high and its sequence in the low bits, -1 if none
+    private volatile long ackedSnapshot = -1;
+
+    // proves the client's place in its room after a restart, new for every room joined
+    private volatile long resumeSecret;
+
     /**
      * Player class, handling all player related things.
      * @param socket the socket io socket assigned to this player.
@@ -21,24 +47,75 @@ public class Player {
         this.socket = socket;
         this.server = server;
         this.name = socket.getId();
+        this.outbox = new PlayerOutbox(socket, server.getOutboundExecutor(),
+            server.getSocketLimits().getMaxQueuedMessages(), server.getSocketLimits().getMaxUnsentFrames(), server.getMessageMetrics());
 
         this.registerListeners();
     }
 
+    /**
+     * Creates a player without a socket, everything sent to it is dropped.
+     */
+    private Player(String name, Room room) {
+        this.socket = null;
+        this.server = null;
+        this.name = name;
+        this.outbox = PlayerOutbox.closed();
+        this.room = room;
+    }
+
+    /**
+     * Creates a player without a socket or server, e.g. to replay a recorded room. It is in the given
+     * room, but it is not added to it and it must never join or leave another room.
+     * @param name the name of the player
+     * @param room the room the player is in
+     */
+    public static Player headless(String name, Room room) {
+        return new Player(name, room);
+    }
+
     private void registerListeners() {
-        socket.on(MessageConstants.EVENT_ROOM_CREATE_REQUEST, args -> onCreateRoomRequest(args));
-        socket.on(MessageConstants.EVENT_ROOM_JOIN_REQUEST, args -> onRoomJoinRequest(args));
-        socket.on(MessageConstants.EVENT_PLAYER_SET_NAME_REQUEST, args -> onPlayerNameSetRequest(args));
-        socket.on(MessageConstants.EVENT_ROOM_LEAVE_REQUEST, args -> onRoomLeaveRequest(args));
+        // count every received event, known or not
+        socket.registerAllEventListener((event, args) -> this.server.getMessageMetrics().onReceived(event, args));
+
+        // events over their budget are dropped before they reach the handlers
+        InboundLimiter limiter = new InboundLimiter(this.server.getSocketLimits(), this::onEventDropped);
+
+        socket.on(MessageConstants.EVENT_ROOM_CREATE_REQUEST,
+            limiter.limit(MessageConstants.EVENT_ROOM_CREATE_REQUEST, args -> onCreateRoomRequest(args)));
+        socket.on(MessageConstants.EVENT_ROOM_JOIN_REQUEST,
+            limiter.limit(MessageConstants.EVENT_ROOM_JOIN_REQUEST, args -> onRoomJoinRequest(args)));
+        socket.on(MessageConstants.EVENT_PLAYER_SET_NAME_REQUEST,
+            limiter.limit(MessageConstants.EVENT_PLAYER_SET_NAME_REQUEST, args -> onPlayerNameSetRequest(args)));
+        socket.on(MessageConstants.EVENT_ROOM_SPECTATE_REQUEST,
+            limiter.limit(MessageConstants.EVENT_ROOM_SPECTATE_REQUEST, args -> onRoomSpectateRequest(args)));
+        socket.on(MessageConstants.EVENT_ROOM_LEAVE_REQUEST,
+            limiter.limit(MessageConstants.EVENT_ROOM_LEAVE_REQUEST, args -> onRoomLeaveRequest(args)));
         socket.on(MessageConstants.SERVERSIDE_EVENT_DISCONNECT, args -> onDisconnect(args));
-        socket.on(MessageConstants.EVENT_PLAYER_INPUT_REQUEST, args -> ingamePlayer.onPlayerInput(args));
+        socket.on(MessageConstants.EVENT_PLAYER_INPUT_REQUEST,
+            limiter.limit(MessageConstants.EVENT_PLAYER_INPUT_REQUEST, args -> onPlayerInputRequest(args)));
+        socket.on(MessageConstants.EVENT_ROOM_STATE_ACK_REQUEST,
+            limiter.limit(MessageConstants.EVENT_ROOM_STATE_ACK_REQUEST, args -> onRoomStateAckRequest(args)));
+        socket.on(MessageConstants.EVENT_ROOM_LIST_REQUEST,
+            limiter.limit(MessageConstants.EVENT_ROOM_LIST_REQUEST, args -> onRoomListRequest(args)));
+        socket.on(MessageConstants.EVENT_ROOM_RESUME_REQUEST,
+            limiter.limit(MessageConstants.EVENT_ROOM_RESUME_REQUEST, args -> onRoomResumeRequest(args)));
+    }
+
+    private void onEventDropped(String event, boolean report) {
+        this.server.getMessageMetrics().onRateLimited(event);
+        // answering every dropped event would flood the outbox instead
+        if (report) {
+            SnakeFever.LOGGER.warn("Player " + this.getName() + " exceeded the rate limit of " + event + ".");
+            this.send(MessageConstants.EVENT_ERROR_RESPONSE, MessageConstants.ERROR_RATE_LIMITED);
+        }
     }
 
     private void onCreateRoomRequest(Object... args) {
         Room room = this.getServer().createRoom(false);
         // tell the player, if the room id generation was not successfull
-        if (room == null) {
-            this.socket.emit(MessageConstants.EVENT_ROOM_JOIN_RESPONSE, MessageConstants.ERROR_ROOM_ID_GENERATION_FAILED);
+        if (room == null || !room.tryReserveSlot()) {
+            this.sendJoinError(MessageConstants.ERROR_ROOM_ID_GENERATION_FAILED);
             SnakeFever.LOGGER.error("Room ID generation failed for Player: " + this.getName());
         } else {
             this.joinRoom(room);
@@ -47,48 +124,231 @@ public class Player {
 
     private void onRoomJoinRequest(Object... args) {
         if (args[0] instanceof String) {
-            // tell the player if the room id is valid
-            this.socket.emit(MessageConstants.EVENT_ROOM_JOIN_RESPONSE, this.joinRoom(((String)args[0]).toLowerCase()));
+            // tell the player if the room id is invalid, a successful join is answered by the join itself
+            String error = this.joinRoom(((String)args[0]).toLowerCase());
+            if (error != null)
+                this.sendJoinError(error);
         } else {
             SnakeFever.LOGGER.error("Player " + this.getName() + " tried to join room with non string room id argument.");
-            this.socket.emit(MessageConstants.EVENT_ERROR_RESPONSE, MessageConstants.ERROR_INVALID_DATA);
+            this.send(MessageConstants.EVENT_ERROR_RESPONSE, MessageConstants.ERROR_INVALID_DATA);
         }
     }
 
+    private void onRoomSpectateRequest(Object... args) {
+        int feed = args.length > 1 && args[1] instanceof Number ? ((Number) args[1]).intValue() : MessageConstants.SPECTATE_FEED_LIVE;
+        if (!(args[0] instanceof String) || (feed != MessageConstants.SPECTATE_FEED_LIVE && feed != MessageConstants.SPECTATE_FEED_DELAYED)) {
+            SnakeFever.LOGGER.error("Player " + this.getName() + " tried to spectate a room with invalid arguments.");
+            this.send(MessageConstants.EVENT_ERROR_RESPONSE, MessageConstants.ERROR_INVALID_DATA);
+            return;
+        }
+
+        String roomId = ((String) args[0]).toLowerCase();
+        if (this.server.getCluster().isRemote(roomId)) {
+            // a redirect is the answer, unless the owner is down
+            String error = this.redirect(MessageConstants.EVENT_ROOM_SPECTATE_REQUEST, roomId, roomId);
+            if (error != null)
+                this.send(MessageConstants.EVENT_ROOM_SPECTATE_RESPONSE, error);
+            return;
+        }
+
+        String error = this.spectateRoom(roomId, feed);
+        this.send(MessageConstants.EVENT_ROOM_SPECTATE_RESPONSE, error != null ? error : roomId);
+    }
+
     private void onPlayerNameSetRequest(Object... args) {
         if (args[0] instanceof String) {
             String name = (String) args[0];
             // max 16 char name
             name = name.length() > 16 ? name.substring(0, 16) : name;
 
-            this.socket.emit(MessageConstants.EVENT_PLAYER_SET_NAME_RESPONSE, name);
+            if (!this.server.renamePlayer(this, name)) {
+                this.send(MessageConstants.EVENT_PLAYER_SET_NAME_RESPONSE, MessageConstants.ERROR_PLAYER_NAME_TAKEN);
+                return;
+            }
+
+            this.send(MessageConstants.EVENT_PLAYER_SET_NAME_RESPONSE, name);
             SnakeFever.LOGGER.info("Player " + this.getName() + " changed name to: " + name);
             this.name = name;
         } else {
             SnakeFever.LOGGER.error("Tried to set player name with non string name argument.");
-            this.socket.emit(MessageConstants.EVENT_ERROR_RESPONSE, MessageConstants.ERROR_INVALID_DATA);
+            this.send(MessageConstants.EVENT_ERROR_RESPONSE, MessageConstants.ERROR_INVALID_DATA);
         }
     }
 
+    private void onPlayerInputRequest(Object... args) {
+        if (!this.ingamePlayer.onPlayerInput(args)) {
+            SnakeFever.LOGGER.error("Player " + this.getName() + " sent invalid input.");
+            this.send(MessageConstants.EVENT_ERROR_RESPONSE, MessageConstants.ERROR_INVALID_DATA);
+        }
+    }
+
+    private void onRoomStateAckRequest(Object... args) {
+        int sequence;
+        int epoch;
+        MessageCodec.RoomStateAck ack = new MessageCodec.RoomStateAck();
+
+        if (args.length > 0 && args[0] instanceof byte[] && ack.decode(ByteBuffer.wrap((byte[]) args[0]))) {
+            sequence = ack.sequence;
+            epoch = ack.epoch;
+        } else if (args.length > 1 && args[0] instanceof Number && args[1] instanceof Number) {
+            sequence = ((Number) args[0]).intValue();
+            epoch = ((Number) args[1]).intValue();
+        } else {
+            SnakeFever.LOGGER.error("Player " + this.getName() + " sent invalid state ack.");
+            this.send(MessageConstants.EVENT_ERROR_RESPONSE, MessageConstants.ERROR_INVALID_DATA);
+            return;
+        }
+
+        // acks of the previous room can still arrive after a join, their sequences mean nothing here
+        Room room = this.room;
+        if (room == null || sequence < 0 || epoch != room.getSnapshotEpoch())
+            return;
+
+        // acks can arrive out of order, only move forward within the epoch
+        long acked = this.ackedSnapshot;
+        if ((int) (acked >>> 32) != epoch || sequence > (int) acked)
+            this.ackedSnapshot = (long) epoch << 32 | (sequence & 0xFFFFFFFFL);
+    }
+
+    private void onRoomListRequest(Object... args) {
+        if (args.length < 2 || !(args[0] instanceof Number) || !(args[1] instanceof Number)) {
+            SnakeFever.LOGGER.error("Player " + this.getName() + " requested the room list with non number arguments.");
+            this.send(MessageConstants.EVENT_ERROR_RESPONSE, MessageConstants.ERROR_INVALID_DATA);
+            return;
+        }
+
+        // the encoded list is shared by all players asking for the same version
+        byte[] list = this.server.getRoomDirectory().list(((Number) args[0]).intValue(), ((Number) args[1]).intValue());
+        this.send(MessageConstants.EVENT_ROOM_LIST_RESPONSE, (Object) list);
+    }
+
+    private void onRoomResumeRequest(Object... args) {
+        String token = args.length > 0 && args[0] instanceof String ? ((String) args[0]).toLowerCase() : "";
+        int separator = token.lastIndexOf('-');
+        long secret;
+        try {
+            if (separator < 0)
+                throw new NumberFormatException();
+            secret = Long.parseUnsignedLong(token.substring(separator + 1), 16);
+        } catch (NumberFormatException e) {
+            SnakeFever.LOGGER.error("Player " + this.getName() + " tried to resume a room with an invalid token.");
+            this.send(MessageConstants.EVENT_ERROR_RESPONSE, MessageConstants.ERROR_INVALID_DATA);
+            return;
+        }
+
+        String roomId = token.substring(0, separator);
+        if (this.server.getCluster().isRemote(roomId)) {
+            String error = this.redirect(MessageConstants.EVENT_ROOM_RESUME_REQUEST, roomId, token);
+            if (error != null)
+                this.sendJoinError(error);
+            return;
+        }
+
+        Room room = this.server.getRoom(roomId);
+        Player placeholder = room != null ? room.claimResume(secret) : null;
+        if (placeholder == null) {
+            this.sendJoinError(MessageConstants.ERROR_ROOM_INVALID_ID);
+            return;
+        }
+
+        this.resumeRoom(room, placeholder);
+    }
+
     private void onRoomLeaveRequest(Object... args) {
-        socket.emit(MessageConstants.EVENT_ROOM_LEAVE_RESPONSE, this.leaveRoom());
+        this.send(MessageConstants.EVENT_ROOM_LEAVE_RESPONSE, this.leaveRoom());
     }
 
     private void onDisconnect(Object... args) {
+        synchronized (this) {
+            this.connected = false;
+        }
+        this.outbox.close();
         this.server.removePlayer(this);
     }
 
+    /**
+     * Queues an event for the player, it is written and counted in the message metrics by a sender thread.
+     * @param event the event name from {@link MessageConstants}
+     * @param args the arguments of the event
+     */
+    public void send(String event, Object... args) {
+        this.outbox.send(event, args);
+    }
+
+    /**
+     * Queues a room frame for the player, replacing the previous frame if it was not written yet.
+     * @param frame the encoded {@link MessageCodec.RoomFrame}
+     * @see MessageConstants#EVENT_ROOM_FRAME_BROADCAST
+     */
+    public void sendFrame(byte[] frame) {
+        this.outbox.sendFrame(frame);
+    }
+
+    /**
+     * Tells the player that joining a room failed.
+     * @param error the error starting with ERROR_ROOM
+     */
+    public void sendJoinError(String error) {
+        this.send(MessageConstants.EVENT_ROOM_JOIN_RESPONSE, error);
+    }
+
+    /**
+     * Returns false once the player's socket disconnected.
+     */
+    public boolean isConnected() {
+        return this.connected;
+    }
+
     public String getName() {
-        return this.name + "#" + this.socket.getId();
+        return this.name + "#" + (this.socket != null ? this.socket.getId() : "headless");
     }
 
     /**
-     * Updates the player position, etc.
+     * Returns the name chosen by the player, without the socket id.
      */
-    public void tick() {
-        if (this.ingamePlayer != null && this.isIngame()) {
-            this.ingamePlayer.tick();
-        }
+    public String getRawName() {
+        return this.name;
+    }
+
+    /**
+     * Returns the snake of the player in the room it joined last, replaced on every join or resume.
+     */
+    public IngamePlayer getIngamePlayer() {
+        return this.ingamePlayer;
+    }
+
+    /**
+     * Returns the secret of the resume token of the current room.
+     */
+    public long getResumeSecret() {
+        return this.resumeSecret;
+    }
+
+    /**
+     * Sets the resume secret of a restored placeholder.
+     */
+    void setResumeSecret(long resumeSecret) {
+        this.resumeSecret = resumeSecret;
+    }
+
+    /**
+     * Returns the token the client can resume its place in the current room with after a restart.
+     * @return null if the player is in no room.
+     * @see MessageConstants#EVENT_ROOM_RESUME_REQUEST
+     */
+    public String getResumeToken() {
+        Room room = this.room;
+        return room != null ? room.getId() + "-" + String.format("%016x", this.resumeSecret) : null;
+    }
+
+    /**
+     * Returns the last room state snapshot acknowledged by the client.
+     * @param epoch the current epoch of the snapshots of the room, see {@link Room#getSnapshotEpoch()}
+     * @return -1 if the client did not acknowledge a snapshot of the epoch.
+     */
+    public int getAckedSnapshot(int epoch) {
+        long acked = this.ackedSnapshot;
+        return (int) (acked >>> 32) == epoch ? (int) acked : -1;
     }
 
     public Server getServer() {
@@ -108,24 +368,65 @@ public class Player {
     }
 
     /**
-     * Adds the player to an existing room.
-     * @param roomId the room id as a string.
-     * @returns String if the join was success (room id) or not (room full, invalid id)
+     * Adds the player to an existing room or an arena, or queues the player for a quickplay room.<p>
+     * A successful join is answered with {@link MessageConstants#EVENT_ROOM_JOIN_RESPONSE} by {@link #joinRoom(Room)}.
+     * A room of another node of the cluster is answered with {@link MessageConstants#EVENT_ROOM_REDIRECT_RESPONSE}.
+     * @param roomId the room id as a string, {@link MessageConstants#ROOM_QUICKPLAY} or {@link MessageConstants#ROOM_ARENA}.
+     * @return null if the join was successful, is pending or was redirected, otherwise the error (room full, invalid id).
      */
     public String joinRoom(String roomId) {
-        Room room = roomId.equals(MessageConstants.ROOM_QUICKPLAY) ? this.getServer().findQuickPlayRoom() : this.getServer().getRoomMap().get(roomId);
-        
+        if (roomId.equals(MessageConstants.ROOM_QUICKPLAY)) {
+            this.getServer().getMatchmaker().enqueue(this);
+            return null;
+        }
+
+        if (roomId.equals(MessageConstants.ROOM_ARENA)) {
+            Room arena = this.getServer().reserveArenaSlot();
+            if (arena == null)
+                return MessageConstants.ERROR_ROOM_ID_GENERATION_FAILED;
+
+            this.joinRoom(arena);
+            return null;
+        }
+
+        if (this.server.getCluster().isRemote(roomId))
+            return this.redirect(MessageConstants.EVENT_ROOM_JOIN_REQUEST, roomId, roomId);
+
+        Room room = this.getServer().getRoom(roomId);
+
         // check if the room exists
         if (room == null) {
             return MessageConstants.ERROR_ROOM_INVALID_ID;
-        } else if (room.isFull()) {
-            return MessageConstants.ERROR_ROOM_FULL;
+        } else if (!room.tryReserveSlot()) {
+            return room.getLifecycle() == Room.Lifecycle.FINISHED ? MessageConstants.ERROR_ROOM_INVALID_ID : MessageConstants.ERROR_ROOM_FULL;
+        } else if (!room.getId().equals(roomId)) {
+            // the room finished and was recycled with another id since it was looked up
+            room.releaseSlot();
+            this.server.getMatchmaker().onSlotFreed(room);
+            return MessageConstants.ERROR_ROOM_INVALID_ID;
         }
 
         // then join it
         this.joinRoom(room);
 
-        return room.getId();
+        return null;
+    }
+
+    /**
+     * Tells the player to send a request again to the node owning the room.
+     * @param request the redirected request event
+     * @param roomId the id of a room owned by another node
+     * @param argument the argument of the request, the room id or a resume token
+     * @return null if the player was redirected, otherwise the error if the node is down.
+     */
+    private String redirect(String request, String roomId, String argument) {
+        Cluster cluster = this.server.getCluster();
+        NodeSummary owner = cluster.getSummary(cluster.getNodeOf(roomId));
+        if (owner == null || owner.getUrl() == null)
+            return MessageConstants.ERROR_ROOM_INVALID_ID;
+
+        this.send(MessageConstants.EVENT_ROOM_REDIRECT_RESPONSE, request, argument, owner.getUrl());
+        return null;
     }
 
     /**
@@ -136,26 +437,140 @@ public class Player {
     }
 
     /**
-     * Adds the player to an existing room.
-     * @param room the room as an object.
+     * Adds the player to an existing room, leaving the current one.<p>
+     * The room applies the join on its next tick. If the player already disconnected, the reserved slot is freed again.
+     * @param room the room as an object, a slot must already be reserved for the player.
      */
-    public void joinRoom(Room room) {
+    public synchronized void joinRoom(Room room) {
+        if (!this.connected) {
+            room.releaseSlot();
+            this.server.getMatchmaker().onSlotFreed(room);
+            return;
+        }
+
+        this.leaveRoom();
+
+        // snapshots and frames of the old room are useless in the new one
+        this.ackedSnapshot = -1;
+        this.outbox.discardFrame();
+        this.resumeSecret = RESUME_SECRETS.nextLong();
+        this.ingamePlayer = new IngamePlayer();
         this.room = room;
         this.room.addPlayer(this);
+        // an idle room ticks slowly, the join should not wait for it
+        this.server.getShard(room.getId()).wakeRoom(room);
+
+        this.socket.joinRoom(room.getId());
+        this.send(MessageConstants.EVENT_ROOM_JOIN_RESPONSE, this.room.getId(), this.getResumeToken());
+    }
+
+    /**
+     * Takes over the snake of a restored player, leaving the current room.<p>
+     * The room applies the resume on its next tick. If the player already disconnected, the placeholder is removed.
+     * @param room the restored room
+     * @param placeholder the placeholder claimed with {@link Room#claimResume(long)}
+     */
+    public synchronized void resumeRoom(Room room, Player placeholder) {
+        if (!this.connected) {
+            room.removePlayer(placeholder);
+            this.server.getMatchmaker().onSlotFreed(room);
+            return;
+        }
+
+        this.leaveRoom();
+
+        this.ackedSnapshot = -1;
+        this.outbox.discardFrame();
+        this.resumeSecret = RESUME_SECRETS.nextLong();
+        this.ingamePlayer = new IngamePlayer();
+        this.room = room;
+        this.room.resumePlayer(this, placeholder);
+        this.server.getShard(room.getId()).wakeRoom(room);
+        this.server.onPlayerResumed();
 
         this.socket.joinRoom(room.getId());
-        this.socket.emit(MessageConstants.EVENT_ROOM_JOIN_RESPONSE, this.room.getId());
+        this.send(MessageConstants.EVENT_ROOM_JOIN_RESPONSE, this.room.getId(), this.getResumeToken());
     }
 
     /**
-     * Leave the current room.
+     * Watches a room without taking a slot in it, leaving the current room once the watched room took
+     * the player. If the room can't be watched, the player stays where it was. Watching the same room
+     * again only changes the feed.
+     * @param roomId the id of the room
+     * @param feed {@link MessageConstants#SPECTATE_FEED_LIVE} or {@link MessageConstants#SPECTATE_FEED_DELAYED}
+     * @return null if the player watches the room, otherwise the error (room full, invalid id).
+     */
+    public synchronized String spectateRoom(String roomId, int feed) {
+        Room room = this.server.getRoom(roomId);
+        if (room == null || !this.connected)
+            return MessageConstants.ERROR_ROOM_INVALID_ID;
+
+        SpectatorGroup spectators = room.getSpectators();
+        if (spectators == this.spectating) {
+            // frames of the other feed would mix up the time of the watched room
+            this.outbox.discardFrame();
+            if (spectators.setFeed(this, feed) && room.getId().equals(roomId))
+                return null;
+
+            // the room finished since the player started watching it
+            this.leaveRoom();
+            return MessageConstants.ERROR_ROOM_INVALID_ID;
+        }
+
+        if (!spectators.add(this, feed)) {
+            return room.getLifecycle() == Room.Lifecycle.FINISHED ? MessageConstants.ERROR_ROOM_INVALID_ID : MessageConstants.ERROR_ROOM_FULL;
+        } else if (!room.getId().equals(roomId)) {
+            // the room finished and was recycled with another id since it was looked up
+            spectators.remove(this);
+            return MessageConstants.ERROR_ROOM_INVALID_ID;
+        }
+
+        // only left once the new room is certain
+        this.leaveRoom();
+
+        // frames of the old room are useless in the watched one
+        this.ackedSnapshot = -1;
+        this.outbox.discardFrame();
+        this.spectating = spectators;
+        return null;
+    }
+
+    /**
+     * Called when the room the player watches finished, on the thread ticking the room.
+     * @param spectators the spectators of the finished room
+     */
+    synchronized void onSpectatedRoomClosed(SpectatorGroup spectators) {
+        // the player may already watch another room
+        if (this.spectating != spectators)
+            return;
+
+        this.spectating = null;
+        this.send(MessageConstants.EVENT_ROOM_SPECTATE_RESPONSE, MessageConstants.ERROR_ROOM_INVALID_ID);
+    }
+
+    /**
+     * Returns true if the player watches a room.
+     */
+    public boolean isSpectating() {
+        return this.spectating != null;
+    }
+
+    /**
+     * Leave the current room, as a player or as a spectator.
      * @return true if the leave was success, false if the player is in no room
      */
-    public boolean leaveRoom() {
+    public synchronized boolean leaveRoom() {
         this.socket.leaveAllRooms();
 
+        if (this.spectating != null) {
+            this.spectating.remove(this);
+            this.spectating = null;
+            return true;
+        }
+
         if (this.room != null) {
             this.room.removePlayer(this);
+            this.server.getMatchmaker().onSlotFreed(this.room);
             this.room = null;
             return true;
         }
@@ -0,0 +1,99 @@
+package de.backend.snakefever;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Thread safe directory of all connected players, indexed by socket id and by name.<p>
+ * Every name can only be taken by one player at a time, the name index is what makes a name taken.
+ */
+public final class PlayerDirectory {
+    // all players with their socket id as key
+    private final ConcurrentHashMap<String, Player> bySocketId = new ConcurrentHashMap<>();
+    // all players with their name as key
+    private final ConcurrentHashMap<String, Player> byName = new ConcurrentHashMap<>();
+
+    /**
+     * Adds a player with its current name.
+     * @param player the player to add
+     * @return false if the socket id or the name is already registered
+     */
+    public boolean register(Player player) {
+        if (this.bySocketId.putIfAbsent(player.getSocket().getId(), player) != null)
+            return false;
+
+        if (this.byName.putIfAbsent(player.getRawName(), player) != null) {
+            this.bySocketId.remove(player.getSocket().getId(), player);
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Moves a player to a new name.
+     * @param player the registered player
+     * @param newName the new name
+     * @return true if the name now belongs to the player, false if another player already has it.
+     */
+    public boolean rename(Player player, String newName) {
+        Player owner = this.byName.putIfAbsent(newName, player);
+        if (owner != null && owner != player)
+            return false;
+
+        String oldName = player.getRawName();
+        if (!oldName.equals(newName))
+            this.byName.remove(oldName, player);
+
+        return true;
+    }
+
+    /**
+     * Removes a player.
+     * @param player the player to remove
+     * @return true if the player was registered
+     */
+    public boolean remove(Player player) {
+        this.byName.remove(player.getRawName(), player);
+        return this.bySocketId.remove(player.getSocket().getId(), player);
+    }
+
+    /**
+     * Returns the player with the given socket id.
+     * @return null, if there is no such player.
+     */
+    public Player getBySocketId(String socketId) {
+        return this.bySocketId.get(socketId);
+    }
+
+    /**
+     * Returns the player with the given name.
+     * @return null, if there is no such player.
+     */
+    public Player getByName(String name) {
+        return this.byName.get(name);
+    }
+
+    /**
+     * Checks if a player with the given name exists.
+     */
+    public boolean isNameTaken(String name) {
+        return this.byName.containsKey(name);
+    }
+
+    /**
+     * Returns a live, read only view of all players.<p>
+     * Iterating it never blocks and never throws a ConcurrentModificationException.
+     */
+    public Collection<Player> getPlayers() {
+        return Collections.unmodifiableCollection(this.bySocketId.values());
+    }
+
+    /**
+     * Returns the amount of connected players.
+     */
+    public int size() {
+        return this.bySocketId.size();
+    }
+}
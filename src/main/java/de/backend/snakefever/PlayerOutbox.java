@@ -0,0 +1,307 @@
+package de.backend.snakefever;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import de.backend.snakefever.messageConstants.MessageCodec;
+import de.backend.snakefever.messageConstants.MessageConstants;
+import de.backend.snakefever.metrics.MessageMetrics;
+import io.socket.socketio.server.SocketIoSocket;
+
+/**
+ * The bounded queue of messages waiting to be written to one player's socket.<p>
+ * A web socket write waits until the client took the data, so the messages are written by a sender
+ * thread and a slow client never stalls the tick or the socket threads. Only one sender writes to a
+ * socket at a time, in the order the messages were queued. A write that the client does not take
+ * within the write timeout drops the web socket, so a sender is never held for longer.<p>
+ * Room frames are not queued: a frame that is still waiting when the next one arrives is replaced by
+ * it. The state of the newer frame is complete on its own, only the events of the replaced frame are
+ * carried over. A socket whose frames keep being replaced for more ticks than allowed is stuck and
+ * disconnected. Other messages are few, a socket with more of them waiting than allowed is
+ * disconnected.
+ */
+final class PlayerOutbox {
+    private final SocketIoSocket socket;
+    private final Executor sender;
+    private final int maxQueuedMessages;
+    private final int maxUnsentFrames;
+    private final MessageMetrics messageMetrics;
+
+    // the messages waiting to be sent, without the frame
+    private final Queue<Object[]> messages = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queuedMessages = new AtomicInteger();
+    // the newest room frame, null if it was sent
+    private final AtomicReference<byte[]> frame = new AtomicReference<>();
+    // the frames replaced since the last frame was sent
+    private final AtomicInteger unsentFrames = new AtomicInteger();
+
+    // true while a sender is draining the outbox
+    private final AtomicBoolean draining = new AtomicBoolean();
+    private volatile boolean closed;
+
+    /**
+     * Creates an outbox.
+     * @param socket the socket to write to
+     * @param sender runs the writes
+     * @param maxQueuedMessages the amount of waiting messages that disconnects the socket
+     * @param maxUnsentFrames the amount of frames replaced before one was sent that disconnects the socket
+     * @param messageMetrics counts the sent messages
+     */
+    PlayerOutbox(SocketIoSocket socket, Executor sender, int maxQueuedMessages, int maxUnsentFrames, MessageMetrics messageMetrics) {
+        this.socket = socket;
+        this.sender = sender;
+        this.maxQueuedMessages = maxQueuedMessages;
+        this.maxUnsentFrames = maxUnsentFrames;
+        this.messageMetrics = messageMetrics;
+    }
+
+    /**
+     * Returns an outbox that drops everything, for a player without a socket.
+     */
+    static PlayerOutbox closed() {
+        PlayerOutbox outbox = new PlayerOutbox(null, null, 0, 0, null);
+        outbox.close();
+        return outbox;
+    }
+
+    /**
+     * Queues a message, can be called from any thread.
+     */
+    void send(String event, Object[] args) {
+        if (this.closed)
+            return;
+
+        if (this.queuedMessages.incrementAndGet() > this.maxQueuedMessages) {
+            this.queuedMessages.decrementAndGet();
+            this.disconnectSlowConsumer();
+            return;
+        }
+
+        // the event is stored in front of its arguments
+        Object[] message = new Object[args.length + 1];
+        message[0] = event;
+        System.arraycopy(args, 0, message, 1, args.length);
+        this.messages.add(message);
+        this.schedule();
+    }
+
+    /**
+     * Queues a room frame, replacing the frame that was not sent yet.
+     */
+    void sendFrame(byte[] frame) {
+        if (this.closed)
+            return;
+
+        byte[] waiting;
+        byte[] next;
+        do {
+            waiting = this.frame.get();
+            next = waiting == null ? frame : mergeFrames(waiting, frame);
+        } while (!this.frame.compareAndSet(waiting, next));
+
+        if (waiting != null) {
+            this.messageMetrics.onFrameConflated();
+            if (this.unsentFrames.incrementAndGet() > this.maxUnsentFrames) {
+                this.disconnectSlowConsumer();
+                return;
+            }
+        }
+        this.schedule();
+    }
+
+    /**
+     * Drops the frame that was not sent yet, e.g. because it belongs to a room the player left.
+     */
+    void discardFrame() {
+        this.frame.set(null);
+        this.unsentFrames.set(0);
+    }
+
+    /**
+     * Drops everything waiting and stops accepting messages, once the socket disconnected.
+     */
+    void close() {
+        this.closed = true;
+        this.messages.clear();
+        this.frame.set(null);
+    }
+
+    private void schedule() {
+        if (this.draining.compareAndSet(false, true))
+            this.sender.execute(this::drain);
+    }
+
+    private void drain() {
+        do {
+            Object[] message;
+            while ((message = this.messages.poll()) != null) {
+                this.queuedMessages.decrementAndGet();
+                this.write((String) message[0], Arrays.copyOfRange(message, 1, message.length));
+            }
+
+            byte[] frame = this.frame.getAndSet(null);
+            if (frame != null) {
+                this.write(MessageConstants.EVENT_ROOM_FRAME_BROADCAST, new Object[] { frame });
+                this.unsentFrames.set(0);
+            }
+
+            this.draining.set(false);
+            // something queued after the last poll but before draining was reset would be stuck otherwise
+        } while ((!this.messages.isEmpty() || this.frame.get() != null) && this.draining.compareAndSet(false, true));
+    }
+
+    private void write(String event, Object[] args) {
+        if (this.closed)
+            return;
+
+        try {
+            this.socket.send(event, args);
+            this.messageMetrics.onSent(event, args);
+        } catch (RuntimeException e) {
+            // the socket closed, the disconnect removes the player
+            SnakeFever.LOGGER.debug("Sending " + event + " to socket " + this.socket.getId() + " failed: " + e.getMessage());
+        }
+    }
+
+    private void disconnectSlowConsumer() {
+        synchronized (this) {
+            if (this.closed)
+                return;
+            this.close();
+        }
+
+        this.messageMetrics.onSlowConsumerDisconnect();
+        SnakeFever.LOGGER.warn("Disconnecting socket " + this.socket.getId() + ", it does not keep up with its messages.");
+        // the disconnect writes to the socket and must not block the calling thread
+        this.sender.execute(() -> this.socket.disconnect(true));
+    }
+
+    /**
+     * Returns the newer frame with the events of the older frame merged into it. The events the newer
+     * frame replaces are dropped, the others are kept in front of the newer events:
+     * <ul>
+     * <li>the room state, the newer state is based on a snapshot the client acknowledged as well</li>
+     * <li>the arena view and snakes, every frame has all snakes in the view and a view that moved</li>
+     * <li>the arena cells of a bucket the newer frame sends again or that is outside of the newest view</li>
+     * </ul>
+     * So an arena frame that keeps being replaced grows to at most the buckets of one view.
+     */
+    static byte[] mergeFrames(byte[] older, byte[] newer) {
+        MessageCodec.RoomFrame olderFrame = new MessageCodec.RoomFrame();
+        MessageCodec.RoomFrame newerFrame = new MessageCodec.RoomFrame();
+        if (!olderFrame.decode(ByteBuffer.wrap(older)) || !newerFrame.decode(ByteBuffer.wrap(newer)))
+            return newer;
+
+        ByteBuffer olderEvents = olderFrame.events;
+        ByteBuffer newerEvents = newerFrame.events;
+        ByteBuffer merged = ByteBuffer.allocate(newer.length + olderEvents.remaining());
+        merged.put(newer, 0, newer.length - newerEvents.remaining());
+
+        try {
+            // the newest view and the buckets the newer frame sends, they replace the older ones
+            MessageCodec.RoomArenaView view = null;
+            int newerViewEnd = newerEvents.position();
+            Set<Long> newerBuckets = new HashSet<>();
+            MessageCodec.RoomArenaCells cells = new MessageCodec.RoomArenaCells();
+            for (ByteBuffer events = newerEvents.duplicate(); events.hasRemaining();) {
+                ByteBuffer event = nextEvent(events);
+                int id = MessageCodec.peekId(event);
+                if (id == MessageCodec.RoomArenaView.ID) {
+                    view = new MessageCodec.RoomArenaView();
+                    view.decode(event);
+                    newerViewEnd = events.position();
+                } else if (id == MessageCodec.RoomArenaCells.ID && cells.decode(event)) {
+                    newerBuckets.add(bucketKey(cells));
+                }
+            }
+            boolean newerView = view != null;
+            if (!newerView)
+                view = lastView(olderEvents.duplicate());
+
+            // the events the newer frame does not replace, the arena events are applied after the newest view
+            ByteBuffer olderArena = ByteBuffer.allocate(olderEvents.remaining());
+            while (olderEvents.hasRemaining()) {
+                int length = MessageCodec.getVarInt(olderEvents);
+                ByteBuffer event = nextEvent(olderEvents, length);
+                int id = MessageCodec.peekId(event);
+
+                ByteBuffer target = merged;
+                if (id == MessageCodec.RoomState.ID || id == MessageCodec.RoomArenaSnake.ID) {
+                    continue;
+                } else if (id == MessageCodec.RoomArenaView.ID) {
+                    if (newerView)
+                        continue;
+                    target = olderArena;
+                } else if (id == MessageCodec.RoomArenaCells.ID) {
+                    if (!cells.decode(event.duplicate()) || newerBuckets.contains(bucketKey(cells)) || !overlaps(cells, view))
+                        continue;
+                    target = olderArena;
+                }
+                MessageCodec.putVarInt(target, length);
+                target.put(event);
+            }
+
+            olderArena.flip();
+            ByteBuffer newerBeforeView = newerEvents.duplicate();
+            newerBeforeView.limit(newerViewEnd);
+            merged.put(newerBeforeView);
+            merged.put(olderArena);
+            newerEvents.position(newerViewEnd);
+        } catch (RuntimeException e) {
+            // a broken frame is never built by the room outbox, keep the newer frame as it is
+            return newer;
+        }
+
+        merged.put(newerEvents);
+        return Arrays.copyOf(merged.array(), merged.position());
+    }
+
+    /**
+     * Returns the next event of a frame's events and moves behind it.
+     */
+    private static ByteBuffer nextEvent(ByteBuffer events) {
+        return nextEvent(events, MessageCodec.getVarInt(events));
+    }
+
+    private static ByteBuffer nextEvent(ByteBuffer events, int length) {
+        ByteBuffer event = events.slice();
+        event.limit(length);
+        events.position(events.position() + length);
+        return event;
+    }
+
+    /**
+     * Returns the last arena view of a frame's events, null if there is none.
+     */
+    private static MessageCodec.RoomArenaView lastView(ByteBuffer events) {
+        MessageCodec.RoomArenaView view = null;
+        while (events.hasRemaining()) {
+            ByteBuffer event = nextEvent(events);
+            if (MessageCodec.peekId(event) == MessageCodec.RoomArenaView.ID) {
+                view = new MessageCodec.RoomArenaView();
+                view.decode(event);
+            }
+        }
+        return view;
+    }
+
+    private static long bucketKey(MessageCodec.RoomArenaCells cells) {
+        return (long) cells.x << 32 | cells.y;
+    }
+
+    /**
+     * Returns true if the cells are in the view, or there is no view to forget them.
+     */
+    private static boolean overlaps(MessageCodec.RoomArenaCells cells, MessageCodec.RoomArenaView view) {
+        return view == null || (cells.x < view.x + view.width && view.x < cells.x + cells.width
+            && cells.y < view.y + view.height && view.y < cells.y + cells.height);
+    }
+}
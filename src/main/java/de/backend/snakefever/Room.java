@@ -1,69 +1,827 @@
 package de.backend.snakefever;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
-import de.backend.snakefever.messageConstants.MessageConstants;
+import de.backend.snakefever.game.ArenaEncoder;
+import de.backend.snakefever.game.IngamePlayer;
+import de.backend.snakefever.game.SnapshotHistory;
+import de.backend.snakefever.game.World;
+import de.backend.snakefever.journal.InputJournal;
+import de.backend.snakefever.journal.JournalRecorder;
+import de.backend.snakefever.messageConstants.MessageCodec;
+import de.backend.snakefever.metrics.MessageMetrics;
+import de.backend.snakefever.tick.LatencyHistogram;
+import de.backend.snakefever.tick.TickMetrics;
+import de.backend.snakefever.tick.TimingWheel;
 
+/**
+ * A room with its players and game world.<p>
+ * A room is only mutated by the thread ticking it. Joins and leaves from the socket and matchmaking
+ * threads are posted to the room's mailbox and applied at the start of the next tick, inputs go
+ * through the input ring of each player. This keeps the tick single threaded and free of locks.<p>
+ * A room with players is ticked at its game rate, a room without players only at the lobby rate, see
+ * {@link #getTickIntervalMillis()}. Once it stayed empty for {@link #EMPTY_GRACE_MILLIS}, its slots are
+ * closed and it is finished: the server forgets its id and recycles the room for a new one, see
+ * {@link RoomPool}.<p>
+ * Changes clients see in the room list, taken slots and the lifecycle, are reported to the
+ * {@link RoomDirectory}.<p>
+ * An arena is a room with hundreds of players on a big board. It keeps a spatial index of its world
+ * and sends every player only the part around its snake instead of snapshots of the whole board, see
+ * {@link ArenaEncoder}. Arenas are not recycled.<p>
+ * Spectators watch the room without taking a slot, they are told when the room finishes, see
+ * {@link SpectatorGroup}.<p>
+ * If the shard ticking the room records an {@link InputJournal}, the room records its seed, every
+ * applied join and leave and every input its players take, so it can be replayed tick by tick.<p>
+ * The state of a room can be written to a snapshot and restored after a server restart, see
+ * {@link #writeSnapshot(ByteBuffer)}. Its players are restored as headless placeholders, the clients
+ * take over their snakes with their resume tokens. The restored room waits for them for up to
+ * {@link #RESUME_WINDOW_MILLIS} before the world steps again, placeholders left then are removed.
+ * A restored room is not recorded, the journal can only replay a room from its start.
+ */
 public class Room {
     /**
      * This is the maximum amount of players allowed.
      */
     public static final int MAX_PLAYERS = 8;
 
-    // a list of all the players in this room
+    /**
+     * The maximum amount of players of an arena.
+     */
+    public static final int ARENA_MAX_PLAYERS = 512;
+
+    /**
+     * The width and height of the board of an arena in cells.
+     */
+    public static final int ARENA_SIZE = 256;
+
+    /**
+     * The amount of food on the board of an arena.
+     */
+    public static final int ARENA_FOOD_COUNT = 256;
+
+    /**
+     * The side length of the buckets of the spatial index of an arena in cells.
+     */
+    public static final int ARENA_BUCKET_SIZE = 16;
+
+    /**
+     * Matchmaking bucket of rooms that are not indexed by the matchmaker.
+     */
+    static final int NOT_MATCHMAKING = -1;
+
+    /**
+     * How long a room stays without players and reservations before it is finished.
+     */
+    public static final long EMPTY_GRACE_MILLIS = 30000;
+
+    /**
+     * The time between two ticks of a room without players. Joins wake the room, so this only bounds
+     * how late a missed wakeup is noticed.
+     */
+    public static final long LOBBY_TICK_INTERVAL_MILLIS = 1000;
+
+    /**
+     * How long a restored room waits for its players to resume before the placeholders left are removed.
+     */
+    public static final long RESUME_WINDOW_MILLIS = 10000;
+
+    // the reserved slots of a finished room, no reservation can succeed anymore
+    private static final int CLOSED = Integer.MIN_VALUE;
+
+    // the flags of a room in a snapshot
+    private static final int FLAG_QUICKPLAY = 1;
+    private static final int FLAG_ARENA = 2;
+    // the maximum length of a string in a snapshot
+    private static final int MAX_SNAPSHOT_STRING_BYTES = 64;
+
+    /**
+     * The lifecycle of a room.
+     */
+    public enum Lifecycle {
+        /**
+         * Created, but no player arrived yet.
+         */
+        WAITING,
+        /**
+         * Players are in the room, it is ticked.
+         */
+        RUNNING,
+        /**
+         * All players left, the room is kept for the grace period in case someone joins again.
+         */
+        EMPTY,
+        /**
+         * Closed for good, it is removed from the server and recycled.
+         */
+        FINISHED
+    }
+
+    // a list of all the players in this room, only accessed by the ticking thread
     private final List<Player> players = new ArrayList<>();
+    // the snakes of the players in the same order, taken when the join was posted, a player moving
+    // on to another room gets a new one there, only accessed by the ticking thread
+    private final List<IngamePlayer> ingamePlayers = new ArrayList<>();
 
-    // the id of this room
-    private String id;
+    // joins and leaves posted by other threads, applied at the start of the next tick
+    private final Queue<MembershipChange> mailbox = new ConcurrentLinkedQueue<>();
+
+    // the id of this room, changed when the room is recycled
+    private volatile String id;
 
     // is this a quickplay?
-    private boolean quickplay;
+    private volatile boolean quickplay;
+
+    // is this an arena?
+    private final boolean arena;
+    // the amount of slots
+    private final int maxPlayers;
+
+    // written by the ticking thread, read by anyone
+    private volatile Lifecycle lifecycle = Lifecycle.WAITING;
+
+    // the time between two ticks while players are in the room
+    private volatile long gameTickIntervalMillis = Server.TICK_INTERVAL_MILLIS;
+
+    // the timers of the shard ticking this room, null while no shard owns it
+    private TimingWheel timers;
+    // finishes the room once it was empty for the grace period
+    private final GraceTimer graceTimer = new GraceTimer();
+
+    // the amount of slots taken or promised to joining players
+    private final AtomicInteger reservedSlots = new AtomicInteger();
+
+    // the room list, told about changes of this room
+    private final RoomDirectory directory;
+    // set while the room is queued in the directory, so it is queued only once
+    private final AtomicBoolean listingChanged = new AtomicBoolean();
+
+    // the matchmaking bucket this room was last filed in, only used by the matchmaker
+    private int matchmakingBucket = NOT_MATCHMAKING;
+
+    // the seed of the world, changed when the room is recycled
+    private long seed;
+    // the game world simulated on every tick
+    private final World world;
+
+    // the recent world snapshots, used to send every player only the changes since its last ack, null in an arena
+    private final SnapshotHistory snapshots;
+    // collects the events of a tick and sends them as one frame
+    private final RoomOutbox outbox;
+    // the players watching this room
+    private final SpectatorGroup spectators;
+
+    // how long the ticks of this room took
+    private final LatencyHistogram tickLatency = new LatencyHistogram(TickMetrics.HIGHEST_TRACKABLE_NANOS);
+
+    // the journal of the shard ticking this room, null if it is not recorded
+    private JournalRecorder journal;
+    // the key of this room in the journal
+    private int journalKey;
+    // records the inputs taken by the players, looked up by their index
+    private final IngamePlayer.InputListener journalInputs = this::recordInput;
+
+    // true if the room was restored from a snapshot, it is not recorded then
+    private boolean restored;
+    // the placeholders of the restored players by their resume secret, until they are claimed
+    private final Map<Long, Player> resumable = new ConcurrentHashMap<>();
+    // true while the restored room waits for its players, the world does not step then
+    private volatile boolean holding;
+    // stops waiting for the restored players once the resume window ran out
+    private final ResumeTimer resumeTimer = new ResumeTimer();
 
 
     /**
      * This is a room with an id containing players that play a game together.
      * @param id the id of this room
      * @param quickplay is this a quickplay room?
+     * @param messageMetrics the metrics counting the frames of this room
+     * @param directory the room list this room is listed in
+     * @param spectatorSender sends the frames to the spectators of this room
+     */
+    public Room(String id, boolean quickplay, MessageMetrics messageMetrics, RoomDirectory directory, Executor spectatorSender) {
+        this(id, quickplay, false, ThreadLocalRandom.current().nextLong(), messageMetrics, directory, spectatorSender);
+    }
+
+    /**
+     * Creates a room or arena with a given seed, e.g. to replay a recorded room.
+     * @param id the id of this room
+     * @param quickplay is this a quickplay room?
+     * @param arena is this an arena?
+     * @param seed the seed of the world
+     * @param messageMetrics the metrics counting the frames of this room
+     * @param directory the room list this room is listed in
+     * @param spectatorSender sends the frames to the spectators of this room
      */
-    public Room(String id, boolean quickplay) {
+    public Room(String id, boolean quickplay, boolean arena, long seed, MessageMetrics messageMetrics, RoomDirectory directory, Executor spectatorSender) {
         this.id = id;
         this.quickplay = quickplay;
+        this.arena = arena;
+        this.maxPlayers = arena ? ARENA_MAX_PLAYERS : MAX_PLAYERS;
+        this.seed = seed;
+        this.directory = directory;
+
+        if (arena) {
+            this.world = new World(ARENA_SIZE, ARENA_SIZE, ARENA_MAX_PLAYERS, ARENA_FOOD_COUNT, ARENA_BUCKET_SIZE, seed);
+            this.snapshots = null;
+            this.outbox = new RoomOutbox(ARENA_MAX_PLAYERS, ARENA_MAX_PLAYERS, new ArenaEncoder(this.world), messageMetrics);
+        } else {
+            this.world = new World(World.DEFAULT_WIDTH, World.DEFAULT_HEIGHT, MAX_PLAYERS, seed);
+            this.snapshots = new SnapshotHistory(this.world, SnapshotHistory.DEFAULT_SIZE);
+            this.outbox = new RoomOutbox(MAX_PLAYERS, MAX_PLAYERS, null, messageMetrics);
+        }
+        this.spectators = new SpectatorGroup(spectatorSender, messageMetrics);
     }
     
+    /**
+     * Atomically reserves a slot for a joining player.<p>
+     * A successful reservation must be followed by {@link #addPlayer(Player)} or {@link #releaseSlot()}.
+     * @return true if a slot was reserved, false if the room is full.
+     */
+    public boolean tryReserveSlot() {
+        int reserved;
+        do {
+            reserved = this.reservedSlots.get();
+            if (reserved < 0 || reserved >= this.maxPlayers)
+                return false;
+        } while (!this.reservedSlots.compareAndSet(reserved, reserved + 1));
+
+        this.onListingChanged();
+        return true;
+    }
+
+    /**
+     * Frees a reserved slot again.
+     */
+    public void releaseSlot() {
+        this.reservedSlots.decrementAndGet();
+        this.onListingChanged();
+    }
+
+    /**
+     * Queues this room in the directory, so the room list is updated on its next rebuild.<p>
+     * Can be called from any thread.
+     */
+    void onListingChanged() {
+        if (this.listingChanged.compareAndSet(false, true))
+            this.directory.markChanged(this);
+    }
+
+    /**
+     * Called by the directory before it reads the room, changes from then on queue the room again.
+     */
+    void clearListingChanged() {
+        this.listingChanged.set(false);
+    }
+
+    /**
+     * Returns the amount of taken or reserved slots.
+     * @return a negative value if the room is finished.
+     */
+    public int getReservedSlots() {
+        return this.reservedSlots.get();
+    }
+
+    int getMatchmakingBucket() {
+        return this.matchmakingBucket;
+    }
+
+    void setMatchmakingBucket(int matchmakingBucket) {
+        this.matchmakingBucket = matchmakingBucket;
+    }
+
+    /**
+     * Adds a player to this room on the next tick, the player must have reserved a slot with {@link #tryReserveSlot()}.<p>
+     * Can be called from any thread.
+     * @param player the player to add
+     */
     public void addPlayer(Player player) {
-        this.players.add(player);
-        
-        SnakeFever.ns.broadcast(this.id, MessageConstants.EVENT_ROOM_PLAYER_JOIN_BROADCAST, player.getName());
-        SnakeFever.LOGGER.info("Player " + player.getName() + " joined room " + this.getId() + " (" + this.getOnlineVsMaxPlayers() + ")");
+        this.mailbox.add(new MembershipChange(player, true));
+    }
+
+    /**
+     * Replaces a restored placeholder with the player resuming it on the next tick, the player takes
+     * over the slot and snake of the placeholder. The placeholder must be claimed with {@link #claimResume(long)}.<p>
+     * Can be called from any thread.
+     * @param player the resuming player
+     * @param placeholder the claimed placeholder
+     */
+    public void resumePlayer(Player player, Player placeholder) {
+        this.mailbox.add(new MembershipChange(player, placeholder));
+    }
+
+    /**
+     * Claims the place of a restored player, so only one client can resume it.<p>
+     * Can be called from any thread.
+     * @param resumeSecret the secret of the resume token
+     * @return the placeholder to resume or remove, null if there is none with the secret.
+     */
+    public Player claimResume(long resumeSecret) {
+        return this.resumable.remove(resumeSecret);
+    }
+
+    /**
+     * Removes a player from this room on the next tick, the slot of the player is freed right away.<p>
+     * Can be called from any thread, but only once for every {@link #addPlayer(Player)}.
+     * @param player the player to remove
+     */
+    public void removePlayer(Player player) {
+        // posted before the slot is freed, so the leave is always applied before the join taking the slot
+        this.mailbox.add(new MembershipChange(player, false));
+        this.releaseSlot();
     }
 
+    /**
+     * Returns true if no slot can be reserved, also if the room is finished.
+     */
     public boolean isFull() {
-        return this.players.size() >= MAX_PLAYERS;
+        int reserved = this.reservedSlots.get();
+        return reserved < 0 || reserved >= this.maxPlayers;
     }
 
     public boolean isQuickplay() {
         return this.quickplay;
     }
 
+    public boolean isArena() {
+        return this.arena;
+    }
+
+    /**
+     * Returns the amount of slots, {@link #MAX_PLAYERS} or {@link #ARENA_MAX_PLAYERS} for an arena.
+     */
+    public int getMaxPlayers() {
+        return this.maxPlayers;
+    }
+
     public String getId() {
         return this.id;
     }
 
-    public void tick() {
+    public Lifecycle getLifecycle() {
+        return this.lifecycle;
+    }
+
+    /**
+     * Returns the time until the next tick of this room, depending on its lifecycle.
+     */
+    public long getTickIntervalMillis() {
+        return this.lifecycle == Lifecycle.RUNNING ? this.gameTickIntervalMillis : LOBBY_TICK_INTERVAL_MILLIS;
+    }
+
+    /**
+     * Sets the time between two ticks while players are in the room, the world steps once per tick.
+     * @param gameTickIntervalMillis the interval, at least the shard resolution {@link Server#TIMER_RESOLUTION_MILLIS}
+     */
+    public void setGameTickIntervalMillis(long gameTickIntervalMillis) {
+        this.gameTickIntervalMillis = Math.max(Server.TIMER_RESOLUTION_MILLIS, gameTickIntervalMillis);
+    }
+
+    /**
+     * Called by the shard taking over this room, on the shard thread.
+     * @param timers the timers of the shard
+     */
+    public void attachTimers(TimingWheel timers) {
+        this.timers = timers;
+        // a room nobody ever arrives in is finished like an empty one
+        if (this.lifecycle != Lifecycle.RUNNING)
+            this.schedule(this.graceTimer, EMPTY_GRACE_MILLIS);
+        if (this.holding)
+            this.schedule(this.resumeTimer, RESUME_WINDOW_MILLIS);
+    }
+
+    /**
+     * Called by the shard giving up this room, on the shard thread. Cancels the timers of the room and
+     * ends its journal.
+     */
+    public void detachTimers() {
+        this.graceTimer.cancel();
+        this.resumeTimer.cancel();
+        this.timers = null;
+
+        if (this.journal != null) {
+            this.journal.roomFinished(this.journalKey);
+            this.journal = null;
+        }
+    }
+
+    /**
+     * Called by the shard taking over this room, on the shard thread, before the room is ticked.
+     * @param journal the recorder of the shard, null if the shard does not record
+     */
+    public void attachJournal(JournalRecorder journal) {
+        // the journal could not replay a room that did not start on this server
+        this.journal = this.restored ? null : journal;
+        if (this.journal != null)
+            this.journalKey = this.journal.roomStarted(this.id, this.quickplay, this.arena, this.seed);
+    }
+
+    /**
+     * Schedules a timer of this room, e.g. a countdown, on the shard ticking it.<p>
+     * Must only be called by the thread ticking the room.
+     * @param timer the timer, moved if it is already scheduled
+     * @param delayMillis the time until the timer fires
+     * @throws IllegalStateException if no shard owns the room
+     */
+    public void schedule(TimingWheel.Timer timer, long delayMillis) {
+        if (this.timers == null)
+            throw new IllegalStateException("Room " + this.id + " is not ticked by a shard.");
+        this.timers.schedule(timer, TimeUnit.MILLISECONDS.toNanos(delayMillis));
+    }
+
+    /**
+     * Applies the posted joins and leaves and moves the room through its lifecycle, must only be called
+     * by the thread ticking the room.<p>
+     * Leaving the room empty starts the grace timer, once it runs out without a player arriving, the
+     * room is closed: its slots can no longer be reserved and it becomes {@link Lifecycle#FINISHED}.<p>
+     * A restored room is not ticked until all of its players resumed or the resume window ran out.
+     * @param now the current {@link System#nanoTime()}
+     * @return true if the room has players and needs to be ticked.
+     */
+    public boolean updateLifecycle(long now) {
+        if (this.lifecycle == Lifecycle.FINISHED)
+            return false;
+
+        this.applyMembershipChanges();
+
+        if (this.holding) {
+            if (this.hasPlaceholders())
+                return false;
+            this.holding = false;
+            this.resumeTimer.cancel();
+        }
+
+        if (!this.players.isEmpty()) {
+            if (this.lifecycle != Lifecycle.RUNNING) {
+                this.lifecycle = Lifecycle.RUNNING;
+                this.graceTimer.cancel();
+                this.onListingChanged();
+            }
+            return true;
+        }
+
+        if (this.lifecycle == Lifecycle.RUNNING) {
+            this.lifecycle = Lifecycle.EMPTY;
+            this.schedule(this.graceTimer, EMPTY_GRACE_MILLIS);
+            this.onListingChanged();
+        }
+
+        return false;
+    }
+
+    /**
+     * Prepares a finished room to be used as a new room.<p>
+     * Must only be called once the room was removed from its shard and the server.
+     * @param id the new id
+     * @param quickplay is the new room a quickplay room?
+     */
+    void reset(String id, boolean quickplay) {
+        if (this.lifecycle != Lifecycle.FINISHED)
+            throw new IllegalStateException("Room " + this.id + " is not finished.");
+
+        this.id = id;
+        this.quickplay = quickplay;
+        this.matchmakingBucket = NOT_MATCHMAKING;
+        this.restored = false;
+        this.resumable.clear();
+        this.holding = false;
+
+        // a join and its leave can be posted between the last update and the close
+        this.mailbox.clear();
+        this.players.clear();
+        this.ingamePlayers.clear();
+        this.seed = ThreadLocalRandom.current().nextLong();
+        this.world.reset(this.seed);
+        if (this.snapshots != null)
+            this.snapshots.reset();
+        this.outbox.reset();
+        this.spectators.reset();
+        this.tickLatency.reset();
+
+        this.gameTickIntervalMillis = Server.TICK_INTERVAL_MILLIS;
+        this.lifecycle = Lifecycle.WAITING;
+        // opens the slots again, so this must be the last step
+        this.reservedSlots.set(0);
+    }
+
+    /**
+     * Ticks all players in this room, applying their inputs, then steps the world and sends the frame of this tick.
+     * @param metrics the metrics of the ticking shard
+     */
+    public void tick(TickMetrics metrics) {
+        this.applyMembershipChanges();
+
+        IngamePlayer.InputListener inputListener = this.journal != null ? this.journalInputs : null;
+        for (IngamePlayer ingamePlayer : this.ingamePlayers) {
+            long start = System.nanoTime();
+            ingamePlayer.tick(inputListener);
+            metrics.recordPlayerTick(System.nanoTime() - start);
+        }
+
+        this.world.step();
+
+        // send everything that happened in this tick as one frame
+        this.outbox.flush(this.players, this.ingamePlayers, this.spectators, this.world, this.snapshots);
+
+        if (this.journal != null) {
+            this.journal.tick(this.journalKey, this.world.getTick());
+            if (this.world.getTick() % InputJournal.CHECKSUM_INTERVAL == 0)
+                this.journal.checksum(this.journalKey, this.world.checksum());
+        }
+    }
+
+    private void recordInput(IngamePlayer ingamePlayer, long input) {
+        int index = this.ingamePlayers.indexOf(ingamePlayer);
+        if (index >= 0)
+            this.journal.input(this.journalKey, index, input);
+    }
+
+    /**
+     * Applies the joins and leaves posted since the last tick, in the order they were posted.
+     */
+    private void applyMembershipChanges() {
+        MembershipChange change;
+        while ((change = this.mailbox.poll()) != null) {
+            Player player = change.player;
+
+            if (change.replaced != null) {
+                int index = this.players.indexOf(change.replaced);
+                if (index < 0 || !this.world.transfer(this.ingamePlayers.get(index), change.ingamePlayer)) {
+                    // the placeholder is gone, the player joins like a new one
+                    if (index >= 0) {
+                        this.players.remove(index);
+                        this.ingamePlayers.remove(index);
+                    }
+                    this.players.add(player);
+                    this.ingamePlayers.add(change.ingamePlayer);
+                    this.world.attach(change.ingamePlayer);
+                } else {
+                    this.players.set(index, player);
+                    this.ingamePlayers.set(index, change.ingamePlayer);
+                }
+
+                this.outbox.playerLeft(change.replaced.getName());
+                this.outbox.playerJoined(player.getName());
+                SnakeFever.LOGGER.info("Player " + player.getName() + " resumed room " + this.getId() + " (" + this.getOnlineVsMaxPlayers() + ")");
+                continue;
+            }
+
+            if (change.join) {
+                if (this.journal != null)
+                    this.journal.playerJoined(this.journalKey, player.getRawName(), change.ingamePlayer.getDirection(), change.ingamePlayer.getLastSequence());
+
+                this.players.add(player);
+                this.ingamePlayers.add(change.ingamePlayer);
+                this.world.attach(change.ingamePlayer);
+
+                this.outbox.playerJoined(player.getName());
+                SnakeFever.LOGGER.info("Player " + player.getName() + " joined room " + this.getId() + " (" + this.getOnlineVsMaxPlayers() + ")");
+                continue;
+            }
+
+            int index = this.players.indexOf(player);
+            if (index >= 0) {
+                if (this.journal != null)
+                    this.journal.playerLeft(this.journalKey, index);
+
+                this.players.remove(index);
+                this.world.detach(this.ingamePlayers.remove(index));
+
+                this.outbox.playerLeft(player.getName());
+                SnakeFever.LOGGER.info("Player " + player.getName() + " left room " + this.getId() + " (" + this.getOnlineVsMaxPlayers() + ")");
+            }
+        }
+    }
+
+    private boolean hasPlaceholders() {
         for (Player player : this.players) {
-            player.tick();
+            if (player.getSocket() == null)
+                return true;
         }
+        return false;
     }
 
-    public void removePlayer(Player player) {
-        this.players.remove(player);
+    /**
+     * Returns true if the room has players, only up to date on the ticking thread.
+     */
+    public boolean hasPlayers() {
+        return !this.players.isEmpty();
+    }
+
+    /**
+     * Returns the maximum amount of bytes {@link #writeSnapshot(ByteBuffer)} writes.<p>
+     * Must only be called by the thread ticking the room.
+     */
+    public int getSnapshotSizeBound() {
+        int playerBytes = 1 + MAX_SNAPSHOT_STRING_BYTES + Long.BYTES + 5 + 1 + Integer.BYTES;
+        return 1 + MAX_SNAPSHOT_STRING_BYTES + 1 + Long.BYTES + 5 + 5
+            + this.players.size() * playerBytes + this.world.getSnapshotSizeBound();
+    }
+
+    /**
+     * Writes the state of this room, so it can be restored after a restart with {@link #restore}: the
+     * room itself, its players with their resume secrets and its world. Posted joins and leaves that
+     * were not applied yet are not written.<p>
+     * Must only be called by the thread ticking the room, between two ticks.
+     * @param buffer the buffer, with at least {@link #getSnapshotSizeBound()} bytes remaining
+     */
+    public void writeSnapshot(ByteBuffer buffer) {
+        putString(buffer, this.id);
+        buffer.put((byte) ((this.quickplay ? FLAG_QUICKPLAY : 0) | (this.arena ? FLAG_ARENA : 0)));
+        buffer.putLong(this.seed);
+        MessageCodec.putVarInt(buffer, (int) this.gameTickIntervalMillis);
+
+        int count = 0;
+        for (IngamePlayer ingamePlayer : this.ingamePlayers) {
+            if (ingamePlayer.getSlot() >= 0)
+                count++;
+        }
+        MessageCodec.putVarInt(buffer, count);
+        for (int i = 0; i < this.players.size(); i++) {
+            Player player = this.players.get(i);
+            IngamePlayer ingamePlayer = this.ingamePlayers.get(i);
+            // the snake of a player is only written once the world attached it
+            if (ingamePlayer.getSlot() < 0)
+                continue;
+
+            putString(buffer, player.getRawName());
+            buffer.putLong(player.getResumeSecret());
+            MessageCodec.putVarInt(buffer, ingamePlayer.getSlot());
+            buffer.put((byte) ingamePlayer.getDirection());
+            buffer.putInt(ingamePlayer.getLastSequence());
+        }
+
+        this.world.writeSnapshot(buffer);
+    }
+
+    /**
+     * Restores a room written by {@link #writeSnapshot(ByteBuffer)}. Its players are headless
+     * placeholders waiting to be resumed, their slots are reserved.
+     * @param buffer the snapshot of the room
+     * @param messageMetrics the metrics counting the frames of the room
+     * @param directory the room list the room is listed in
+     * @param spectatorSender sends the frames to the spectators of the room
+     * @throws IllegalArgumentException if the snapshot is broken.
+     * @throws java.nio.BufferUnderflowException if the snapshot is truncated.
+     */
+    public static Room restore(ByteBuffer buffer, MessageMetrics messageMetrics, RoomDirectory directory, Executor spectatorSender) {
+        String id = getString(buffer);
+        int flags = buffer.get();
+        long seed = buffer.getLong();
+
+        Room room = new Room(id, (flags & FLAG_QUICKPLAY) != 0, (flags & FLAG_ARENA) != 0, seed, messageMetrics, directory, spectatorSender);
+        room.restored = true;
+        room.setGameTickIntervalMillis(MessageCodec.getVarInt(buffer));
+
+        int count = MessageCodec.getVarInt(buffer);
+        if (count < 0 || count > room.maxPlayers)
+            throw new IllegalArgumentException("Room " + id + " has " + count + " players.");
+
+        IngamePlayer[] players = new IngamePlayer[room.maxPlayers];
+        for (int i = 0; i < count; i++) {
+            Player placeholder = Player.headless(getString(buffer), room);
+            placeholder.setResumeSecret(buffer.getLong());
+            int slot = MessageCodec.getVarInt(buffer);
+            if (slot < 0 || slot >= players.length)
+                throw new IllegalArgumentException("Room " + id + " has a player in slot " + slot + ".");
+
+            placeholder.getIngamePlayer().restore(buffer.get() & 0xFF, buffer.getInt());
+            players[slot] = placeholder.getIngamePlayer();
+            room.players.add(placeholder);
+            room.ingamePlayers.add(placeholder.getIngamePlayer());
+            room.resumable.put(placeholder.getResumeSecret(), placeholder);
+        }
+
+        room.world.restoreSnapshot(buffer, players);
+
+        if (count > 0) {
+            room.reservedSlots.set(count);
+            room.lifecycle = Lifecycle.RUNNING;
+            room.holding = true;
+        }
+        return room;
+    }
+
+    private static void putString(ByteBuffer buffer, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        int length = Math.min(bytes.length, MAX_SNAPSHOT_STRING_BYTES);
+        buffer.put((byte) length);
+        buffer.put(bytes, 0, length);
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.get() & 0xFF];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    public World getWorld() {
+        return this.world;
+    }
+
+    /**
+     * Returns the epoch of the snapshot sequences sent to the players, can be called from any thread.
+     * @return 0 for an arena, it sends no snapshots.
+     * @see SnapshotHistory#getEpoch()
+     */
+    public int getSnapshotEpoch() {
+        return this.snapshots != null ? this.snapshots.getEpoch() : 0;
+    }
+
+    /**
+     * Returns the players watching this room.
+     */
+    public SpectatorGroup getSpectators() {
+        return this.spectators;
+    }
 
-        SnakeFever.ns.broadcast(this.id, MessageConstants.EVENT_ROOM_PLAYER_LEAVE_BROADCAST, player.getName());
-        SnakeFever.LOGGER.info("Player " + player.getName() + " left room " + this.getId() + " (" + this.getOnlineVsMaxPlayers() + ")");
+    /**
+     * Returns the tick latency of this room in nanoseconds.
+     */
+    public LatencyHistogram getTickLatency() {
+        return this.tickLatency;
     }
 
+    /**
+     * Returns the amount of players as "online/max", only up to date on the ticking thread.
+     */
     public String getOnlineVsMaxPlayers() {
-        return this.players.size() + "/" + MAX_PLAYERS;
+        return this.players.size() + "/" + this.maxPlayers;
+    }
+
+    /**
+     * Closes the room once the grace period ran out, runs on the thread ticking the room.
+     */
+    private final class GraceTimer extends TimingWheel.Timer {
+        @Override
+        protected void run() {
+            Room room = Room.this;
+            // a join posted since the last tick keeps the room open, it is applied on the next tick
+            if (!room.players.isEmpty() || room.reservedSlots.get() > 0 || !room.reservedSlots.compareAndSet(0, CLOSED)) {
+                room.schedule(this, EMPTY_GRACE_MILLIS);
+                return;
+            }
+
+            room.lifecycle = Lifecycle.FINISHED;
+            room.onListingChanged();
+            room.spectators.close();
+        }
+    }
+
+    /**
+     * Stops waiting for the restored players, runs on the thread ticking the room.
+     */
+    private final class ResumeTimer extends TimingWheel.Timer {
+        @Override
+        protected void run() {
+            Room room = Room.this;
+            for (Player placeholder : room.resumable.values()) {
+                // a client may claim it at the same time
+                if (room.resumable.remove(placeholder.getResumeSecret(), placeholder))
+                    room.removePlayer(placeholder);
+            }
+
+            if (room.holding) {
+                room.holding = false;
+                SnakeFever.LOGGER.info("Stopped waiting for the players of the restored room " + room.getId() + ".");
+            }
+        }
+    }
+
+    /**
+     * A join, leave or resume posted to the mailbox of a room.
+     */
+    private static final class MembershipChange {
+        private final Player player;
+        // the snake of the player in this room, taken when the change was posted
+        private final IngamePlayer ingamePlayer;
+        private final boolean join;
+        // the placeholder the player takes over, null if this is no resume
+        private final Player replaced;
+
+        private MembershipChange(Player player, boolean join) {
+            this.player = player;
+            this.ingamePlayer = player.getIngamePlayer();
+            this.join = join;
+            this.replaced = null;
+        }
+
+        private MembershipChange(Player player, Player replaced) {
+            this.player = player;
+            this.ingamePlayer = player.getIngamePlayer();
+            this.join = true;
+            this.replaced = replaced;
+        }
     }
 }
@@ -0,0 +1,327 @@
+package de.backend.snakefever;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import de.backend.snakefever.messageConstants.MessageCodec;
+import de.backend.snakefever.messageConstants.MessageConstants;
+
+/**
+ * The public list of the quickplay rooms and arenas, kept as a versioned snapshot that is rebuilt from
+ * the rooms that changed. Private rooms are never listed, their id is the code to join them.<p>
+ * Rooms mark themselves as changed when a slot is reserved or freed or their lifecycle moves on, and
+ * {@link #rebuild()} folds only the marked rooms into the list. Every rebuild that changes something
+ * publishes a new immutable {@link Listing} with the next version. Its pages are encoded once, on the
+ * first request, and the same bytes are sent to every client asking for them.<p>
+ * A client that already knows a version only gets the rooms that changed since, as long as the
+ * directory still remembers these changes (see {@link #MAX_CHANGES}) and they fit into one page.
+ * Otherwise it gets a page of the full list.
+ */
+public final class RoomDirectory {
+    /**
+     * The maximum amount of rooms in one response.
+     */
+    public static final int PAGE_SIZE = 50;
+
+    /**
+     * The amount of changed rooms remembered for clients asking for the changes since their version.
+     */
+    public static final int MAX_CHANGES = 4096;
+
+    // rooms marked as changed since the last rebuild, every room is queued at most once
+    private final Queue<Room> changedRooms = new ConcurrentLinkedQueue<>();
+
+    // the id every room is listed under, a recycled room changes its id, only used by rebuild
+    private final Map<Room, String> listedIds = new HashMap<>();
+    // the listed rooms by id, in the order they were listed, only used by rebuild
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+    // the last change of every room id, oldest first, only used by rebuild
+    private final Map<String, Change> changes = new LinkedHashMap<>();
+
+    // the version of the list, only used by rebuild
+    private int version = 1;
+    // the changes since this version are complete, older changes were dropped
+    private int horizon = 1;
+
+    // the list handed out to the clients
+    private volatile Listing listing = new Listing(1, 1, new Entry[0], new Change[0]);
+
+    /**
+     * Queues a room to be updated in the list on the next rebuild, called by the room itself.
+     * @param room the changed room
+     */
+    void markChanged(Room room) {
+        this.changedRooms.add(room);
+    }
+
+    /**
+     * Updates the list with all rooms that changed since the last rebuild.<p>
+     * Must only be called by one thread at a time, e.g. the matchmaker thread.
+     */
+    public void rebuild() {
+        int next = this.version + 1;
+        boolean changed = false;
+
+        Room room;
+        while ((room = this.changedRooms.poll()) != null) {
+            // cleared before the room is read, so a change while reading marks the room again
+            room.clearListingChanged();
+            changed |= this.update(room, next);
+        }
+
+        if (!changed)
+            return;
+
+        this.version = next;
+
+        Iterator<Change> oldest = this.changes.values().iterator();
+        while (this.changes.size() > MAX_CHANGES) {
+            // a client that saw this change already may still ask for the changes since it
+            this.horizon = Math.max(this.horizon, oldest.next().version);
+            oldest.remove();
+        }
+
+        this.listing = new Listing(this.version, this.horizon,
+            this.entries.values().toArray(new Entry[0]), this.changes.values().toArray(new Change[0]));
+    }
+
+    /**
+     * Returns the response to a room list request.
+     * @param sinceVersion the version the client already has, 0 for none
+     * @param page the page of the full list, if the changes can't be sent
+     * @return the encoded {@link MessageCodec.RoomList}, shared with other clients, so it must not be modified.
+     * @see MessageConstants#EVENT_ROOM_LIST_REQUEST
+     */
+    public byte[] list(int sinceVersion, int page) {
+        return this.listing.list(sinceVersion, page);
+    }
+
+    /**
+     * Returns the current version of the list.
+     */
+    public int getVersion() {
+        return this.listing.version;
+    }
+
+    /**
+     * Returns the amount of listed rooms.
+     */
+    public int size() {
+        return this.listing.entries.length;
+    }
+
+    /**
+     * Brings the entry of a room up to date.
+     * @return true if the list changed.
+     */
+    private boolean update(Room room, int version) {
+        String id = room.getId();
+        String listedId = this.listedIds.get(room);
+        boolean changed = false;
+
+        // a finished room was recycled with a new id before it was removed
+        if (listedId != null && !listedId.equals(id)) {
+            changed = this.remove(listedId, version);
+            this.listedIds.remove(room);
+        }
+
+        int reserved = room.getReservedSlots();
+        Room.Lifecycle lifecycle = room.getLifecycle();
+        // the id of a private room is its join code, only the players it was shared with may know it
+        boolean listable = room.isQuickplay() || room.isArena();
+        if (!listable || reserved < 0 || lifecycle == Room.Lifecycle.FINISHED) {
+            if (this.listedIds.remove(room) != null)
+                changed |= this.remove(id, version);
+            return changed;
+        }
+
+        Entry entry = new Entry(id, room.isQuickplay(), room.isArena(), reserved, lifecycle);
+        Entry listed = this.entries.get(id);
+        if (listed != null && listed.sameAs(entry))
+            return changed;
+
+        this.listedIds.put(room, id);
+        this.entries.put(id, entry);
+        this.putChange(new Change(id, version, entry.encoded));
+        return true;
+    }
+
+    /**
+     * Removes a listed room id.
+     * @return true if the id was listed.
+     */
+    private boolean remove(String id, int version) {
+        if (this.entries.remove(id) == null)
+            return false;
+
+        ByteBuffer buffer = ByteBuffer.allocate(MessageCodec.RoomListRemoved.MAX_SIZE);
+        MessageCodec.RoomListRemoved.encode(buffer, id);
+        this.putChange(new Change(id, version, toArray(buffer)));
+        return true;
+    }
+
+    private void putChange(Change change) {
+        // removed first, so the change moves to the end and the changes stay sorted by version
+        this.changes.remove(change.id);
+        this.changes.put(change.id, change);
+    }
+
+    private static byte[] toArray(ByteBuffer buffer) {
+        return Arrays.copyOf(buffer.array(), buffer.position());
+    }
+
+    /**
+     * Encodes a room list with the given entries.
+     */
+    private static byte[] encode(int version, int type, int page, int pageCount, byte[][] entries) {
+        int size = MessageCodec.RoomList.MAX_SIZE;
+        for (byte[] entry : entries) {
+            size += 5 + entry.length;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        MessageCodec.RoomList.encode(buffer, version, type, page, pageCount);
+        for (byte[] entry : entries) {
+            MessageCodec.putVarInt(buffer, entry.length);
+            buffer.put(entry);
+        }
+        return toArray(buffer);
+    }
+
+    /**
+     * A listed room, encoded once when it is listed.
+     */
+    private static final class Entry {
+        private final String id;
+        private final boolean quickplay;
+        private final boolean arena;
+        private final int players;
+        private final Room.Lifecycle lifecycle;
+        private final byte[] encoded;
+
+        private Entry(String id, boolean quickplay, boolean arena, int players, Room.Lifecycle lifecycle) {
+            this.id = id;
+            this.quickplay = quickplay;
+            this.arena = arena;
+            this.players = players;
+            this.lifecycle = lifecycle;
+
+            ByteBuffer buffer = ByteBuffer.allocate(MessageCodec.RoomListEntry.MAX_SIZE);
+            MessageCodec.RoomListEntry.encode(buffer, id, quickplay ? 1 : 0, players,
+                arena ? Room.ARENA_MAX_PLAYERS : Room.MAX_PLAYERS, lifecycle.ordinal(), arena ? 1 : 0);
+            this.encoded = toArray(buffer);
+        }
+
+        private boolean sameAs(Entry other) {
+            return this.id.equals(other.id) && this.quickplay == other.quickplay && this.arena == other.arena
+                && this.players == other.players && this.lifecycle == other.lifecycle;
+        }
+    }
+
+    /**
+     * The last change of a room id: its encoded entry, or its removal.
+     */
+    private static final class Change {
+        private final String id;
+        // the version of the list the change first appeared in
+        private final int version;
+        private final byte[] encoded;
+
+        private Change(String id, int version, byte[] encoded) {
+            this.id = id;
+            this.version = version;
+            this.encoded = encoded;
+        }
+    }
+
+    /**
+     * One version of the list. Immutable, apart from the responses it encodes on demand.
+     */
+    private static final class Listing {
+        private final int version;
+        private final int horizon;
+        private final Entry[] entries;
+        // sorted by version
+        private final Change[] changes;
+        private final int pageCount;
+
+        // the encoded pages of the full list, encoded on the first request
+        private final AtomicReferenceArray<byte[]> pages;
+        // the encoded changes by their amount, so the changes since every older version are encoded once
+        private final AtomicReferenceArray<byte[]> deltas = new AtomicReferenceArray<>(PAGE_SIZE + 1);
+
+        private Listing(int version, int horizon, Entry[] entries, Change[] changes) {
+            this.version = version;
+            this.horizon = horizon;
+            this.entries = entries;
+            this.changes = changes;
+            this.pageCount = Math.max(1, (entries.length + PAGE_SIZE - 1) / PAGE_SIZE);
+            this.pages = new AtomicReferenceArray<>(this.pageCount);
+        }
+
+        private byte[] list(int sinceVersion, int page) {
+            if (sinceVersion >= this.horizon && sinceVersion <= this.version) {
+                int count = this.changes.length - this.firstChangeAfter(sinceVersion);
+                if (count <= PAGE_SIZE)
+                    return this.delta(count);
+            }
+
+            return this.page(Math.max(0, Math.min(page, this.pageCount - 1)));
+        }
+
+        private byte[] page(int page) {
+            byte[] encoded = this.pages.get(page);
+            if (encoded == null) {
+                // encoding a page twice in a race does no harm, both results are equal
+                int from = page * PAGE_SIZE;
+                int to = Math.min(this.entries.length, from + PAGE_SIZE);
+                byte[][] bytes = new byte[to - from][];
+                for (int i = from; i < to; i++) {
+                    bytes[i - from] = this.entries[i].encoded;
+                }
+
+                encoded = encode(this.version, MessageConstants.ROOM_LIST_FULL, page, this.pageCount, bytes);
+                this.pages.set(page, encoded);
+            }
+            return encoded;
+        }
+
+        private byte[] delta(int count) {
+            byte[] encoded = this.deltas.get(count);
+            if (encoded == null) {
+                byte[][] bytes = new byte[count][];
+                for (int i = 0; i < count; i++) {
+                    bytes[i] = this.changes[this.changes.length - count + i].encoded;
+                }
+
+                encoded = encode(this.version, MessageConstants.ROOM_LIST_CHANGES, 0, 1, bytes);
+                this.deltas.set(count, encoded);
+            }
+            return encoded;
+        }
+
+        /**
+         * Returns the index of the first change newer than the given version.
+         */
+        private int firstChangeAfter(int version) {
+            int low = 0;
+            int high = this.changes.length;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (this.changes[middle].version <= version) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+    }
+}
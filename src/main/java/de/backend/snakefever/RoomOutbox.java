@@ -0,0 +1,284 @@
+package de.backend.snakefever;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import de.backend.snakefever.game.ArenaEncoder;
+import de.backend.snakefever.game.IngamePlayer;
+import de.backend.snakefever.game.SnapshotHistory;
+import de.backend.snakefever.game.World;
+import de.backend.snakefever.metrics.MessageMetrics;
+import de.backend.snakefever.messageConstants.MessageCodec;
+import de.backend.snakefever.messageConstants.MessageConstants;
+
+/**
+ * Collects everything that happens in a room during one tick and sends it as one
+ * {@link MessageCodec.RoomFrame} per player at the end of the tick.<p>
+ * Events can be queued from any thread. The frame is encoded once per tick, only the room state
+ * depends on the snapshot acknowledged by the player, so players sharing the same ack share the
+ * same frame.<p>
+ * In an arena every player gets its own frame with the part of the world around its snake instead
+ * of a room state, built from the parts shared by all players, see {@link ArenaEncoder}.<p>
+ * Spectators get a keyframe frame, encoded once per tick no matter how many spectators there are,
+ * see {@link SpectatorGroup}.
+ * @see MessageConstants#EVENT_ROOM_FRAME_BROADCAST
+ */
+public final class RoomOutbox {
+    // encoded events queued since the last flush
+    private final Queue<byte[]> queuedEvents = new ConcurrentLinkedQueue<>();
+
+    // the scores sent last, to only send changes
+    private final int[] sentScores;
+
+    // the events of the current tick, shared by all frames
+    private ByteBuffer events = ByteBuffer.allocate(1024);
+    // the events since the last frame of the delayed spectator feed
+    private ByteBuffer spectatorEvents = ByteBuffer.allocate(1024);
+    // the frame that is currently encoded
+    private ByteBuffer frame = ByteBuffer.allocate(4096);
+
+    // the frames encoded in the current flush with their base sequence
+    private final int[] encodedBases;
+    private final byte[][] encodedFrames;
+
+    // encodes the views of the players of an arena, null if the room is no arena
+    private final ArenaEncoder arena;
+
+    // counts the fan-out of the frames
+    private final MessageMetrics messageMetrics;
+
+    /**
+     * Creates an outbox.
+     * @param slotCount the amount of snake slots in the world of the room
+     * @param maxPlayers the maximum amount of players receiving frames
+     * @param arena encodes the views of the players, null if the room is no arena
+     * @param messageMetrics the metrics counting the frames
+     */
+    public RoomOutbox(int slotCount, int maxPlayers, ArenaEncoder arena, MessageMetrics messageMetrics) {
+        this.arena = arena;
+        this.messageMetrics = messageMetrics;
+        this.sentScores = new int[slotCount];
+        this.encodedBases = new int[maxPlayers];
+        this.encodedFrames = new byte[maxPlayers][];
+    }
+
+    /**
+     * Queues a player join for the next frame, can be called from any thread.
+     */
+    public void playerJoined(String name) {
+        ByteBuffer buffer = ByteBuffer.allocate(MessageCodec.RoomPlayerJoin.MAX_SIZE);
+        MessageCodec.RoomPlayerJoin.encode(buffer, name);
+        this.queuedEvents.add(toArray(buffer));
+    }
+
+    /**
+     * Queues a player leave for the next frame, can be called from any thread.
+     */
+    public void playerLeft(String name) {
+        ByteBuffer buffer = ByteBuffer.allocate(MessageCodec.RoomPlayerLeave.MAX_SIZE);
+        MessageCodec.RoomPlayerLeave.encode(buffer, name);
+        this.queuedEvents.add(toArray(buffer));
+    }
+
+    /**
+     * Drops all queued events and forgets the sent scores, so the outbox can be used for a new room.
+     */
+    public void reset() {
+        this.queuedEvents.clear();
+        this.spectatorEvents.clear();
+        Arrays.fill(this.sentScores, 0);
+        if (this.arena != null)
+            this.arena.reset();
+    }
+
+    /**
+     * Takes a snapshot of the world and sends all queued events, score changes and the room state
+     * to the players and spectators, must only be called by the thread ticking the room.
+     * @param players the players of the room
+     * @param ingamePlayers the snakes of the players in the same order
+     * @param spectators the spectators of the room
+     * @param world the world of the room
+     * @param snapshots the snapshot history of the room, null for an arena
+     */
+    public void flush(List<Player> players, List<IngamePlayer> ingamePlayers, SpectatorGroup spectators, World world, SnapshotHistory snapshots) {
+        this.events.clear();
+
+        byte[] event;
+        while ((event = this.queuedEvents.poll()) != null) {
+            this.events = ensureCapacity(this.events, 5 + event.length);
+            MessageCodec.putVarInt(this.events, event.length);
+            this.events.put(event);
+        }
+
+        // the scores of an arena are sent with the snakes in view
+        for (int slot = 0; this.arena == null && slot < this.sentScores.length; slot++) {
+            int score = world.getScore(slot);
+            if (score != this.sentScores[slot]) {
+                this.sentScores[slot] = score;
+                this.events = ensureCapacity(this.events, 1 + MessageCodec.RoomScore.MAX_SIZE);
+                // the encoded score is always shorter than 128 bytes, so its length prefix is one byte
+                int lengthPosition = this.events.position();
+                this.events.put((byte) 0);
+                MessageCodec.RoomScore.encode(this.events, slot, score);
+                this.events.put(lengthPosition, (byte) (this.events.position() - lengthPosition - 1));
+            }
+        }
+        this.events.flip();
+
+        if (this.arena != null) {
+            this.flushArena(players, ingamePlayers, spectators, world);
+            return;
+        }
+
+        if (players.isEmpty())
+            return;
+
+        snapshots.capture(world);
+        this.messageMetrics.onBroadcast(players.size());
+        long serverTime = System.currentTimeMillis();
+
+        // the keyframe, if a player needed one
+        byte[] keyframe = null;
+        int encodedCount = 0;
+        int epoch = snapshots.getEpoch();
+        for (Player player : players) {
+            int base = player.getAckedSnapshot(epoch);
+            if (!snapshots.contains(base))
+                base = -1;
+
+            byte[] frame = null;
+            for (int i = 0; i < encodedCount; i++) {
+                if (this.encodedBases[i] == base) {
+                    frame = this.encodedFrames[i];
+                    break;
+                }
+            }
+
+            if (frame == null) {
+                frame = this.encodeFrame(world.getTick(), serverTime, this.events, snapshots.encode(base));
+                if (base == -1)
+                    keyframe = frame;
+                if (encodedCount < this.encodedBases.length) {
+                    this.encodedBases[encodedCount] = base;
+                    this.encodedFrames[encodedCount] = frame;
+                    encodedCount++;
+                }
+            }
+
+            // only queued, a slow player gets the newest frame once its socket is ready
+            player.sendFrame(frame);
+        }
+
+        for (int i = 0; i < encodedCount; i++) {
+            this.encodedFrames[i] = null;
+        }
+
+        this.flushSpectators(spectators, world, snapshots, serverTime, keyframe);
+    }
+
+    /**
+     * Sends every player of an arena its view, the frames are encoded per player.
+     */
+    private void flushArena(List<Player> players, List<IngamePlayer> ingamePlayers, SpectatorGroup spectators, World world) {
+        long serverTime = System.currentTimeMillis();
+        if (!players.isEmpty())
+            this.messageMetrics.onBroadcast(players.size());
+
+        for (int i = 0; i < players.size(); i++) {
+            players.get(i).sendFrame(this.encodeArenaFrame(world.getTick(), serverTime, this.events, this.arena.encodeView(ingamePlayers.get(i))));
+        }
+
+        this.flushSpectators(spectators, world, null, serverTime, null);
+    }
+
+    /**
+     * Sends the frames of the spectators, every frame is encoded once and shared by all spectators of its feed.
+     * @param snapshots the snapshot history of the room, null for an arena
+     * @param keyframe the keyframe of this tick if it was already encoded for a player, otherwise null
+     */
+    private void flushSpectators(SpectatorGroup spectators, World world, SnapshotHistory snapshots, long serverTime, byte[] keyframe) {
+        long now = System.nanoTime();
+        if (spectators.hasLiveSpectators()) {
+            if (keyframe == null)
+                keyframe = this.encodeKeyframe(world, snapshots, serverTime, this.events);
+            spectators.publishLive(keyframe);
+        }
+
+        if (!spectators.hasDelayedSpectators()) {
+            this.spectatorEvents.clear();
+            spectators.publishDelayed(now);
+            return;
+        }
+
+        // the delayed feed skips ticks, so the events of the skipped ticks are sent with the next frame
+        this.spectatorEvents = ensureCapacity(this.spectatorEvents, this.events.remaining());
+        this.spectatorEvents.put(this.events.duplicate());
+
+        if (spectators.isDelayedFrameDue()) {
+            this.spectatorEvents.flip();
+            // the state is always a keyframe, the delayed spectators are behind any snapshot in the history
+            spectators.queueDelayed(this.encodeKeyframe(world, snapshots, serverTime, this.spectatorEvents), now);
+            this.spectatorEvents.clear();
+        }
+        spectators.publishDelayed(now);
+    }
+
+    /**
+     * Encodes a frame with the whole room, the snapshot keyframe or the whole arena.
+     */
+    private byte[] encodeKeyframe(World world, SnapshotHistory snapshots, long serverTime, ByteBuffer events) {
+        if (this.arena != null)
+            return this.encodeArenaFrame(world.getTick(), serverTime, events, this.arena.encodeAll());
+        return this.encodeFrame(world.getTick(), serverTime, events, snapshots.encode(-1));
+    }
+
+    /**
+     * Encodes a frame of an arena.
+     * @param view the events of the view, already prefixed with their lengths
+     */
+    private byte[] encodeArenaFrame(long tick, long serverTime, ByteBuffer events, ByteBuffer view) {
+        this.frame.clear();
+        this.frame = ensureCapacity(this.frame, MessageCodec.RoomFrame.MAX_SIZE + events.remaining() + view.remaining());
+
+        MessageCodec.RoomFrame.encode(this.frame, (int) tick, serverTime);
+        this.frame.put(events.duplicate());
+        this.frame.put(view);
+
+        return toArray(this.frame);
+    }
+
+    private byte[] encodeFrame(long tick, long serverTime, ByteBuffer events, ByteBuffer state) {
+        this.frame.clear();
+        this.frame = ensureCapacity(this.frame, MessageCodec.RoomFrame.MAX_SIZE + events.remaining() + 5 + state.remaining());
+
+        MessageCodec.RoomFrame.encode(this.frame, (int) tick, serverTime);
+        this.frame.put(events.duplicate());
+        MessageCodec.putVarInt(this.frame, state.remaining());
+        this.frame.put(state);
+
+        return toArray(this.frame);
+    }
+
+    /**
+     * Returns the buffer or a bigger copy of it, if less than the needed bytes are remaining.
+     */
+    private static ByteBuffer ensureCapacity(ByteBuffer buffer, int needed) {
+        if (buffer.remaining() >= needed)
+            return buffer;
+
+        ByteBuffer bigger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + needed));
+        buffer.flip();
+        bigger.put(buffer);
+        return bigger;
+    }
+
+    private static byte[] toArray(ByteBuffer buffer) {
+        byte[] array = new byte[buffer.position()];
+        buffer.flip();
+        buffer.get(array);
+        return array;
+    }
+}
@@ -0,0 +1,113 @@
+package de.backend.snakefever;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import de.backend.snakefever.metrics.MessageMetrics;
+
+/**
+ * Recycles finished rooms, so a new room reuses the world, snapshot history and outbox buffers of an
+ * old one instead of allocating them again.<p>
+ * The pool is bounded, finished rooms over the limit are left to the garbage collector. Arenas are
+ * never pooled, they are rare and much bigger than the rooms asked for.
+ */
+public final class RoomPool {
+    /**
+     * The default maximum amount of pooled rooms.
+     */
+    public static final int DEFAULT_MAX_SIZE = 256;
+
+    // the finished rooms waiting to be reused
+    private final Queue<Room> rooms = new ConcurrentLinkedQueue<>();
+    // the size of the queue, which is not constant time on the queue itself
+    private final AtomicInteger size = new AtomicInteger();
+    private final int maxSize;
+
+    // passed to newly created rooms
+    private final MessageMetrics messageMetrics;
+    private final RoomDirectory directory;
+    private final Executor spectatorSender;
+
+    private final LongAdder created = new LongAdder();
+    private final LongAdder reused = new LongAdder();
+    private final LongAdder released = new LongAdder();
+
+    /**
+     * Creates an empty pool.
+     * @param maxSize the maximum amount of pooled rooms
+     * @param messageMetrics the metrics counting the frames of created rooms
+     * @param directory the room list created rooms are listed in
+     * @param spectatorSender sends the frames to the spectators of created rooms
+     */
+    public RoomPool(int maxSize, MessageMetrics messageMetrics, RoomDirectory directory, Executor spectatorSender) {
+        this.maxSize = maxSize;
+        this.messageMetrics = messageMetrics;
+        this.directory = directory;
+        this.spectatorSender = spectatorSender;
+    }
+
+    /**
+     * Returns a pooled room with the given id, or a new room if the pool is empty.
+     * @param id the id of the room
+     * @param quickplay is this a quickplay room?
+     */
+    public Room acquire(String id, boolean quickplay) {
+        Room room = this.rooms.poll();
+        if (room == null) {
+            this.created.increment();
+            return new Room(id, quickplay, this.messageMetrics, this.directory, this.spectatorSender);
+        }
+
+        this.size.decrementAndGet();
+        this.reused.increment();
+        room.reset(id, quickplay);
+        return room;
+    }
+
+    /**
+     * Puts a finished room back into the pool.
+     * @param room the room, it must no longer be registered on the server or ticked by a shard
+     */
+    public void release(Room room) {
+        this.released.increment();
+        if (room.isArena())
+            return;
+        if (this.size.incrementAndGet() > this.maxSize) {
+            this.size.decrementAndGet();
+            return;
+        }
+
+        this.rooms.add(room);
+    }
+
+    /**
+     * Returns the amount of rooms waiting to be reused.
+     */
+    public int getSize() {
+        return this.size.get();
+    }
+
+    /**
+     * Returns the amount of rooms created because the pool was empty.
+     */
+    public long getCreated() {
+        return this.created.sum();
+    }
+
+    /**
+     * Returns the amount of rooms taken from the pool.
+     */
+    public long getReused() {
+        return this.reused.sum();
+    }
+
+    /**
+     * Returns the amount of finished rooms, pooled or not.
+     */
+    public long getReleased() {
+        return this.released.sum();
+    }
+}
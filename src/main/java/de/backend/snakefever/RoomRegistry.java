@@ -0,0 +1,187 @@
+package de.backend.snakefever;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * Thread safe registry of all rooms on the server.<p>
+ * Room ids are generated from a sequence that is mixed through a bijective permutation,
+ * so the ids of one round through the sequence are unique without looking at the existing rooms, while
+ * consecutive ids still look random. Once the sequence wrapped around, the ids of rooms that still exist
+ * are skipped.<p>
+ * In a cluster the highest bits of an id are the node owning the room and only the remaining bits are
+ * permuted, so every node can tell the owner of a room from its id alone, see {@link #nodeOf(String, int)}.
+ */
+public final class RoomRegistry {
+    /**
+     * The length of a room id.
+     */
+    public static final int ID_LENGTH = 8;
+
+    /**
+     * The maximum amount of bits of an id used for the node, a cluster has at most 256 nodes.
+     */
+    public static final int MAX_NODE_BITS = 8;
+
+    // the amount of bits of an id
+    private static final int ID_BITS = 4 * ID_LENGTH;
+
+    // all rooms with their id as key
+    private final ConcurrentHashMap<String, Room> rooms = new ConcurrentHashMap<>();
+
+    // the next sequence number to hand out
+    private final AtomicLong sequence = new AtomicLong();
+
+    // a random key, so the ids differ between server starts
+    private final int key = ThreadLocalRandom.current().nextInt();
+
+    // the node owning the rooms and the amount of id bits used for it
+    private volatile int node;
+    private volatile int nodeBits;
+
+    /**
+     * Makes all generated ids point to a node of a cluster.
+     * @param node the node owning the rooms of this registry
+     * @param nodeBits the amount of bits of an id used for the node, 0 if the server is not part of a cluster
+     * @throws IllegalArgumentException if the node does not fit into the bits
+     * @throws IllegalStateException if ids were already generated
+     */
+    public synchronized void setNode(int node, int nodeBits) {
+        if (nodeBits < 0 || nodeBits > MAX_NODE_BITS || node < 0 || node >= (1 << nodeBits))
+            throw new IllegalArgumentException("Node " + node + " does not fit into " + nodeBits + " bits.");
+        if (this.sequence.get() > 0)
+            throw new IllegalStateException("The node must be set before the first room id is generated.");
+
+        this.node = node;
+        this.nodeBits = nodeBits;
+    }
+
+    /**
+     * Generates a new unique room id.
+     * @return the id with {@link #ID_LENGTH} hex chars, or null if all ids are used up.
+     */
+    public String nextId() {
+        return this.nextId(id -> false, 0);
+    }
+
+    /**
+     * Generates a room id that is neither registered nor reserved.<p>
+     * The sequence wraps around once all ids were handed out, the ids of rooms that are still registered
+     * are skipped then. The sequence values map to distinct ids, so one of the next
+     * {@code size() + reservedCount + 1} values is free, if the id space is not full.
+     * @param reserved tells if an id is reserved, e.g. by a room waiting to be restored
+     * @param reservedCount the amount of reserved ids
+     * @return the id with {@link #ID_LENGTH} hex chars, or null if all ids are used up.
+     */
+    public String nextId(Predicate<String> reserved, int reservedCount) {
+        int bits = ID_BITS - this.nodeBits;
+        long domain = 1L << bits;
+        long attempts = Math.min(domain, (long) this.rooms.size() + reservedCount + 1);
+        for (long i = 0; i < attempts; i++) {
+            long next = this.sequence.getAndIncrement() & (domain - 1);
+            // the node is 0 without a cluster, so the ids are the plain permutation then
+            String id = toHex(permute((int) next ^ this.key, bits) | (int) ((long) this.node << bits));
+            if (!this.rooms.containsKey(id) && !reserved.test(id))
+                return id;
+        }
+        return null;
+    }
+
+    /**
+     * Returns the node owning the room with the given id.
+     * @param id the room id
+     * @param nodeBits the amount of bits of an id used for the node
+     * @return the node or -1, if the id is no valid room id.
+     */
+    public static int nodeOf(String id, int nodeBits) {
+        if (id.length() != ID_LENGTH)
+            return -1;
+
+        long value = 0;
+        for (int i = 0; i < ID_LENGTH; i++) {
+            int digit = Character.digit(id.charAt(i), 16);
+            if (digit < 0)
+                return -1;
+            value = value << 4 | digit;
+        }
+        return (int) (value >>> (ID_BITS - nodeBits));
+    }
+
+    /**
+     * Adds a room.
+     * @param room the room to add
+     * @throws IllegalStateException if there already is a room with the same id
+     */
+    public void add(Room room) {
+        if (this.rooms.putIfAbsent(room.getId(), room) != null)
+            throw new IllegalStateException("Room id " + room.getId() + " is already registered.");
+    }
+
+    /**
+     * Removes a room.
+     * @param room the room to remove
+     * @return true if the room was registered
+     */
+    public boolean remove(Room room) {
+        return this.rooms.remove(room.getId(), room);
+    }
+
+    /**
+     * Returns the room with the given id.
+     * @return null, if there is no such room.
+     */
+    public Room get(String id) {
+        return this.rooms.get(id);
+    }
+
+    /**
+     * Returns a live, read only view of all rooms.<p>
+     * Iterating it never blocks and never throws a ConcurrentModificationException, rooms
+     * added or removed during the iteration may or may not be visible.
+     */
+    public Collection<Room> getRooms() {
+        return Collections.unmodifiableCollection(this.rooms.values());
+    }
+
+    /**
+     * Returns a live, read only view of all room ids.
+     * @see #getRooms()
+     */
+    public Set<String> getRoomIds() {
+        return Collections.unmodifiableSet(this.rooms.keySet());
+    }
+
+    public int size() {
+        return this.rooms.size();
+    }
+
+    /**
+     * Bijective mixing function on the lowest bits of an int (every step is invertible), the higher bits
+     * are cleared. On 32 bits the shifts are 16, 15 and 16.
+     */
+    private static int permute(int x, int bits) {
+        int mask = (int) ((1L << bits) - 1);
+        int half = bits / 2;
+        x &= mask;
+        x ^= x >>> half;
+        x = (x * 0x7feb352d) & mask;
+        x ^= x >>> (half - 1);
+        x = (x * 0x846ca68b) & mask;
+        x ^= x >>> half;
+        return x;
+    }
+
+    private static String toHex(int value) {
+        char[] chars = new char[ID_LENGTH];
+        for (int i = ID_LENGTH - 1; i >= 0; i--) {
+            chars[i] = Character.forDigit(value & 0xF, 16);
+            value >>>= 4;
+        }
+        return new String(chars);
+    }
+}
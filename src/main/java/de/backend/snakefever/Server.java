@@ -1,19 +1,129 @@
 package de.backend.snakefever;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collection;
+import java.util.Comparator;
 import java.util.List;
-import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
-import de.backend.snakefever.messageConstants.MessageConstants;
+import de.backend.snakefever.cluster.Cluster;
+import de.backend.snakefever.cluster.NodeSummary;
+import de.backend.snakefever.journal.InputJournal;
+import de.backend.snakefever.limits.SocketLimits;
+import de.backend.snakefever.metrics.MessageMetrics;
+import de.backend.snakefever.snapshot.RestoredRooms;
+import de.backend.snakefever.snapshot.StateSnapshot;
+import de.backend.snakefever.tick.TickShard;
 import io.socket.socketio.server.SocketIoSocket;
 
 public class Server {
-    // a map of all rooms with the id as key and the room as value
-    private final Map<String, Room> rooms = new HashMap<>();
-    // a list of all players
-    private final List<Player> players = new ArrayList<>();
+    /**
+     * The time between two ticks of a room with players, unless the room asks for another rate.
+     */
+    public static final long TICK_INTERVAL_MILLIS = 50;
+
+    /**
+     * The time between two ticks of a shard, every room and timer fires at a multiple of it.
+     */
+    public static final long TIMER_RESOLUTION_MILLIS = 10;
+
+    /**
+     * The time between two rebuilds of the room list.
+     */
+    public static final long ROOM_LIST_INTERVAL_MILLIS = 250;
+
+    /**
+     * How long writing a snapshot waits for the shards to encode their rooms.
+     */
+    public static final long SNAPSHOT_TIMEOUT_MILLIS = 2000;
+
+    // all rooms with their ids
+    private final RoomRegistry roomRegistry = new RoomRegistry();
+    // all connected players
+    private final PlayerDirectory playerDirectory = new PlayerDirectory();
+    // counts the messages sent and received by all players
+    private final MessageMetrics messageMetrics = new MessageMetrics();
+
+    // the rate limits and outbound queue size of new players
+    private volatile SocketLimits socketLimits = SocketLimits.defaults();
+    // writes the queued messages to the sockets
+    private final ThreadPoolExecutor outboundExecutor;
+
+    // the room list sent to the clients
+    private final RoomDirectory roomDirectory = new RoomDirectory();
+    // recycles the finished rooms
+    private final RoomPool roomPool;
+    // the open arenas, there are only a few, new ones are created while they are synchronized
+    private final List<Room> arenas = new CopyOnWriteArrayList<>();
+
+    // the shards ticking the rooms, every room is owned by exactly one shard
+    private final TickShard[] shards;
+
+    // records the rooms, null if they are not recorded
+    private volatile InputJournal inputJournal;
+    // the cluster this server is a node of
+    private volatile Cluster cluster = Cluster.standalone();
+
+    // the file the rooms are written to, null if they are not
+    private volatile Path snapshotFile;
+    // the time between two snapshots, 0 if they are only written on shutdown
+    private volatile long snapshotIntervalMillis;
+    // the rooms of the snapshot of the last run that were not requested yet, null if there are none
+    private volatile RestoredRooms restoredRooms;
+    // the amount of players that resumed a restored room
+    private final AtomicLong resumedPlayers = new AtomicLong();
+
+    // places players in quickplay rooms
+    private final Matchmaker matchmaker = new Matchmaker(this);
+    // the thread running the matchmaker, the room list rebuilds and the cluster updates, null if the server is not ticking
+    private ScheduledExecutorService matchmakingExecutor;
+    // the simulated clock of tick()
+    private long headlessTime = System.nanoTime();
+
+    /**
+     * Creates a server with one tick shard per available core.
+     */
+    public Server() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates a server.
+     * @param shardCount the amount of threads ticking the rooms
+     */
+    public Server(int shardCount) {
+        this.shards = new TickShard[Math.max(1, shardCount)];
+        for (int i = 0; i < this.shards.length; i++) {
+            this.shards[i] = new TickShard(i, TIMER_RESOLUTION_MILLIS, this::onRoomFinished);
+        }
+
+        AtomicInteger senderCount = new AtomicInteger();
+        int senderThreads = this.socketLimits.getSenderThreads();
+        this.outboundExecutor = new ThreadPoolExecutor(senderThreads, senderThreads, 60, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(), runnable -> {
+                Thread thread = new Thread(runnable, "sender-" + senderCount.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            });
+        this.outboundExecutor.allowCoreThreadTimeOut(true);
+
+        // the senders also fan out the spectator frames
+        this.roomPool = new RoomPool(RoomPool.DEFAULT_MAX_SIZE, this.messageMetrics, this.roomDirectory, this.outboundExecutor);
+    }
 
     /**
      * Adds a player to the server.
@@ -21,97 +131,355 @@ public class Server {
      */
     public void registerPlayer(SocketIoSocket socket) {
         Player player = new Player(socket, this);
-        this.players.add(player);
+        this.playerDirectory.register(player);
         SnakeFever.LOGGER.info("Player " + player.getName() + " connected.");
     }
 
     /**
-     * Creates a room with the requested id.
+     * Creates a room with a new unique id, reusing a finished room if possible.
      * @param quickplay
-     * @return the created room.
+     * @return the created room or null, if no id could be generated.
      */
     public Room createRoom(boolean quickplay) {
         String id = this.findEmptyRoomId();
 
         Room room = null;
 
-        if (!id.equals(MessageConstants.ERROR_ROOM_ID_GENERATION_FAILED)) {
-            room = new Room(id, quickplay);
-            this.rooms.put(id, room);
+        if (id != null) {
+            room = this.roomPool.acquire(id, quickplay);
+            this.addRoom(room);
         }
 
         return room;
     }
 
     /**
-     * Returns all the existing rooms.
+     * Reserves a slot in an arena, creating a new arena if all arenas are full.<p>
+     * A successful reservation must be followed by {@link Player#joinRoom(Room)} or {@link Room#releaseSlot()}.
+     * @return the arena or null, if no id could be generated.
+     */
+    public Room reserveArenaSlot() {
+        for (Room arena : this.arenas) {
+            if (arena.tryReserveSlot())
+                return arena;
+        }
+
+        synchronized (this.arenas) {
+            // another player may have created an arena in the meantime
+            for (Room arena : this.arenas) {
+                if (arena.tryReserveSlot())
+                    return arena;
+            }
+
+            String id = this.findEmptyRoomId();
+            if (id == null)
+                return null;
+
+            Room arena = new Room(id, false, true, ThreadLocalRandom.current().nextLong(), this.messageMetrics, this.roomDirectory, this.outboundExecutor);
+            // reserved before it is added, so no one else fills the new arena first
+            arena.tryReserveSlot();
+            this.arenas.add(arena);
+            this.addRoom(arena);
+            return arena;
+        }
+    }
+
+    /**
+     * Adds a room restored from the snapshot on its first request.
+     * @return the room or null, if it is not in the snapshot.
      */
-    public List<Room> getRooms() {
-        return new ArrayList<>(this.rooms.values());
+    private Room restoreRoom(RestoredRooms restoredRooms, String id) {
+        synchronized (restoredRooms) {
+            // another request may have restored it in the meantime
+            Room room = this.roomRegistry.get(id);
+            if (room != null)
+                return room;
+
+            room = restoredRooms.take(id, this.messageMetrics, this.roomDirectory, this.outboundExecutor);
+            if (room == null)
+                return null;
+
+            if (room.isArena())
+                this.arenas.add(room);
+            this.addRoom(room);
+            // quickplay players may fill the free slots
+            this.matchmaker.onSlotFreed(room);
+            SnakeFever.LOGGER.info("Restored room " + id + " from the snapshot.");
+            return room;
+        }
+    }
+
+    private void addRoom(Room room) {
+        this.roomRegistry.add(room);
+        this.getShard(room.getId()).addRoom(room);
+        // listed once it can be joined by its id
+        room.onListingChanged();
     }
 
     /**
-     * Returns all the existing room ids.
+     * Forgets a finished room and puts it into the pool, called by the shard that ticked it.
      */
-    public List<String> getRoomIds() {
-        return new ArrayList<>(this.rooms.keySet());
+    private void onRoomFinished(Room room) {
+        // logged first, the pool may hand the room out with a new id right after the release
+        SnakeFever.LOGGER.info("Room " + room.getId() + " was empty for " + Room.EMPTY_GRACE_MILLIS + "ms and was closed.");
+        this.roomRegistry.remove(room);
+        if (room.isArena())
+            this.arenas.remove(room);
+        this.roomPool.release(room);
     }
 
     /**
-     * Returns all the room map with id and room object.
+     * Returns a live, read only view of all existing rooms.
+     * @see RoomRegistry#getRooms()
      */
-    public Map<String, Room> getRoomMap() {
-        return this.rooms;
+    public Collection<Room> getRooms() {
+        return this.roomRegistry.getRooms();
     }
 
     /**
-     * Searches for a quickplay room id.
-     * @return a room, where quickplay is true and that is not full.
+     * Returns a live, read only view of all existing room ids.
+     * @see RoomRegistry#getRoomIds()
      */
-    public Room findQuickPlayRoom() {
-        for (Room room : this.getRooms()) {
-            if (room.isQuickplay() && !room.isFull()) {
-                return room;
-            }
+    public Set<String> getRoomIds() {
+        return this.roomRegistry.getRoomIds();
+    }
+
+    /**
+     * Returns the room with the given id, a room of the restored snapshot is restored on its first request.
+     * @return null, if there is no such room.
+     */
+    public Room getRoom(String id) {
+        Room room = this.roomRegistry.get(id);
+        RestoredRooms restoredRooms = this.restoredRooms;
+        if (room != null || restoredRooms == null || !restoredRooms.contains(id))
+            return room;
+
+        return this.restoreRoom(restoredRooms, id);
+    }
+
+    /**
+     * Returns the room list sent to the clients, rebuilt every {@link #ROOM_LIST_INTERVAL_MILLIS}.
+     */
+    public RoomDirectory getRoomDirectory() {
+        return this.roomDirectory;
+    }
+
+    /**
+     * Returns the pool recycling the finished rooms.
+     */
+    public RoomPool getRoomPool() {
+        return this.roomPool;
+    }
+
+    public MessageMetrics getMessageMetrics() {
+        return this.messageMetrics;
+    }
+
+    /**
+     * Returns the limits of the player sockets.
+     */
+    public SocketLimits getSocketLimits() {
+        return this.socketLimits;
+    }
+
+    /**
+     * Sets the limits of the player sockets, players that are already connected keep their limits.
+     */
+    public void setSocketLimits(SocketLimits socketLimits) {
+        this.socketLimits = socketLimits;
+
+        // the maximum may never be below the core size, so grow the maximum first and shrink it last
+        int senderThreads = socketLimits.getSenderThreads();
+        if (senderThreads > this.outboundExecutor.getMaximumPoolSize()) {
+            this.outboundExecutor.setMaximumPoolSize(senderThreads);
+            this.outboundExecutor.setCorePoolSize(senderThreads);
+        } else {
+            this.outboundExecutor.setCorePoolSize(senderThreads);
+            this.outboundExecutor.setMaximumPoolSize(senderThreads);
         }
+    }
 
-        return this.createRoom(true);
+    /**
+     * Records all rooms created from now on into a journal, every shard gets its own recorder.
+     * @param inputJournal the journal
+     */
+    public synchronized void setInputJournal(InputJournal inputJournal) {
+        this.inputJournal = inputJournal;
+        for (TickShard shard : this.shards) {
+            shard.setJournal(inputJournal.newRecorder());
+        }
     }
 
     /**
-     * Find an id of an empty room.
-     * @return the id as string.
+     * Returns the journal recording the rooms.
+     * @return null if the rooms are not recorded.
+     */
+    public InputJournal getInputJournal() {
+        return this.inputJournal;
+    }
+
+    /**
+     * Makes this server a node of a cluster, the ids of all rooms created from now on point to the node.
+     * Must be called before the first room is created.
+     * @param cluster the cluster
+     * @throws IllegalStateException if a room was already created
      */
-    private String findEmptyRoomId() {
-        String randomId = "";
+    public synchronized void setCluster(Cluster cluster) {
+        this.roomRegistry.setNode(cluster.getNode(), cluster.getNodeBits());
+        this.cluster = cluster;
+    }
 
-        // we try it for some time to generate the id
-        for (int i = 0; i < 100; i++) {
-            // generate a long, the hex string will be 8 chars long at maximum
-            randomId = Long.toHexString(ThreadLocalRandom.current().nextLong(0xFFFFFFFFl + 0x1l));
+    /**
+     * Returns the cluster this server is a node of, a standalone server is the only node of its cluster.
+     */
+    public Cluster getCluster() {
+        return this.cluster;
+    }
+
+    /**
+     * Writes the rooms to a snapshot file, on shutdown and periodically while the server is ticking.
+     * @param file the snapshot file
+     * @param intervalMillis the time between two snapshots, 0 to only write it on shutdown
+     */
+    public void setSnapshotFile(Path file, long intervalMillis) {
+        this.snapshotIntervalMillis = intervalMillis;
+        this.snapshotFile = file;
+    }
+
+    /**
+     * Writes the rooms with players to the snapshot file, does nothing if there is no file.<p>
+     * While the server is ticking, every shard encodes its rooms between two ticks. Once the server
+     * stopped ticking, the snapshot holds the state of the last tick.
+     * @see StateSnapshot
+     */
+    public void writeSnapshot() {
+        Path file = this.snapshotFile;
+        if (file == null)
+            return;
+
+        try {
+            long start = System.nanoTime();
+            int rooms = StateSnapshot.write(this.shards, file, SNAPSHOT_TIMEOUT_MILLIS);
+            SnakeFever.LOGGER.info("Wrote " + rooms + " rooms to the snapshot " + file + " in "
+                + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + "ms.");
+        } catch (IOException e) {
+            SnakeFever.LOGGER.error("Could not write the snapshot " + file + ".", e);
+        }
+    }
 
-            // look if there already is a room with that id
-            if (!this.getRoomIds().contains(randomId))
-                break;
+    /**
+     * Restores the rooms of the snapshot of the last run. They are restored one by one when they are
+     * first requested. The file is read at once and then renamed to {@code .restored}, so it is never
+     * restored twice. A snapshot that can not be read is renamed to {@code .failed} instead, so the next
+     * snapshot does not replace it. Must be called before the server starts ticking.
+     * @param file the snapshot file
+     * @return the amount of rooms waiting to be restored, 0 if there is no snapshot or it is too old.
+     * @throws IOException if the snapshot could not be read.
+     */
+    public int restoreSnapshot(Path file) throws IOException {
+        if (!Files.exists(file))
+            return 0;
 
-            randomId = MessageConstants.ERROR_ROOM_ID_GENERATION_FAILED;
+        RestoredRooms restoredRooms;
+        try {
+            restoredRooms = RestoredRooms.open(file);
+        } catch (IOException e) {
+            moveSnapshot(file, ".failed");
+            throw e;
         }
+        moveSnapshot(file, ".restored");
 
-        // ensure, that the id is 8 chars long
-        int missingChars = 8 - randomId.length();
-        for (int i = 0; i < missingChars; i++) {
-            randomId += "0";
+        if (System.currentTimeMillis() - restoredRooms.getCreatedMillis() > RestoredRooms.MAX_AGE_MILLIS) {
+            SnakeFever.LOGGER.warn("Ignoring the snapshot " + file + ", it is older than " + RestoredRooms.MAX_AGE_MILLIS + "ms.");
+            return 0;
         }
 
-        return randomId;
+        this.restoredRooms = restoredRooms;
+        return restoredRooms.size();
+    }
+
+    /**
+     * Returns the amount of rooms of the snapshot that were not requested yet.
+     */
+    public int getPendingRestoredRooms() {
+        RestoredRooms restoredRooms = this.restoredRooms;
+        return restoredRooms != null ? restoredRooms.size() : 0;
+    }
+
+    /**
+     * Counts a player that resumed a restored room.
+     */
+    void onPlayerResumed() {
+        this.resumedPlayers.incrementAndGet();
+    }
+
+    /**
+     * Returns the amount of players that resumed a restored room.
+     */
+    public long getResumedPlayers() {
+        return this.resumedPlayers.get();
+    }
+
+    /**
+     * Returns the executor writing the queued messages of the players to their sockets.
+     */
+    public Executor getOutboundExecutor() {
+        return this.outboundExecutor;
+    }
+
+    /**
+     * Returns the matchmaker placing players in quickplay rooms.
+     */
+    public Matchmaker getMatchmaker() {
+        return this.matchmaker;
+    }
+
+    /**
+     * Find an id of an empty room.
+     * @return the id as string or null, if all ids are used up.
+     * @see RoomRegistry#nextId(java.util.function.Predicate, int)
+     */
+    public String findEmptyRoomId() {
+        RestoredRooms restoredRooms = this.restoredRooms;
+        if (restoredRooms == null)
+            return this.roomRegistry.nextId();
+
+        // the ids of the last run are random, but may still be waiting to be restored
+        return this.roomRegistry.nextId(restoredRooms::contains, restoredRooms.size());
     }
 
     /**
      * Get all the players on the whole server.
-     * @return a list of all online players.
+     * @return a live, read only view of all online players.
+     * @see PlayerDirectory#getPlayers()
+     */
+    public Collection<Player> getPlayers() {
+        return this.playerDirectory.getPlayers();
+    }
+
+    /**
+     * Returns the amount of online players.
+     */
+    public int getPlayerCount() {
+        return this.playerDirectory.size();
+    }
+
+    /**
+     * Returns the player with the given socket id.
+     * @return null, if there is no such player.
      */
-    public List<Player> getPlayers() {
-        return this.players;
+    public Player getPlayer(String socketId) {
+        return this.playerDirectory.getBySocketId(socketId);
+    }
+
+    /**
+     * Tries to give a player a new name.
+     * @param player the player to rename
+     * @param name the new name
+     * @return false if another player already has this name.
+     */
+    public boolean renamePlayer(Player player, String name) {
+        return this.playerDirectory.rename(player, name);
     }
 
     /**
@@ -119,15 +487,156 @@ public class Server {
      */
     public void removePlayer(Player player) {
         player.leaveRoom();
-        this.players.remove(player);
+        this.playerDirectory.remove(player);
         SnakeFever.LOGGER.info("Player " + player.getName() + " disconnected.");
     }
 
     /**
-     * Ticks all rooms and their players to update their position, etc.
+     * Returns the shard owning the room with the given id.<p>
+     * The shard only depends on the id, so a room always stays on the same shard.
+     * @param roomId the id of the room
+     */
+    public TickShard getShard(String roomId) {
+        return this.shards[Math.floorMod(roomId.hashCode(), this.shards.length)];
+    }
+
+    /**
+     * Returns all tick shards of this server.
+     */
+    public TickShard[] getShards() {
+        return this.shards;
+    }
+
+    /**
+     * Starts ticking all rooms, every shard on its own thread.<p>
+     * The shards are spread evenly over the timer resolution, so they don't all wake up at the same time.
+     */
+    public synchronized void startTicking() {
+        if (this.matchmakingExecutor == null) {
+            this.matchmakingExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> new Thread(runnable, "matchmaker"));
+            this.matchmakingExecutor.scheduleAtFixedRate(this::tickMatchmaker, 0, TICK_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+            this.matchmakingExecutor.scheduleAtFixedRate(this::rebuildRoomList, 0, ROOM_LIST_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+            this.matchmakingExecutor.scheduleAtFixedRate(this::updateCluster, 0, Cluster.PUBLISH_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+            if (this.snapshotIntervalMillis > 0)
+                this.matchmakingExecutor.scheduleAtFixedRate(this::writeSnapshot, this.snapshotIntervalMillis, this.snapshotIntervalMillis, TimeUnit.MILLISECONDS);
+            if (this.restoredRooms != null)
+                this.matchmakingExecutor.schedule(this::expireRestoredRooms, RestoredRooms.EXPIRY_MILLIS, TimeUnit.MILLISECONDS);
+        }
+
+        long resolutionNanos = TimeUnit.MILLISECONDS.toNanos(TIMER_RESOLUTION_MILLIS);
+        for (TickShard shard : this.shards) {
+            shard.start(TIMER_RESOLUTION_MILLIS, resolutionNanos * shard.getIndex() / this.shards.length);
+        }
+    }
+
+    /**
+     * Stops ticking all rooms.
+     */
+    public synchronized void stopTicking() {
+        if (this.matchmakingExecutor != null) {
+            this.matchmakingExecutor.shutdown();
+            this.matchmakingExecutor = null;
+        }
+
+        for (TickShard shard : this.shards) {
+            shard.stop();
+        }
+    }
+
+    /**
+     * Advances the server by one game tick: every room with players is ticked once, idle rooms and
+     * timers as far as they are due. The room list is rebuilt on every call.<p>
+     * This drives the shards on the calling thread with a simulated clock, so the result does not depend
+     * on how fast it is called. It must only be used while the server is not ticking on its own, e.g.
+     * when running headless.
      */
     public void tick() {
-        this.rooms.values().forEach(room -> room.tick());
+        this.tickMatchmaker();
+
+        long resolutionNanos = TimeUnit.MILLISECONDS.toNanos(TIMER_RESOLUTION_MILLIS);
+        for (long step = 0; step < TICK_INTERVAL_MILLIS / TIMER_RESOLUTION_MILLIS; step++) {
+            this.headlessTime += resolutionNanos;
+            for (TickShard shard : this.shards) {
+                shard.tick(this.headlessTime);
+            }
+        }
+
+        this.rebuildRoomList();
+    }
+
+    private void tickMatchmaker() {
+        try {
+            this.matchmaker.tick();
+        } catch (Exception e) {
+            // never let an error stop the matchmaking
+            SnakeFever.LOGGER.error("Matchmaking failed.", e);
+        }
+    }
+
+    private void rebuildRoomList() {
+        try {
+            this.roomDirectory.rebuild();
+        } catch (Exception e) {
+            // never let an error stop the rebuilds
+            SnakeFever.LOGGER.error("Rebuilding the room list failed.", e);
+        }
+    }
+
+    /**
+     * Moves a read snapshot out of the way, next to it with the given suffix.
+     */
+    private static void moveSnapshot(Path file, String suffix) {
+        Path target = file.resolveSibling(file.getFileName() + suffix);
+        try {
+            Files.move(file, target, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            SnakeFever.LOGGER.warn("Could not move the snapshot " + file + " to " + target + ".", e);
+        }
+    }
+
+    private void expireRestoredRooms() {
+        RestoredRooms restoredRooms = this.restoredRooms;
+        this.restoredRooms = null;
+        int dropped = restoredRooms.clear();
+        if (dropped > 0)
+            SnakeFever.LOGGER.info("Dropped " + dropped + " restored rooms nobody came back to.");
+    }
+
+    private void updateCluster() {
+        try {
+            this.cluster.update(this.summarize());
+        } catch (Exception e) {
+            // never let an error stop the updates, the other nodes consider this one down until it works again
+            SnakeFever.LOGGER.error("Updating the cluster directory failed.", e);
+        }
+    }
+
+    /**
+     * Returns the summary this server shares with the other nodes of its cluster.
+     */
+    public NodeSummary summarize() {
+        int rooms = 0;
+        int openQuickplaySlots = 0;
+        for (Room room : this.getRooms()) {
+            rooms++;
+            int reserved = room.getReservedSlots();
+            if (room.isQuickplay() && reserved >= 0 && reserved < room.getMaxPlayers())
+                openQuickplaySlots += room.getMaxPlayers() - reserved;
+        }
+
+        Cluster cluster = this.cluster;
+        return new NodeSummary(cluster.getNode(), cluster.getUrl(), this.getPlayerCount(), rooms, openQuickplaySlots, System.currentTimeMillis());
+    }
+
+    /**
+     * Returns the rooms with the highest tick latency.
+     * @param limit the maximum amount of rooms to return
+     * @return the rooms, sorted by their 99th percentile tick latency, slowest first.
+     */
+    public List<Room> getSlowestRooms(int limit) {
+        List<Room> rooms = new ArrayList<>(this.getRooms());
+        rooms.sort(Comparator.comparingLong((Room room) -> room.getTickLatency().getValueAtPercentile(99)).reversed());
+        return rooms.subList(0, Math.min(limit, rooms.size()));
     }
 
     /**
@@ -135,11 +644,6 @@ public class Server {
      * @param name the player name to check
      */
     public boolean isNameTaken(String name) {
-        for (Player player : players) {
-            if (player.getName().equals(name))
-                return true;
-        }
-
-        return false;
+        return this.playerDirectory.isNameTaken(name);
     }
 }
@@ -0,0 +1,313 @@
+package de.backend.snakefever;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Properties;
+
+import de.backend.snakefever.cluster.Cluster;
+import de.backend.snakefever.cluster.ClusterDirectory;
+import de.backend.snakefever.cluster.FileClusterDirectory;
+import de.backend.snakefever.cluster.InMemoryClusterDirectory;
+import de.backend.snakefever.journal.InputJournal;
+import de.backend.snakefever.limits.SocketLimits;
+
+/**
+ * The settings of the server: jetty threads and connector, web sockets and engine io, socket limits, the
+ * input journal, the cluster and the room snapshots.<p>
+ * The settings are read from a properties file and can be overridden by system properties with the
+ * same key, e.g. {@code -Dsnakefever.port=8080}. The file is {@code snakefever.properties} in the
+ * working directory or the file given by {@code -Dsnakefever.config=path}. Missing keys use the defaults
+ * below, which match the behaviour of the server without any config.
+ * <ul>
+ * <li>snakefever.port (3000)</li>
+ * <li>snakefever.admin.host: the address the admin connector serving /metrics and /stats listens on, the
+ * loopback address keeps them private to this host (127.0.0.1)</li>
+ * <li>snakefever.admin.port: the port of the admin connector, -1 disables it (3001)</li>
+ * <li>snakefever.corsOrigins: comma separated allowed origins, empty allows all ("")</li>
+ * <li>snakefever.threads.min (8), snakefever.threads.max (200): the jetty thread pool size</li>
+ * <li>snakefever.threads.idleTimeout: milliseconds until an idle pool thread stops (60000)</li>
+ * <li>snakefever.threads.virtual: handle connections on virtual threads, if the JVM supports them (false)</li>
+ * <li>snakefever.acceptors, snakefever.selectors: -1 lets jetty choose by the amount of cores (-1)</li>
+ * <li>snakefever.acceptQueueSize: the backlog of the server socket, 0 uses the OS default (0)</li>
+ * <li>snakefever.idleTimeout: milliseconds until an idle connection is closed (30000)</li>
+ * <li>snakefever.websocket.idleTimeout: milliseconds until an idle web socket is closed (300000)</li>
+ * <li>snakefever.websocket.writeTimeout: milliseconds a write waits for the client before the web socket is
+ * dropped (5000)</li>
+ * <li>snakefever.websocket.inputBufferSize: bytes read from a web socket at once (4096)</li>
+ * <li>snakefever.websocket.maxTextMessageSize, snakefever.websocket.maxBinaryMessageSize (65536)</li>
+ * <li>snakefever.eio.pingInterval (25000), snakefever.eio.pingTimeout (20000): engine io heartbeat in milliseconds</li>
+ * <li>snakefever.eio.maxTimeoutThreadPoolSize: threads for the engine io timers (20)</li>
+ * <li>snakefever.polling.maxParked: long-polling requests allowed to wait for data at the same time (10000)</li>
+ * <li>snakefever.limits.&lt;event&gt;.rate, snakefever.limits.&lt;event&gt;.burst: the token bucket of an inbound
+ * event, e.g. snakefever.limits.player_input_request.rate=60, a rate of 0 removes the limit
+ * (see {@link SocketLimits#defaults()})</li>
+ * <li>snakefever.limits.outbound.maxQueued: messages waiting for a socket until it is disconnected (64)</li>
+ * <li>snakefever.limits.outbound.maxUnsentFrames: room frames replaced before one was sent until the socket is
+ * disconnected (100)</li>
+ * <li>snakefever.limits.outbound.threads: threads writing to the sockets (2 per core, at least 4)</li>
+ * <li>snakefever.journal.dir: records all rooms into an input journal in this directory, empty records nothing ("")</li>
+ * <li>snakefever.journal.segmentSize: bytes per journal segment file (67108864)</li>
+ * <li>snakefever.journal.ringSize: bytes buffered per tick shard until the journal writer catches up (1048576)</li>
+ * <li>snakefever.cluster.nodeBits: bits of a room id used for the node, a cluster has up to 2^nodeBits nodes, 0 runs
+ * the server on its own (0)</li>
+ * <li>snakefever.cluster.node: the index of this node in the cluster (0)</li>
+ * <li>snakefever.cluster.url: the url clients connect to this node with (http://localhost:&lt;port&gt;)</li>
+ * <li>snakefever.cluster.dir: the directory all nodes share their summaries in, empty shares them only inside this
+ * process ("")</li>
+ * <li>snakefever.snapshot.file: writes the rooms to this file on shutdown and restores them on startup, empty
+ * writes nothing ("")</li>
+ * <li>snakefever.snapshot.interval: milliseconds between two snapshots while running, 0 writes it only on
+ * shutdown (0)</li>
+ * </ul>
+ */
+public final class ServerConfig {
+    /**
+     * The system property with the path of the config file.
+     */
+    public static final String CONFIG_FILE_PROPERTY = "snakefever.config";
+
+    // the config file used if no path is given
+    private static final String DEFAULT_CONFIG_FILE = "snakefever.properties";
+    // the prefix of all keys
+    private static final String PREFIX = "snakefever.";
+
+    private final Properties properties;
+
+    private ServerConfig(Properties properties) {
+        this.properties = properties;
+    }
+
+    /**
+     * Returns a config using only the defaults.
+     */
+    public static ServerConfig defaults() {
+        return new ServerConfig(new Properties());
+    }
+
+    /**
+     * Loads the config file, if there is one, and applies the system properties on top.
+     * @throws IOException if the config file could not be read.
+     */
+    public static ServerConfig load() throws IOException {
+        Properties properties = new Properties();
+
+        String configFile = System.getProperty(CONFIG_FILE_PROPERTY);
+        Path path = Paths.get(configFile != null ? configFile : DEFAULT_CONFIG_FILE);
+        if (Files.isRegularFile(path)) {
+            try (InputStream in = Files.newInputStream(path)) {
+                properties.load(in);
+            }
+            SnakeFever.LOGGER.info("Loaded server config from " + path.toAbsolutePath());
+        } else if (configFile != null) {
+            throw new IOException("Config file " + path.toAbsolutePath() + " does not exist.");
+        }
+
+        for (String key : System.getProperties().stringPropertyNames()) {
+            if (key.startsWith(PREFIX))
+                properties.setProperty(key, System.getProperty(key));
+        }
+
+        return new ServerConfig(properties);
+    }
+
+    public int getPort() {
+        return this.getInt("port", 3000);
+    }
+
+    public String getAdminHost() {
+        return this.get("admin.host", "127.0.0.1").trim();
+    }
+
+    /**
+     * Returns the port of the connector serving the metrics and stats, never the game port.
+     * @return -1 if the connector is disabled.
+     */
+    public int getAdminPort() {
+        return this.getInt("admin.port", 3001);
+    }
+
+    /**
+     * Returns the allowed CORS origins.
+     * @return null if all origins are allowed.
+     */
+    public String[] getCorsOrigins() {
+        String origins = this.get("corsOrigins", "").trim();
+        return origins.isEmpty() ? null : origins.split("\\s*,\\s*");
+    }
+
+    public int getMinThreads() {
+        return this.getInt("threads.min", 8);
+    }
+
+    public int getMaxThreads() {
+        return this.getInt("threads.max", 200);
+    }
+
+    public int getThreadIdleTimeout() {
+        return this.getInt("threads.idleTimeout", 60000);
+    }
+
+    public boolean isVirtualThreads() {
+        return Boolean.parseBoolean(this.get("threads.virtual", "false"));
+    }
+
+    public int getAcceptors() {
+        return this.getInt("acceptors", -1);
+    }
+
+    public int getSelectors() {
+        return this.getInt("selectors", -1);
+    }
+
+    public int getAcceptQueueSize() {
+        return this.getInt("acceptQueueSize", 0);
+    }
+
+    public long getIdleTimeout() {
+        return this.getLong("idleTimeout", 30000);
+    }
+
+    public long getWebSocketIdleTimeout() {
+        return this.getLong("websocket.idleTimeout", 300000);
+    }
+
+    public long getWebSocketWriteTimeout() {
+        return this.getLong("websocket.writeTimeout", 5000);
+    }
+
+    public int getWebSocketInputBufferSize() {
+        return this.getInt("websocket.inputBufferSize", 4096);
+    }
+
+    public int getWebSocketMaxTextMessageSize() {
+        return this.getInt("websocket.maxTextMessageSize", 65536);
+    }
+
+    public int getWebSocketMaxBinaryMessageSize() {
+        return this.getInt("websocket.maxBinaryMessageSize", 65536);
+    }
+
+    public long getPingInterval() {
+        return this.getLong("eio.pingInterval", 25000);
+    }
+
+    public long getPingTimeout() {
+        return this.getLong("eio.pingTimeout", 20000);
+    }
+
+    public int getMaxTimeoutThreadPoolSize() {
+        return this.getInt("eio.maxTimeoutThreadPoolSize", 20);
+    }
+
+    public int getMaxParkedPolls() {
+        return this.getInt("polling.maxParked", 10000);
+    }
+
+    /**
+     * Returns the socket limits, the defaults with the configured values applied.
+     */
+    public SocketLimits getSocketLimits() {
+        SocketLimits limits = SocketLimits.defaults();
+
+        String limitsPrefix = PREFIX + "limits.";
+        for (String key : this.properties.stringPropertyNames()) {
+            int end = key.lastIndexOf('.');
+            if (!key.startsWith(limitsPrefix) || end <= limitsPrefix.length())
+                continue;
+
+            String event = key.substring(limitsPrefix.length(), end);
+            if (event.equals("outbound"))
+                continue;
+
+            SocketLimits.Budget budget = limits.getBudget(event);
+            double rate = this.getDouble("limits." + event + ".rate", budget != null ? budget.getRatePerSecond() : 0);
+            int burst = this.getInt("limits." + event + ".burst", budget != null ? budget.getBurst() : 1);
+            limits.setBudget(event, rate, burst);
+        }
+
+        limits.setMaxQueuedMessages(this.getInt("limits.outbound.maxQueued", limits.getMaxQueuedMessages()));
+        limits.setMaxUnsentFrames(this.getInt("limits.outbound.maxUnsentFrames", limits.getMaxUnsentFrames()));
+        limits.setSenderThreads(this.getInt("limits.outbound.threads", limits.getSenderThreads()));
+        return limits;
+    }
+
+    /**
+     * Returns the directory of the input journal.
+     * @return null if no journal should be recorded.
+     */
+    public Path getJournalDirectory() {
+        String directory = this.get("journal.dir", "").trim();
+        return directory.isEmpty() ? null : Paths.get(directory);
+    }
+
+    public long getJournalSegmentSize() {
+        return this.getLong("journal.segmentSize", InputJournal.DEFAULT_SEGMENT_BYTES);
+    }
+
+    public int getJournalRingSize() {
+        return this.getInt("journal.ringSize", InputJournal.DEFAULT_RING_BYTES);
+    }
+
+    /**
+     * Returns the file the rooms are written to on shutdown and restored from on startup.
+     * @return null if the rooms should not be written.
+     */
+    public Path getSnapshotFile() {
+        String file = this.get("snapshot.file", "").trim();
+        return file.isEmpty() ? null : Paths.get(file);
+    }
+
+    public long getSnapshotInterval() {
+        return this.getLong("snapshot.interval", 0);
+    }
+
+    /**
+     * Returns the cluster this server is a node of.
+     * @return a standalone cluster if neither node bits nor a directory are configured.
+     * @throws IOException if the shared directory could not be created.
+     */
+    public Cluster getCluster() throws IOException {
+        int nodeBits = this.getInt("cluster.nodeBits", 0);
+        String directory = this.get("cluster.dir", "").trim();
+        if (nodeBits == 0 && directory.isEmpty())
+            return Cluster.standalone();
+
+        ClusterDirectory clusterDirectory = directory.isEmpty() ? new InMemoryClusterDirectory() : new FileClusterDirectory(Paths.get(directory));
+        String url = this.get("cluster.url", "http://localhost:" + this.getPort()).trim();
+        return new Cluster(this.getInt("cluster.node", 0), nodeBits, url, clusterDirectory);
+    }
+
+    private String get(String key, String defaultValue) {
+        return this.properties.getProperty(PREFIX + key, defaultValue);
+    }
+
+    private int getInt(String key, int defaultValue) {
+        String value = this.get(key, null);
+        try {
+            return value == null ? defaultValue : Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Config value " + PREFIX + key + " is not a number: " + value);
+        }
+    }
+
+    private double getDouble(String key, double defaultValue) {
+        String value = this.get(key, null);
+        try {
+            return value == null ? defaultValue : Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Config value " + PREFIX + key + " is not a number: " + value);
+        }
+    }
+
+    private long getLong(String key, long defaultValue) {
+        String value = this.get(key, null);
+        try {
+            return value == null ? defaultValue : Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Config value " + PREFIX + key + " is not a number: " + value);
+        }
+    }
+}
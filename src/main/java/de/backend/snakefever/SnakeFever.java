@@ -1,13 +1,18 @@
 package de.backend.snakefever;
 
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
+import java.io.IOException;
+import java.nio.file.Path;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import de.backend.snakefever.cluster.Cluster;
+import de.backend.snakefever.cluster.RouteServlet;
+import de.backend.snakefever.journal.InputJournal;
+import de.backend.snakefever.metrics.MetricsServlet;
+import de.backend.snakefever.metrics.ServerMetrics;
 import de.backend.snakefever.socketio.ServerWrapper;
+import de.backend.snakefever.tick.TickStatsServlet;
 import io.socket.engineio.server.Emitter;
 import io.socket.socketio.server.SocketIoNamespace;
 import io.socket.socketio.server.SocketIoSocket;
@@ -19,15 +24,82 @@ public class SnakeFever {
 
     public static final Server SERVER = new Server();
 
-    private static final ScheduledExecutorService ticker = Executors.newScheduledThreadPool(10);
-
     public static SocketIoNamespace ns;
 
     public static void main(String[] args) {
         LOGGER.info("Starting SnakeFever...");
 
-        // null means "allow all" as stated in https://bit.ly/3Gz8WX4
-        final ServerWrapper serverWrapper = new ServerWrapper(3000, null);
+        // port, threads, etc. from snakefever.properties and -Dsnakefever.* system properties
+        ServerConfig config;
+        try {
+            config = ServerConfig.load();
+        } catch (IOException e) {
+            LOGGER.error("Could not load the server config.", e);
+            return;
+        }
+
+        // rate limits and outbound queues of the player sockets
+        SERVER.setSocketLimits(config.getSocketLimits());
+
+        // the node of the cluster, before any room id is generated
+        Cluster cluster;
+        try {
+            cluster = config.getCluster();
+            SERVER.setCluster(cluster);
+        } catch (IOException | IllegalArgumentException e) {
+            LOGGER.error("Could not join the cluster.", e);
+            return;
+        }
+        if (cluster.getUrl() != null) {
+            LOGGER.info("Running as node " + cluster.getNode() + " of the cluster at " + cluster.getUrl());
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    cluster.leave();
+                } catch (IOException e) {
+                    LOGGER.warn("Could not leave the cluster.", e);
+                }
+            }, "cluster-shutdown"));
+        }
+
+        // restore the rooms of the last run, their players resume them with their tokens
+        Path snapshotFile = config.getSnapshotFile();
+        if (snapshotFile != null) {
+            try {
+                int rooms = SERVER.restoreSnapshot(snapshotFile);
+                if (rooms > 0)
+                    LOGGER.info("Restoring " + rooms + " rooms from the snapshot " + snapshotFile);
+            } catch (IOException e) {
+                LOGGER.error("Could not restore the snapshot, starting without the rooms of the last run.", e);
+            }
+
+            SERVER.setSnapshotFile(snapshotFile, config.getSnapshotInterval());
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                // the rooms must not change while they are written
+                SERVER.stopTicking();
+                SERVER.writeSnapshot();
+            }, "snapshot-shutdown"));
+        }
+
+        // record all rooms, so they can be replayed with JournalReplay
+        if (config.getJournalDirectory() != null) {
+            try {
+                InputJournal journal = InputJournal.open(config.getJournalDirectory(), config.getJournalSegmentSize(), config.getJournalRingSize());
+                SERVER.setInputJournal(journal);
+                Runtime.getRuntime().addShutdownHook(new Thread(journal::close, "journal-shutdown"));
+            } catch (IOException e) {
+                LOGGER.error("Could not open the input journal, the rooms are not recorded.", e);
+            }
+        }
+
+        final ServerWrapper serverWrapper = new ServerWrapper(config);
+        // tick statistics, e.g. for the load test, only on the admin connector
+        serverWrapper.addAdminServlet(new TickStatsServlet(SERVER, serverWrapper.getTransportMetrics()), TickStatsServlet.PATH);
+        // prometheus metrics and the same values over JMX
+        ServerMetrics metrics = new ServerMetrics(SERVER, serverWrapper.getTransportMetrics());
+        metrics.registerMBean();
+        serverWrapper.addAdminServlet(new MetricsServlet(metrics), MetricsServlet.PATH);
+        // tells clients which node owns a room
+        serverWrapper.addServlet(new RouteServlet(cluster, config.getCorsOrigins()), RouteServlet.PATH);
         try {
             serverWrapper.startServer();
         } catch (Exception e) {
@@ -55,10 +127,8 @@ public class SnakeFever {
             }
         });
 
-        // tick the server
-        ticker.scheduleAtFixedRate(() -> {
-            SERVER.tick();
-        }, 0, 50, TimeUnit.MILLISECONDS);
+        // tick the server, every shard on its own thread
+        SERVER.startTicking();
 
         LOGGER.info("Startup done!");
     }
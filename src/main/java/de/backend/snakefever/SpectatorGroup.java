@@ -0,0 +1,284 @@
+package de.backend.snakefever;
+
+import java.util.ArrayDeque;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import de.backend.snakefever.messageConstants.MessageConstants;
+import de.backend.snakefever.metrics.MessageMetrics;
+
+/**
+ * The spectators of one room and the frames streamed to them.<p>
+ * Spectators don't take a player slot and never acknowledge a state, so all spectators of a feed get
+ * the same keyframe frame. The thread ticking the room encodes it once per feed and hands it to the
+ * group, a sender thread then queues it for every spectator. So a tick costs the same no matter how
+ * many spectators watch, a spectator only costs a queued frame on the sender thread.<p>
+ * The live feed gets a frame after every tick. The delayed feed gets a frame every
+ * {@link #DELAYED_INTERVAL_TICKS} ticks and {@link #DELAY_MILLIS} behind the room, so it is cheaper and
+ * a spectator can't tell a player what is happening right now.
+ * @see MessageConstants#EVENT_ROOM_SPECTATE_REQUEST
+ */
+public final class SpectatorGroup {
+    /**
+     * The maximum amount of spectators of one room.
+     */
+    public static final int MAX_SPECTATORS = 1024;
+
+    /**
+     * The amount of room ticks per frame of the delayed feed.
+     */
+    public static final int DELAYED_INTERVAL_TICKS = 4;
+
+    /**
+     * How far the delayed feed is behind the room.
+     */
+    public static final long DELAY_MILLIS = 3000;
+
+    private static final long DELAY_NANOS = TimeUnit.MILLISECONDS.toNanos(DELAY_MILLIS);
+
+    // the spectators of each feed
+    private final Set<Player> live = ConcurrentHashMap.newKeySet();
+    private final Set<Player> delayed = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger size = new AtomicInteger();
+    // set once the room finished, until it is reused
+    private volatile boolean closed;
+
+    // queues the frames for the spectators
+    private final Executor sender;
+    private final MessageMetrics messageMetrics;
+
+    // the newest frame of each feed, taken by the sender
+    private final AtomicReference<byte[]> liveFrame = new AtomicReference<>();
+    private final AtomicReference<byte[]> delayedFrame = new AtomicReference<>();
+    // true while a sender is fanning out the frames
+    private final AtomicBoolean sending = new AtomicBoolean();
+
+    // the delayed frames waiting for their time, only used by the thread ticking the room
+    private final ArrayDeque<DelayedFrame> pendingFrames = new ArrayDeque<>();
+    // the room ticks since the last delayed frame, only used by the thread ticking the room
+    private int ticksSinceDelayedFrame;
+
+    /**
+     * Creates an empty group.
+     * @param sender runs the fan-out of the frames
+     * @param messageMetrics counts the fan-out
+     */
+    public SpectatorGroup(Executor sender, MessageMetrics messageMetrics) {
+        this.sender = sender;
+        this.messageMetrics = messageMetrics;
+    }
+
+    /**
+     * Adds a spectator, can be called from any thread.
+     * @param player the spectator
+     * @param feed {@link MessageConstants#SPECTATE_FEED_LIVE} or {@link MessageConstants#SPECTATE_FEED_DELAYED}
+     * @return false if the group is full or the room finished.
+     */
+    public boolean add(Player player, int feed) {
+        if (this.size.incrementAndGet() > MAX_SPECTATORS || this.closed) {
+            this.size.decrementAndGet();
+            return false;
+        }
+
+        (feed == MessageConstants.SPECTATE_FEED_DELAYED ? this.delayed : this.live).add(player);
+
+        // the room may have finished while the spectator was added, close() might not have seen it
+        if (this.closed) {
+            this.remove(player);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Moves a spectator to another feed, keeping its place in the group. Can be called from any thread.
+     * @param player the spectator
+     * @param feed {@link MessageConstants#SPECTATE_FEED_LIVE} or {@link MessageConstants#SPECTATE_FEED_DELAYED}
+     * @return false if the player is no spectator of the group or the room finished.
+     */
+    public boolean setFeed(Player player, int feed) {
+        Set<Player> target = feed == MessageConstants.SPECTATE_FEED_DELAYED ? this.delayed : this.live;
+        Set<Player> other = target == this.live ? this.delayed : this.live;
+        if (this.closed || !(target.contains(player) || other.remove(player)))
+            return false;
+
+        target.add(player);
+
+        // like in add(), close() might not have seen the moved spectator
+        if (this.closed) {
+            this.remove(player);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Removes a spectator, can be called from any thread.
+     */
+    public void remove(Player player) {
+        if (this.live.remove(player) || this.delayed.remove(player))
+            this.size.decrementAndGet();
+    }
+
+    /**
+     * Returns the amount of spectators.
+     */
+    public int size() {
+        return this.size.get();
+    }
+
+    /**
+     * Returns true if there is at least one spectator, of any feed.
+     */
+    public boolean isEmpty() {
+        return this.size.get() == 0;
+    }
+
+    boolean hasLiveSpectators() {
+        return !this.live.isEmpty();
+    }
+
+    boolean hasDelayedSpectators() {
+        return !this.delayed.isEmpty();
+    }
+
+    /**
+     * Counts a room tick and returns if a delayed frame should be encoded on it, only called by the
+     * thread ticking the room.
+     */
+    boolean isDelayedFrameDue() {
+        if (++this.ticksSinceDelayedFrame < DELAYED_INTERVAL_TICKS)
+            return false;
+
+        this.ticksSinceDelayedFrame = 0;
+        return true;
+    }
+
+    /**
+     * Sends a frame to the live spectators, only called by the thread ticking the room.
+     * @param frame the encoded frame, shared by all spectators
+     */
+    void publishLive(byte[] frame) {
+        this.offer(this.liveFrame, frame);
+    }
+
+    /**
+     * Queues a frame for the delayed spectators, only called by the thread ticking the room.
+     * @param frame the encoded frame, shared by all spectators
+     * @param now the current {@link System#nanoTime()}
+     */
+    void queueDelayed(byte[] frame, long now) {
+        this.pendingFrames.add(new DelayedFrame(frame, now));
+    }
+
+    /**
+     * Sends the queued delayed frames that are old enough as one frame, only called by the thread ticking
+     * the room. The state of the newest frame replaces the older states, the events of all frames are kept.
+     * @param now the current {@link System#nanoTime()}
+     */
+    void publishDelayed(long now) {
+        byte[] due = null;
+        DelayedFrame frame;
+        while ((frame = this.pendingFrames.peek()) != null && now - frame.encoded >= DELAY_NANOS) {
+            this.pendingFrames.poll();
+            due = due == null ? frame.frame : PlayerOutbox.mergeFrames(due, frame.frame);
+        }
+
+        if (!this.hasDelayedSpectators()) {
+            this.pendingFrames.clear();
+            return;
+        }
+        if (due != null)
+            this.offer(this.delayedFrame, due);
+    }
+
+    /**
+     * Tells all spectators that the room finished and empties the group, called when the room is
+     * finished and before it is reused.
+     */
+    void close() {
+        this.closed = true;
+        this.closeFeed(this.live);
+        this.closeFeed(this.delayed);
+    }
+
+    private void closeFeed(Set<Player> spectators) {
+        for (Player player : spectators) {
+            if (spectators.remove(player)) {
+                this.size.decrementAndGet();
+                player.onSpectatedRoomClosed(this);
+            }
+        }
+    }
+
+    /**
+     * Prepares a closed group to be used by a new room, must only be called by the thread owning the room.
+     */
+    void reset() {
+        this.liveFrame.set(null);
+        this.delayedFrame.set(null);
+        this.pendingFrames.clear();
+        this.ticksSinceDelayedFrame = 0;
+        this.closed = false;
+    }
+
+    /**
+     * Hands a frame to the sender, merged into the frame of the feed it did not take yet.
+     */
+    private void offer(AtomicReference<byte[]> feedFrame, byte[] frame) {
+        byte[] waiting;
+        byte[] next;
+        do {
+            waiting = feedFrame.get();
+            next = waiting == null ? frame : PlayerOutbox.mergeFrames(waiting, frame);
+        } while (!feedFrame.compareAndSet(waiting, next));
+        this.schedule();
+    }
+
+    private void schedule() {
+        if (this.sending.compareAndSet(false, true))
+            this.sender.execute(this::send);
+    }
+
+    private void send() {
+        do {
+            byte[] frame = this.liveFrame.getAndSet(null);
+            if (frame != null)
+                this.send(this.live, frame);
+
+            frame = this.delayedFrame.getAndSet(null);
+            if (frame != null)
+                this.send(this.delayed, frame);
+
+            this.sending.set(false);
+            // a frame published after the last take but before sending was reset would be stuck otherwise
+        } while ((this.liveFrame.get() != null || this.delayedFrame.get() != null) && this.sending.compareAndSet(false, true));
+    }
+
+    private void send(Set<Player> spectators, byte[] frame) {
+        int recipients = 0;
+        for (Player player : spectators) {
+            player.sendFrame(frame);
+            recipients++;
+        }
+        this.messageMetrics.onSpectatorBroadcast(recipients);
+    }
+
+    /**
+     * A frame of the delayed feed with the time it was encoded.
+     */
+    private static final class DelayedFrame {
+        private final byte[] frame;
+        private final long encoded;
+
+        private DelayedFrame(byte[] frame, long encoded) {
+            this.frame = frame;
+            this.encoded = encoded;
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package de.backend.snakefever.cluster;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import de.backend.snakefever.RoomRegistry;
+
+/**
+ * The view of one node on the cluster of servers it belongs to.<p>
+ * Every room lives on exactly one node and the node is encoded in the highest bits of the room id
+ * (see {@link RoomRegistry#nodeOf(String, int)}), so finding the owner of a room needs no lookup.
+ * The nodes share their {@link NodeSummary summaries} through a {@link ClusterDirectory}: where clients
+ * reach them and how full they are. Requests for a room on another node are redirected there, quickplay
+ * is placed on a node by the {@link RouteServlet} before the client connects.<p>
+ * A server that is not part of a cluster is the only node of a cluster without node bits, see
+ * {@link #standalone()}.
+ */
+public final class Cluster {
+    /**
+     * The time between two summaries published by a node.
+     */
+    public static final long PUBLISH_INTERVAL_MILLIS = 1000;
+
+    /**
+     * The age of a summary after which its node is considered down.
+     */
+    public static final long NODE_TIMEOUT_MILLIS = 5000;
+
+    private final int node;
+    private final int nodeBits;
+    // where clients reach this node, null if it is not part of a cluster
+    private final String url;
+    private final ClusterDirectory directory;
+
+    // the nodes that are up by their index, replaced on every update
+    private volatile Map<Integer, NodeSummary> nodes = Collections.emptyMap();
+
+    /**
+     * Creates the view of a node.
+     * @param node the index of this node
+     * @param nodeBits the amount of bits of a room id used for the node, the cluster has at most 2^nodeBits nodes
+     * @param url the url clients connect to this node with, e.g. http://host:3000
+     * @param directory the directory shared by all nodes
+     * @throws IllegalArgumentException if the node does not fit into the bits
+     */
+    public Cluster(int node, int nodeBits, String url, ClusterDirectory directory) {
+        if (nodeBits < 0 || nodeBits > RoomRegistry.MAX_NODE_BITS || node < 0 || node >= (1 << nodeBits))
+            throw new IllegalArgumentException("Node " + node + " does not fit into " + nodeBits + " bits.");
+
+        this.node = node;
+        this.nodeBits = nodeBits;
+        this.url = url;
+        this.directory = directory;
+    }
+
+    /**
+     * Returns a cluster with this server as its only node.
+     */
+    public static Cluster standalone() {
+        return new Cluster(0, 0, null, new InMemoryClusterDirectory());
+    }
+
+    /**
+     * Returns the index of this node.
+     */
+    public int getNode() {
+        return this.node;
+    }
+
+    /**
+     * Returns the amount of bits of a room id used for the node.
+     */
+    public int getNodeBits() {
+        return this.nodeBits;
+    }
+
+    /**
+     * Returns the url clients connect to this node with.
+     * @return null if the server is not part of a cluster.
+     */
+    public String getUrl() {
+        return this.url;
+    }
+
+    public ClusterDirectory getDirectory() {
+        return this.directory;
+    }
+
+    /**
+     * Returns the node owning the room with the given id.
+     * @return the index of the node or -1, if the id is no valid room id.
+     */
+    public int getNodeOf(String roomId) {
+        return RoomRegistry.nodeOf(roomId, this.nodeBits);
+    }
+
+    /**
+     * Returns true if the room with the given id is owned by another node, invalid ids are local.
+     */
+    public boolean isRemote(String roomId) {
+        int owner = this.getNodeOf(roomId);
+        return owner >= 0 && owner != this.node;
+    }
+
+    /**
+     * Returns the latest summary of a node.
+     * @return null if the node is unknown or down.
+     */
+    public NodeSummary getSummary(int node) {
+        return this.nodes.get(node);
+    }
+
+    /**
+     * Returns the nodes that are up, as of the last update.
+     */
+    public Collection<NodeSummary> getNodes() {
+        return this.nodes.values();
+    }
+
+    /**
+     * Picks the node a new quickplay player should be placed on: the node with the most free slots in
+     * open quickplay rooms, so rooms fill up densely, otherwise the node with the fewest players.
+     * @return null if no node is up.
+     */
+    public NodeSummary pickQuickplayNode() {
+        NodeSummary best = null;
+        for (NodeSummary summary : this.nodes.values()) {
+            if (best == null || summary.getOpenQuickplaySlots() > best.getOpenQuickplaySlots()
+                    || (summary.getOpenQuickplaySlots() == best.getOpenQuickplaySlots() && summary.getPlayers() < best.getPlayers()))
+                best = summary;
+        }
+        return best;
+    }
+
+    /**
+     * Publishes the summary of this node and reads the summaries of the others.
+     * @param summary the summary of this node
+     * @throws IOException if the directory could not be used, the last known nodes are kept then.
+     */
+    public void update(NodeSummary summary) throws IOException {
+        this.directory.publish(summary);
+
+        Map<Integer, NodeSummary> nodes = new HashMap<>();
+        long oldest = System.currentTimeMillis() - NODE_TIMEOUT_MILLIS;
+        for (NodeSummary other : this.directory.getNodes()) {
+            // nodes of another cluster layout can't own any of our ids
+            if (other.getNode() < (1 << this.nodeBits) && other.getUpdatedMillis() >= oldest)
+                nodes.put(other.getNode(), other);
+        }
+        // a directory may lag behind, but this node is up for sure
+        nodes.put(this.node, summary);
+        this.nodes = Collections.unmodifiableMap(nodes);
+    }
+
+    /**
+     * Removes this node from the directory, so the others stop redirecting to it right away.
+     * @throws IOException if the directory could not be used.
+     */
+    public void leave() throws IOException {
+        this.directory.remove(this.node);
+    }
+}
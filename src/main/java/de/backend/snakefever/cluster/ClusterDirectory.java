@@ -0,0 +1,32 @@
+package de.backend.snakefever.cluster;
+
+import java.io.IOException;
+import java.util.Collection;
+
+/**
+ * Shares the summaries of all nodes of a cluster, every node publishes its own and reads the others.<p>
+ * A directory only has to keep the latest summary of every node, it does not need to be consistent:
+ * nodes treat the summaries as hints and ignore summaries older than {@link Cluster#NODE_TIMEOUT_MILLIS}.
+ * Implementations must be thread safe.
+ * @see InMemoryClusterDirectory
+ * @see FileClusterDirectory
+ */
+public interface ClusterDirectory {
+    /**
+     * Replaces the summary of a node.
+     * @throws IOException if the summary could not be shared.
+     */
+    void publish(NodeSummary summary) throws IOException;
+
+    /**
+     * Removes the summary of a node, e.g. when it shuts down.
+     * @throws IOException if the summary could not be removed.
+     */
+    void remove(int node) throws IOException;
+
+    /**
+     * Returns the latest summary of every node, including stale ones.
+     * @throws IOException if the summaries could not be read.
+     */
+    Collection<NodeSummary> getNodes() throws IOException;
+}
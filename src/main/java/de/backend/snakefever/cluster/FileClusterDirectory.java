@@ -0,0 +1,106 @@
+package de.backend.snakefever.cluster;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Properties;
+
+import de.backend.snakefever.SnakeFever;
+
+/**
+ * A cluster directory in a directory shared by all nodes, e.g. on one host or a network file system.<p>
+ * Every node writes its summary to its own properties file {@code node-<index>.properties}. The file is
+ * written next to it first and then moved over it, so readers never see half a summary.
+ */
+public final class FileClusterDirectory implements ClusterDirectory {
+    // the prefix and suffix of the summary files
+    private static final String FILE_PREFIX = "node-";
+    private static final String FILE_SUFFIX = ".properties";
+
+    private final Path directory;
+
+    /**
+     * Creates a directory, the path is created if it does not exist.
+     * @param directory the directory shared by all nodes
+     * @throws IOException if the directory could not be created.
+     */
+    public FileClusterDirectory(Path directory) throws IOException {
+        this.directory = Files.createDirectories(directory);
+    }
+
+    @Override
+    public void publish(NodeSummary summary) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty("node", Integer.toString(summary.getNode()));
+        properties.setProperty("url", summary.getUrl());
+        properties.setProperty("players", Integer.toString(summary.getPlayers()));
+        properties.setProperty("rooms", Integer.toString(summary.getRooms()));
+        properties.setProperty("openQuickplaySlots", Integer.toString(summary.getOpenQuickplaySlots()));
+        properties.setProperty("updated", Long.toString(summary.getUpdatedMillis()));
+
+        Path file = this.fileOf(summary.getNode());
+        Path temp = this.directory.resolve(file.getFileName() + ".tmp");
+        try (OutputStream out = Files.newOutputStream(temp)) {
+            properties.store(out, null);
+        }
+
+        try {
+            Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    @Override
+    public void remove(int node) throws IOException {
+        Files.deleteIfExists(this.fileOf(node));
+    }
+
+    @Override
+    public Collection<NodeSummary> getNodes() throws IOException {
+        List<NodeSummary> nodes = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(this.directory, FILE_PREFIX + "*" + FILE_SUFFIX)) {
+            for (Path file : files) {
+                NodeSummary summary = read(file);
+                if (summary != null)
+                    nodes.add(summary);
+            }
+        }
+        return nodes;
+    }
+
+    private Path fileOf(int node) {
+        return this.directory.resolve(FILE_PREFIX + node + FILE_SUFFIX);
+    }
+
+    /**
+     * Reads a summary file.
+     * @return null if the file was removed in the meantime or is no valid summary.
+     */
+    private static NodeSummary read(Path file) throws IOException {
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(file)) {
+            properties.load(in);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+
+        try {
+            return new NodeSummary(Integer.parseInt(properties.getProperty("node")), properties.getProperty("url"),
+                Integer.parseInt(properties.getProperty("players")), Integer.parseInt(properties.getProperty("rooms")),
+                Integer.parseInt(properties.getProperty("openQuickplaySlots")), Long.parseLong(properties.getProperty("updated")));
+        } catch (NumberFormatException e) {
+            SnakeFever.LOGGER.warn("Ignoring the invalid cluster summary " + file + ".");
+            return null;
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package de.backend.snakefever.cluster;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A cluster directory inside one JVM, for a single server or several servers in one process, e.g. in
+ * benchmarks.
+ */
+public final class InMemoryClusterDirectory implements ClusterDirectory {
+    // the latest summary of every node
+    private final ConcurrentHashMap<Integer, NodeSummary> nodes = new ConcurrentHashMap<>();
+
+    @Override
+    public void publish(NodeSummary summary) {
+        this.nodes.put(summary.getNode(), summary);
+    }
+
+    @Override
+    public void remove(int node) {
+        this.nodes.remove(node);
+    }
+
+    @Override
+    public Collection<NodeSummary> getNodes() {
+        return new ArrayList<>(this.nodes.values());
+    }
+}
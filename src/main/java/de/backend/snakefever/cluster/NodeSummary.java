@@ -0,0 +1,71 @@
+package de.backend.snakefever.cluster;
+
+/**
+ * What one node of a cluster tells the others about itself: where clients reach it and how full it is.<p>
+ * Summaries are immutable, a node publishes a new one every {@link Cluster#PUBLISH_INTERVAL_MILLIS}.
+ */
+public final class NodeSummary {
+    private final int node;
+    private final String url;
+    private final int players;
+    private final int rooms;
+    private final int openQuickplaySlots;
+    private final long updatedMillis;
+
+    /**
+     * Creates a summary.
+     * @param node the index of the node in the cluster
+     * @param url the url clients connect to, e.g. http://host:3000
+     * @param players the connected players
+     * @param rooms the rooms, including arenas
+     * @param openQuickplaySlots the free slots of all open quickplay rooms
+     * @param updatedMillis the wall clock time the summary was made
+     */
+    public NodeSummary(int node, String url, int players, int rooms, int openQuickplaySlots, long updatedMillis) {
+        this.node = node;
+        this.url = url;
+        this.players = players;
+        this.rooms = rooms;
+        this.openQuickplaySlots = openQuickplaySlots;
+        this.updatedMillis = updatedMillis;
+    }
+
+    public int getNode() {
+        return this.node;
+    }
+
+    /**
+     * Returns the url clients connect to.
+     */
+    public String getUrl() {
+        return this.url;
+    }
+
+    public int getPlayers() {
+        return this.players;
+    }
+
+    public int getRooms() {
+        return this.rooms;
+    }
+
+    /**
+     * Returns the free slots of all quickplay rooms that are not full.
+     */
+    public int getOpenQuickplaySlots() {
+        return this.openQuickplaySlots;
+    }
+
+    /**
+     * Returns the wall clock time the summary was made.
+     */
+    public long getUpdatedMillis() {
+        return this.updatedMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "node " + this.node + " (" + this.url + "): players=" + this.players + " rooms=" + this.rooms
+            + " openQuickplaySlots=" + this.openQuickplaySlots;
+    }
+}
@@ -0,0 +1,78 @@
+package de.backend.snakefever.cluster;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.google.gson.JsonObject;
+
+import de.backend.snakefever.messageConstants.MessageConstants;
+
+/**
+ * Tells a client which node of the cluster to connect to before it joins a room, so any node can be
+ * used as the front door of the cluster.<p>
+ * {@code GET /route?room=<id>} answers with the node owning the room, {@code room=}{@link MessageConstants#ROOM_QUICKPLAY}
+ * and {@link MessageConstants#ROOM_ARENA} with the node new players should be placed on
+ * (see {@link Cluster#pickQuickplayNode()}). The answer is JSON with the {@code node} and its {@code url},
+ * or an {@code error}: {@link MessageConstants#ERROR_ROOM_INVALID_ID} if the room is unknown or its node
+ * is down.
+ */
+public final class RouteServlet extends HttpServlet {
+    /**
+     * The path the servlet is mapped to.
+     */
+    public static final String PATH = "/route";
+
+    private final transient Cluster cluster;
+    // the origins allowed to ask from a browser, null allows all
+    private final String[] corsOrigins;
+
+    /**
+     * Creates the servlet.
+     * @param cluster the cluster of this node
+     * @param corsOrigins the origins allowed to ask from a browser, null allows all
+     */
+    public RouteServlet(Cluster cluster, String[] corsOrigins) {
+        this.cluster = cluster;
+        this.corsOrigins = corsOrigins;
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        String origin = request.getHeader("Origin");
+        if (origin != null && (this.corsOrigins == null || Arrays.asList(this.corsOrigins).contains(origin)))
+            response.setHeader("Access-Control-Allow-Origin", origin);
+
+        JsonObject answer = new JsonObject();
+        String room = request.getParameter("room");
+        if (room == null) {
+            response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            answer.addProperty("error", MessageConstants.ERROR_INVALID_DATA);
+        } else {
+            room = room.toLowerCase();
+            NodeSummary target = room.equals(MessageConstants.ROOM_QUICKPLAY) || room.equals(MessageConstants.ROOM_ARENA)
+                ? this.cluster.pickQuickplayNode()
+                : this.ownerOf(room);
+
+            if (target == null || target.getUrl() == null) {
+                response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+                answer.addProperty("error", MessageConstants.ERROR_ROOM_INVALID_ID);
+            } else {
+                answer.addProperty("node", target.getNode());
+                answer.addProperty("url", target.getUrl());
+            }
+        }
+
+        response.setContentType("application/json");
+        response.setCharacterEncoding("UTF-8");
+        response.getWriter().write(answer.toString());
+    }
+
+    private NodeSummary ownerOf(String roomId) {
+        int node = this.cluster.getNodeOf(roomId);
+        return node >= 0 ? this.cluster.getSummary(node) : null;
+    }
+}
@@ -0,0 +1,105 @@
+package de.backend.snakefever.game;
+
+import java.util.Arrays;
+
+/**
+ * The part of an arena one player is sent, a square of buckets around the head of its snake, and
+ * what the player already got of it.<p>
+ * Every bucket in the view is sent once and then only again after one of its cells changed. A bucket
+ * leaving the view is forgotten by the client, so it is sent in full when it comes back.<p>
+ * Must only be used by the thread ticking the room.
+ */
+public final class AreaOfInterest {
+    /**
+     * The amount of buckets the view reaches from the bucket of the head in every direction.
+     */
+    public static final int RADIUS_BUCKETS = 2;
+
+    // the index of the arena this view belongs to
+    private final SpatialHashGrid index;
+
+    // the changed tick of every bucket when it was last sent, -1 if the client does not have it
+    private final long[] sentTicks;
+
+    // the view in buckets, inclusive, empty before the first frame
+    private int left;
+    private int top;
+    private int right = -1;
+    private int bottom = -1;
+
+    AreaOfInterest(SpatialHashGrid index) {
+        this.index = index;
+        this.sentTicks = new long[index.getBucketCount()];
+        Arrays.fill(this.sentTicks, -1);
+    }
+
+    boolean belongsTo(SpatialHashGrid index) {
+        return this.index == index;
+    }
+
+    /**
+     * Centers the view on a cell, the buckets leaving the view are forgotten.
+     * @return true if the view moved.
+     */
+    boolean moveTo(int cell) {
+        int bucket = this.index.bucketOf(cell);
+        int bucketX = bucket % this.index.getBucketsX();
+        int bucketY = bucket / this.index.getBucketsX();
+
+        int left = Math.max(0, bucketX - RADIUS_BUCKETS);
+        int top = Math.max(0, bucketY - RADIUS_BUCKETS);
+        int right = Math.min(this.index.getBucketsX() - 1, bucketX + RADIUS_BUCKETS);
+        int bottom = Math.min(this.index.getBucketsY() - 1, bucketY + RADIUS_BUCKETS);
+        if (left == this.left && top == this.top && right == this.right && bottom == this.bottom)
+            return false;
+
+        for (int y = this.top; y <= this.bottom; y++) {
+            for (int x = this.left; x <= this.right; x++) {
+                if (x < left || x > right || y < top || y > bottom)
+                    this.sentTicks[y * this.index.getBucketsX() + x] = -1;
+            }
+        }
+
+        this.left = left;
+        this.top = top;
+        this.right = right;
+        this.bottom = bottom;
+        return true;
+    }
+
+    /**
+     * Checks if the client needs the bucket and remembers that it is sent.
+     * @return true if the bucket changed since it was last sent.
+     */
+    boolean markSent(int bucket) {
+        long changed = this.index.getChangedTick(bucket);
+        if (this.sentTicks[bucket] == changed)
+            return false;
+
+        this.sentTicks[bucket] = changed;
+        return true;
+    }
+
+    /**
+     * Returns true if the view was never placed.
+     */
+    boolean isEmpty() {
+        return this.right < 0;
+    }
+
+    int getLeft() {
+        return this.left;
+    }
+
+    int getTop() {
+        return this.top;
+    }
+
+    int getRight() {
+        return this.right;
+    }
+
+    int getBottom() {
+        return this.bottom;
+    }
+}
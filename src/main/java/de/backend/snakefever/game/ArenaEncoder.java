@@ -0,0 +1,230 @@
+package de.backend.snakefever.game;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import de.backend.snakefever.messageConstants.MessageCodec;
+import de.backend.snakefever.messageConstants.MessageConstants;
+
+/**
+ * Encodes what every player of an arena is sent, only the part of the world around its snake.<p>
+ * The payload of a player is built from its {@link AreaOfInterest}: the buckets of the
+ * {@link SpatialHashGrid} in view that changed since they were last sent and the snakes with their
+ * head in view. Every bucket and snake is encoded at most once per tick and the bytes are shared by
+ * all players seeing it, so a tick costs O(players * view) instead of O(players * snakes). The
+ * events are described at {@link MessageConstants#EVENT_ROOM_FRAME_BROADCAST}.<p>
+ * Must only be used by the thread ticking the room.
+ */
+public final class ArenaEncoder {
+    private final World world;
+    private final SpatialHashGrid index;
+
+    // the encoded RoomArenaCells of every bucket and the changed tick they were encoded at
+    private final byte[][] buckets;
+    private final long[] bucketTicks;
+
+    // the encoded RoomArenaSnake of every slot and the world tick they were encoded at
+    private final byte[][] snakes;
+    private final long[] snakeTicks;
+
+    // scratch buffer for encoding a bucket or snake
+    private final ByteBuffer scratch;
+    // the events of the view that is currently encoded
+    private ByteBuffer view = ByteBuffer.allocate(16384);
+
+    /**
+     * Creates an encoder for a world.
+     * @param world the world, it must have a {@link SpatialHashGrid}
+     * @throws IllegalArgumentException if the world is not indexed
+     */
+    public ArenaEncoder(World world) {
+        if (world.getIndex() == null)
+            throw new IllegalArgumentException("The world of an arena must have a spatial index.");
+
+        this.world = world;
+        this.index = world.getIndex();
+        this.buckets = new byte[this.index.getBucketCount()][];
+        this.bucketTicks = new long[this.buckets.length];
+        this.snakes = new byte[world.getSlotCount()][];
+        this.snakeTicks = new long[this.snakes.length];
+        this.reset();
+
+        // worst case per cell: a run of one cell, with a 2 byte count and a 3 byte value
+        int bucketCells = this.index.getBucketSize() * this.index.getBucketSize();
+        this.scratch = ByteBuffer.allocate(MessageCodec.RoomArenaCells.MAX_SIZE + 5 * bucketCells);
+    }
+
+    /**
+     * Forgets all encoded buckets and snakes, the world was reset.
+     */
+    public void reset() {
+        Arrays.fill(this.bucketTicks, -1);
+        Arrays.fill(this.snakeTicks, -1);
+    }
+
+    /**
+     * Encodes the events of a player's view and moves it with the snake.
+     * @param player the player, it must have a slot in the world
+     * @return the events, each prefixed with its varint length. The returned buffer is reused and
+     * only valid until the next call.
+     */
+    public ByteBuffer encodeView(IngamePlayer player) {
+        AreaOfInterest view = player.getAreaOfInterest(this.index);
+        this.view.clear();
+
+        int slot = player.getSlot();
+        if (slot >= 0 && this.world.isAlive(slot)) {
+            if (view.moveTo(this.world.getSnake(slot).getHead()))
+                this.putView(view);
+        } else if (view.isEmpty()) {
+            // a dead snake keeps the view it died with, a new one sees the middle until it spawns
+            view.moveTo(this.world.getWidth() / 2 + this.world.getHeight() / 2 * this.world.getWidth());
+            this.putView(view);
+        }
+
+        int bucketsX = this.index.getBucketsX();
+        for (int y = view.getTop(); y <= view.getBottom(); y++) {
+            for (int x = view.getLeft(); x <= view.getRight(); x++) {
+                int bucket = y * bucketsX + x;
+                if (view.markSent(bucket))
+                    this.putEvent(this.bucket(bucket));
+            }
+        }
+        for (int y = view.getTop(); y <= view.getBottom(); y++) {
+            for (int x = view.getLeft(); x <= view.getRight(); x++) {
+                this.putSnakes(y * bucketsX + x);
+            }
+        }
+
+        this.view.flip();
+        return this.view;
+    }
+
+    /**
+     * Encodes the whole arena as view, e.g. for spectators, who don't have a view of their own.
+     * @return the events, each prefixed with its varint length. The returned buffer is reused and
+     * only valid until the next call.
+     */
+    public ByteBuffer encodeAll() {
+        this.view.clear();
+        this.putView(0, 0, this.world.getWidth(), this.world.getHeight());
+        for (int bucket = 0; bucket < this.buckets.length; bucket++) {
+            this.putEvent(this.bucket(bucket));
+        }
+        for (int bucket = 0; bucket < this.buckets.length; bucket++) {
+            this.putSnakes(bucket);
+        }
+
+        this.view.flip();
+        return this.view;
+    }
+
+    private void putView(AreaOfInterest view) {
+        int size = this.index.getBucketSize();
+        int x = view.getLeft() * size;
+        int y = view.getTop() * size;
+        this.putView(x, y, Math.min((view.getRight() + 1) * size, this.world.getWidth()) - x,
+            Math.min((view.getBottom() + 1) * size, this.world.getHeight()) - y);
+    }
+
+    private void putView(int x, int y, int width, int height) {
+        this.scratch.clear();
+        MessageCodec.RoomArenaView.encode(this.scratch, x, y, width, height, this.world.getWidth(), this.world.getHeight());
+        this.putEvent(this.scratch);
+    }
+
+    private void putSnakes(int bucket) {
+        for (int slot = this.index.getFirstHead(bucket); slot >= 0; slot = this.index.getNextHead(slot)) {
+            this.putEvent(this.snake(slot));
+        }
+    }
+
+    /**
+     * Returns the encoded cells of a bucket, encoded again if one of them changed.
+     */
+    private byte[] bucket(int bucket) {
+        long changed = this.index.getChangedTick(bucket);
+        if (this.bucketTicks[bucket] == changed)
+            return this.buckets[bucket];
+
+        int size = this.index.getBucketSize();
+        int left = (bucket % this.index.getBucketsX()) * size;
+        int top = (bucket / this.index.getBucketsX()) * size;
+        int width = Math.min(size, this.world.getWidth() - left);
+        int height = Math.min(size, this.world.getHeight() - top);
+
+        this.scratch.clear();
+        MessageCodec.RoomArenaCells.encode(this.scratch, left, top, width, height);
+
+        // runs of equal cells, row by row, most cells are empty
+        int run = 0;
+        int value = 0;
+        for (int y = top; y < top + height; y++) {
+            int row = y * this.world.getWidth();
+            for (int x = left; x < left + width; x++) {
+                int cell = this.world.getCell(row + x) + 1;
+                if (run > 0 && cell != value) {
+                    MessageCodec.putVarInt(this.scratch, run);
+                    MessageCodec.putVarInt(this.scratch, value);
+                    run = 0;
+                }
+                value = cell;
+                run++;
+            }
+        }
+        MessageCodec.putVarInt(this.scratch, run);
+        MessageCodec.putVarInt(this.scratch, value);
+
+        this.buckets[bucket] = toArray(this.scratch);
+        this.bucketTicks[bucket] = changed;
+        return this.buckets[bucket];
+    }
+
+    /**
+     * Returns the encoded snake of a slot, encoded once per tick.
+     */
+    private byte[] snake(int slot) {
+        long tick = this.world.getTick();
+        if (this.snakeTicks[slot] == tick)
+            return this.snakes[slot];
+
+        SnakeBody snake = this.world.getSnake(slot);
+        this.scratch.clear();
+        MessageCodec.RoomArenaSnake.encode(this.scratch, slot, this.world.getDirection(slot), this.world.getScore(slot),
+            snake.getLength(), snake.getHead());
+
+        this.snakes[slot] = toArray(this.scratch);
+        this.snakeTicks[slot] = tick;
+        return this.snakes[slot];
+    }
+
+    private void putEvent(ByteBuffer event) {
+        event.flip();
+        this.ensureCapacity(5 + event.remaining());
+        MessageCodec.putVarInt(this.view, event.remaining());
+        this.view.put(event);
+    }
+
+    private void putEvent(byte[] event) {
+        this.ensureCapacity(5 + event.length);
+        MessageCodec.putVarInt(this.view, event.length);
+        this.view.put(event);
+    }
+
+    private void ensureCapacity(int needed) {
+        if (this.view.remaining() >= needed)
+            return;
+
+        ByteBuffer bigger = ByteBuffer.allocate(Math.max(this.view.capacity() * 2, this.view.position() + needed));
+        this.view.flip();
+        bigger.put(this.view);
+        this.view = bigger;
+    }
+
+    private static byte[] toArray(ByteBuffer buffer) {
+        byte[] array = new byte[buffer.position()];
+        buffer.flip();
+        buffer.get(array);
+        return array;
+    }
+}
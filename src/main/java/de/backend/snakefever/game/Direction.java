@@ -0,0 +1,31 @@
+package de.backend.snakefever.game;
+
+import de.backend.snakefever.messageConstants.MessageConstants;
+
+/**
+ * The directions a snake can move in, stored as plain ints.
+ * @see MessageConstants#EVENT_PLAYER_INPUT_REQUEST
+ */
+public final class Direction {
+    public static final int UP = MessageConstants.INPUT_DIRECTION_UP;
+    public static final int RIGHT = MessageConstants.INPUT_DIRECTION_RIGHT;
+    public static final int DOWN = MessageConstants.INPUT_DIRECTION_DOWN;
+    public static final int LEFT = MessageConstants.INPUT_DIRECTION_LEFT;
+
+    private Direction() {
+    }
+
+    /**
+     * Checks if the value is one of the four directions.
+     */
+    public static boolean isValid(int direction) {
+        return direction >= UP && direction <= LEFT;
+    }
+
+    /**
+     * Returns the direction pointing the other way.
+     */
+    public static int opposite(int direction) {
+        return (direction + 2) & 3;
+    }
+}
@@ -1,13 +1,182 @@
 package de.backend.snakefever.game;
 
+import java.nio.ByteBuffer;
+
+import de.backend.snakefever.messageConstants.MessageCodec;
+
 public class IngamePlayer {
+    /**
+     * The amount of inputs buffered between two ticks.
+     */
+    public static final int INPUT_BUFFER_SIZE = 16;
+
+    // inputs from the socket thread, drained on every tick
+    private final InputRingBuffer inputs = new InputRingBuffer(INPUT_BUFFER_SIZE);
+
+    // the direction the snake is currently moving in
+    private int direction = Direction.RIGHT;
+    // the sequence number of the last applied input
+    private int lastSequence = Integer.MIN_VALUE;
+
+    // the amount of inputs dropped because they were redundant, only written by the tick thread
+    private volatile long coalescedInputs;
+
+    // the slot of the snake in the world, only used by the tick thread
+    private int slot = -1;
+    // the part of an arena sent to the player, created on the first arena frame
+    private AreaOfInterest areaOfInterest;
+
+    /**
+     * Applies the buffered inputs.<p>
+     * Only one turn is applied per tick, so quick successive turns are not lost but applied on the
+     * following ticks. Inputs that would not change anything (old sequence numbers, the current
+     * direction or the opposite direction) are dropped.
+     */
     public void tick() {
-        // todo
+        this.tick(null);
+    }
+
+    /**
+     * Applies the buffered inputs like {@link #tick()} and tells the listener about every input taken
+     * from the buffer, applied or dropped.
+     * @param inputListener the listener, may be null
+     */
+    public void tick(InputListener inputListener) {
+        long input;
+        while ((input = this.inputs.poll()) != InputRingBuffer.NO_INPUT) {
+            if (inputListener != null)
+                inputListener.onInput(this, input);
+
+            int direction = InputRingBuffer.direction(input);
+            int sequence = InputRingBuffer.sequence(input);
+
+            if (sequence <= this.lastSequence || direction == this.direction || direction == Direction.opposite(this.direction)) {
+                this.coalescedInputs = this.coalescedInputs + 1;
+                continue;
+            }
+
+            this.direction = direction;
+            this.lastSequence = sequence;
+            break;
+        }
+    }
+
+    /**
+     * Buffers a player input for the next tick, called from the socket thread.<p>
+     * Arguments: a binary {@link MessageCodec.PlayerInput} or direction (number) and sequence number (number)
+     * @return false if the input was malformed.
+     */
+    public boolean onPlayerInput(Object... args) {
+        int direction;
+        int sequence;
+
+        if (args.length >= 1 && args[0] instanceof byte[]) {
+            MessageCodec.PlayerInput input = new MessageCodec.PlayerInput();
+            if (!input.decode(ByteBuffer.wrap((byte[]) args[0])))
+                return false;
+
+            direction = input.direction;
+            sequence = input.sequence;
+        } else if (args.length >= 2 && args[0] instanceof Number && args[1] instanceof Number) {
+            direction = ((Number) args[0]).intValue();
+            sequence = ((Number) args[1]).intValue();
+        } else {
+            return false;
+        }
+
+        if (!Direction.isValid(direction))
+            return false;
+
+        // a full buffer is counted as overflow, the input is dropped on purpose
+        this.offerInput(direction, sequence);
+        return true;
     }
 
+    /**
+     * Buffers a valid input for the next tick, called from the socket thread or a replay.
+     * @param direction the direction, see {@link Direction}
+     * @param sequence the client side sequence number
+     * @return false if the buffer was full and the input was dropped.
+     */
+    public boolean offerInput(int direction, int sequence) {
+        return this.inputs.offer(direction, sequence);
+    }
+
+    public int getDirection() {
+        return this.direction;
+    }
+
+    /**
+     * Returns the sequence number of the last applied input.
+     */
+    public int getLastSequence() {
+        return this.lastSequence;
+    }
+
+    /**
+     * Restores the direction and last applied input, e.g. recorded when the player joined a room.
+     * Only called from the tick thread.
+     */
+    public void restore(int direction, int lastSequence) {
+        this.direction = direction;
+        this.lastSequence = lastSequence;
+    }
+
+    /**
+     * Sets the direction when the snake spawns, only called from the tick thread.
+     */
+    void setDirection(int direction) {
+        this.direction = direction;
+    }
 
+    /**
+     * Returns the slot of the snake in the world, only up to date on the tick thread.
+     * @return -1 if the player has no slot.
+     */
+    public int getSlot() {
+        return this.slot;
+    }
+
+    void setSlot(int slot) {
+        this.slot = slot;
+        // the client starts with an empty board in the new world
+        this.areaOfInterest = null;
+    }
+
+    /**
+     * Returns the part of an arena sent to the player, only used by the tick thread.
+     * @param index the index of the arena's world
+     */
+    AreaOfInterest getAreaOfInterest(SpatialHashGrid index) {
+        if (this.areaOfInterest == null || !this.areaOfInterest.belongsTo(index))
+            this.areaOfInterest = new AreaOfInterest(index);
+        return this.areaOfInterest;
+    }
+
+    /**
+     * Returns the amount of inputs dropped because the input buffer was full.
+     */
+    public long getInputOverflows() {
+        return this.inputs.getOverflows();
+    }
+
+    /**
+     * Returns the amount of inputs dropped because they were redundant.
+     */
+    public long getCoalescedInputs() {
+        return this.coalescedInputs;
+    }
 
-    public void onPlayerInput(Object... args) {
-        // todo
+    /**
+     * Gets told about the inputs a player takes from its buffer on a tick.
+     */
+    @FunctionalInterface
+    public interface InputListener {
+        /**
+         * Called on the tick thread for every input taken from the buffer.
+         * @param player the player
+         * @param input the packed input, see {@link InputRingBuffer#direction(long)} and {@link InputRingBuffer#sequence(long)}
+         */
+        void onInput(IngamePlayer player, long input);
     }
 }
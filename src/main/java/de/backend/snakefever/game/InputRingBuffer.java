@@ -0,0 +1,113 @@
+package de.backend.snakefever.game;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded, lock-free single producer single consumer ring buffer for player inputs.<p>
+ * Every input is stored as one primitive long containing the direction and the sequence number,
+ * so offering and polling never allocate. The producer is the socket thread of the player,
+ * the consumer is the tick thread of the player's room.
+ */
+public final class InputRingBuffer {
+    /**
+     * Returned by {@link #poll()} if the buffer is empty.
+     */
+    public static final long NO_INPUT = Long.MIN_VALUE;
+
+    // the stored inputs
+    private final long[] buffer;
+    // capacity - 1, used instead of a modulo
+    private final int mask;
+
+    // the index of the next input to read, only written by the consumer
+    private final AtomicLong head = new AtomicLong();
+    // the index of the next input to write, only written by the producer
+    private final AtomicLong tail = new AtomicLong();
+
+    // the amount of inputs dropped because the buffer was full, only written by the producer
+    private volatile long overflows;
+
+    /**
+     * Creates a ring buffer.
+     * @param capacity the amount of inputs that can be buffered, rounded up to a power of two
+     */
+    public InputRingBuffer(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        this.buffer = new long[size];
+        this.mask = size - 1;
+    }
+
+    /**
+     * Adds an input, must only be called by the producer thread.
+     * @param direction the direction, see {@link Direction}
+     * @param sequence the client side sequence number of the input
+     * @return false if the buffer was full and the input was dropped.
+     */
+    public boolean offer(int direction, int sequence) {
+        long tail = this.tail.get();
+        if (tail - this.head.get() >= this.buffer.length) {
+            this.overflows = this.overflows + 1;
+            return false;
+        }
+
+        this.buffer[(int) tail & this.mask] = pack(direction, sequence);
+        // publishes the written slot to the consumer
+        this.tail.lazySet(tail + 1);
+        return true;
+    }
+
+    /**
+     * Removes the oldest input, must only be called by the consumer thread.
+     * @return the packed input or {@link #NO_INPUT} if the buffer is empty.
+     * @see #direction(long)
+     * @see #sequence(long)
+     */
+    public long poll() {
+        long head = this.head.get();
+        if (head >= this.tail.get())
+            return NO_INPUT;
+
+        long input = this.buffer[(int) head & this.mask];
+        // frees the slot for the producer
+        this.head.lazySet(head + 1);
+        return input;
+    }
+
+    /**
+     * Returns the oldest input without removing it, must only be called by the consumer thread.
+     * @return the packed input or {@link #NO_INPUT} if the buffer is empty.
+     */
+    public long peek() {
+        long head = this.head.get();
+        if (head >= this.tail.get())
+            return NO_INPUT;
+
+        return this.buffer[(int) head & this.mask];
+    }
+
+    /**
+     * Returns the amount of buffered inputs.
+     */
+    public int size() {
+        return (int) (this.tail.get() - this.head.get());
+    }
+
+    /**
+     * Returns the amount of inputs dropped because the buffer was full.
+     */
+    public long getOverflows() {
+        return this.overflows;
+    }
+
+    public static int direction(long input) {
+        return (int) (input & 0xFF);
+    }
+
+    public static int sequence(long input) {
+        return (int) (input >> 8);
+    }
+
+    private static long pack(int direction, int sequence) {
+        return ((long) sequence << 8) | (direction & 0xFF);
+    }
+}
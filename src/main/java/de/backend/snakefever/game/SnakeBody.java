@@ -0,0 +1,84 @@
+package de.backend.snakefever.game;
+
+/**
+ * The body of one snake, stored as a ring buffer of grid cell indices.<p>
+ * The head is the newest cell and the tail the oldest, so moving a snake is one push and one pop
+ * without moving any other segment and without allocating segment objects.
+ */
+public final class SnakeBody {
+    // the cell indices of all segments
+    private final int[] cells;
+
+    // the buffer index of the tail
+    private int tail;
+    // the amount of segments
+    private int length;
+
+    /**
+     * Creates an empty body.
+     * @param maxLength the maximum amount of segments
+     */
+    public SnakeBody(int maxLength) {
+        this.cells = new int[maxLength];
+    }
+
+    /**
+     * Adds a new head segment.
+     * @param cell the cell index of the new head
+     * @return false if the body already has its maximum length.
+     */
+    public boolean pushHead(int cell) {
+        if (this.length >= this.cells.length)
+            return false;
+
+        this.cells[(this.tail + this.length) % this.cells.length] = cell;
+        this.length++;
+        return true;
+    }
+
+    /**
+     * Removes the tail segment.
+     * @return the cell index of the removed tail or -1 if the body is empty.
+     */
+    public int popTail() {
+        if (this.length == 0)
+            return -1;
+
+        int cell = this.cells[this.tail];
+        this.tail = (this.tail + 1) % this.cells.length;
+        this.length--;
+        return cell;
+    }
+
+    /**
+     * Returns the cell index of the head.
+     * @return -1 if the body is empty.
+     */
+    public int getHead() {
+        return this.length == 0 ? -1 : this.get(this.length - 1);
+    }
+
+    /**
+     * Returns the cell index of a segment.
+     * @param index the segment index, 0 is the tail
+     */
+    public int get(int index) {
+        return this.cells[(this.tail + index) % this.cells.length];
+    }
+
+    public int getLength() {
+        return this.length;
+    }
+
+    public boolean isFull() {
+        return this.length >= this.cells.length;
+    }
+
+    /**
+     * Removes all segments.
+     */
+    public void clear() {
+        this.tail = 0;
+        this.length = 0;
+    }
+}
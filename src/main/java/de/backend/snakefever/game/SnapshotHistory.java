@@ -0,0 +1,220 @@
+package de.backend.snakefever.game;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import de.backend.snakefever.messageConstants.MessageCodec;
+import de.backend.snakefever.messageConstants.MessageConstants;
+
+/**
+ * A short history of world snapshots, used to send clients only the changes since the last
+ * snapshot they acknowledged.<p>
+ * Every snapshot has the same fixed size and layout, so a delta is simply the list of changed byte
+ * runs between two snapshots. Payloads are {@link MessageCodec.RoomState} messages, the layout is
+ * described at {@link MessageConstants#EVENT_ROOM_FRAME_BROADCAST}.<p>
+ * The sequence numbers start at 0 again whenever the history is reset, so every history gets a new
+ * epoch then. An ack is only valid together with the epoch it was sent in, acks of a previous room
+ * never point into the snapshots of the current one.<p>
+ * Must only be used by the thread ticking the room, except {@link #getEpoch()}.
+ */
+public final class SnapshotHistory {
+    /**
+     * The amount of snapshots kept, a client acknowledging an older snapshot gets a keyframe.
+     */
+    public static final int DEFAULT_SIZE = 32;
+
+    // width, height and slot count
+    private static final int STATE_HEADER_SIZE = 2 + 2 + 1;
+    // alive, direction, score, length and head
+    private static final int SLOT_SIZE = 1 + 1 + 2 + 2 + 2;
+
+    // unchanged bytes shorter than this are sent as part of the surrounding runs
+    private static final int MIN_GAP = 3;
+
+    // hands out the epochs, random at the start so they differ from the epochs before a restart
+    private static final AtomicInteger EPOCHS = new AtomicInteger(ThreadLocalRandom.current().nextInt());
+
+    // the stored snapshots, indexed by sequence % size
+    private final byte[][] states;
+    // the sequence of every stored snapshot
+    private final int[] sequences;
+
+    // the size of one snapshot
+    private final int stateSize;
+
+    // the sequence of the latest snapshot, -1 if there is none
+    private int latest = -1;
+    // the epoch of the sequences, read by the socket threads checking acks
+    private volatile int epoch = EPOCHS.incrementAndGet();
+
+    // scratch buffer for encoding payloads
+    private final ByteBuffer scratch;
+
+    /**
+     * Creates an empty history for snapshots of the given world.
+     * @param world the world to take snapshots of
+     * @param size the amount of snapshots kept
+     */
+    public SnapshotHistory(World world, int size) {
+        this.stateSize = STATE_HEADER_SIZE + world.getSlotCount() * SLOT_SIZE + world.getCellCount();
+        this.states = new byte[size][this.stateSize];
+        this.sequences = new int[size];
+        for (int i = 0; i < size; i++) {
+            this.sequences[i] = -1;
+        }
+
+        // a delta is never sent if it's bigger than the keyframe
+        this.scratch = ByteBuffer.allocate(MessageCodec.RoomState.MAX_SIZE + this.stateSize);
+    }
+
+    /**
+     * Takes a snapshot of the world and stores it as the latest snapshot.
+     * @param world the world, must be the one this history was created for
+     * @return the sequence number of the snapshot.
+     */
+    public int capture(World world) {
+        int sequence = this.latest + 1;
+        int index = sequence % this.states.length;
+        byte[] state = this.states[index];
+
+        int pos = 0;
+        pos = putShort(state, pos, world.getWidth());
+        pos = putShort(state, pos, world.getHeight());
+        state[pos++] = (byte) world.getSlotCount();
+
+        for (int slot = 0; slot < world.getSlotCount(); slot++) {
+            boolean alive = world.isAlive(slot);
+            SnakeBody snake = world.getSnake(slot);
+            state[pos++] = (byte) (alive ? 1 : 0);
+            state[pos++] = (byte) world.getDirection(slot);
+            pos = putShort(state, pos, world.getScore(slot));
+            pos = putShort(state, pos, alive ? snake.getLength() : 0);
+            pos = putShort(state, pos, alive ? snake.getHead() : 0);
+        }
+
+        for (int cell = 0; cell < world.getCellCount(); cell++) {
+            // a world with snapshots has less than 128 slots, so every cell fits into a byte
+            state[pos++] = (byte) world.getCell(cell);
+        }
+
+        this.sequences[index] = sequence;
+        this.latest = sequence;
+        return sequence;
+    }
+
+    /**
+     * Forgets all snapshots, the next captured snapshot has the sequence 0 again in a new epoch.
+     */
+    public void reset() {
+        Arrays.fill(this.sequences, -1);
+        this.latest = -1;
+        this.epoch = EPOCHS.incrementAndGet();
+    }
+
+    /**
+     * Returns the epoch of the sequence numbers, can be called from any thread.
+     */
+    public int getEpoch() {
+        return this.epoch;
+    }
+
+    /**
+     * Checks if the snapshot with the given sequence is still stored.
+     */
+    public boolean contains(int sequence) {
+        return sequence >= 0 && this.sequences[sequence % this.states.length] == sequence;
+    }
+
+    /**
+     * Returns the sequence of the latest snapshot.
+     * @return -1 if there is no snapshot yet.
+     */
+    public int getLatest() {
+        return this.latest;
+    }
+
+    /**
+     * Encodes the latest snapshot for a client.
+     * @param baseSequence the last snapshot acknowledged by the client, or -1
+     * @return a delta against the base snapshot or a keyframe, if the base is unknown or the delta
+     * would not be smaller. The returned buffer is reused and only valid until the next call.
+     */
+    public ByteBuffer encode(int baseSequence) {
+        return this.encode(this.latest, baseSequence);
+    }
+
+    /**
+     * Encodes a stored snapshot.
+     * @param sequence the stored snapshot to encode
+     * @param baseSequence the last snapshot acknowledged by the client, or -1
+     * @return a delta against the base snapshot or a keyframe, or null if the snapshot is not stored.
+     * The returned buffer is reused and only valid until the next call.
+     */
+    public ByteBuffer encode(int sequence, int baseSequence) {
+        if (!this.contains(sequence))
+            return null;
+
+        byte[] state = this.states[sequence % this.states.length];
+        if (baseSequence < sequence && this.contains(baseSequence)
+                && this.encodeDelta(sequence, state, baseSequence, this.states[baseSequence % this.states.length])) {
+            this.scratch.flip();
+            return this.scratch;
+        }
+
+        this.scratch.clear();
+        MessageCodec.RoomState.encode(this.scratch, MessageConstants.ROOM_STATE_KEYFRAME, sequence, -1, this.epoch);
+        this.scratch.put(state);
+        this.scratch.flip();
+        return this.scratch;
+    }
+
+    /**
+     * Encodes the changed byte runs as (varint gap, varint length, bytes) into the scratch buffer.
+     * @return false if the delta would not be smaller than a keyframe.
+     */
+    private boolean encodeDelta(int sequence, byte[] state, int baseSequence, byte[] base) {
+        ByteBuffer buffer = this.scratch;
+        buffer.clear();
+        MessageCodec.RoomState.encode(buffer, MessageConstants.ROOM_STATE_DELTA, sequence, baseSequence, this.epoch);
+
+        int runEnd = 0;
+        int i = 0;
+        while (i < this.stateSize) {
+            if (state[i] == base[i]) {
+                i++;
+                continue;
+            }
+
+            // extend the run until there are MIN_GAP equal bytes in a row
+            int start = i;
+            int end = i + 1;
+            int equal = 0;
+            while (end < this.stateSize && equal < MIN_GAP) {
+                equal = state[end] == base[end] ? equal + 1 : 0;
+                end++;
+            }
+            end -= equal;
+
+            // worst case: two varints with 5 bytes each
+            if (buffer.remaining() < 10 + (end - start))
+                return false;
+
+            MessageCodec.putVarInt(buffer, start - runEnd);
+            MessageCodec.putVarInt(buffer, end - start);
+            buffer.put(state, start, end - start);
+
+            runEnd = end;
+            i = end;
+        }
+
+        return true;
+    }
+
+    private static int putShort(byte[] array, int pos, int value) {
+        array[pos] = (byte) (value >>> 8);
+        array[pos + 1] = (byte) value;
+        return pos + 2;
+    }
+}
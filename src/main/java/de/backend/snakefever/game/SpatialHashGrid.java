@@ -0,0 +1,179 @@
+package de.backend.snakefever.game;
+
+import java.util.Arrays;
+
+/**
+ * Divides the board of a {@link World} into square buckets of cells and indexes what happens in them.<p>
+ * The board is bounded, so a bucket is found by dividing the cell coordinates instead of hashing
+ * them. Every bucket knows the last tick one of its cells changed and the snakes with their head in
+ * it, kept as an intrusive linked list over the slots. Moving a head or changing a cell is O(1), so
+ * the index costs the same per tick no matter how big the board is, and a query only touches the
+ * buckets it asks for, see {@link ArenaEncoder}.<p>
+ * Must only be used by the thread ticking the room.
+ */
+public final class SpatialHashGrid {
+    // marks the end of a head list and slots without a head
+    private static final int NONE = -1;
+
+    // the size of the board in cells
+    private final int width;
+    private final int height;
+
+    // the side length of a bucket in cells
+    private final int bucketSize;
+    // the amount of buckets in each direction
+    private final int bucketsX;
+    private final int bucketsY;
+
+    // the last tick a cell of the bucket changed, per bucket
+    private final long[] changedTicks;
+
+    // the first slot with its head in the bucket, per bucket
+    private final int[] firstHeads;
+    // the list links and the bucket of the head, per slot
+    private final int[] nextHeads;
+    private final int[] previousHeads;
+    private final int[] headBuckets;
+
+    /**
+     * Creates an empty index.
+     * @param width the width of the board in cells
+     * @param height the height of the board in cells
+     * @param bucketSize the side length of a bucket in cells
+     * @param slotCount the amount of snake slots of the world
+     */
+    public SpatialHashGrid(int width, int height, int bucketSize, int slotCount) {
+        this.width = width;
+        this.height = height;
+        this.bucketSize = bucketSize;
+        this.bucketsX = (width + bucketSize - 1) / bucketSize;
+        this.bucketsY = (height + bucketSize - 1) / bucketSize;
+
+        this.changedTicks = new long[this.bucketsX * this.bucketsY];
+        this.firstHeads = new int[this.changedTicks.length];
+        this.nextHeads = new int[slotCount];
+        this.previousHeads = new int[slotCount];
+        this.headBuckets = new int[slotCount];
+        this.reset();
+    }
+
+    /**
+     * Forgets all heads and changes, the world was emptied.
+     */
+    void reset() {
+        // the first tick of a world is 1, so every bucket counts as changed on it
+        Arrays.fill(this.changedTicks, 1);
+        Arrays.fill(this.firstHeads, NONE);
+        Arrays.fill(this.nextHeads, NONE);
+        Arrays.fill(this.previousHeads, NONE);
+        Arrays.fill(this.headBuckets, NONE);
+    }
+
+    /**
+     * Remembers that a cell changed.
+     */
+    void cellChanged(int cell, long tick) {
+        this.changedTicks[this.bucketOf(cell)] = tick;
+    }
+
+    /**
+     * Moves the head of a snake to a cell, also if the snake had no head yet.
+     */
+    void moveHead(int slot, int cell) {
+        int bucket = this.bucketOf(cell);
+        if (this.headBuckets[slot] == bucket)
+            return;
+
+        this.removeHead(slot);
+        int first = this.firstHeads[bucket];
+        this.nextHeads[slot] = first;
+        if (first != NONE)
+            this.previousHeads[first] = slot;
+        this.firstHeads[bucket] = slot;
+        this.headBuckets[slot] = bucket;
+    }
+
+    /**
+     * Removes the head of a snake that died or left.
+     */
+    void removeHead(int slot) {
+        int bucket = this.headBuckets[slot];
+        if (bucket == NONE)
+            return;
+
+        int previous = this.previousHeads[slot];
+        int next = this.nextHeads[slot];
+        if (previous != NONE) {
+            this.nextHeads[previous] = next;
+        } else {
+            this.firstHeads[bucket] = next;
+        }
+        if (next != NONE)
+            this.previousHeads[next] = previous;
+
+        this.nextHeads[slot] = NONE;
+        this.previousHeads[slot] = NONE;
+        this.headBuckets[slot] = NONE;
+    }
+
+    /**
+     * Returns the bucket containing a cell.
+     */
+    public int bucketOf(int cell) {
+        return (cell / this.width / this.bucketSize) * this.bucketsX + (cell % this.width) / this.bucketSize;
+    }
+
+    /**
+     * Returns the last tick a cell in the bucket changed.
+     */
+    public long getChangedTick(int bucket) {
+        return this.changedTicks[bucket];
+    }
+
+    /**
+     * Returns the first snake with its head in the bucket.
+     * @return the slot or -1 if there is none.
+     * @see #getNextHead(int)
+     */
+    public int getFirstHead(int bucket) {
+        return this.firstHeads[bucket];
+    }
+
+    /**
+     * Returns the next snake with its head in the same bucket as the given snake.
+     * @return the slot or -1 if there is none.
+     */
+    public int getNextHead(int slot) {
+        return this.nextHeads[slot];
+    }
+
+    public int getBucketSize() {
+        return this.bucketSize;
+    }
+
+    public int getBucketsX() {
+        return this.bucketsX;
+    }
+
+    public int getBucketsY() {
+        return this.bucketsY;
+    }
+
+    public int getBucketCount() {
+        return this.changedTicks.length;
+    }
+
+    /**
+     * Returns the width of the board in cells.
+     */
+    public int getWidth() {
+        return this.width;
+    }
+
+    /**
+     * Returns the height of the board in cells.
+     */
+    public int getHeight() {
+        return this.height;
+    }
+}
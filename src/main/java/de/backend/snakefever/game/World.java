@@ -0,0 +1,591 @@
+package de.backend.snakefever.game;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import de.backend.snakefever.messageConstants.MessageCodec;
+
+/**
+ * The game world of one room.<p>
+ * The board is a flat primitive occupancy grid, so every collision check is a single array access,
+ * and every snake body is a primitive ring buffer. Stepping the world never allocates.<p>
+ * A big world, e.g. an arena, can also keep a {@link SpatialHashGrid} of the changed cells and the
+ * snake heads, so a client can be sent only the part of the board around its snake.<p>
+ * Players are attached to slots from any thread, everything else must only be called by the thread
+ * ticking the room. All randomness comes from a seeded generator, so a world always behaves the same
+ * for the same seed and inputs.
+ */
+public final class World {
+    /**
+     * The default width of the board in cells.
+     */
+    public static final int DEFAULT_WIDTH = 48;
+    /**
+     * The default height of the board in cells.
+     */
+    public static final int DEFAULT_HEIGHT = 48;
+
+    /**
+     * The maximum amount of segments of a snake.
+     */
+    public static final int MAX_SNAKE_LENGTH = 256;
+    /**
+     * The amount of segments of a newly spawned snake.
+     */
+    public static final int START_LENGTH = 3;
+    /**
+     * The default amount of food on the board.
+     */
+    public static final int FOOD_COUNT = 4;
+    /**
+     * The amount of ticks a dead snake waits before it spawns again.
+     */
+    public static final int RESPAWN_TICKS = 40;
+
+    /**
+     * Grid value of an empty cell.
+     */
+    public static final byte EMPTY = 0;
+    /**
+     * Grid value of a cell with food, cells with a snake contain the slot + 1.
+     */
+    public static final byte FOOD = -1;
+
+    // the amount of random cells tried before giving up on spawning something
+    private static final int SPAWN_TRIES = 64;
+
+    // the size of the board
+    private final int width;
+    private final int height;
+
+    // the occupancy of every cell, see EMPTY and FOOD
+    private final short[] grid;
+    // the changed cells and snake heads by bucket, null if the world is not indexed
+    private final SpatialHashGrid index;
+
+    // the amount of food kept on the board
+    private final int maxFood;
+
+    // the players assigned to the slots, written by any thread
+    private final AtomicReferenceArray<IngamePlayer> slots;
+
+    // the per slot state, only accessed by the tick thread
+    private final IngamePlayer[] owners;
+    private final SnakeBody[] snakes;
+    private final boolean[] alive;
+    private final boolean[] dying;
+    private final int[] directions;
+    private final int[] nextHeads;
+    private final int[] respawnTimers;
+    private final int[] scores;
+
+    // the amount of food currently on the board
+    private int foodCount;
+
+    // the state of the random generator
+    private long random;
+
+    // the amount of steps done
+    private long tick;
+
+    /**
+     * Creates a world with an empty board, {@link #FOOD_COUNT} food and no spatial index.
+     * @param width the width of the board in cells
+     * @param height the height of the board in cells
+     * @param slotCount the maximum amount of snakes
+     * @param seed the seed of the random generator
+     */
+    public World(int width, int height, int slotCount, long seed) {
+        this(width, height, slotCount, FOOD_COUNT, 0, seed);
+    }
+
+    /**
+     * Creates a world with an empty board.
+     * @param width the width of the board in cells
+     * @param height the height of the board in cells
+     * @param slotCount the maximum amount of snakes, less than {@link Short#MAX_VALUE}
+     * @param foodCount the amount of food kept on the board
+     * @param bucketSize the side length of the buckets of the {@link SpatialHashGrid}, 0 for no index
+     * @param seed the seed of the random generator
+     */
+    public World(int width, int height, int slotCount, int foodCount, int bucketSize, long seed) {
+        this.width = width;
+        this.height = height;
+        this.grid = new short[width * height];
+        this.index = bucketSize > 0 ? new SpatialHashGrid(width, height, bucketSize, slotCount) : null;
+        this.maxFood = foodCount;
+
+        this.slots = new AtomicReferenceArray<>(slotCount);
+        this.owners = new IngamePlayer[slotCount];
+        this.snakes = new SnakeBody[slotCount];
+        for (int i = 0; i < slotCount; i++) {
+            this.snakes[i] = new SnakeBody(MAX_SNAKE_LENGTH);
+        }
+        this.alive = new boolean[slotCount];
+        this.dying = new boolean[slotCount];
+        this.directions = new int[slotCount];
+        this.nextHeads = new int[slotCount];
+        this.respawnTimers = new int[slotCount];
+        this.scores = new int[slotCount];
+
+        this.random = initialRandom(seed);
+    }
+
+    /**
+     * Empties the board and all slots, so the world can be used for a new game.<p>
+     * Must not be called while the world is stepped or players are attached from other threads.
+     * @param seed the new seed of the random generator
+     */
+    public void reset(long seed) {
+        Arrays.fill(this.grid, EMPTY);
+        for (int s = 0; s < this.owners.length; s++) {
+            this.slots.set(s, null);
+            this.owners[s] = null;
+            this.snakes[s].clear();
+        }
+        Arrays.fill(this.alive, false);
+        Arrays.fill(this.dying, false);
+        Arrays.fill(this.directions, 0);
+        Arrays.fill(this.nextHeads, 0);
+        Arrays.fill(this.respawnTimers, 0);
+        Arrays.fill(this.scores, 0);
+
+        this.foodCount = 0;
+        this.random = initialRandom(seed);
+        this.tick = 0;
+        if (this.index != null)
+            this.index.reset();
+    }
+
+    private static long initialRandom(long seed) {
+        // xorshift must not start with 0
+        return seed == 0 ? 0x9E3779B97F4A7C15L : seed;
+    }
+
+    /**
+     * Assigns a player to a free slot, can be called from any thread.<p>
+     * The snake spawns on one of the next steps.
+     * @return the slot or -1 if all slots are taken.
+     */
+    public int attach(IngamePlayer player) {
+        for (int slot = 0; slot < this.slots.length(); slot++) {
+            if (this.slots.compareAndSet(slot, null, player))
+                return slot;
+        }
+
+        return -1;
+    }
+
+    /**
+     * Removes a player from its slot, can be called from any thread.<p>
+     * The snake is removed on the next step.
+     */
+    public void detach(IngamePlayer player) {
+        for (int slot = 0; slot < this.slots.length(); slot++) {
+            if (this.slots.compareAndSet(slot, player, null))
+                return;
+        }
+    }
+
+    /**
+     * Hands the slot and the snake of a player to another player, e.g. a client taking over its snake
+     * after a restart. The snake keeps moving in its direction, the new player may start its input
+     * sequence numbers again.<p>
+     * Must only be called by the thread ticking the room.
+     * @param from the player owning the slot
+     * @param to the player taking it over, it must not have a slot
+     * @return false if the player owns no slot.
+     */
+    public boolean transfer(IngamePlayer from, IngamePlayer to) {
+        int slot = from.getSlot();
+        if (slot < 0 || this.owners[slot] != from || !this.slots.compareAndSet(slot, from, to))
+            return false;
+
+        this.owners[slot] = to;
+        from.setSlot(-1);
+        to.setSlot(slot);
+        to.restore(from.getDirection(), Integer.MIN_VALUE);
+        return true;
+    }
+
+    /**
+     * Moves all snakes by one cell, handles collisions, food and respawns.
+     */
+    public void step() {
+        this.tick++;
+        int slotCount = this.owners.length;
+
+        this.syncSlots();
+
+        for (int s = 0; s < slotCount; s++) {
+            if (this.owners[s] != null && !this.alive[s] && --this.respawnTimers[s] <= 0)
+                this.spawnSnake(s);
+        }
+
+        // find the next heads and move the tails of all snakes that don't eat
+        for (int s = 0; s < slotCount; s++) {
+            if (!this.alive[s])
+                continue;
+
+            this.directions[s] = this.owners[s].getDirection();
+            int next = this.neighbor(this.snakes[s].getHead(), this.directions[s]);
+            this.nextHeads[s] = next;
+
+            boolean eats = next >= 0 && this.grid[next] == FOOD && !this.snakes[s].isFull();
+            if (!eats)
+                this.setCell(this.snakes[s].popTail(), EMPTY);
+        }
+
+        // collisions with walls and bodies
+        for (int s = 0; s < slotCount; s++) {
+            if (this.alive[s] && (this.nextHeads[s] < 0 || this.grid[this.nextHeads[s]] > 0))
+                this.dying[s] = true;
+        }
+
+        // move the heads, a snake head in the cell can only be from this step (head to head)
+        for (int s = 0; s < slotCount; s++) {
+            if (!this.alive[s] || this.dying[s])
+                continue;
+
+            int next = this.nextHeads[s];
+            short cell = this.grid[next];
+            if (cell > 0) {
+                this.dying[s] = true;
+                this.dying[cell - 1] = true;
+                continue;
+            }
+
+            if (cell == FOOD) {
+                this.scores[s]++;
+                this.foodCount--;
+            }
+            this.setCell(next, s + 1);
+            this.snakes[s].pushHead(next);
+            if (this.index != null)
+                this.index.moveHead(s, next);
+        }
+
+        for (int s = 0; s < slotCount; s++) {
+            if (this.dying[s]) {
+                this.dying[s] = false;
+                this.killSnake(s);
+                this.respawnTimers[s] = RESPAWN_TICKS;
+            }
+        }
+
+        while (this.foodCount < this.maxFood && this.spawnFood()) {
+            this.foodCount++;
+        }
+    }
+
+    /**
+     * Applies slot changes made by other threads.
+     */
+    private void syncSlots() {
+        for (int s = 0; s < this.owners.length; s++) {
+            IngamePlayer player = this.slots.get(s);
+            if (player != this.owners[s]) {
+                this.killSnake(s);
+                // the old owner may already have a slot in the world it moved on to
+                if (this.owners[s] != null && this.owners[s].getSlot() == s)
+                    this.owners[s].setSlot(-1);
+                if (player != null)
+                    player.setSlot(s);
+                this.owners[s] = player;
+                this.respawnTimers[s] = 0;
+                this.scores[s] = 0;
+            }
+        }
+    }
+
+    private void spawnSnake(int slot) {
+        for (int i = 0; i < SPAWN_TRIES; i++) {
+            int head = this.nextRandom(this.grid.length);
+            int direction = this.nextRandom(4);
+            int back = Direction.opposite(direction);
+
+            // the snake needs free cells for its body and one free cell in front of it
+            int tail = head;
+            boolean free = this.neighbor(head, direction) >= 0 && this.grid[this.neighbor(head, direction)] == EMPTY;
+            for (int segment = 0; free && segment < START_LENGTH; segment++) {
+                free = this.grid[tail] == EMPTY;
+                if (segment < START_LENGTH - 1) {
+                    tail = this.neighbor(tail, back);
+                    free &= tail >= 0;
+                }
+            }
+            if (!free)
+                continue;
+
+            SnakeBody body = this.snakes[slot];
+            body.clear();
+            int cell = tail;
+            for (int segment = 0; segment < START_LENGTH; segment++) {
+                this.setCell(cell, slot + 1);
+                body.pushHead(cell);
+                cell = this.neighbor(cell, direction);
+            }
+            if (this.index != null)
+                this.index.moveHead(slot, body.getHead());
+
+            this.alive[slot] = true;
+            this.directions[slot] = direction;
+            this.owners[slot].setDirection(direction);
+            return;
+        }
+
+        // no space, try again on the next step
+        this.respawnTimers[slot] = 1;
+    }
+
+    private void killSnake(int slot) {
+        SnakeBody body = this.snakes[slot];
+        int cell;
+        while ((cell = body.popTail()) >= 0) {
+            this.setCell(cell, EMPTY);
+        }
+        if (this.index != null)
+            this.index.removeHead(slot);
+
+        this.alive[slot] = false;
+        this.scores[slot] = 0;
+    }
+
+    private boolean spawnFood() {
+        for (int i = 0; i < SPAWN_TRIES; i++) {
+            int cell = this.nextRandom(this.grid.length);
+            if (this.grid[cell] == EMPTY) {
+                this.setCell(cell, FOOD);
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private void setCell(int cell, int value) {
+        this.grid[cell] = (short) value;
+        if (this.index != null)
+            this.index.cellChanged(cell, this.tick);
+    }
+
+    /**
+     * Returns the cell next to the given cell.
+     * @return the cell index or -1 if it would be outside of the board.
+     */
+    private int neighbor(int cell, int direction) {
+        int x = cell % this.width;
+        int y = cell / this.width;
+
+        switch (direction) {
+            case Direction.UP:
+                return y == 0 ? -1 : cell - this.width;
+            case Direction.DOWN:
+                return y == this.height - 1 ? -1 : cell + this.width;
+            case Direction.LEFT:
+                return x == 0 ? -1 : cell - 1;
+            default:
+                return x == this.width - 1 ? -1 : cell + 1;
+        }
+    }
+
+    /**
+     * Returns a random int between 0 (inclusive) and bound (exclusive), using xorshift64*.
+     */
+    private int nextRandom(int bound) {
+        long x = this.random;
+        x ^= x >>> 12;
+        x ^= x << 25;
+        x ^= x >>> 27;
+        this.random = x;
+        return (int) (((x * 0x2545F4914F6CDD1DL) >>> 33) % bound);
+    }
+
+    public int getWidth() {
+        return this.width;
+    }
+
+    public int getHeight() {
+        return this.height;
+    }
+
+    public int getSlotCount() {
+        return this.owners.length;
+    }
+
+    /**
+     * Returns the content of a cell.
+     * @return {@link #EMPTY}, {@link #FOOD} or the slot + 1 of the snake in the cell.
+     */
+    public short getCell(int cell) {
+        return this.grid[cell];
+    }
+
+    /**
+     * Returns the amount of cells on the board.
+     */
+    public int getCellCount() {
+        return this.grid.length;
+    }
+
+    public boolean isAlive(int slot) {
+        return this.alive[slot];
+    }
+
+    public int getScore(int slot) {
+        return this.scores[slot];
+    }
+
+    public int getDirection(int slot) {
+        return this.directions[slot];
+    }
+
+    public SnakeBody getSnake(int slot) {
+        return this.snakes[slot];
+    }
+
+    /**
+     * Returns the index of the changed cells and snake heads.
+     * @return null if the world is not indexed.
+     */
+    public SpatialHashGrid getIndex() {
+        return this.index;
+    }
+
+    /**
+     * Returns the amount of steps done.
+     */
+    public long getTick() {
+        return this.tick;
+    }
+
+    /**
+     * Returns the maximum amount of bytes {@link #writeSnapshot(ByteBuffer)} writes.<p>
+     * Must only be called by the thread ticking the room.
+     */
+    public int getSnapshotSizeBound() {
+        // every varint takes at most 5 bytes
+        int size = 2 * Long.BYTES + 5 + 5 * this.foodCount + 5;
+        for (int s = 0; s < this.owners.length; s++) {
+            if (this.owners[s] != null)
+                size += 5 * 5 + 2 + 5 * this.snakes[s].getLength();
+        }
+        return size;
+    }
+
+    /**
+     * Writes everything the next steps depend on: the tick, the random generator, the food and the
+     * slots with a player and their snakes. The players themselves are not written, they are given
+     * back to {@link #restoreSnapshot(ByteBuffer, IngamePlayer[])} by their slot.<p>
+     * Must only be called by the thread ticking the room, between two steps.
+     * @param buffer the buffer, with at least {@link #getSnapshotSizeBound()} bytes remaining
+     */
+    public void writeSnapshot(ByteBuffer buffer) {
+        buffer.putLong(this.tick);
+        buffer.putLong(this.random);
+
+        MessageCodec.putVarInt(buffer, this.foodCount);
+        for (int cell = 0; cell < this.grid.length; cell++) {
+            if (this.grid[cell] == FOOD)
+                MessageCodec.putVarInt(buffer, cell);
+        }
+
+        int taken = 0;
+        for (int s = 0; s < this.owners.length; s++) {
+            if (this.owners[s] != null)
+                taken++;
+        }
+        MessageCodec.putVarInt(buffer, taken);
+        for (int s = 0; s < this.owners.length; s++) {
+            if (this.owners[s] == null)
+                continue;
+
+            SnakeBody body = this.snakes[s];
+            MessageCodec.putVarInt(buffer, s);
+            buffer.put((byte) (this.alive[s] ? 1 : 0));
+            buffer.put((byte) this.directions[s]);
+            MessageCodec.putVarInt(buffer, this.respawnTimers[s]);
+            MessageCodec.putVarInt(buffer, this.scores[s]);
+            MessageCodec.putVarInt(buffer, body.getLength());
+            for (int i = 0; i < body.getLength(); i++) {
+                MessageCodec.putVarInt(buffer, body.get(i));
+            }
+        }
+    }
+
+    /**
+     * Restores a world written by {@link #writeSnapshot(ByteBuffer)} into this empty world. It steps
+     * on exactly like the written world with the same inputs.<p>
+     * Must not be called while the world is stepped.
+     * @param buffer the snapshot
+     * @param players the players of the written slots by slot, every written slot must have one
+     * @throws IllegalArgumentException if the snapshot does not fit into this world.
+     * @throws java.nio.BufferUnderflowException if the snapshot is truncated.
+     */
+    public void restoreSnapshot(ByteBuffer buffer, IngamePlayer[] players) {
+        this.tick = buffer.getLong();
+        this.random = buffer.getLong();
+
+        int foodCount = MessageCodec.getVarInt(buffer);
+        for (int i = 0; i < foodCount; i++) {
+            this.setCell(this.checkCell(MessageCodec.getVarInt(buffer)), FOOD);
+        }
+        this.foodCount = foodCount;
+
+        int taken = MessageCodec.getVarInt(buffer);
+        for (int i = 0; i < taken; i++) {
+            int s = MessageCodec.getVarInt(buffer);
+            if (s < 0 || s >= this.owners.length || s >= players.length || players[s] == null)
+                throw new IllegalArgumentException("Slot " + s + " of the snapshot has no player.");
+
+            IngamePlayer player = players[s];
+            this.slots.set(s, player);
+            this.owners[s] = player;
+            player.setSlot(s);
+
+            this.alive[s] = buffer.get() != 0;
+            this.directions[s] = buffer.get();
+            this.respawnTimers[s] = MessageCodec.getVarInt(buffer);
+            this.scores[s] = MessageCodec.getVarInt(buffer);
+
+            SnakeBody body = this.snakes[s];
+            int length = MessageCodec.getVarInt(buffer);
+            for (int segment = 0; segment < length; segment++) {
+                int cell = this.checkCell(MessageCodec.getVarInt(buffer));
+                if (!body.pushHead(cell))
+                    throw new IllegalArgumentException("The snake in slot " + s + " of the snapshot is too long.");
+                this.setCell(cell, s + 1);
+            }
+            if (this.index != null && this.alive[s] && length > 0)
+                this.index.moveHead(s, body.getHead());
+        }
+    }
+
+    private int checkCell(int cell) {
+        if (cell < 0 || cell >= this.grid.length)
+            throw new IllegalArgumentException("Cell " + cell + " of the snapshot is outside of the board.");
+        return cell;
+    }
+
+    /**
+     * Returns a hash of the board, the snakes and the random generator, two worlds with the same
+     * checksum almost certainly behave the same from now on.<p>
+     * Must only be called by the thread ticking the room.
+     */
+    public long checksum() {
+        // FNV-1a over everything the next steps depend on
+        long hash = 0xcbf29ce484222325L;
+        for (short cell : this.grid) {
+            hash = (hash ^ cell) * 0x100000001b3L;
+        }
+        for (int s = 0; s < this.owners.length; s++) {
+            hash = (hash ^ this.snakes[s].getHead()) * 0x100000001b3L;
+            hash = (hash ^ this.scores[s]) * 0x100000001b3L;
+            hash = (hash ^ this.respawnTimers[s]) * 0x100000001b3L;
+            hash = (hash ^ (this.alive[s] ? 1 : 0)) * 0x100000001b3L;
+        }
+        hash = (hash ^ this.random) * 0x100000001b3L;
+        return (hash ^ this.tick) * 0x100000001b3L;
+    }
+}
@@ -0,0 +1,257 @@
+package de.backend.snakefever.journal;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import de.backend.snakefever.SnakeFever;
+
+/**
+ * An append-only journal of everything the rooms need to be replayed: their seeds, the joins and
+ * leaves of their players, every input taken on a tick and a checksum of the world now and then.<p>
+ * Every tick shard records into its own {@link JournalRecorder}, a writer thread drains them into
+ * memory mapped segment files. A segment is mapped once at its full size, so appending a record is
+ * a copy into memory, the operating system writes the pages to the file in the background. Records
+ * of different shards are interleaved in the file, the records of one room are always in order.<p>
+ * The segments of one journal are named {@code <run>-<index>.journal}, where run is the time the
+ * journal was opened. Every segment starts with {@link #MAGIC} and its index, followed by records,
+ * the first zero byte after the records marks the end. A record is its length in one byte, the type
+ * and the varint key of its room, followed by the fields of the type. See {@link JournalReader} and
+ * {@link JournalReplay} for reading and replaying it.
+ */
+public final class InputJournal implements Closeable {
+    /**
+     * The first four bytes of every segment.
+     */
+    public static final int MAGIC = 0x534e4a31;
+
+    /**
+     * The file extension of the segments.
+     */
+    public static final String SEGMENT_SUFFIX = ".journal";
+
+    /**
+     * The default size of a segment.
+     */
+    public static final long DEFAULT_SEGMENT_BYTES = 64L << 20;
+
+    /**
+     * The default size of the ring of every recorder.
+     */
+    public static final int DEFAULT_RING_BYTES = 1 << 20;
+
+    /**
+     * The amount of room ticks between two checksums.
+     */
+    public static final int CHECKSUM_INTERVAL = 20;
+
+    // the record types
+    static final int ROOM_STARTED = 1;
+    static final int PLAYER_JOINED = 2;
+    static final int PLAYER_LEFT = 3;
+    static final int INPUT = 4;
+    static final int TICK = 5;
+    static final int CHECKSUM = 6;
+    static final int ROOM_FINISHED = 7;
+
+    // the flags of a started room
+    static final int FLAG_QUICKPLAY = 1;
+    static final int FLAG_ARENA = 2;
+
+    // the size of the segment header
+    static final int HEADER_SIZE = 8;
+
+    // the time the writer sleeps when there was nothing to write
+    private static final long IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+
+    private final Path directory;
+    // the name prefix of the segments
+    private final String run;
+    private final long segmentBytes;
+    private final int ringBytes;
+
+    // the recorders of the shards, drained by the writer
+    private final List<JournalRecorder> recorders = new CopyOnWriteArrayList<>();
+    // the keys handed out to the rooms
+    private final AtomicInteger roomKeys = new AtomicInteger();
+
+    // the thread draining the recorders
+    private final Thread writer;
+    private volatile boolean closed;
+
+    // the current segment, only used by the writer
+    private MappedByteBuffer segment;
+    private int segmentIndex = -1;
+    // the first write error, the journal stops writing after it
+    private volatile IOException error;
+
+    private volatile long writtenBytes;
+    private volatile int segmentCount;
+
+    private InputJournal(Path directory, long segmentBytes, int ringBytes) {
+        this.directory = directory;
+        this.run = Long.toString(System.currentTimeMillis());
+        this.segmentBytes = Math.max(1 << 16, Math.min(Integer.MAX_VALUE, segmentBytes));
+        this.ringBytes = ringBytes;
+
+        this.writer = new Thread(this::write, "journal-writer");
+        this.writer.setDaemon(true);
+    }
+
+    /**
+     * Opens a new journal and starts its writer thread.
+     * @param directory the directory of the segments, created if it does not exist
+     * @param segmentBytes the size of one segment
+     * @param ringBytes the size of the ring of every recorder, records are dropped while it is full
+     * @throws IOException if the first segment could not be created.
+     */
+    public static InputJournal open(Path directory, long segmentBytes, int ringBytes) throws IOException {
+        Files.createDirectories(directory);
+
+        InputJournal journal = new InputJournal(directory, segmentBytes, ringBytes);
+        journal.nextSegment();
+        journal.writer.start();
+        return journal;
+    }
+
+    /**
+     * Creates a recorder for one thread, e.g. a tick shard.
+     */
+    public JournalRecorder newRecorder() {
+        JournalRecorder recorder = new JournalRecorder(this, this.ringBytes);
+        this.recorders.add(recorder);
+        return recorder;
+    }
+
+    int nextRoomKey() {
+        return this.roomKeys.incrementAndGet();
+    }
+
+    /**
+     * Returns the directory of the segments.
+     */
+    public Path getDirectory() {
+        return this.directory;
+    }
+
+    /**
+     * Returns the prefix of the segment names of this journal.
+     */
+    public String getRun() {
+        return this.run;
+    }
+
+    /**
+     * Returns the amount of bytes written to the segments, without the headers.
+     */
+    public long getWrittenBytes() {
+        return this.writtenBytes;
+    }
+
+    /**
+     * Returns the amount of segments created.
+     */
+    public int getSegmentCount() {
+        return this.segmentCount;
+    }
+
+    /**
+     * Returns the amount of records dropped by all recorders.
+     */
+    public long getDropped() {
+        long dropped = 0;
+        for (JournalRecorder recorder : this.recorders) {
+            dropped += recorder.getDropped();
+        }
+        return dropped;
+    }
+
+    /**
+     * Writes the waiting records and stops the writer. Records recorded afterwards are never written.
+     */
+    @Override
+    public void close() {
+        this.closed = true;
+        LockSupport.unpark(this.writer);
+        try {
+            this.writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void write() {
+        while (!this.closed) {
+            if (this.drain() == 0)
+                LockSupport.parkNanos(IDLE_NANOS);
+        }
+
+        this.drain();
+        if (this.segment != null)
+            this.segment.force();
+    }
+
+    /**
+     * Drains all recorders into the segment.
+     * @return the amount of written records.
+     */
+    private int drain() {
+        int count = 0;
+        for (JournalRecorder recorder : this.recorders) {
+            count += recorder.drain(this::append);
+        }
+        return count;
+    }
+
+    private void append(byte[] record, int size) {
+        if (this.error != null)
+            return;
+
+        try {
+            // one byte stays free for the end marker
+            if (this.segment.remaining() <= size)
+                this.nextSegment();
+
+            this.segment.put(record, 0, size);
+            this.writtenBytes = this.writtenBytes + size;
+        } catch (IOException e) {
+            this.error = e;
+            SnakeFever.LOGGER.error("Writing the input journal failed, it is no longer written.", e);
+        }
+    }
+
+    private void nextSegment() throws IOException {
+        if (this.segment != null)
+            this.segment.force();
+
+        this.segmentIndex++;
+        Path path = this.directory.resolve(segmentName(this.run, this.segmentIndex));
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // the mapping stays valid after the channel is closed
+            this.segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, this.segmentBytes);
+        }
+
+        this.segment.putInt(MAGIC);
+        this.segment.putInt(this.segmentIndex);
+        this.segmentCount = this.segmentIndex + 1;
+        SnakeFever.LOGGER.info("Recording the input journal to " + path.toAbsolutePath());
+    }
+
+    /**
+     * Returns the file name of a segment.
+     * @param run the prefix of the journal
+     * @param index the index of the segment
+     */
+    static String segmentName(String run, int index) {
+        return run + "-" + String.format("%05d", index) + SEGMENT_SUFFIX;
+    }
+}
@@ -0,0 +1,161 @@
+package de.backend.snakefever.journal;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.stream.Stream;
+
+import de.backend.snakefever.messageConstants.MessageCodec;
+
+/**
+ * Reads the segments of an {@link InputJournal} and hands every record to a {@link Visitor}, in the
+ * order they were written.
+ */
+public final class JournalReader {
+    private JournalReader() {
+    }
+
+    /**
+     * Returns the journals in a directory.
+     * @return the run of every journal, oldest first.
+     * @throws IOException if the directory could not be listed.
+     */
+    public static List<String> findRuns(Path directory) throws IOException {
+        TreeSet<String> runs = new TreeSet<>();
+        for (Path segment : listSegments(directory)) {
+            String name = segment.getFileName().toString();
+            runs.add(name.substring(0, name.lastIndexOf('-')));
+        }
+        return new ArrayList<>(runs);
+    }
+
+    /**
+     * Returns the segments of a journal.
+     * @param directory the directory of the journal
+     * @param run the run of the journal, see {@link InputJournal#getRun()}
+     * @return the segments, in the order they were written.
+     * @throws IOException if the directory could not be listed.
+     */
+    public static List<Path> findSegments(Path directory, String run) throws IOException {
+        List<Path> segments = new ArrayList<>();
+        for (Path segment : listSegments(directory)) {
+            if (segment.getFileName().toString().startsWith(run + "-"))
+                segments.add(segment);
+        }
+        // the index is zero padded, so the names sort in order
+        segments.sort(null);
+        return segments;
+    }
+
+    private static List<Path> listSegments(Path directory) throws IOException {
+        List<Path> segments = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.filter(file -> file.getFileName().toString().endsWith(InputJournal.SEGMENT_SUFFIX)).forEach(segments::add);
+        }
+        return segments;
+    }
+
+    /**
+     * Reads the segments of a journal.
+     * @param segments the segments, in the order they were written
+     * @param visitor gets every record
+     * @throws IOException if a segment could not be read or is not a journal segment.
+     */
+    public static void read(List<Path> segments, Visitor visitor) throws IOException {
+        for (Path segment : segments) {
+            MappedByteBuffer buffer;
+            try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+
+            if (buffer.remaining() < InputJournal.HEADER_SIZE || buffer.getInt() != InputJournal.MAGIC)
+                throw new IOException(segment + " is not an input journal segment.");
+            buffer.getInt();
+
+            try {
+                readRecords(buffer, visitor);
+            } catch (BufferUnderflowException | IllegalArgumentException e) {
+                throw new IOException(segment + " contains a broken record at " + buffer.position() + ".", e);
+            }
+        }
+    }
+
+    private static void readRecords(ByteBuffer buffer, Visitor visitor) {
+        int size;
+        // a zero length marks the end of the written records
+        while (buffer.hasRemaining() && (size = buffer.get() & 0xFF) != 0) {
+            ByteBuffer record = buffer.slice();
+            record.limit(size);
+            buffer.position(buffer.position() + size);
+
+            int type = record.get() & 0xFF;
+            int key = MessageCodec.getVarInt(record);
+            switch (type) {
+                case InputJournal.ROOM_STARTED:
+                    String id = getString(record);
+                    int flags = record.get();
+                    visitor.roomStarted(key, id, (flags & InputJournal.FLAG_QUICKPLAY) != 0, (flags & InputJournal.FLAG_ARENA) != 0, record.getLong());
+                    break;
+                case InputJournal.PLAYER_JOINED:
+                    int direction = record.get() & 0xFF;
+                    int lastSequence = record.getInt();
+                    visitor.playerJoined(key, getString(record), direction, lastSequence);
+                    break;
+                case InputJournal.PLAYER_LEFT:
+                    visitor.playerLeft(key, MessageCodec.getVarInt(record));
+                    break;
+                case InputJournal.INPUT:
+                    int index = MessageCodec.getVarInt(record);
+                    int inputDirection = record.get() & 0xFF;
+                    visitor.input(key, index, inputDirection, record.getInt());
+                    break;
+                case InputJournal.TICK:
+                    visitor.tick(key, MessageCodec.getVarInt(record));
+                    break;
+                case InputJournal.CHECKSUM:
+                    visitor.checksum(key, record.getLong());
+                    break;
+                case InputJournal.ROOM_FINISHED:
+                    visitor.roomFinished(key);
+                    break;
+                default:
+                    // written by a newer version, skipped
+                    break;
+            }
+        }
+    }
+
+    private static String getString(ByteBuffer record) {
+        byte[] bytes = new byte[record.get() & 0xFF];
+        record.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Gets the records of a journal, see {@link JournalRecorder} for the meaning of the fields.
+     */
+    public interface Visitor {
+        void roomStarted(int key, String id, boolean quickplay, boolean arena, long seed);
+
+        void playerJoined(int key, String name, int direction, int lastSequence);
+
+        void playerLeft(int key, int index);
+
+        void input(int key, int index, int direction, int sequence);
+
+        void tick(int key, long worldTick);
+
+        void checksum(int key, long checksum);
+
+        void roomFinished(int key);
+    }
+}
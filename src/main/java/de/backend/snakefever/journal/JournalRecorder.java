@@ -0,0 +1,230 @@
+package de.backend.snakefever.journal;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+
+import de.backend.snakefever.game.InputRingBuffer;
+import de.backend.snakefever.messageConstants.MessageCodec;
+
+/**
+ * Records the rooms of one tick shard into the journal.<p>
+ * The records are encoded into a lock-free single producer single consumer ring buffer, the
+ * producer is the shard thread, the consumer is the writer thread of the {@link InputJournal}. So
+ * recording is a few bytes copied on the tick thread, it never blocks and never touches the file.
+ * Records that don't fit into a full ring are dropped and counted, the journal of their room is
+ * incomplete from then on, which a replay notices at the next checksum.
+ */
+public final class JournalRecorder {
+    // the largest record, a join with a long name
+    private static final int MAX_RECORD_SIZE = 256;
+
+    // the journal this recorder belongs to, hands out the room keys
+    private final InputJournal journal;
+
+    // the encoded records, each prefixed with its length byte
+    private final byte[] ring;
+    // capacity - 1, used instead of a modulo
+    private final int mask;
+
+    // the index of the next byte to read, only written by the consumer
+    private final AtomicLong head = new AtomicLong();
+    // the index of the next byte to write, only written by the producer
+    private final AtomicLong tail = new AtomicLong();
+
+    // the record that is currently encoded, only used by the producer
+    private final ByteBuffer record = ByteBuffer.allocate(MAX_RECORD_SIZE);
+    // the record that is currently drained, only used by the consumer
+    private final byte[] drained = new byte[MAX_RECORD_SIZE];
+
+    // only written by the producer
+    private volatile long recorded;
+    private volatile long dropped;
+
+    /**
+     * Creates a recorder.
+     * @param journal the journal writing the records
+     * @param capacity the size of the ring in bytes, rounded up to a power of two
+     */
+    JournalRecorder(InputJournal journal, int capacity) {
+        this.journal = journal;
+        int size = Integer.highestOneBit(Math.max(2 * MAX_RECORD_SIZE, capacity) - 1) << 1;
+        this.ring = new byte[size];
+        this.mask = size - 1;
+    }
+
+    /**
+     * Records the start of a room, before any of its players joined.
+     * @param id the id of the room
+     * @param quickplay is the room a quickplay room?
+     * @param arena is the room an arena?
+     * @param seed the seed of the room's world
+     * @return the key identifying the room in all further records.
+     */
+    public int roomStarted(String id, boolean quickplay, boolean arena, long seed) {
+        int key = this.journal.nextRoomKey();
+        this.begin(InputJournal.ROOM_STARTED, key);
+        this.putString(id);
+        this.record.put((byte) ((quickplay ? InputJournal.FLAG_QUICKPLAY : 0) | (arena ? InputJournal.FLAG_ARENA : 0)));
+        this.record.putLong(seed);
+        this.commit();
+        return key;
+    }
+
+    /**
+     * Records a player joining a room, it is added to the end of the room's player list.
+     * @param key the key of the room
+     * @param name the name of the player
+     * @param direction the direction of the player when it joined
+     * @param lastSequence the sequence number of the last input the player applied before it joined
+     */
+    public void playerJoined(int key, String name, int direction, int lastSequence) {
+        this.begin(InputJournal.PLAYER_JOINED, key);
+        this.record.put((byte) direction);
+        this.record.putInt(lastSequence);
+        this.putString(name);
+        this.commit();
+    }
+
+    /**
+     * Records a player leaving a room.
+     * @param key the key of the room
+     * @param index the index of the player in the room's player list
+     */
+    public void playerLeft(int key, int index) {
+        this.begin(InputJournal.PLAYER_LEFT, key);
+        MessageCodec.putVarInt(this.record, index);
+        this.commit();
+    }
+
+    /**
+     * Records an input a player took from its buffer during a tick.
+     * @param key the key of the room
+     * @param index the index of the player in the room's player list
+     * @param input the packed input
+     */
+    public void input(int key, int index, long input) {
+        this.begin(InputJournal.INPUT, key);
+        MessageCodec.putVarInt(this.record, index);
+        this.record.put((byte) InputRingBuffer.direction(input));
+        this.record.putInt(InputRingBuffer.sequence(input));
+        this.commit();
+    }
+
+    /**
+     * Records the end of a room tick, everything recorded since the last tick happened in it.
+     * @param key the key of the room
+     * @param worldTick the tick of the room's world after the tick
+     */
+    public void tick(int key, long worldTick) {
+        this.begin(InputJournal.TICK, key);
+        MessageCodec.putVarInt(this.record, (int) worldTick);
+        this.commit();
+    }
+
+    /**
+     * Records the checksum of a room's world after a tick.
+     * @param key the key of the room
+     * @param checksum the checksum of the world
+     */
+    public void checksum(int key, long checksum) {
+        this.begin(InputJournal.CHECKSUM, key);
+        this.record.putLong(checksum);
+        this.commit();
+    }
+
+    /**
+     * Records the end of a room, the key is not used again.
+     * @param key the key of the room
+     */
+    public void roomFinished(int key) {
+        this.begin(InputJournal.ROOM_FINISHED, key);
+        this.commit();
+    }
+
+    /**
+     * Returns the amount of records put into the ring.
+     */
+    public long getRecorded() {
+        return this.recorded;
+    }
+
+    /**
+     * Returns the amount of records dropped because the writer did not keep up.
+     */
+    public long getDropped() {
+        return this.dropped;
+    }
+
+    private void begin(int type, int key) {
+        this.record.clear();
+        // the length, set on commit
+        this.record.put((byte) 0);
+        this.record.put((byte) type);
+        MessageCodec.putVarInt(this.record, key);
+    }
+
+    private void putString(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        int length = Math.min(bytes.length, 64);
+        this.record.put((byte) length);
+        this.record.put(bytes, 0, length);
+    }
+
+    private void commit() {
+        int size = this.record.position();
+        this.record.put(0, (byte) (size - 1));
+
+        long tail = this.tail.get();
+        if (this.ring.length - (tail - this.head.get()) < size) {
+            this.dropped = this.dropped + 1;
+            return;
+        }
+
+        int offset = (int) tail & this.mask;
+        int first = Math.min(size, this.ring.length - offset);
+        System.arraycopy(this.record.array(), 0, this.ring, offset, first);
+        System.arraycopy(this.record.array(), first, this.ring, 0, size - first);
+
+        // publishes the record to the consumer
+        this.tail.lazySet(tail + size);
+        this.recorded = this.recorded + 1;
+    }
+
+    /**
+     * Copies the waiting records, must only be called by the writer thread.
+     * @param sink gets every record, with its length byte
+     * @return the amount of copied records.
+     */
+    int drain(RecordSink sink) {
+        byte[] record = this.drained;
+        long head = this.head.get();
+        long tail = this.tail.get();
+
+        int count = 0;
+        while (head < tail) {
+            int offset = (int) head & this.mask;
+            int size = (this.ring[offset] & 0xFF) + 1;
+
+            int first = Math.min(size, this.ring.length - offset);
+            System.arraycopy(this.ring, offset, record, 0, first);
+            System.arraycopy(this.ring, 0, record, first, size - first);
+            sink.accept(record, size);
+
+            head += size;
+            count++;
+        }
+
+        // frees the copied records for the producer
+        this.head.lazySet(head);
+        return count;
+    }
+
+    /**
+     * Gets the drained records.
+     */
+    @FunctionalInterface
+    interface RecordSink {
+        void accept(byte[] record, int size);
+    }
+}
@@ -0,0 +1,290 @@
+package de.backend.snakefever.journal;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import de.backend.snakefever.Player;
+import de.backend.snakefever.Room;
+import de.backend.snakefever.RoomDirectory;
+import de.backend.snakefever.Server;
+import de.backend.snakefever.metrics.MessageMetrics;
+import de.backend.snakefever.tick.TickMetrics;
+
+/**
+ * Replays the rooms of an {@link InputJournal} headlessly, as fast as possible.<p>
+ * Every recorded room is created again with its seed and headless players. The joins, leaves and
+ * inputs recorded for a tick are posted to the room and its players, then the room is ticked with
+ * {@link Room#tick(TickMetrics)}, exactly like the shard ticked it. The world is compared with every
+ * recorded checksum, so a replay either reproduces the room bit for bit or reports the first tick
+ * it diverged on, e.g. because records were dropped. The frames are encoded as usual and dropped.<p>
+ * Usage: {@code java -cp snakefever.jar de.backend.snakefever.journal.JournalReplay [--option value]...}
+ * <ul>
+ * <li>--dir: the directory of the journal, default {@code journal}</li>
+ * <li>--run: the journal in the directory, default the newest one</li>
+ * <li>--room: only replay the rooms with this id, default all</li>
+ * </ul>
+ */
+public final class JournalReplay implements JournalReader.Visitor {
+    // only rooms with this id are replayed, null for all
+    private final String roomId;
+
+    // the rooms that are replayed by their key
+    private final Map<Integer, ReplayRoom> rooms = new HashMap<>();
+    // the results of the finished rooms
+    private final List<Result> results = new ArrayList<>();
+
+    // shared by all replayed rooms, nothing reads them, there are no spectators
+    private final MessageMetrics messageMetrics = new MessageMetrics();
+    private final RoomDirectory directory = new RoomDirectory();
+    private final TickMetrics tickMetrics = new TickMetrics(TimeUnit.MILLISECONDS.toNanos(Server.TICK_INTERVAL_MILLIS));
+
+    /**
+     * Creates a replay.
+     * @param roomId only rooms with this id are replayed, null for all
+     */
+    public JournalReplay(String roomId) {
+        this.roomId = roomId;
+    }
+
+    /**
+     * Replays the rooms of a journal.
+     * @param segments the segments of the journal, see {@link JournalReader#findSegments(Path, String)}
+     * @param roomId only rooms with this id are replayed, null for all
+     * @return the result of every replayed room, in the order the rooms finished.
+     * @throws IOException if the journal could not be read.
+     */
+    public static List<Result> replay(List<Path> segments, String roomId) throws IOException {
+        JournalReplay replay = new JournalReplay(roomId);
+        JournalReader.read(segments, replay);
+        return replay.finish();
+    }
+
+    /**
+     * Ends the rooms that were still running when the journal ended.
+     * @return the results of all replayed rooms.
+     */
+    public List<Result> finish() {
+        for (ReplayRoom room : this.rooms.values()) {
+            this.results.add(room.result);
+        }
+        this.rooms.clear();
+        return this.results;
+    }
+
+    @Override
+    public void roomStarted(int key, String id, boolean quickplay, boolean arena, long seed) {
+        if (this.roomId == null || this.roomId.equals(id))
+            this.rooms.put(key, new ReplayRoom(new Room(id, quickplay, arena, seed, this.messageMetrics, this.directory, Runnable::run)));
+    }
+
+    @Override
+    public void playerJoined(int key, String name, int direction, int lastSequence) {
+        ReplayRoom room = this.rooms.get(key);
+        if (room == null)
+            return;
+
+        Player player = Player.headless(name, room.room);
+        player.getIngamePlayer().restore(direction, lastSequence);
+        room.room.tryReserveSlot();
+        room.room.addPlayer(player);
+        room.players.add(player);
+        room.result.joins++;
+    }
+
+    @Override
+    public void playerLeft(int key, int index) {
+        ReplayRoom room = this.rooms.get(key);
+        if (room == null)
+            return;
+
+        if (index >= room.players.size()) {
+            room.diverge();
+            return;
+        }
+        room.room.removePlayer(room.players.remove(index));
+    }
+
+    @Override
+    public void input(int key, int index, int direction, int sequence) {
+        ReplayRoom room = this.rooms.get(key);
+        if (room == null)
+            return;
+
+        if (index >= room.players.size()) {
+            room.diverge();
+            return;
+        }
+        // the inputs of one tick always fit, the room took them from a buffer of the same size
+        room.players.get(index).getIngamePlayer().offerInput(direction, sequence);
+        room.result.inputs++;
+    }
+
+    @Override
+    public void tick(int key, long worldTick) {
+        ReplayRoom room = this.rooms.get(key);
+        if (room == null)
+            return;
+
+        long start = System.nanoTime();
+        room.room.tick(this.tickMetrics);
+        room.result.tickNanos += System.nanoTime() - start;
+        room.result.ticks++;
+
+        if (room.room.getWorld().getTick() != worldTick)
+            room.diverge();
+    }
+
+    @Override
+    public void checksum(int key, long checksum) {
+        ReplayRoom room = this.rooms.get(key);
+        if (room == null)
+            return;
+
+        room.result.checksums++;
+        if (room.room.getWorld().checksum() != checksum)
+            room.diverge();
+    }
+
+    @Override
+    public void roomFinished(int key) {
+        ReplayRoom room = this.rooms.remove(key);
+        if (room != null)
+            this.results.add(room.result);
+    }
+
+    public static void main(String[] args) throws IOException {
+        Path directory = Paths.get("journal");
+        String run = null;
+        String roomId = null;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "--dir": directory = Paths.get(value); break;
+                case "--run": run = value; break;
+                case "--room": roomId = value; break;
+                default: throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+
+        if (run == null) {
+            List<String> runs = JournalReader.findRuns(directory);
+            if (runs.isEmpty())
+                throw new IOException("There is no journal in " + directory.toAbsolutePath());
+            run = runs.get(runs.size() - 1);
+        }
+
+        long start = System.nanoTime();
+        List<Result> results = replay(JournalReader.findSegments(directory, run), roomId);
+        long elapsed = System.nanoTime() - start;
+
+        long ticks = 0;
+        long tickNanos = 0;
+        int diverged = 0;
+        for (Result result : results) {
+            System.out.println(result);
+            ticks += result.ticks;
+            tickNanos += result.tickNanos;
+            if (result.divergedTick >= 0)
+                diverged++;
+        }
+
+        double seconds = elapsed / 1e9;
+        double gameSeconds = ticks * Server.TICK_INTERVAL_MILLIS / 1e3;
+        System.out.println("=== result");
+        System.out.println(String.format("rooms=%d diverged=%d ticks=%d in %.2fs (%.0f ticks/s, %.0fx real time) room tick avg=%.1fus",
+            results.size(), diverged, ticks, seconds, ticks / seconds, gameSeconds / seconds,
+            ticks == 0 ? 0 : tickNanos / 1e3 / ticks));
+    }
+
+    /**
+     * A room that is replayed, with its players in the same order as in the recorded room.
+     */
+    private static final class ReplayRoom {
+        private final Room room;
+        private final List<Player> players = new ArrayList<>();
+        private final Result result;
+
+        private ReplayRoom(Room room) {
+            this.room = room;
+            this.result = new Result(room.getId());
+        }
+
+        /**
+         * Remembers the first tick the replay no longer matched the journal.
+         */
+        private void diverge() {
+            if (this.result.divergedTick < 0)
+                this.result.divergedTick = this.room.getWorld().getTick();
+        }
+    }
+
+    /**
+     * The outcome of one replayed room.
+     */
+    public static final class Result {
+        private final String roomId;
+        private long ticks;
+        private long tickNanos;
+        private int joins;
+        private long inputs;
+        private int checksums;
+        private long divergedTick = -1;
+
+        private Result(String roomId) {
+            this.roomId = roomId;
+        }
+
+        public String getRoomId() {
+            return this.roomId;
+        }
+
+        /**
+         * Returns the amount of replayed ticks.
+         */
+        public long getTicks() {
+            return this.ticks;
+        }
+
+        /**
+         * Returns the time spent in {@link Room#tick(TickMetrics)}.
+         */
+        public long getTickNanos() {
+            return this.tickNanos;
+        }
+
+        public int getJoins() {
+            return this.joins;
+        }
+
+        public long getInputs() {
+            return this.inputs;
+        }
+
+        /**
+         * Returns the amount of compared checksums.
+         */
+        public int getChecksums() {
+            return this.checksums;
+        }
+
+        /**
+         * Returns the first world tick that did not match the journal.
+         * @return -1 if the replay matched.
+         */
+        public long getDivergedTick() {
+            return this.divergedTick;
+        }
+
+        @Override
+        public String toString() {
+            return "room " + this.roomId + ": ticks=" + this.ticks + " joins=" + this.joins + " inputs=" + this.inputs
+                + " checksums=" + this.checksums + (this.divergedTick < 0 ? " ok" : " DIVERGED at tick " + this.divergedTick);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package de.backend.snakefever.limits;
+
+import java.util.concurrent.TimeUnit;
+
+import io.socket.engineio.server.Emitter;
+
+/**
+ * Limits the events received on one socket, every limited event has its own token bucket.<p>
+ * Events over the budget are dropped before their listener runs.
+ */
+public final class InboundLimiter {
+    // the minimum time between two reported drops of the same event
+    private static final long REPORT_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final SocketLimits limits;
+    private final DropListener dropListener;
+
+    /**
+     * Creates a limiter for one socket.
+     * @param limits the budgets of the events
+     * @param dropListener called for every dropped event
+     */
+    public InboundLimiter(SocketLimits limits, DropListener dropListener) {
+        this.limits = limits;
+        this.dropListener = dropListener;
+    }
+
+    /**
+     * Returns a listener calling the given one only while the event is within its budget.
+     * @param event the event name from {@link de.backend.snakefever.messageConstants.MessageConstants}
+     * @param listener the listener handling the event
+     * @return the listener itself, if the event has no budget.
+     */
+    public Emitter.Listener limit(String event, Emitter.Listener listener) {
+        SocketLimits.Budget budget = this.limits.getBudget(event);
+        if (budget == null)
+            return listener;
+
+        TokenBucket bucket = new TokenBucket(budget, System.nanoTime());
+        return args -> {
+            long now = System.nanoTime();
+            if (bucket.tryAcquire(now)) {
+                listener.call(args);
+            } else {
+                this.dropListener.onDropped(event, bucket.shouldReport(now, REPORT_INTERVAL_NANOS));
+            }
+        };
+    }
+
+    /**
+     * Gets told about dropped events.
+     */
+    @FunctionalInterface
+    public interface DropListener {
+        /**
+         * Called for a dropped event.
+         * @param event the event name
+         * @param report true for at most one dropped event of this type per second
+         */
+        void onDropped(String event, boolean report);
+    }
+}
@@ -0,0 +1,134 @@
+package de.backend.snakefever.limits;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import de.backend.snakefever.messageConstants.MessageConstants;
+
+/**
+ * The limits every player socket is held to: a token bucket budget per inbound event and the size of
+ * the outbound queue.<p>
+ * Events without a budget are not limited. The defaults allow a client sending inputs and acks every
+ * tick with some jitter, while a client flooding names or rooms is cut off after a short burst.<p>
+ * The limits are read when a player connects, so they have to be set before the server accepts
+ * connections.
+ */
+public final class SocketLimits {
+    // the budgets by event name
+    private final Map<String, Budget> budgets = new HashMap<>();
+
+    // the maximum amount of queued messages per socket, not counting the conflated room frame
+    private int maxQueuedMessages = 64;
+    // the maximum amount of room frames replaced in a row before one was sent, 5 seconds of ticks
+    private int maxUnsentFrames = 100;
+    // the threads writing to the sockets
+    private int senderThreads = Math.max(4, 2 * Runtime.getRuntime().availableProcessors());
+
+    /**
+     * Returns new limits with the default budgets.
+     */
+    public static SocketLimits defaults() {
+        SocketLimits limits = new SocketLimits();
+        // one input and one ack per 50 ms tick, with room for clients sending a bit faster
+        limits.setBudget(MessageConstants.EVENT_PLAYER_INPUT_REQUEST, 60, 30);
+        limits.setBudget(MessageConstants.EVENT_ROOM_STATE_ACK_REQUEST, 60, 30);
+        limits.setBudget(MessageConstants.EVENT_PLAYER_SET_NAME_REQUEST, 1, 5);
+        limits.setBudget(MessageConstants.EVENT_ROOM_CREATE_REQUEST, 0.2, 3);
+        limits.setBudget(MessageConstants.EVENT_ROOM_JOIN_REQUEST, 1, 5);
+        limits.setBudget(MessageConstants.EVENT_ROOM_LEAVE_REQUEST, 1, 5);
+        limits.setBudget(MessageConstants.EVENT_ROOM_SPECTATE_REQUEST, 1, 5);
+        // resumed once after a restart, slow enough to not guess tokens
+        limits.setBudget(MessageConstants.EVENT_ROOM_RESUME_REQUEST, 1, 5);
+        // a room browser polling the changes, plus a burst for paging through the full list
+        limits.setBudget(MessageConstants.EVENT_ROOM_LIST_REQUEST, 2, 10);
+        return limits;
+    }
+
+    /**
+     * Sets the budget of an event.
+     * @param event the event name from {@link MessageConstants}
+     * @param ratePerSecond the events allowed per second on average, 0 or less removes the limit
+     * @param burst the events allowed at once after the socket was idle
+     */
+    public void setBudget(String event, double ratePerSecond, int burst) {
+        if (ratePerSecond <= 0) {
+            this.budgets.remove(event);
+        } else {
+            this.budgets.put(event, new Budget(ratePerSecond, Math.max(1, burst)));
+        }
+    }
+
+    /**
+     * Returns the budget of an event.
+     * @return null if the event is not limited.
+     */
+    public Budget getBudget(String event) {
+        return this.budgets.get(event);
+    }
+
+    /**
+     * Returns all budgets by event name.
+     */
+    public Map<String, Budget> getBudgets() {
+        return Collections.unmodifiableMap(this.budgets);
+    }
+
+    /**
+     * Returns the maximum amount of messages queued for a socket. Room frames are not counted, a newer
+     * frame replaces the queued one. A socket exceeding the limit is disconnected.
+     */
+    public int getMaxQueuedMessages() {
+        return this.maxQueuedMessages;
+    }
+
+    public void setMaxQueuedMessages(int maxQueuedMessages) {
+        this.maxQueuedMessages = Math.max(1, maxQueuedMessages);
+    }
+
+    /**
+     * Returns the maximum amount of room frames replaced by a newer one while the socket did not take
+     * any of them. A socket exceeding the limit is stuck and disconnected.
+     */
+    public int getMaxUnsentFrames() {
+        return this.maxUnsentFrames;
+    }
+
+    public void setMaxUnsentFrames(int maxUnsentFrames) {
+        this.maxUnsentFrames = Math.max(1, maxUnsentFrames);
+    }
+
+    /**
+     * Returns the amount of threads writing to the sockets. A web socket write waits until the client
+     * received the data or the write timeout passed, so this is the amount of slow clients the server
+     * can wait for at once.
+     */
+    public int getSenderThreads() {
+        return this.senderThreads;
+    }
+
+    public void setSenderThreads(int senderThreads) {
+        this.senderThreads = Math.max(1, senderThreads);
+    }
+
+    /**
+     * The token bucket settings of one event.
+     */
+    public static final class Budget {
+        private final double ratePerSecond;
+        private final int burst;
+
+        Budget(double ratePerSecond, int burst) {
+            this.ratePerSecond = ratePerSecond;
+            this.burst = burst;
+        }
+
+        public double getRatePerSecond() {
+            return this.ratePerSecond;
+        }
+
+        public int getBurst() {
+            return this.burst;
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package de.backend.snakefever.limits;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A token bucket: holds up to burst tokens and refills at a fixed rate, every event takes one token.<p>
+ * The tokens are refilled lazily when an event arrives, so an idle bucket costs nothing.
+ */
+final class TokenBucket {
+    private final double tokensPerNano;
+    private final double burst;
+
+    private double tokens;
+    private long lastRefill;
+    // when a denial was reported last, valid if reported is set
+    private long lastReport;
+    private boolean reported;
+
+    TokenBucket(SocketLimits.Budget budget, long now) {
+        this.tokensPerNano = budget.getRatePerSecond() / TimeUnit.SECONDS.toNanos(1);
+        this.burst = budget.getBurst();
+        this.tokens = this.burst;
+        this.lastRefill = now;
+    }
+
+    /**
+     * Takes a token, if there is one.
+     * @param now the current {@link System#nanoTime()}
+     * @return false if the event is over the budget.
+     */
+    synchronized boolean tryAcquire(long now) {
+        this.tokens = Math.min(this.burst, this.tokens + (now - this.lastRefill) * this.tokensPerNano);
+        this.lastRefill = now;
+
+        if (this.tokens >= 1) {
+            this.tokens--;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns if a denied event should be reported, at most once per interval.
+     * @param now the current {@link System#nanoTime()}
+     * @param intervalNanos the minimum time between two reports
+     */
+    synchronized boolean shouldReport(long now, long intervalNanos) {
+        if (this.reported && now - this.lastReport < intervalNanos)
+            return false;
+
+        this.reported = true;
+        this.lastReport = now;
+        return true;
+    }
+}
@@ -0,0 +1,403 @@
+package de.backend.snakefever.loadtest;
+
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jetty.websocket.api.Session;
+import org.eclipse.jetty.websocket.api.annotations.OnWebSocketClose;
+import org.eclipse.jetty.websocket.api.annotations.OnWebSocketConnect;
+import org.eclipse.jetty.websocket.api.annotations.OnWebSocketError;
+import org.eclipse.jetty.websocket.api.annotations.OnWebSocketMessage;
+import org.eclipse.jetty.websocket.api.annotations.WebSocket;
+import org.eclipse.jetty.websocket.client.WebSocketClient;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+
+import de.backend.snakefever.Room;
+import de.backend.snakefever.messageConstants.MessageCodec;
+import de.backend.snakefever.messageConstants.MessageConstants;
+
+/**
+ * A simulated client speaking engine io 4 and socket io 5 over a plain web socket.<p>
+ * A bot connects, sets its name, creates or quickplay-joins a room and sends inputs at game rate.
+ * Some joins go into an arena, some watch a running room from the room list instead, on the live or the delayed feed.
+ * After a random session length it either leaves the room and joins again or disconnects and
+ * reconnects, until the load test stops. A bot losing its connection while playing, e.g. because the
+ * server restarted, resumes its room with its resume token after reconnecting.
+ */
+@WebSocket
+public final class Bot {
+    // engine io packet types
+    private static final char EIO_OPEN = '0';
+    private static final char EIO_PING = '2';
+    private static final char EIO_MESSAGE = '4';
+    // socket io packet types
+    private static final char SIO_CONNECT = '0';
+    private static final char SIO_EVENT = '2';
+    private static final char SIO_BINARY_EVENT = '5';
+
+    private final int index;
+    private final LoadTest.Options options;
+    private final WebSocketClient client;
+    private final ScheduledExecutorService scheduler;
+    private final LoadStats stats;
+
+    // everything below is guarded by this bot, jetty calls the handlers from its own threads
+    private Session session;
+    private boolean stopped;
+    // the server the bot connects to, changed by redirects
+    private String url;
+    // the request to send again after a redirect, null if there is none
+    private String redirectedRequest;
+    private String redirectedRoomId;
+    // the token of the room the bot plays in, null if it should not resume it after reconnecting
+    private String resumeToken;
+    // true while a resume request is answered
+    private boolean resuming;
+
+    private long connectStart;
+    private long joinStart = -1;
+    private ScheduledFuture<?> inputTask;
+    private ScheduledFuture<?> sessionEnd;
+    private int inputSequence;
+    private int direction = MessageConstants.INPUT_DIRECTION_RIGHT;
+    // true while the bot watches a room or looks for one to watch
+    private boolean spectating;
+
+    // the event a binary attachment belongs to, null if no attachment is expected
+    private String pendingBinaryEvent;
+
+    private final MessageCodec.RoomFrame frame = new MessageCodec.RoomFrame();
+    private final MessageCodec.RoomState state = new MessageCodec.RoomState();
+    private final MessageCodec.RoomList roomList = new MessageCodec.RoomList();
+    private final MessageCodec.RoomListEntry roomListEntry = new MessageCodec.RoomListEntry();
+
+    Bot(int index, LoadTest.Options options, WebSocketClient client, ScheduledExecutorService scheduler, LoadStats stats) {
+        this.index = index;
+        this.options = options;
+        this.client = client;
+        this.scheduler = scheduler;
+        this.stats = stats;
+        this.url = options.urls[index % options.urls.length];
+    }
+
+    /**
+     * Opens a new connection to the server.
+     */
+    public synchronized void connect() {
+        if (this.stopped)
+            return;
+
+        this.connectStart = System.nanoTime();
+        try {
+            this.client.connect(this, URI.create(this.url + "/socket.io/?EIO=4&transport=websocket"));
+        } catch (Exception e) {
+            this.stats.connectFailures.increment();
+            this.scheduleReconnect();
+        }
+    }
+
+    /**
+     * Stops the bot and closes its connection.
+     */
+    public synchronized void stop() {
+        this.stopped = true;
+        this.stopPlaying();
+        if (this.session != null)
+            this.session.close();
+    }
+
+    @OnWebSocketConnect
+    public synchronized void onConnect(Session session) {
+        this.session = session;
+    }
+
+    @OnWebSocketClose
+    public synchronized void onClose(int statusCode, String reason) {
+        this.session = null;
+        this.stopPlaying();
+        this.scheduleReconnect();
+    }
+
+    @OnWebSocketError
+    public synchronized void onError(Throwable cause) {
+        // a failed connect is only reported here, a failed open connection is closed afterwards
+        if (this.session == null) {
+            this.stats.connectFailures.increment();
+            this.scheduleReconnect();
+        }
+    }
+
+    @OnWebSocketMessage
+    public synchronized void onText(String message) {
+        if (message.isEmpty())
+            return;
+
+        switch (message.charAt(0)) {
+            case EIO_OPEN:
+                this.sendPacket(EIO_MESSAGE + "" + SIO_CONNECT);
+                break;
+            case EIO_PING:
+                this.sendPacket("3");
+                break;
+            case EIO_MESSAGE:
+                if (message.length() > 1)
+                    this.onSocketIoPacket(message.charAt(1), message.substring(2));
+                break;
+            default:
+                break;
+        }
+    }
+
+    @OnWebSocketMessage
+    public synchronized void onBinary(byte[] payload, int offset, int length) {
+        String event = this.pendingBinaryEvent;
+        this.pendingBinaryEvent = null;
+
+        if (MessageConstants.EVENT_ROOM_FRAME_BROADCAST.equals(event)) {
+            this.onFrame(ByteBuffer.wrap(payload, offset, length));
+        } else if (MessageConstants.EVENT_ROOM_LIST_RESPONSE.equals(event)) {
+            this.onRoomList(ByteBuffer.wrap(payload, offset, length));
+        }
+    }
+
+    private void onSocketIoPacket(char type, String data) {
+        if (type == SIO_CONNECT) {
+            LoadStats.record(this.stats.connectLatency, System.nanoTime() - this.connectStart);
+            this.emit(MessageConstants.EVENT_PLAYER_SET_NAME_REQUEST, new JsonPrimitive("bot" + this.index));
+            if (this.redirectedRequest != null) {
+                this.resendRedirected();
+            } else if (this.resumeToken != null) {
+                this.resume();
+            } else {
+                this.join();
+            }
+        } else if (type == SIO_BINARY_EVENT) {
+            // <attachments>-["event",{"_placeholder":true,"num":0}], the attachment follows as binary message
+            int start = data.indexOf('-') + 1;
+            JsonArray packet = JsonParser.parseString(data.substring(start)).getAsJsonArray();
+            this.pendingBinaryEvent = packet.get(0).getAsString();
+        } else if (type == SIO_EVENT) {
+            JsonArray packet = JsonParser.parseString(data).getAsJsonArray();
+            String event = packet.get(0).getAsString();
+            if (MessageConstants.EVENT_ROOM_JOIN_RESPONSE.equals(event)) {
+                this.resumeToken = packet.size() > 2 ? packet.get(2).getAsString() : null;
+                this.onJoinResponse(packet.get(1).getAsString());
+            } else if (MessageConstants.EVENT_ROOM_SPECTATE_RESPONSE.equals(event)) {
+                this.onJoinResponse(packet.get(1).getAsString());
+            } else if (MessageConstants.EVENT_ROOM_REDIRECT_RESPONSE.equals(event)) {
+                this.onRedirect(packet.get(1).getAsString(), packet.get(2).getAsString(), packet.get(3).getAsString());
+            }
+        }
+    }
+
+    /**
+     * Reconnects to the node owning the room and sends the request there again.
+     */
+    private void onRedirect(String request, String roomId, String url) {
+        if (this.joinStart < 0 || this.session == null)
+            return;
+
+        this.stats.redirects.increment();
+        this.redirectedRequest = request;
+        this.redirectedRoomId = roomId;
+        this.url = url.replaceFirst("^http", "ws");
+        // reconnects on close
+        this.session.close();
+    }
+
+    private void resendRedirected() {
+        // the join latency includes the reconnect
+        this.joinStart = System.nanoTime();
+        if (MessageConstants.EVENT_ROOM_SPECTATE_REQUEST.equals(this.redirectedRequest)) {
+            this.emit(this.redirectedRequest, new JsonPrimitive(this.redirectedRoomId), new JsonPrimitive(MessageConstants.SPECTATE_FEED_LIVE));
+        } else {
+            this.emit(this.redirectedRequest, new JsonPrimitive(this.redirectedRoomId));
+        }
+        this.redirectedRequest = null;
+        this.redirectedRoomId = null;
+    }
+
+    private void resume() {
+        this.joinStart = System.nanoTime();
+        this.resuming = true;
+        this.emit(MessageConstants.EVENT_ROOM_RESUME_REQUEST, new JsonPrimitive(this.resumeToken));
+        this.resumeToken = null;
+    }
+
+    private void join() {
+        this.joinStart = System.nanoTime();
+        this.spectating = ThreadLocalRandom.current().nextDouble() < this.options.spectateRatio;
+        if (this.spectating) {
+            // the first page of the full list is enough to find a room
+            this.emit(MessageConstants.EVENT_ROOM_LIST_REQUEST, new JsonPrimitive(0), new JsonPrimitive(0));
+        } else if (ThreadLocalRandom.current().nextDouble() < this.options.arenaRatio) {
+            this.emit(MessageConstants.EVENT_ROOM_JOIN_REQUEST, new JsonPrimitive(MessageConstants.ROOM_ARENA));
+        } else if (ThreadLocalRandom.current().nextDouble() < this.options.quickplayRatio) {
+            this.emit(MessageConstants.EVENT_ROOM_JOIN_REQUEST, new JsonPrimitive(MessageConstants.ROOM_QUICKPLAY));
+        } else {
+            this.emit(MessageConstants.EVENT_ROOM_CREATE_REQUEST);
+        }
+    }
+
+    private void onRoomList(ByteBuffer buffer) {
+        if (this.joinStart < 0 || !this.spectating || !this.roomList.decode(buffer))
+            return;
+
+        // pick a random running room
+        String roomId = null;
+        int running = 0;
+        ByteBuffer entries = this.roomList.entries;
+        while (entries.hasRemaining()) {
+            int length = MessageCodec.getVarInt(entries);
+            ByteBuffer entry = entries.slice();
+            entry.limit(length);
+            entries.position(entries.position() + length);
+
+            if (this.roomListEntry.decode(entry) && this.roomListEntry.state == Room.Lifecycle.RUNNING.ordinal()
+                    && ThreadLocalRandom.current().nextInt(++running) == 0)
+                roomId = this.roomListEntry.id;
+        }
+
+        if (roomId == null) {
+            this.onJoinResponse(MessageConstants.ERROR_ROOM_INVALID_ID);
+            return;
+        }
+
+        int feed = ThreadLocalRandom.current().nextBoolean() ? MessageConstants.SPECTATE_FEED_LIVE : MessageConstants.SPECTATE_FEED_DELAYED;
+        this.emit(MessageConstants.EVENT_ROOM_SPECTATE_REQUEST, new JsonPrimitive(roomId), new JsonPrimitive(feed));
+    }
+
+    private void onJoinResponse(String response) {
+        if (this.joinStart < 0)
+            return;
+
+        if (this.resuming) {
+            this.resuming = false;
+            // the room is gone, play somewhere else
+            if (response.startsWith("error")) {
+                this.join();
+                return;
+            }
+            this.stats.resumes.increment();
+        }
+
+        if (response.startsWith("error")) {
+            this.stats.joinErrors.increment();
+            this.joinStart = -1;
+            this.scheduler.schedule(this::rejoin, 1, TimeUnit.SECONDS);
+            return;
+        }
+
+        LoadStats.record(this.stats.joinLatency, System.nanoTime() - this.joinStart);
+        this.joinStart = -1;
+
+        long sessionMillis = (long) (this.options.sessionMillis * (0.5 + ThreadLocalRandom.current().nextDouble()));
+        this.sessionEnd = this.scheduler.schedule(this::endSession, sessionMillis, TimeUnit.MILLISECONDS);
+        // spectators only watch
+        if (this.spectating)
+            return;
+
+        long inputPeriod = TimeUnit.SECONDS.toMicros(1) / this.options.inputRate;
+        this.inputTask = this.scheduler.scheduleAtFixedRate(this::sendInput, inputPeriod, inputPeriod, TimeUnit.MICROSECONDS);
+    }
+
+    private synchronized void sendInput() {
+        // turn left or right now and then, never reverse
+        if (ThreadLocalRandom.current().nextInt(4) == 0)
+            this.direction = (this.direction + (ThreadLocalRandom.current().nextBoolean() ? 1 : 3)) % 4;
+
+        this.emit(MessageConstants.EVENT_PLAYER_INPUT_REQUEST, new JsonPrimitive(this.direction), new JsonPrimitive(++this.inputSequence));
+        this.stats.inputsSent.increment();
+    }
+
+    private void onFrame(ByteBuffer buffer) {
+        // the delayed feed would distort the latency, and spectators don't acknowledge
+        if (this.spectating) {
+            this.stats.spectatorFrames.increment();
+            return;
+        }
+
+        this.stats.framesReceived.increment();
+        this.stats.frameBytes.add(buffer.remaining());
+
+        if (!this.frame.decode(buffer))
+            return;
+
+        // same host, so the clocks match
+        LoadStats.record(this.stats.frameLatency, TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis() - this.frame.serverTime));
+
+        // acknowledge the state, so the server sends deltas
+        ByteBuffer events = this.frame.events;
+        while (events.hasRemaining()) {
+            int length = MessageCodec.getVarInt(events);
+            ByteBuffer event = events.slice();
+            event.limit(length);
+            events.position(events.position() + length);
+
+            if (MessageCodec.peekId(event) == MessageCodec.RoomState.ID && this.state.decode(event))
+                this.emit(MessageConstants.EVENT_ROOM_STATE_ACK_REQUEST, new JsonPrimitive(this.state.sequence), new JsonPrimitive(this.state.epoch));
+        }
+    }
+
+    private synchronized void endSession() {
+        this.stopPlaying();
+        // leaving on purpose, the room is not resumed
+        this.resumeToken = null;
+        if (this.session == null || this.stopped)
+            return;
+
+        if (ThreadLocalRandom.current().nextBoolean()) {
+            this.emit(MessageConstants.EVENT_ROOM_LEAVE_REQUEST);
+            this.scheduler.schedule(this::rejoin, this.options.pauseMillis, TimeUnit.MILLISECONDS);
+        } else {
+            this.stats.disconnects.increment();
+            this.session.close();
+        }
+    }
+
+    private synchronized void rejoin() {
+        if (this.session != null && !this.stopped)
+            this.join();
+    }
+
+    private void stopPlaying() {
+        if (this.inputTask != null) {
+            this.inputTask.cancel(false);
+            this.inputTask = null;
+        }
+        if (this.sessionEnd != null) {
+            this.sessionEnd.cancel(false);
+            this.sessionEnd = null;
+        }
+        this.joinStart = -1;
+        this.resuming = false;
+        this.pendingBinaryEvent = null;
+    }
+
+    private void scheduleReconnect() {
+        if (!this.stopped)
+            this.scheduler.schedule(this::connect, this.options.pauseMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void emit(String event, JsonElement... args) {
+        JsonArray packet = new JsonArray();
+        packet.add(event);
+        for (JsonElement arg : args) {
+            packet.add(arg);
+        }
+        this.sendPacket(EIO_MESSAGE + "" + SIO_EVENT + packet);
+    }
+
+    private void sendPacket(String packet) {
+        if (this.session != null)
+            this.session.getRemote().sendStringByFuture(packet);
+    }
+}
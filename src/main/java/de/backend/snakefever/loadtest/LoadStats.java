@@ -0,0 +1,52 @@
+package de.backend.snakefever.loadtest;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import de.backend.snakefever.tick.LatencyHistogram;
+
+/**
+ * The measurements of a load test run, shared by all bots.
+ */
+final class LoadStats {
+    private static final long HIGHEST_TRACKABLE_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    // the histograms only support one writer, so every recording is synchronized on the histogram
+    final LatencyHistogram connectLatency = new LatencyHistogram(HIGHEST_TRACKABLE_NANOS);
+    final LatencyHistogram joinLatency = new LatencyHistogram(HIGHEST_TRACKABLE_NANOS);
+    final LatencyHistogram frameLatency = new LatencyHistogram(HIGHEST_TRACKABLE_NANOS);
+
+    final LongAdder connectFailures = new LongAdder();
+    final LongAdder joinErrors = new LongAdder();
+    final LongAdder disconnects = new LongAdder();
+    final LongAdder redirects = new LongAdder();
+    final LongAdder resumes = new LongAdder();
+    final LongAdder inputsSent = new LongAdder();
+    final LongAdder framesReceived = new LongAdder();
+    final LongAdder frameBytes = new LongAdder();
+    final LongAdder spectatorFrames = new LongAdder();
+
+    static void record(LatencyHistogram histogram, long nanos) {
+        synchronized (histogram) {
+            histogram.record(nanos);
+        }
+    }
+
+    /**
+     * Returns the percentiles of a histogram as a human readable line.
+     */
+    static String summary(LatencyHistogram histogram) {
+        synchronized (histogram) {
+            return "n=" + histogram.getTotalCount()
+                + " p50=" + millis(histogram.getValueAtPercentile(50))
+                + " p90=" + millis(histogram.getValueAtPercentile(90))
+                + " p99=" + millis(histogram.getValueAtPercentile(99))
+                + " p99.9=" + millis(histogram.getValueAtPercentile(99.9))
+                + " max=" + millis(histogram.getMax()) + "ms";
+        }
+    }
+
+    private static String millis(long nanos) {
+        return String.format("%.2f", nanos / 1_000_000.0);
+    }
+}
@@ -0,0 +1,176 @@
+package de.backend.snakefever.loadtest;
+
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.eclipse.jetty.websocket.client.WebSocketClient;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import de.backend.snakefever.tick.TickStatsServlet;
+
+/**
+ * Puts load on a running server with simulated clients and reports the latencies seen by them.<p>
+ * Usage: {@code java -cp snakefever.jar de.backend.snakefever.loadtest.LoadTest [--option value]...}
+ * <ul>
+ * <li>--url: the server, default {@code ws://localhost:3000}. A comma separated list spreads the bots over the nodes of a
+ * cluster, bots follow redirects to other nodes.</li>
+ * <li>--admin: the admin connector of the server the stats are read from, default {@code http://localhost:3001}. A
+ * comma separated list reads them from every node of a cluster.</li>
+ * <li>--clients: the amount of bots, default 1000</li>
+ * <li>--ramp: seconds until all bots are connected, default 10</li>
+ * <li>--duration: seconds to run after the ramp up, default 60</li>
+ * <li>--quickplay: the share of joins using quickplay instead of creating a room, default 0.9</li>
+ * <li>--input-rate: inputs per second and bot, default 20 (the tick rate)</li>
+ * <li>--session: the average seconds a bot stays in a room, default 30</li>
+ * <li>--pause: milliseconds between leaving and joining again, default 1000</li>
+ * <li>--arena: the share of joins going into an arena instead of a quickplay or private room, default 0</li>
+ * <li>--spectate: the share of joins watching a running room from the room list instead of playing, default 0</li>
+ * </ul>
+ * The tick overruns are read from the {@link TickStatsServlet} of the server.
+ */
+public final class LoadTest {
+    // the time between two reports while running
+    private static final long REPORT_INTERVAL_SECONDS = 10;
+
+    /**
+     * The settings of a run.
+     */
+    static final class Options {
+        String[] urls = { "ws://localhost:3000" };
+        String[] adminUrls = { "http://localhost:3001" };
+        int clients = 1000;
+        long rampMillis = TimeUnit.SECONDS.toMillis(10);
+        long durationMillis = TimeUnit.SECONDS.toMillis(60);
+        double quickplayRatio = 0.9;
+        int inputRate = 20;
+        long sessionMillis = TimeUnit.SECONDS.toMillis(30);
+        long pauseMillis = 1000;
+        double spectateRatio = 0;
+        double arenaRatio = 0;
+
+        static Options parse(String[] args) {
+            Options options = new Options();
+            for (int i = 0; i + 1 < args.length; i += 2) {
+                String value = args[i + 1];
+                switch (args[i]) {
+                    case "--url": options.urls = value.split("\\s*,\\s*"); break;
+                    case "--admin": options.adminUrls = value.split("\\s*,\\s*"); break;
+                    case "--clients": options.clients = Integer.parseInt(value); break;
+                    case "--ramp": options.rampMillis = TimeUnit.SECONDS.toMillis(Long.parseLong(value)); break;
+                    case "--duration": options.durationMillis = TimeUnit.SECONDS.toMillis(Long.parseLong(value)); break;
+                    case "--quickplay": options.quickplayRatio = Double.parseDouble(value); break;
+                    case "--input-rate": options.inputRate = Integer.parseInt(value); break;
+                    case "--session": options.sessionMillis = TimeUnit.SECONDS.toMillis(Long.parseLong(value)); break;
+                    case "--pause": options.pauseMillis = Long.parseLong(value); break;
+                    case "--spectate": options.spectateRatio = Double.parseDouble(value); break;
+                    case "--arena": options.arenaRatio = Double.parseDouble(value); break;
+                    default: throw new IllegalArgumentException("Unknown option " + args[i]);
+                }
+            }
+            return options;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = Options.parse(args);
+        LoadStats stats = new LoadStats();
+
+        QueuedThreadPool threadPool = new QueuedThreadPool(Math.max(16, Runtime.getRuntime().availableProcessors() * 4));
+        threadPool.setName("loadtest-client");
+        WebSocketClient client = new WebSocketClient();
+        client.setExecutor(threadPool);
+        client.setMaxIdleTimeout(TimeUnit.MINUTES.toMillis(1));
+        client.start();
+
+        ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(Runtime.getRuntime().availableProcessors(), runnable -> {
+            Thread thread = new Thread(runnable, "loadtest-scheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        long overrunsBefore = fetchOverruns(options);
+
+        System.out.println("Starting " + options.clients + " bots against " + String.join(", ", options.urls) + "...");
+        List<Bot> bots = new ArrayList<>(options.clients);
+        for (int i = 0; i < options.clients; i++) {
+            Bot bot = new Bot(i, options, client, scheduler, stats);
+            bots.add(bot);
+            scheduler.schedule(bot::connect, options.rampMillis * i / options.clients, TimeUnit.MILLISECONDS);
+        }
+
+        long end = System.currentTimeMillis() + options.rampMillis + options.durationMillis;
+        long started = System.currentTimeMillis();
+        while (System.currentTimeMillis() < end) {
+            Thread.sleep(Math.min(TimeUnit.SECONDS.toMillis(REPORT_INTERVAL_SECONDS), Math.max(1, end - System.currentTimeMillis())));
+            System.out.println("--- " + TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis() - started) + "s");
+            report(stats, started, overrunsSince(options, overrunsBefore));
+        }
+
+        for (Bot bot : bots) {
+            bot.stop();
+        }
+        scheduler.shutdownNow();
+        client.stop();
+
+        System.out.println("=== result");
+        report(stats, started, overrunsSince(options, overrunsBefore));
+    }
+
+    private static void report(LoadStats stats, long started, long overruns) {
+        double seconds = Math.max(1, System.currentTimeMillis() - started) / 1000.0;
+        System.out.println("connect   " + LoadStats.summary(stats.connectLatency) + " failures=" + stats.connectFailures.sum());
+        System.out.println("join rtt  " + LoadStats.summary(stats.joinLatency) + " errors=" + stats.joinErrors.sum());
+        System.out.println("frame     " + LoadStats.summary(stats.frameLatency)
+            + String.format(" frames/s=%.0f kB/s=%.0f spectator frames/s=%.0f", stats.framesReceived.sum() / seconds,
+                stats.frameBytes.sum() / seconds / 1024, stats.spectatorFrames.sum() / seconds));
+        System.out.println(String.format("inputs/s=%.0f disconnects=%d redirects=%d resumes=%d tick overruns=%s",
+            stats.inputsSent.sum() / seconds, stats.disconnects.sum(), stats.redirects.sum(), stats.resumes.sum(),
+            overruns < 0 ? "unknown" : Long.toString(overruns)));
+    }
+
+    private static long overrunsSince(Options options, long overrunsBefore) {
+        long overruns = fetchOverruns(options);
+        return overruns < 0 || overrunsBefore < 0 ? -1 : overruns - overrunsBefore;
+    }
+
+    /**
+     * Reads the total tick overruns of all servers.
+     * @return -1 if the stats of a server could not be read
+     */
+    private static long fetchOverruns(Options options) {
+        long overruns = 0;
+        for (String url : options.adminUrls) {
+            long serverOverruns = fetchOverruns(url);
+            if (serverOverruns < 0)
+                return -1;
+            overruns += serverOverruns;
+        }
+        return overruns;
+    }
+
+    private static long fetchOverruns(String server) {
+        try {
+            URL url = new URL(server + TickStatsServlet.PATH);
+            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+            connection.setConnectTimeout(2000);
+            connection.setReadTimeout(2000);
+            try (Reader reader = new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8)) {
+                JsonObject stats = JsonParser.parseReader(reader).getAsJsonObject();
+                return stats.get("overruns").getAsLong();
+            }
+        } catch (Exception e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,830 @@
+// GENERATED from src/main/schema/messages.json by CodecGenerator, do not edit by hand.
+package de.backend.snakefever.messageConstants;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Binary codec for the high frequency messages, sent as binary argument of the SocketIO events.<p>
+ * Every message starts with its id byte, numbers are big endian and varints are unsigned LEB128.
+ * Encoding writes directly into a {@link ByteBuffer}, decoding reads from it into a reusable message
+ * object without copying byte fields.
+ */
+public final class MessageCodec {
+    private MessageCodec() {
+    }
+
+    /**
+     * Returns the id of the message at the position of the buffer, without moving the position.
+     * @return the id or -1 if the buffer is empty.
+     */
+    public static int peekId(ByteBuffer buffer) {
+        return buffer.hasRemaining() ? buffer.get(buffer.position()) & 0xFF : -1;
+    }
+
+    /**
+     * A player input.
+     * @see MessageConstants#EVENT_PLAYER_INPUT_REQUEST
+     */
+    public static final class PlayerInput {
+        public static final int ID = 1;
+        /**
+         * The maximum encoded size.
+         */
+        public static final int MAX_SIZE = 7;
+
+        /**
+         * one of the INPUT_DIRECTION constants
+         */
+        public int direction;
+        /**
+         * sequence number, increasing with every input
+         */
+        public int sequence;
+
+        /**
+         * Writes a message at the position of the buffer.
+         */
+        public static void encode(ByteBuffer buffer, int direction, int sequence) {
+            buffer.put((byte) ID);
+            buffer.put((byte) direction);
+            putVarInt(buffer, sequence);
+        }
+
+        /**
+         * Reads a message from the position of the buffer into this object.
+         * @return false if the buffer does not contain a complete message of this type.
+         */
+        public boolean decode(ByteBuffer buffer) {
+            if (peekId(buffer) != ID)
+                return false;
+
+            int start = buffer.position();
+            try {
+                buffer.get();
+                this.direction = buffer.get() & 0xFF;
+                this.sequence = getVarInt(buffer);
+                return true;
+            } catch (BufferUnderflowException | IllegalArgumentException e) {
+                buffer.position(start);
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Acknowledges a received room state.
+     * @see MessageConstants#EVENT_ROOM_STATE_ACK_REQUEST
+     */
+    public static final class RoomStateAck {
+        public static final int ID = 2;
+        /**
+         * The maximum encoded size.
+         */
+        public static final int MAX_SIZE = 10;
+
+        /**
+         * sequence number of the received snapshot
+         */
+        public int sequence;
+        /**
+         * epoch of the received snapshot
+         */
+        public int epoch;
+
+        /**
+         * Writes a message at the position of the buffer.
+         */
+        public static void encode(ByteBuffer buffer, int sequence, int epoch) {
+            buffer.put((byte) ID);
+            putVarInt(buffer, sequence);
+            buffer.putInt(epoch);
+        }
+
+        /**
+         * Reads a message from the position of the buffer into this object.
+         * @return false if the buffer does not contain a complete message of this type.
+         */
+        public boolean decode(ByteBuffer buffer) {
+            if (peekId(buffer) != ID)
+                return false;
+
+            int start = buffer.position();
+            try {
+                buffer.get();
+                this.sequence = getVarInt(buffer);
+                this.epoch = buffer.getInt();
+                return true;
+            } catch (BufferUnderflowException | IllegalArgumentException e) {
+                buffer.position(start);
+                return false;
+            }
+        }
+    }
+
+    /**
+     * A room state snapshot or delta.
+     * @see MessageConstants#EVENT_ROOM_FRAME_BROADCAST
+     */
+    public static final class RoomState {
+        public static final int ID = 3;
+        /**
+         * The maximum encoded size without the body.
+         */
+        public static final int MAX_SIZE = 14;
+
+        /**
+         * ROOM_STATE_KEYFRAME or ROOM_STATE_DELTA
+         */
+        public int type;
+        /**
+         * sequence number of this snapshot
+         */
+        public int sequence;
+        /**
+         * sequence number of the snapshot the delta is based on, -1 for keyframes
+         */
+        public int baseSequence;
+        /**
+         * the epoch of the sequence numbers, new for every room, the sequence starts at 0 again in a new epoch
+         */
+        public int epoch;
+        /**
+         * the snapshot or the delta runs, until the end of the message
+         */
+        public ByteBuffer body;
+
+        /**
+         * Writes a message at the position of the buffer.
+         * The body has to be written by the caller right after it.
+         */
+        public static void encode(ByteBuffer buffer, int type, int sequence, int baseSequence, int epoch) {
+            buffer.put((byte) ID);
+            buffer.put((byte) type);
+            buffer.putInt(sequence);
+            buffer.putInt(baseSequence);
+            buffer.putInt(epoch);
+        }
+
+        /**
+         * Reads a message from the position of the buffer into this object.
+         * @return false if the buffer does not contain a complete message of this type.
+         */
+        public boolean decode(ByteBuffer buffer) {
+            if (peekId(buffer) != ID)
+                return false;
+
+            int start = buffer.position();
+            try {
+                buffer.get();
+                this.type = buffer.get() & 0xFF;
+                this.sequence = buffer.getInt();
+                this.baseSequence = buffer.getInt();
+                this.epoch = buffer.getInt();
+                this.body = buffer.slice();
+                buffer.position(buffer.limit());
+                return true;
+            } catch (BufferUnderflowException | IllegalArgumentException e) {
+                buffer.position(start);
+                return false;
+            }
+        }
+    }
+
+    /**
+     * All events of one room tick.
+     * @see MessageConstants#EVENT_ROOM_FRAME_BROADCAST
+     */
+    public static final class RoomFrame {
+        public static final int ID = 4;
+        /**
+         * The maximum encoded size without the events.
+         */
+        public static final int MAX_SIZE = 14;
+
+        /**
+         * the tick of the room this frame belongs to
+         */
+        public int tick;
+        /**
+         * the server time in milliseconds since the epoch when the frame was sent
+         */
+        public long serverTime;
+        /**
+         * the events, each prefixed with its varint length, until the end of the message
+         */
+        public ByteBuffer events;
+
+        /**
+         * Writes a message at the position of the buffer.
+         * The events has to be written by the caller right after it.
+         */
+        public static void encode(ByteBuffer buffer, int tick, long serverTime) {
+            buffer.put((byte) ID);
+            putVarInt(buffer, tick);
+            buffer.putLong(serverTime);
+        }
+
+        /**
+         * Reads a message from the position of the buffer into this object.
+         * @return false if the buffer does not contain a complete message of this type.
+         */
+        public boolean decode(ByteBuffer buffer) {
+            if (peekId(buffer) != ID)
+                return false;
+
+            int start = buffer.position();
+            try {
+                buffer.get();
+                this.tick = getVarInt(buffer);
+                this.serverTime = buffer.getLong();
+                this.events = buffer.slice();
+                buffer.position(buffer.limit());
+                return true;
+            } catch (BufferUnderflowException | IllegalArgumentException e) {
+                buffer.position(start);
+                return false;
+            }
+        }
+    }
+
+    /**
+     * A player joined the room.
+     * @see MessageConstants#EVENT_ROOM_FRAME_BROADCAST
+     */
+    public static final class RoomPlayerJoin {
+        public static final int ID = 5;
+        /**
+         * The maximum encoded size.
+         */
+        public static final int MAX_SIZE = 134;
+
+        /**
+         * name of the player who joined the room
+         */
+        public String name;
+
+        /**
+         * Writes a message at the position of the buffer.
+         */
+        public static void encode(ByteBuffer buffer, String name) {
+            buffer.put((byte) ID);
+            putString(buffer, name, 128);
+        }
+
+        /**
+         * Reads a message from the position of the buffer into this object.
+         * @return false if the buffer does not contain a complete message of this type.
+         */
+        public boolean decode(ByteBuffer buffer) {
+            if (peekId(buffer) != ID)
+                return false;
+
+            int start = buffer.position();
+            try {
+                buffer.get();
+                this.name = getString(buffer, 128);
+                return true;
+            } catch (BufferUnderflowException | IllegalArgumentException e) {
+                buffer.position(start);
+                return false;
+            }
+        }
+    }
+
+    /**
+     * A player left the room.
+     * @see MessageConstants#EVENT_ROOM_FRAME_BROADCAST
+     */
+    public static final class RoomPlayerLeave {
+        public static final int ID = 6;
+        /**
+         * The maximum encoded size.
+         */
+        public static final int MAX_SIZE = 134;
+
+        /**
+         * name of the player who left the room
+         */
+        public String name;
+
+        /**
+         * Writes a message at the position of the buffer.
+         */
+        public static void encode(ByteBuffer buffer, String name) {
+            buffer.put((byte) ID);
+            putString(buffer, name, 128);
+        }
+
+        /**
+         * Reads a message from the position of the buffer into this object.
+         * @return false if the buffer does not contain a complete message of this type.
+         */
+        public boolean decode(ByteBuffer buffer) {
+            if (peekId(buffer) != ID)
+                return false;
+
+            int start = buffer.position();
+            try {
+                buffer.get();
+                this.name = getString(buffer, 128);
+                return true;
+            } catch (BufferUnderflowException | IllegalArgumentException e) {
+                buffer.position(start);
+                return false;
+            }
+        }
+    }
+
+    /**
+     * The score of a snake changed.
+     * @see MessageConstants#EVENT_ROOM_FRAME_BROADCAST
+     */
+    public static final class RoomScore {
+        public static final int ID = 7;
+        /**
+         * The maximum encoded size.
+         */
+        public static final int MAX_SIZE = 7;
+
+        /**
+         * the slot of the snake
+         */
+        public int slot;
+        /**
+         * the new score
+         */
+        public int score;
+
+        /**
+         * Writes a message at the position of the buffer.
+         */
+        public static void encode(ByteBuffer buffer, int slot, int score) {
+            buffer.put((byte) ID);
+            buffer.put((byte) slot);
+            putVarInt(buffer, score);
+        }
+
+        /**
+         * Reads a message from the position of the buffer into this object.
+         * @return false if the buffer does not contain a complete message of this type.
+         */
+        public boolean decode(ByteBuffer buffer) {
+            if (peekId(buffer) != ID)
+                return false;
+
+            int start = buffer.position();
+            try {
+                buffer.get();
+                this.slot = buffer.get() & 0xFF;
+                this.score = getVarInt(buffer);
+                return true;
+            } catch (BufferUnderflowException | IllegalArgumentException e) {
+                buffer.position(start);
+                return false;
+            }
+        }
+    }
+
+    /**
+     * A page of the room list or the changes since a version.
+     * @see MessageConstants#EVENT_ROOM_LIST_RESPONSE
+     */
+    public static final class RoomList {
+        public static final int ID = 8;
+        /**
+         * The maximum encoded size without the entries.
+         */
+        public static final int MAX_SIZE = 17;
+
+        /**
+         * the version of the list, send it with the next request to only get the changes
+         */
+        public int version;
+        /**
+         * ROOM_LIST_FULL or ROOM_LIST_CHANGES
+         */
+        public int type;
+        /**
+         * the page of the full list, 0 for changes
+         */
+        public int page;
+        /**
+         * the amount of pages of the full list, 1 for changes
+         */
+        public int pageCount;
+        /**
+         * the entries, each prefixed with its varint length, until the end of the message
+         */
+        public ByteBuffer entries;
+
+        /**
+         * Writes a message at the position of the buffer.
+         * The entries has to be written by the caller right after it.
+         */
+        public static void encode(ByteBuffer buffer, int version, int type, int page, int pageCount) {
+            buffer.put((byte) ID);
+            putVarInt(buffer, version);
+            buffer.put((byte) type);
+            putVarInt(buffer, page);
+            putVarInt(buffer, pageCount);
+        }
+
+        /**
+         * Reads a message from the position of the buffer into this object.
+         * @return false if the buffer does not contain a complete message of this type.
+         */
+        public boolean decode(ByteBuffer buffer) {
+            if (peekId(buffer) != ID)
+                return false;
+
+            int start = buffer.position();
+            try {
+                buffer.get();
+                this.version = getVarInt(buffer);
+                this.type = buffer.get() & 0xFF;
+                this.page = getVarInt(buffer);
+                this.pageCount = getVarInt(buffer);
+                this.entries = buffer.slice();
+                buffer.position(buffer.limit());
+                return true;
+            } catch (BufferUnderflowException | IllegalArgumentException e) {
+                buffer.position(start);
+                return false;
+            }
+        }
+    }
+
+    /**
+     * A listed room.
+     * @see MessageConstants#EVENT_ROOM_LIST_RESPONSE
+     */
+    public static final class RoomListEntry {
+        public static final int ID = 9;
+        /**
+         * The maximum encoded size.
+         */
+        public static final int MAX_SIZE = 35;
+
+        /**
+         * the id to join the room with
+         */
+        public String id;
+        /**
+         * 1 if the room is a quickplay room, otherwise 0
+         */
+        public int quickplay;
+        /**
+         * the amount of taken slots, including players on their way into the room
+         */
+        public int players;
+        /**
+         * the amount of slots
+         */
+        public int maxPlayers;
+        /**
+         * 0 waiting for the first player, 1 running, 2 empty
+         */
+        public int state;
+        /**
+         * 1 if the room is an arena, otherwise 0
+         */
+        public int arena;
+
+        /**
+         * Writes a message at the position of the buffer.
+         */
+        public static void encode(ByteBuffer buffer, String id, int quickplay, int players, int maxPlayers, int state, int arena) {
+            buffer.put((byte) ID);
+            putString(buffer, id, 16);
+            buffer.put((byte) quickplay);
+            putVarInt(buffer, players);
+            putVarInt(buffer, maxPlayers);
+            buffer.put((byte) state);
+            buffer.put((byte) arena);
+        }
+
+        /**
+         * Reads a message from the position of the buffer into this object.
+         * @return false if the buffer does not contain a complete message of this type.
+         */
+        public boolean decode(ByteBuffer buffer) {
+            if (peekId(buffer) != ID)
+                return false;
+
+            int start = buffer.position();
+            try {
+                buffer.get();
+                this.id = getString(buffer, 16);
+                this.quickplay = buffer.get() & 0xFF;
+                this.players = getVarInt(buffer);
+                this.maxPlayers = getVarInt(buffer);
+                this.state = buffer.get() & 0xFF;
+                this.arena = buffer.get() & 0xFF;
+                return true;
+            } catch (BufferUnderflowException | IllegalArgumentException e) {
+                buffer.position(start);
+                return false;
+            }
+        }
+    }
+
+    /**
+     * A room that is no longer listed.
+     * @see MessageConstants#EVENT_ROOM_LIST_RESPONSE
+     */
+    public static final class RoomListRemoved {
+        public static final int ID = 10;
+        /**
+         * The maximum encoded size.
+         */
+        public static final int MAX_SIZE = 22;
+
+        /**
+         * the id of the room
+         */
+        public String id;
+
+        /**
+         * Writes a message at the position of the buffer.
+         */
+        public static void encode(ByteBuffer buffer, String id) {
+            buffer.put((byte) ID);
+            putString(buffer, id, 16);
+        }
+
+        /**
+         * Reads a message from the position of the buffer into this object.
+         * @return false if the buffer does not contain a complete message of this type.
+         */
+        public boolean decode(ByteBuffer buffer) {
+            if (peekId(buffer) != ID)
+                return false;
+
+            int start = buffer.position();
+            try {
+                buffer.get();
+                this.id = getString(buffer, 16);
+                return true;
+            } catch (BufferUnderflowException | IllegalArgumentException e) {
+                buffer.position(start);
+                return false;
+            }
+        }
+    }
+
+    /**
+     * The rectangle of cells of an arena a player is sent, the client forgets the cells outside of it.
+     * @see MessageConstants#EVENT_ROOM_FRAME_BROADCAST
+     */
+    public static final class RoomArenaView {
+        public static final int ID = 11;
+        /**
+         * The maximum encoded size.
+         */
+        public static final int MAX_SIZE = 31;
+
+        /**
+         * the column of the top left cell
+         */
+        public int x;
+        /**
+         * the row of the top left cell
+         */
+        public int y;
+        /**
+         * the width in cells
+         */
+        public int width;
+        /**
+         * the height in cells
+         */
+        public int height;
+        /**
+         * the width of the whole arena in cells
+         */
+        public int arenaWidth;
+        /**
+         * the height of the whole arena in cells
+         */
+        public int arenaHeight;
+
+        /**
+         * Writes a message at the position of the buffer.
+         */
+        public static void encode(ByteBuffer buffer, int x, int y, int width, int height, int arenaWidth, int arenaHeight) {
+            buffer.put((byte) ID);
+            putVarInt(buffer, x);
+            putVarInt(buffer, y);
+            putVarInt(buffer, width);
+            putVarInt(buffer, height);
+            putVarInt(buffer, arenaWidth);
+            putVarInt(buffer, arenaHeight);
+        }
+
+        /**
+         * Reads a message from the position of the buffer into this object.
+         * @return false if the buffer does not contain a complete message of this type.
+         */
+        public boolean decode(ByteBuffer buffer) {
+            if (peekId(buffer) != ID)
+                return false;
+
+            int start = buffer.position();
+            try {
+                buffer.get();
+                this.x = getVarInt(buffer);
+                this.y = getVarInt(buffer);
+                this.width = getVarInt(buffer);
+                this.height = getVarInt(buffer);
+                this.arenaWidth = getVarInt(buffer);
+                this.arenaHeight = getVarInt(buffer);
+                return true;
+            } catch (BufferUnderflowException | IllegalArgumentException e) {
+                buffer.position(start);
+                return false;
+            }
+        }
+    }
+
+    /**
+     * A rectangle of cells of an arena that changed.
+     * @see MessageConstants#EVENT_ROOM_FRAME_BROADCAST
+     */
+    public static final class RoomArenaCells {
+        public static final int ID = 12;
+        /**
+         * The maximum encoded size without the cells.
+         */
+        public static final int MAX_SIZE = 13;
+
+        /**
+         * the column of the top left cell
+         */
+        public int x;
+        /**
+         * the row of the top left cell
+         */
+        public int y;
+        /**
+         * the width in cells
+         */
+        public int width;
+        /**
+         * the height in cells
+         */
+        public int height;
+        /**
+         * row by row, runs of (varint: amount of cells, varint: cell + 1), where a cell is 0 = empty, -1 = food, otherwise slot + 1
+         */
+        public ByteBuffer cells;
+
+        /**
+         * Writes a message at the position of the buffer.
+         * The cells has to be written by the caller right after it.
+         */
+        public static void encode(ByteBuffer buffer, int x, int y, int width, int height) {
+            buffer.put((byte) ID);
+            putVarInt(buffer, x);
+            putVarInt(buffer, y);
+            buffer.put((byte) width);
+            buffer.put((byte) height);
+        }
+
+        /**
+         * Reads a message from the position of the buffer into this object.
+         * @return false if the buffer does not contain a complete message of this type.
+         */
+        public boolean decode(ByteBuffer buffer) {
+            if (peekId(buffer) != ID)
+                return false;
+
+            int start = buffer.position();
+            try {
+                buffer.get();
+                this.x = getVarInt(buffer);
+                this.y = getVarInt(buffer);
+                this.width = buffer.get() & 0xFF;
+                this.height = buffer.get() & 0xFF;
+                this.cells = buffer.slice();
+                buffer.position(buffer.limit());
+                return true;
+            } catch (BufferUnderflowException | IllegalArgumentException e) {
+                buffer.position(start);
+                return false;
+            }
+        }
+    }
+
+    /**
+     * A snake of an arena with its head in the view of the player.
+     * @see MessageConstants#EVENT_ROOM_FRAME_BROADCAST
+     */
+    public static final class RoomArenaSnake {
+        public static final int ID = 13;
+        /**
+         * The maximum encoded size.
+         */
+        public static final int MAX_SIZE = 22;
+
+        /**
+         * the slot of the snake, its cells contain slot + 1
+         */
+        public int slot;
+        /**
+         * the direction the snake moves in
+         */
+        public int direction;
+        /**
+         * the score of the snake
+         */
+        public int score;
+        /**
+         * the amount of cells of the snake
+         */
+        public int length;
+        /**
+         * the cell of the head, y * arena width + x
+         */
+        public int head;
+
+        /**
+         * Writes a message at the position of the buffer.
+         */
+        public static void encode(ByteBuffer buffer, int slot, int direction, int score, int length, int head) {
+            buffer.put((byte) ID);
+            putVarInt(buffer, slot);
+            buffer.put((byte) direction);
+            putVarInt(buffer, score);
+            putVarInt(buffer, length);
+            putVarInt(buffer, head);
+        }
+
+        /**
+         * Reads a message from the position of the buffer into this object.
+         * @return false if the buffer does not contain a complete message of this type.
+         */
+        public boolean decode(ByteBuffer buffer) {
+            if (peekId(buffer) != ID)
+                return false;
+
+            int start = buffer.position();
+            try {
+                buffer.get();
+                this.slot = getVarInt(buffer);
+                this.direction = buffer.get() & 0xFF;
+                this.score = getVarInt(buffer);
+                this.length = getVarInt(buffer);
+                this.head = getVarInt(buffer);
+                return true;
+            } catch (BufferUnderflowException | IllegalArgumentException e) {
+                buffer.position(start);
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Writes an unsigned LEB128 varint, used e.g. for length prefixes.
+     */
+    public static void putVarInt(ByteBuffer buffer, int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    /**
+     * Reads an unsigned LEB128 varint.
+     * @throws IllegalArgumentException if the varint is longer than 5 bytes
+     */
+    public static int getVarInt(ByteBuffer buffer) {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            byte b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+                return value;
+        }
+        throw new IllegalArgumentException("varint too long");
+    }
+
+    static void putString(ByteBuffer buffer, String value, int maxBytes) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > maxBytes)
+            throw new IllegalArgumentException("string longer than " + maxBytes + " bytes");
+        putVarInt(buffer, bytes.length);
+        buffer.put(bytes);
+    }
+
+    static String getString(ByteBuffer buffer, int maxBytes) {
+        int length = getVarInt(buffer);
+        if (length < 0 || length > maxBytes || length > buffer.remaining())
+            throw new IllegalArgumentException("invalid string length");
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -1,3 +1,4 @@
+// GENERATED from src/main/schema/messages.json by CodecGenerator, do not edit by hand.
 package de.backend.snakefever.messageConstants;
 
 /**
@@ -33,6 +34,13 @@ public final class MessageConstants {
      */
     public static final String ERROR_INVALID_DATA = "error_invalid_data";
 
+    /**
+     * Error message if the player sent an event more often than allowed, the events are dropped until the limit recovers.<p>
+     * Sent at most once per second and event while dropping.
+     * @see MessageConstants#EVENT_ERROR_RESPONSE
+     */
+    public static final String ERROR_RATE_LIMITED = "error_rate_limited";
+
 
 
     //
@@ -51,16 +59,52 @@ public final class MessageConstants {
     /**
      * Response event for a name change request.<p>
      * Arguments (1):<p>
-     * - string: new name or a (future) error starting with ERROR_PLAYER
+     * - string: new name or an error starting with ERROR_PLAYER
      */
     public static final String EVENT_PLAYER_SET_NAME_RESPONSE = "player_set_name_response";
 
+    /**
+     * Error message if another player already has the requested name.
+     * @see MessageConstants#EVENT_PLAYER_SET_NAME_RESPONSE
+     */
+    public static final String ERROR_PLAYER_NAME_TAKEN = "error_player_name_taken";
+
 
     /**
-     * Event for requesting to apply e.g. player input on the next tick.
+     * Event for requesting to apply player input on the next tick.<p>
+     * At most one turn is applied per tick, further turns are applied on the following ticks.<p>
+     * Arguments (1):<p>
+     * - binary: a {@link MessageCodec.PlayerInput} message<p>
+     * or Arguments (2):<p>
+     * - int: direction, one of the INPUT_DIRECTION constants<p>
+     * - int: sequence number, increasing with every input. Inputs with an old sequence number are dropped.
      */
     public static final String EVENT_PLAYER_INPUT_REQUEST = "player_input_request";
 
+    /**
+     * Direction for moving up.
+     * @see MessageConstants#EVENT_PLAYER_INPUT_REQUEST
+     */
+    public static final int INPUT_DIRECTION_UP = 0;
+
+    /**
+     * Direction for moving right.
+     * @see MessageConstants#EVENT_PLAYER_INPUT_REQUEST
+     */
+    public static final int INPUT_DIRECTION_RIGHT = 1;
+
+    /**
+     * Direction for moving down.
+     * @see MessageConstants#EVENT_PLAYER_INPUT_REQUEST
+     */
+    public static final int INPUT_DIRECTION_DOWN = 2;
+
+    /**
+     * Direction for moving left.
+     * @see MessageConstants#EVENT_PLAYER_INPUT_REQUEST
+     */
+    public static final int INPUT_DIRECTION_LEFT = 3;
+
 
 
     //
@@ -71,7 +115,7 @@ public final class MessageConstants {
 
     /**
      * Event for requesting a room creation.<p>
-     * Arguments: 0<p>
+     * Arguments: 0
      */
     public static final String EVENT_ROOM_CREATE_REQUEST = "room_create_request";
 
@@ -79,7 +123,8 @@ public final class MessageConstants {
     /**
      * Event for requesting to join an existing room.<p>
      * Arguments (1):<p>
-     * - string: room id to join or {@link MessageConstants#ROOM_QUICKPLAY} if the room should be a quickplay room.
+     * - string: room id to join, {@link MessageConstants#ROOM_QUICKPLAY} if the room should be a quickplay room or {@link MessageConstants#ROOM_ARENA}.<p>
+     * A room of another server of the cluster is answered with {@link MessageConstants#EVENT_ROOM_REDIRECT_RESPONSE}.
      */
     public static final String EVENT_ROOM_JOIN_REQUEST = "room_join_request";
 
@@ -90,22 +135,80 @@ public final class MessageConstants {
     public static final String ROOM_QUICKPLAY = "room_quickplay";
 
     /**
-     * Response event for a room join request.<p>
-     * Arguments (1):<p>
-     * - string: the id of the joined room or an error starting with ERROR_ROOM
+     * Message for joining an arena, a big room with hundreds of snakes. A player is only sent the part of the arena
+     * around its snake, see {@link MessageConstants#EVENT_ROOM_FRAME_BROADCAST}.
+     * @see MessageConstants#EVENT_ROOM_JOIN_REQUEST
+     */
+    public static final String ROOM_ARENA = "room_arena";
+
+    /**
+     * Response event for a room join or resume request.<p>
+     * Arguments (1-2):<p>
+     * - string: the id of the joined room or an error starting with ERROR_ROOM<p>
+     * - string: only after a successful join, the token to resume the room with after a server restart,
+     * see {@link MessageConstants#EVENT_ROOM_RESUME_REQUEST}
      */
     public static final String EVENT_ROOM_JOIN_RESPONSE = "room_join_response";
 
+
     /**
-     * Event broadcasting a player joining a room.<p>
+     * Event for requesting to get back into a room after the server restarted, with the snake and score the player had.<p>
+     * The rooms are restored for a short time after the restart, until then the room waits for its players.<p>
+     * Answered with {@link MessageConstants#EVENT_ROOM_JOIN_RESPONSE}, {@link MessageConstants#ERROR_ROOM_INVALID_ID} if the room or the player's place in
+     * it is gone, the client should join again then.<p>
      * Arguments (1):<p>
-     * - string: name of player who joined the room
+     * - string: the resume token of the last join response
+     */
+    public static final String EVENT_ROOM_RESUME_REQUEST = "room_resume_request";
+
+
+    /**
+     * Event for requesting to watch a room without taking a player slot, leaving the current room.<p>
+     * The spectator gets {@link MessageConstants#EVENT_ROOM_FRAME_BROADCAST} frames like a player, but every room state is a keyframe
+     * and must not be acknowledged.<p>
+     * Arguments (1-2):<p>
+     * - string: room id to watch<p>
+     * - int: {@link MessageConstants#SPECTATE_FEED_LIVE} (default) or {@link MessageConstants#SPECTATE_FEED_DELAYED}<p>
+     * A room of another server of the cluster is answered with {@link MessageConstants#EVENT_ROOM_REDIRECT_RESPONSE}.
      */
-    public static final String EVENT_ROOM_PLAYER_JOIN_BROADCAST = "room_player_join_broadcast";
-    
+    public static final String EVENT_ROOM_SPECTATE_REQUEST = "room_spectate_request";
 
     /**
-     * Event for requesting to leave a room.<p>
+     * Spectator feed with a frame after every tick of the room.
+     * @see MessageConstants#EVENT_ROOM_SPECTATE_REQUEST
+     */
+    public static final int SPECTATE_FEED_LIVE = 0;
+
+    /**
+     * Spectator feed a few seconds behind the room, with a frame after every few ticks. The frames contain the events
+     * of the skipped ticks.
+     * @see MessageConstants#EVENT_ROOM_SPECTATE_REQUEST
+     */
+    public static final int SPECTATE_FEED_DELAYED = 1;
+
+    /**
+     * Response event for a room spectate request.<p>
+     * Arguments (1):<p>
+     * - string: the id of the watched room or an error starting with ERROR_ROOM<p>
+     * Also sent with {@link MessageConstants#ERROR_ROOM_INVALID_ID} when the watched room closed.
+     */
+    public static final String EVENT_ROOM_SPECTATE_RESPONSE = "room_spectate_response";
+
+
+    /**
+     * Sent instead of the response to a join, spectate or resume request, if the room lives on another server of the cluster.<p>
+     * The client connects to the given url and sends the request there again.<p>
+     * Arguments (3):<p>
+     * - string: the redirected request, {@link MessageConstants#EVENT_ROOM_JOIN_REQUEST}, {@link MessageConstants#EVENT_ROOM_SPECTATE_REQUEST} or
+     * {@link MessageConstants#EVENT_ROOM_RESUME_REQUEST}<p>
+     * - string: the room id or resume token of the request<p>
+     * - string: the url of the server owning the room
+     */
+    public static final String EVENT_ROOM_REDIRECT_RESPONSE = "room_redirect_response";
+
+
+    /**
+     * Event for requesting to leave the room the player plays or spectates in.<p>
      * Arguments: 0
      */
     public static final String EVENT_ROOM_LEAVE_REQUEST = "room_leave_request";
@@ -117,12 +220,82 @@ public final class MessageConstants {
      */
     public static final String EVENT_ROOM_LEAVE_RESPONSE = "room_leave_response";
 
+
     /**
-     * Event broadcasting a player left a room.<p>
+     * Event broadcasting everything that happened in a room during one tick, sent to every player after every tick.<p>
      * Arguments (1):<p>
-     * - string: name of player who left the room
+     * - binary: a {@link MessageCodec.RoomFrame} message. Its events contain, each prefixed with its varint length:<p>
+     * -- {@link MessageCodec.RoomPlayerJoin} and {@link MessageCodec.RoomPlayerLeave} for players that joined or left the room<p>
+     * -- {@link MessageCodec.RoomScore} for every changed score<p>
+     * -- one {@link MessageCodec.RoomState}, acknowledge its sequence with {@link MessageConstants#EVENT_ROOM_STATE_ACK_REQUEST}<p>
+     * The body of a keyframe is the full snapshot, the body of a delta contains runs of (varint: unchanged bytes since the
+     * last run, varint: run length, bytes) to apply to the base snapshot.<p>
+     * Snapshot layout: short width, short height, byte slot count, per slot (byte alive, byte direction, short score,
+     * short length, short head cell), then one byte per cell (0 = empty, -1 = food, otherwise slot + 1).<p>
+     * A frame of an arena has no room state and no scores, the events contain the part of the arena around the
+     * player's snake instead:<p>
+     * -- one {@link MessageCodec.RoomArenaView} with the cells the player is sent, cells outside of it are no longer updated<p>
+     * -- {@link MessageCodec.RoomArenaCells} for every bucket of cells in the view that changed since it was last sent<p>
+     * -- {@link MessageCodec.RoomArenaSnake} for every snake with its head in the view, including the player's own<p>
+     * Frames must be applied in order, a frame replaced before it was sent is merged into the next one. Spectators of an
+     * arena get the whole arena as view.
+     */
+    public static final String EVENT_ROOM_FRAME_BROADCAST = "room_frame_broadcast";
+
+    /**
+     * Room state type of a full snapshot.
+     * @see MessageConstants#EVENT_ROOM_FRAME_BROADCAST
+     */
+    public static final int ROOM_STATE_KEYFRAME = 0;
+
+    /**
+     * Room state type of a delta against an acknowledged snapshot.
+     * @see MessageConstants#EVENT_ROOM_FRAME_BROADCAST
+     */
+    public static final int ROOM_STATE_DELTA = 1;
+
+    /**
+     * Event for acknowledging a received room state, future states are sent as delta against it.<p>
+     * Acks of another epoch than the one of the current room, e.g. of the previous room, are ignored.<p>
+     * Arguments (1-2):<p>
+     * - binary: a {@link MessageCodec.RoomStateAck} message or int: sequence number of the received snapshot<p>
+     * - int: only with a sequence number, the epoch of the received snapshot
+     */
+    public static final String EVENT_ROOM_STATE_ACK_REQUEST = "room_state_ack_request";
+
+
+    /**
+     * Event for requesting the list of rooms, answered with {@link MessageConstants#EVENT_ROOM_LIST_RESPONSE}.<p>
+     * Arguments (2):<p>
+     * - int: the list version the client already has, 0 for none. If the server still knows the changes since it,
+     * only the changes are sent, otherwise a page of the full list.<p>
+     * - int: the page of the full list, starting at 0
+     */
+    public static final String EVENT_ROOM_LIST_REQUEST = "room_list_request";
+
+    /**
+     * Response event for a room list request. Only quickplay rooms and arenas are listed, a private room can only
+     * be joined with its id.<p>
+     * Arguments (1):<p>
+     * - binary: a {@link MessageCodec.RoomList} message. Its entries contain, each prefixed with its varint length:<p>
+     * -- {@link MessageCodec.RoomListEntry} for every listed room, or every room that was added or changed<p>
+     * -- {@link MessageCodec.RoomListRemoved} for every room that was removed, only in a list of changes<p>
+     * The pages of a full list all belong to the version in the response. If a later page has a newer version,
+     * request the changes since the version of the first page to catch up.
+     */
+    public static final String EVENT_ROOM_LIST_RESPONSE = "room_list_response";
+
+    /**
+     * Room list type of a page of the full list, it replaces the rooms the client knew.
+     * @see MessageConstants#EVENT_ROOM_LIST_RESPONSE
+     */
+    public static final int ROOM_LIST_FULL = 0;
+
+    /**
+     * Room list type of the changes since the version the client sent.
+     * @see MessageConstants#EVENT_ROOM_LIST_RESPONSE
      */
-    public static final String EVENT_ROOM_PLAYER_LEAVE_BROADCAST = "room_player_leave_broadcast";
+    public static final int ROOM_LIST_CHANGES = 1;
 
 
     /**
@@ -142,4 +315,4 @@ public final class MessageConstants {
      * @see MessageConstants#EVENT_ERROR_RESPONSE
      */
     public static final String ERROR_ROOM_FULL = "error_room_full";
-}
\ No newline at end of file
+}
@@ -0,0 +1,233 @@
+package de.backend.snakefever.metrics;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import de.backend.snakefever.messageConstants.MessageConstants;
+
+/**
+ * Counts the socket io messages and their payload bytes per event, and the fan-out of room and
+ * spectator broadcasts.<p>
+ * Every counter is a {@link LongAdder}, so the socket threads and tick shards counting at the same
+ * time don't contend. The events are the ones declared in {@link MessageConstants}, everything else
+ * a client sends is counted as {@link #UNKNOWN_EVENT}, so the amount of counters stays fixed.<p>
+ * Payload bytes are the bytes of binary and string arguments, other arguments count as 8 bytes.
+ * The socket io and engine io framing is not included.<p>
+ * Messages are counted as sent once they were written to the socket. Received events dropped by the
+ * rate limit are counted as received and as rate limited.
+ */
+public final class MessageMetrics {
+    /**
+     * The event name used for events not declared in {@link MessageConstants}.
+     */
+    public static final String UNKNOWN_EVENT = "unknown";
+
+    // the index of the counters of every known event
+    private final Map<String, Integer> eventIndex;
+    // the event names by index
+    private final List<String> events;
+
+    private final LongAdder[] received;
+    private final LongAdder[] sent;
+    private final LongAdder receivedBytes = new LongAdder();
+    private final LongAdder sentBytes = new LongAdder();
+
+    private final LongAdder broadcasts = new LongAdder();
+    private final LongAdder broadcastRecipients = new LongAdder();
+    private final LongAdder spectatorBroadcasts = new LongAdder();
+    private final LongAdder spectatorRecipients = new LongAdder();
+
+    private final LongAdder[] rateLimited;
+    private final LongAdder framesConflated = new LongAdder();
+    private final LongAdder slowConsumerDisconnects = new LongAdder();
+
+    public MessageMetrics() {
+        List<String> events = new ArrayList<>(eventNames());
+        events.add(UNKNOWN_EVENT);
+        this.events = Collections.unmodifiableList(events);
+
+        Map<String, Integer> eventIndex = new HashMap<>();
+        for (int i = 0; i < events.size(); i++) {
+            eventIndex.put(events.get(i), i);
+        }
+        this.eventIndex = eventIndex;
+
+        this.received = newCounters(events.size());
+        this.sent = newCounters(events.size());
+        this.rateLimited = newCounters(events.size());
+    }
+
+    /**
+     * Counts a message received from a client.
+     */
+    public void onReceived(String event, Object... args) {
+        this.received[this.indexOf(event)].increment();
+        this.receivedBytes.add(payloadSize(args));
+    }
+
+    /**
+     * Counts a message sent to a client.
+     */
+    public void onSent(String event, Object... args) {
+        this.sent[this.indexOf(event)].increment();
+        this.sentBytes.add(payloadSize(args));
+    }
+
+    /**
+     * Counts a message sent to a group of players at once.
+     * @param recipients the amount of players receiving it
+     */
+    public void onBroadcast(int recipients) {
+        this.broadcasts.increment();
+        this.broadcastRecipients.add(recipients);
+    }
+
+    /**
+     * Counts a frame sent to the spectators of a room feed at once.
+     * @param recipients the amount of spectators receiving it
+     */
+    public void onSpectatorBroadcast(int recipients) {
+        this.spectatorBroadcasts.increment();
+        this.spectatorRecipients.add(recipients);
+    }
+
+    /**
+     * Counts a received message that was dropped, because the client exceeded its rate limit.
+     */
+    public void onRateLimited(String event) {
+        this.rateLimited[this.indexOf(event)].increment();
+    }
+
+    /**
+     * Counts a room frame that was not sent, because a newer frame replaced it before the socket was
+     * ready to send.
+     */
+    public void onFrameConflated() {
+        this.framesConflated.increment();
+    }
+
+    /**
+     * Counts a socket disconnected because it could not keep up with its messages.
+     */
+    public void onSlowConsumerDisconnect() {
+        this.slowConsumerDisconnects.increment();
+    }
+
+    /**
+     * Returns all counted event names, including {@link #UNKNOWN_EVENT}.
+     */
+    public List<String> getEvents() {
+        return this.events;
+    }
+
+    public long getReceived(String event) {
+        return this.received[this.indexOf(event)].sum();
+    }
+
+    public long getSent(String event) {
+        return this.sent[this.indexOf(event)].sum();
+    }
+
+    public long getRateLimited(String event) {
+        return this.rateLimited[this.indexOf(event)].sum();
+    }
+
+    public long getReceivedTotal() {
+        return sum(this.received);
+    }
+
+    public long getSentTotal() {
+        return sum(this.sent);
+    }
+
+    public long getReceivedBytes() {
+        return this.receivedBytes.sum();
+    }
+
+    public long getSentBytes() {
+        return this.sentBytes.sum();
+    }
+
+    public long getBroadcasts() {
+        return this.broadcasts.sum();
+    }
+
+    public long getBroadcastRecipients() {
+        return this.broadcastRecipients.sum();
+    }
+
+    public long getSpectatorBroadcasts() {
+        return this.spectatorBroadcasts.sum();
+    }
+
+    public long getSpectatorRecipients() {
+        return this.spectatorRecipients.sum();
+    }
+
+    public long getFramesConflated() {
+        return this.framesConflated.sum();
+    }
+
+    public long getSlowConsumerDisconnects() {
+        return this.slowConsumerDisconnects.sum();
+    }
+
+    private int indexOf(String event) {
+        Integer index = this.eventIndex.get(event);
+        return index != null ? index : this.events.size() - 1;
+    }
+
+    private static long payloadSize(Object[] args) {
+        long size = 0;
+        for (Object arg : args) {
+            if (arg instanceof byte[]) {
+                size += ((byte[]) arg).length;
+            } else if (arg instanceof CharSequence) {
+                size += ((CharSequence) arg).length();
+            } else {
+                size += 8;
+            }
+        }
+        return size;
+    }
+
+    private static LongAdder[] newCounters(int count) {
+        LongAdder[] counters = new LongAdder[count];
+        for (int i = 0; i < count; i++) {
+            counters[i] = new LongAdder();
+        }
+        return counters;
+    }
+
+    private static long sum(LongAdder[] counters) {
+        long sum = 0;
+        for (LongAdder counter : counters) {
+            sum += counter.sum();
+        }
+        return sum;
+    }
+
+    /**
+     * Returns the values of all EVENT_ constants in {@link MessageConstants}.
+     */
+    private static List<String> eventNames() {
+        List<String> names = new ArrayList<>();
+        for (Field field : MessageConstants.class.getFields()) {
+            if (Modifier.isStatic(field.getModifiers()) && field.getType() == String.class
+                    && field.getName().contains("EVENT_")) {
+                try {
+                    names.add((String) field.get(null));
+                } catch (IllegalAccessException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        }
+        return names;
+    }
+}
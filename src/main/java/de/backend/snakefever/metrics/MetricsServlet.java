@@ -0,0 +1,30 @@
+package de.backend.snakefever.metrics;
+
+import java.io.IOException;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Serves the server metrics in the prometheus text format.
+ */
+public final class MetricsServlet extends HttpServlet {
+    /**
+     * The path the servlet is mapped to.
+     */
+    public static final String PATH = "/metrics";
+
+    private final transient ServerMetrics metrics;
+
+    public MetricsServlet(ServerMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        response.setContentType("text/plain; version=0.0.4");
+        response.setCharacterEncoding("UTF-8");
+        this.metrics.writePrometheus(response.getWriter());
+    }
+}
@@ -0,0 +1,401 @@
+package de.backend.snakefever.metrics;
+
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import de.backend.snakefever.Room;
+import de.backend.snakefever.Server;
+import de.backend.snakefever.SnakeFever;
+import de.backend.snakefever.cluster.NodeSummary;
+import de.backend.snakefever.socketio.TransportMetrics;
+import de.backend.snakefever.tick.LatencyHistogram;
+import de.backend.snakefever.tick.TickShard;
+
+/**
+ * Collects the metrics of the server for JMX and the metrics endpoint.<p>
+ * Counters are kept where they are updated, this class only reads them. The room gauges are computed
+ * by walking all rooms, which only happens when the metrics are read.
+ */
+public final class ServerMetrics implements ServerMetricsMXBean {
+    /**
+     * The JMX name of the metrics.
+     */
+    public static final String OBJECT_NAME = "de.backend.snakefever:type=ServerMetrics";
+
+    private final Server server;
+    private final TransportMetrics transportMetrics;
+
+    public ServerMetrics(Server server, TransportMetrics transportMetrics) {
+        this.server = server;
+        this.transportMetrics = transportMetrics;
+    }
+
+    /**
+     * Registers the metrics at the platform MBean server.
+     */
+    public void registerMBean() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(OBJECT_NAME));
+        } catch (JMException e) {
+            SnakeFever.LOGGER.error("Could not register the metrics MBean.", e);
+        }
+    }
+
+    @Override
+    public int getPlayers() {
+        return this.server.getPlayerCount();
+    }
+
+    @Override
+    public int getPollingSessions() {
+        return this.transportMetrics.getPollingSessions();
+    }
+
+    @Override
+    public int getWebSocketSessions() {
+        return this.transportMetrics.getWebSocketSessions();
+    }
+
+    @Override
+    public int getClusterNode() {
+        return this.server.getCluster().getNode();
+    }
+
+    @Override
+    public int getClusterNodes() {
+        return this.server.getCluster().getNodes().size();
+    }
+
+    @Override
+    public int getClusterPlayers() {
+        int players = 0;
+        for (NodeSummary node : this.server.getCluster().getNodes()) {
+            players += node.getPlayers();
+        }
+        return players;
+    }
+
+    @Override
+    public int getPendingRestoredRooms() {
+        return this.server.getPendingRestoredRooms();
+    }
+
+    @Override
+    public long getResumedPlayers() {
+        return this.server.getResumedPlayers();
+    }
+
+    @Override
+    public int getQuickplayRooms() {
+        return this.countRooms(true);
+    }
+
+    @Override
+    public int getPrivateRooms() {
+        return this.countRooms(false);
+    }
+
+    @Override
+    public int getArenas() {
+        int count = 0;
+        for (Room room : this.server.getRooms()) {
+            if (room.isArena())
+                count++;
+        }
+        return count;
+    }
+
+    @Override
+    public int getArenaPlayers() {
+        int players = 0;
+        for (Room room : this.server.getRooms()) {
+            if (room.isArena())
+                players += Math.max(room.getReservedSlots(), 0);
+        }
+        return players;
+    }
+
+    @Override
+    public Map<String, Integer> getRoomsByFill() {
+        int[][] rooms = this.countRoomsByFill();
+        Map<String, Integer> byFill = new LinkedHashMap<>();
+        for (int slots = 0; slots <= Room.MAX_PLAYERS; slots++) {
+            byFill.put("quickplay/" + slots, rooms[1][slots]);
+            byFill.put("private/" + slots, rooms[0][slots]);
+        }
+        return byFill;
+    }
+
+    @Override
+    public Map<String, Integer> getRoomsByLifecycle() {
+        int[] rooms = this.countRoomsByLifecycle();
+        Map<String, Integer> byLifecycle = new LinkedHashMap<>();
+        for (Room.Lifecycle lifecycle : Room.Lifecycle.values()) {
+            byLifecycle.put(lifecycle.name(), rooms[lifecycle.ordinal()]);
+        }
+        return byLifecycle;
+    }
+
+    @Override
+    public long getRoomsFinished() {
+        return this.server.getRoomPool().getReleased();
+    }
+
+    @Override
+    public int getPooledRooms() {
+        return this.server.getRoomPool().getSize();
+    }
+
+    @Override
+    public Map<String, Long> getMessagesReceived() {
+        MessageMetrics messages = this.server.getMessageMetrics();
+        Map<String, Long> received = new LinkedHashMap<>();
+        for (String event : messages.getEvents()) {
+            received.put(event, messages.getReceived(event));
+        }
+        return received;
+    }
+
+    @Override
+    public Map<String, Long> getMessagesSent() {
+        MessageMetrics messages = this.server.getMessageMetrics();
+        Map<String, Long> sent = new LinkedHashMap<>();
+        for (String event : messages.getEvents()) {
+            sent.put(event, messages.getSent(event));
+        }
+        return sent;
+    }
+
+    @Override
+    public Map<String, Long> getMessagesRateLimited() {
+        MessageMetrics messages = this.server.getMessageMetrics();
+        Map<String, Long> rateLimited = new LinkedHashMap<>();
+        for (String event : messages.getEvents()) {
+            rateLimited.put(event, messages.getRateLimited(event));
+        }
+        return rateLimited;
+    }
+
+    @Override
+    public long getPayloadBytesReceived() {
+        return this.server.getMessageMetrics().getReceivedBytes();
+    }
+
+    @Override
+    public long getPayloadBytesSent() {
+        return this.server.getMessageMetrics().getSentBytes();
+    }
+
+    @Override
+    public long getBroadcasts() {
+        return this.server.getMessageMetrics().getBroadcasts();
+    }
+
+    @Override
+    public double getBroadcastFanout() {
+        MessageMetrics messages = this.server.getMessageMetrics();
+        long broadcasts = messages.getBroadcasts();
+        return broadcasts == 0 ? 0 : (double) messages.getBroadcastRecipients() / broadcasts;
+    }
+
+    @Override
+    public int getSpectators() {
+        int spectators = 0;
+        for (Room room : this.server.getRooms()) {
+            spectators += room.getSpectators().size();
+        }
+        return spectators;
+    }
+
+    @Override
+    public long getSpectatorBroadcasts() {
+        return this.server.getMessageMetrics().getSpectatorBroadcasts();
+    }
+
+    @Override
+    public double getSpectatorFanout() {
+        MessageMetrics messages = this.server.getMessageMetrics();
+        long broadcasts = messages.getSpectatorBroadcasts();
+        return broadcasts == 0 ? 0 : (double) messages.getSpectatorRecipients() / broadcasts;
+    }
+
+    @Override
+    public long getFramesConflated() {
+        return this.server.getMessageMetrics().getFramesConflated();
+    }
+
+    @Override
+    public long getSlowConsumerDisconnects() {
+        return this.server.getMessageMetrics().getSlowConsumerDisconnects();
+    }
+
+    @Override
+    public long getTickOverruns() {
+        long overruns = 0;
+        for (TickShard shard : this.server.getShards()) {
+            overruns += shard.getMetrics().getOverruns();
+        }
+        return overruns;
+    }
+
+    /**
+     * Writes all metrics in the prometheus text format.
+     */
+    public void writePrometheus(PrintWriter out) {
+        MessageMetrics messages = this.server.getMessageMetrics();
+
+        gauge(out, "snakefever_players", "Connected players.");
+        sample(out, "snakefever_players", "", this.getPlayers());
+
+        gauge(out, "snakefever_cluster_nodes", "Nodes of the cluster that are up, including this one.");
+        sample(out, "snakefever_cluster_nodes", "{node=\"" + this.getClusterNode() + "\"}", this.getClusterNodes());
+        gauge(out, "snakefever_cluster_players", "Players of all nodes of the cluster, as of their last summaries.");
+        sample(out, "snakefever_cluster_players", "{node=\"" + this.getClusterNode() + "\"}", this.getClusterPlayers());
+
+        gauge(out, "snakefever_sessions", "Engine io sessions by transport.");
+        sample(out, "snakefever_sessions", "{transport=\"polling\"}", this.getPollingSessions());
+        sample(out, "snakefever_sessions", "{transport=\"websocket\"}", this.getWebSocketSessions());
+        counter(out, "snakefever_session_upgrades_total", "Sessions upgraded from polling to web socket.");
+        sample(out, "snakefever_session_upgrades_total", "", this.transportMetrics.getUpgrades());
+
+        gauge(out, "snakefever_polls_parked", "Long-polling requests waiting for data.");
+        sample(out, "snakefever_polls_parked", "", this.transportMetrics.getParkedPolls());
+        counter(out, "snakefever_polls_rejected_total", "Long-polling requests rejected by the parked limit.");
+        sample(out, "snakefever_polls_rejected_total", "", this.transportMetrics.getRejectedPolls());
+        counter(out, "snakefever_websocket_write_timeouts_total", "Web sockets dropped because a write was not taken in time.");
+        sample(out, "snakefever_websocket_write_timeouts_total", "", this.transportMetrics.getWriteTimeouts());
+
+        gauge(out, "snakefever_rooms", "Rooms by type and reserved slots.");
+        int[][] rooms = this.countRoomsByFill();
+        for (int slots = 0; slots <= Room.MAX_PLAYERS; slots++) {
+            sample(out, "snakefever_rooms", "{type=\"quickplay\",slots=\"" + slots + "\"}", rooms[1][slots]);
+            sample(out, "snakefever_rooms", "{type=\"private\",slots=\"" + slots + "\"}", rooms[0][slots]);
+        }
+        gauge(out, "snakefever_arenas", "Arenas, they are not included in the rooms by type.");
+        sample(out, "snakefever_arenas", "", this.getArenas());
+        gauge(out, "snakefever_arena_players", "Taken or reserved slots of all arenas.");
+        sample(out, "snakefever_arena_players", "", this.getArenaPlayers());
+
+        gauge(out, "snakefever_rooms_lifecycle", "Rooms by lifecycle.");
+        int[] lifecycles = this.countRoomsByLifecycle();
+        for (Room.Lifecycle lifecycle : Room.Lifecycle.values()) {
+            sample(out, "snakefever_rooms_lifecycle", "{state=\"" + lifecycle.name().toLowerCase() + "\"}", lifecycles[lifecycle.ordinal()]);
+        }
+        counter(out, "snakefever_rooms_finished_total", "Rooms closed after being empty for the grace period.");
+        sample(out, "snakefever_rooms_finished_total", "", this.getRoomsFinished());
+        gauge(out, "snakefever_rooms_pooled", "Finished rooms waiting to be reused.");
+        sample(out, "snakefever_rooms_pooled", "", this.getPooledRooms());
+        counter(out, "snakefever_rooms_reused_total", "Rooms created from the pool instead of allocating them.");
+        sample(out, "snakefever_rooms_reused_total", "", this.server.getRoomPool().getReused());
+        gauge(out, "snakefever_rooms_restore_pending", "Rooms of the snapshot of the last run that were not requested yet.");
+        sample(out, "snakefever_rooms_restore_pending", "", this.getPendingRestoredRooms());
+        counter(out, "snakefever_players_resumed_total", "Players that took over their snake in a restored room.");
+        sample(out, "snakefever_players_resumed_total", "", this.getResumedPlayers());
+
+        counter(out, "snakefever_messages_received_total", "Socket io messages received by event.");
+        for (String event : messages.getEvents()) {
+            sample(out, "snakefever_messages_received_total", "{event=\"" + event + "\"}", messages.getReceived(event));
+        }
+        counter(out, "snakefever_messages_sent_total", "Socket io messages sent by event.");
+        for (String event : messages.getEvents()) {
+            sample(out, "snakefever_messages_sent_total", "{event=\"" + event + "\"}", messages.getSent(event));
+        }
+
+        counter(out, "snakefever_messages_rate_limited_total", "Received socket io messages dropped by the rate limit, by event.");
+        for (String event : messages.getEvents()) {
+            sample(out, "snakefever_messages_rate_limited_total", "{event=\"" + event + "\"}", messages.getRateLimited(event));
+        }
+
+        counter(out, "snakefever_payload_received_bytes_total", "Payload bytes of received messages, without framing.");
+        sample(out, "snakefever_payload_received_bytes_total", "", messages.getReceivedBytes());
+        counter(out, "snakefever_payload_sent_bytes_total", "Payload bytes of sent messages, without framing.");
+        sample(out, "snakefever_payload_sent_bytes_total", "", messages.getSentBytes());
+
+        counter(out, "snakefever_broadcasts_total", "Messages sent to all players of a room.");
+        sample(out, "snakefever_broadcasts_total", "", messages.getBroadcasts());
+        counter(out, "snakefever_broadcast_recipients_total", "Players that received a broadcast, divided by the broadcasts this is the fan-out.");
+        sample(out, "snakefever_broadcast_recipients_total", "", messages.getBroadcastRecipients());
+
+        gauge(out, "snakefever_spectators", "Players watching a room.");
+        sample(out, "snakefever_spectators", "", this.getSpectators());
+        counter(out, "snakefever_spectator_broadcasts_total", "Frames sent to all spectators of a room feed.");
+        sample(out, "snakefever_spectator_broadcasts_total", "", messages.getSpectatorBroadcasts());
+        counter(out, "snakefever_spectator_recipients_total", "Spectators that received a frame, divided by the spectator broadcasts this is the fan-out.");
+        sample(out, "snakefever_spectator_recipients_total", "", messages.getSpectatorRecipients());
+
+        counter(out, "snakefever_frames_conflated_total", "Room frames replaced by a newer frame before a slow socket sent them.");
+        sample(out, "snakefever_frames_conflated_total", "", messages.getFramesConflated());
+        counter(out, "snakefever_slow_consumer_disconnects_total", "Sockets disconnected because their outbound queue was full or their frames stayed unsent.");
+        sample(out, "snakefever_slow_consumer_disconnects_total", "", messages.getSlowConsumerDisconnects());
+
+        counter(out, "snakefever_tick_overruns_total", "Shard ticks that took longer than the tick interval.");
+        for (TickShard shard : this.server.getShards()) {
+            sample(out, "snakefever_tick_overruns_total", "{shard=\"" + shard.getIndex() + "\"}", shard.getMetrics().getOverruns());
+        }
+        gauge(out, "snakefever_tick_seconds", "Shard tick duration percentiles since the start.");
+        for (TickShard shard : this.server.getShards()) {
+            LatencyHistogram ticks = shard.getMetrics().getShardTickLatency();
+            for (double quantile : new double[] { 0.5, 0.99, 1 }) {
+                long nanos = quantile < 1 ? ticks.getValueAtPercentile(quantile * 100) : ticks.getMax();
+                sample(out, "snakefever_tick_seconds", "{shard=\"" + shard.getIndex() + "\",quantile=\"" + quantile + "\"}",
+                    (double) nanos / TimeUnit.SECONDS.toNanos(1));
+            }
+        }
+    }
+
+    private int countRooms(boolean quickplay) {
+        int count = 0;
+        for (Room room : this.server.getRooms()) {
+            if (!room.isArena() && room.isQuickplay() == quickplay)
+                count++;
+        }
+        return count;
+    }
+
+    /**
+     * Counts the rooms by the ordinal of their lifecycle.
+     */
+    private int[] countRoomsByLifecycle() {
+        int[] rooms = new int[Room.Lifecycle.values().length];
+        for (Room room : this.server.getRooms()) {
+            rooms[room.getLifecycle().ordinal()]++;
+        }
+        return rooms;
+    }
+
+    /**
+     * Counts the rooms by type (0 private, 1 quickplay) and reserved slots, without the arenas.
+     */
+    private int[][] countRoomsByFill() {
+        int[][] rooms = new int[2][Room.MAX_PLAYERS + 1];
+        for (Room room : this.server.getRooms()) {
+            if (room.isArena())
+                continue;
+            int slots = Math.min(Math.max(room.getReservedSlots(), 0), Room.MAX_PLAYERS);
+            rooms[room.isQuickplay() ? 1 : 0][slots]++;
+        }
+        return rooms;
+    }
+
+    private static void gauge(PrintWriter out, String name, String help) {
+        out.print("# HELP " + name + " " + help + "\n# TYPE " + name + " gauge\n");
+    }
+
+    private static void counter(PrintWriter out, String name, String help) {
+        out.print("# HELP " + name + " " + help + "\n# TYPE " + name + " counter\n");
+    }
+
+    private static void sample(PrintWriter out, String name, String labels, long value) {
+        out.print(name + labels + " " + value + "\n");
+    }
+
+    private static void sample(PrintWriter out, String name, String labels, double value) {
+        out.print(name + labels + " " + value + "\n");
+    }
+}
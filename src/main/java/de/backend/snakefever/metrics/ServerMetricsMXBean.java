@@ -0,0 +1,111 @@
+package de.backend.snakefever.metrics;
+
+import java.util.Map;
+
+/**
+ * The server metrics exposed over JMX, the same values as served on {@link MetricsServlet#PATH}.
+ */
+public interface ServerMetricsMXBean {
+    int getPlayers();
+
+    int getPollingSessions();
+
+    int getWebSocketSessions();
+
+    int getQuickplayRooms();
+
+    int getPrivateRooms();
+
+    int getArenas();
+
+    /**
+     * Returns the taken or reserved slots of all arenas.
+     */
+    int getArenaPlayers();
+
+    /**
+     * Returns the amount of rooms by type and reserved slots, e.g. "quickplay/3".
+     */
+    Map<String, Integer> getRoomsByFill();
+
+    /**
+     * Returns the amount of rooms by lifecycle, e.g. "RUNNING".
+     */
+    Map<String, Integer> getRoomsByLifecycle();
+
+    /**
+     * Returns the amount of rooms that finished after being empty for the grace period.
+     */
+    long getRoomsFinished();
+
+    /**
+     * Returns the amount of finished rooms waiting to be reused.
+     */
+    int getPooledRooms();
+
+    Map<String, Long> getMessagesReceived();
+
+    Map<String, Long> getMessagesSent();
+
+    /**
+     * Returns the received messages dropped by the rate limit, by event.
+     */
+    Map<String, Long> getMessagesRateLimited();
+
+    long getPayloadBytesReceived();
+
+    long getPayloadBytesSent();
+
+    long getBroadcasts();
+
+    /**
+     * Returns the average amount of players receiving a broadcast.
+     */
+    double getBroadcastFanout();
+
+    /**
+     * Returns the amount of players watching a room.
+     */
+    int getSpectators();
+
+    long getSpectatorBroadcasts();
+
+    /**
+     * Returns the average amount of spectators receiving a spectator frame.
+     */
+    double getSpectatorFanout();
+
+    /**
+     * Returns the room frames replaced by a newer frame before a slow socket could send them.
+     */
+    long getFramesConflated();
+
+    long getSlowConsumerDisconnects();
+
+    long getTickOverruns();
+
+    /**
+     * Returns the index of this server in its cluster.
+     */
+    int getClusterNode();
+
+    /**
+     * Returns the nodes of the cluster that are up, including this one.
+     */
+    int getClusterNodes();
+
+    /**
+     * Returns the players of all nodes of the cluster, as of their last summaries.
+     */
+    int getClusterPlayers();
+
+    /**
+     * Returns the rooms of the snapshot of the last run that were not requested yet.
+     */
+    int getPendingRestoredRooms();
+
+    /**
+     * Returns the players that took over their snake in a restored room.
+     */
+    long getResumedPlayers();
+}
@@ -0,0 +1,145 @@
+package de.backend.snakefever.snapshot;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
+import de.backend.snakefever.Room;
+import de.backend.snakefever.RoomDirectory;
+import de.backend.snakefever.SnakeFever;
+import de.backend.snakefever.metrics.MessageMetrics;
+
+/**
+ * The rooms of a {@link StateSnapshot}, restored one by one when they are first requested.<p>
+ * The snapshot is read at once, but only its index is decoded, so a restart with thousands of rooms
+ * does not wait for them, and rooms nobody comes back to are never decoded. The rooms that were not
+ * requested within {@link #EXPIRY_MILLIS} are dropped.
+ */
+public final class RestoredRooms {
+    /**
+     * The maximum age of a snapshot that is restored, its players have given up on older ones.
+     */
+    public static final long MAX_AGE_MILLIS = 60000;
+
+    /**
+     * How long the restored rooms wait to be requested after the restart.
+     */
+    public static final long EXPIRY_MILLIS = 60000;
+
+    // when the snapshot was written
+    private final long createdMillis;
+    // the undecoded rooms by their id, slices of the read file
+    private final Map<String, ByteBuffer> rooms = new ConcurrentHashMap<>();
+
+    private RestoredRooms(long createdMillis) {
+        this.createdMillis = createdMillis;
+    }
+
+    /**
+     * Reads a snapshot and its index. The file is closed before this returns, so it can be moved or
+     * deleted right away, even on systems that don't allow it for open files.
+     * @param file the snapshot written by {@link StateSnapshot#write}
+     * @throws IOException if the file could not be read or is no snapshot of this version.
+     */
+    public static RestoredRooms open(Path file) throws IOException {
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE)
+                throw new IOException(file + " is too large for a room snapshot.");
+
+            buffer = ByteBuffer.allocate((int) size);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0)
+                    throw new IOException(file + " was truncated while it was read.");
+            }
+            buffer.flip();
+        }
+
+        try {
+            if (buffer.remaining() < StateSnapshot.HEADER_SIZE || buffer.getInt() != StateSnapshot.MAGIC || buffer.get() != StateSnapshot.VERSION)
+                throw new IOException(file + " is no room snapshot of version " + StateSnapshot.VERSION + ".");
+
+            RestoredRooms restored = new RestoredRooms(buffer.getLong());
+            int count = buffer.getInt();
+            for (int i = 0; i < count; i++) {
+                byte[] id = new byte[buffer.get() & 0xFF];
+                buffer.get(id);
+                int offset = buffer.getInt();
+                int length = buffer.getInt();
+                if (offset < 0 || length < 0 || offset > buffer.capacity() - length)
+                    throw new IOException(file + " points outside of itself.");
+
+                ByteBuffer room = buffer.duplicate();
+                room.position(offset);
+                room.limit(offset + length);
+                restored.rooms.put(new String(id, StandardCharsets.UTF_8), room.slice());
+            }
+            return restored;
+        } catch (BufferUnderflowException e) {
+            throw new IOException(file + " has a broken index.", e);
+        }
+    }
+
+    /**
+     * Returns when the snapshot was written.
+     */
+    public long getCreatedMillis() {
+        return this.createdMillis;
+    }
+
+    /**
+     * Returns true if a room with the id is waiting to be restored.
+     */
+    public boolean contains(String id) {
+        return this.rooms.containsKey(id);
+    }
+
+    /**
+     * Returns the amount of rooms waiting to be restored.
+     */
+    public int size() {
+        return this.rooms.size();
+    }
+
+    /**
+     * Restores a room, every room can only be taken once.
+     * @param id the id of the room
+     * @param messageMetrics the metrics counting the frames of the room
+     * @param directory the room list the room is listed in
+     * @param spectatorSender sends the frames to the spectators of the room
+     * @return the room, not added to the server yet, or null if there is no such room or it is broken.
+     */
+    public Room take(String id, MessageMetrics messageMetrics, RoomDirectory directory, Executor spectatorSender) {
+        ByteBuffer state = this.rooms.remove(id);
+        if (state == null)
+            return null;
+
+        try {
+            return Room.restore(state, messageMetrics, directory, spectatorSender);
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            SnakeFever.LOGGER.error("Could not restore room " + id + " from the snapshot.", e);
+            return null;
+        }
+    }
+
+    /**
+     * Drops all rooms that were not taken.
+     * @return the amount of dropped rooms.
+     */
+    public int clear() {
+        int dropped = 0;
+        for (String id : this.rooms.keySet()) {
+            if (this.rooms.remove(id) != null)
+                dropped++;
+        }
+        return dropped;
+    }
+}
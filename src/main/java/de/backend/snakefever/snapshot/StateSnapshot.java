@@ -0,0 +1,163 @@
+package de.backend.snakefever.snapshot;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import de.backend.snakefever.Room;
+import de.backend.snakefever.SnakeFever;
+import de.backend.snakefever.tick.TickShard;
+
+/**
+ * Writes the state of all rooms with players to one file, so a restarted server can restore them, see
+ * {@link RestoredRooms}.<p>
+ * Every shard encodes its own rooms on its thread between two ticks, so the rooms are never stopped and
+ * every room is consistent, the rooms of different shards may be a tick apart. The file starts with
+ * {@link #MAGIC}, the {@link #VERSION}, the time it was created and the amount of rooms, followed by an
+ * index of the rooms with their id, offset and length, followed by the rooms written by
+ * {@link Room#writeSnapshot(java.nio.ByteBuffer)}. The index is read at once, the rooms only when they
+ * are requested. The file is written next to the snapshot first and then moved over it, so a crash while
+ * writing never leaves half a snapshot.
+ */
+public final class StateSnapshot {
+    /**
+     * The first four bytes of a snapshot.
+     */
+    public static final int MAGIC = 0x534e5331;
+
+    /**
+     * The version of the format, snapshots of other versions are ignored.
+     */
+    public static final int VERSION = 1;
+
+    // the size of the header: magic, version, created time and room count
+    static final int HEADER_SIZE = Integer.BYTES + 1 + Long.BYTES + Integer.BYTES;
+
+    private StateSnapshot() {
+    }
+
+    /**
+     * Writes a snapshot of the rooms with players of all shards.
+     * @param shards the shards owning the rooms
+     * @param file the snapshot file, replaced if it exists
+     * @param timeoutMillis how long to wait for the shards to encode their rooms
+     * @return the amount of rooms written.
+     * @throws IOException if the file could not be written or a shard did not answer in time.
+     */
+    public static int write(TickShard[] shards, Path file, long timeoutMillis) throws IOException {
+        List<CompletableFuture<List<EncodedRoom>>> encodings = new ArrayList<>();
+        for (TickShard shard : shards) {
+            CompletableFuture<List<EncodedRoom>> encoding = new CompletableFuture<>();
+            shard.execute(() -> {
+                try {
+                    encoding.complete(encode(shard));
+                } catch (RuntimeException e) {
+                    encoding.completeExceptionally(e);
+                }
+            });
+            encodings.add(encoding);
+        }
+
+        List<EncodedRoom> rooms = new ArrayList<>();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        try {
+            for (CompletableFuture<List<EncodedRoom>> encoding : encodings) {
+                rooms.addAll(encoding.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while encoding the rooms.", e);
+        } catch (ExecutionException | TimeoutException e) {
+            throw new IOException("A shard failed to encode its rooms.", e);
+        }
+
+        int indexSize = 0;
+        for (EncodedRoom room : rooms) {
+            indexSize += 1 + room.id.length + 2 * Integer.BYTES;
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE + indexSize);
+        header.putInt(MAGIC);
+        header.put((byte) VERSION);
+        header.putLong(System.currentTimeMillis());
+        header.putInt(rooms.size());
+        int offset = header.capacity();
+        for (EncodedRoom room : rooms) {
+            header.put((byte) room.id.length);
+            header.put(room.id);
+            header.putInt(offset);
+            header.putInt(room.state.length);
+            offset += room.state.length;
+        }
+        header.flip();
+
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            writeFully(channel, header);
+            for (EncodedRoom room : rooms) {
+                writeFully(channel, ByteBuffer.wrap(room.state));
+            }
+        }
+
+        try {
+            Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+        return rooms.size();
+    }
+
+    /**
+     * Encodes the rooms with players of a shard, on the shard thread.
+     */
+    private static List<EncodedRoom> encode(TickShard shard) {
+        List<EncodedRoom> rooms = new ArrayList<>();
+        for (Room room : shard.getRooms()) {
+            // an empty room has nothing worth restoring
+            if (room.getLifecycle() != Room.Lifecycle.RUNNING || !room.hasPlayers())
+                continue;
+
+            try {
+                ByteBuffer buffer = ByteBuffer.allocate(room.getSnapshotSizeBound());
+                room.writeSnapshot(buffer);
+                rooms.add(new EncodedRoom(room.getId(), Arrays.copyOf(buffer.array(), buffer.position())));
+            } catch (RuntimeException e) {
+                // one broken room must not cost the others
+                SnakeFever.LOGGER.error("Could not write room " + room.getId() + " to the snapshot.", e);
+            }
+        }
+        return rooms;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * A room encoded by its shard.
+     */
+    private static final class EncodedRoom {
+        private final byte[] id;
+        private final byte[] state;
+
+        private EncodedRoom(String id, byte[] state) {
+            this.id = id.getBytes(StandardCharsets.UTF_8);
+            this.state = state;
+        }
+    }
+}
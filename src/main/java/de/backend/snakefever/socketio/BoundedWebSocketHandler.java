@@ -0,0 +1,137 @@
+package de.backend.snakefever.socketio;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.eclipse.jetty.websocket.api.Session;
+import org.eclipse.jetty.websocket.api.WebSocketListener;
+
+import io.socket.engineio.server.EngineIoServer;
+import io.socket.engineio.server.EngineIoWebSocket;
+import io.socket.engineio.server.utils.ParseQS;
+
+/**
+ * The engine io web socket of a jetty session, like the {@code JettyWebSocketHandler} of engine io, but a
+ * write waits for the client only up to a deadline.<p>
+ * A blocking jetty write only returns once the client took the data, or when the connection idles out,
+ * so a client that stops reading holds the writing thread for the whole web socket idle timeout. Here
+ * the frames are written asynchronously and a write that is not done within the deadline aborts the
+ * connection, engine io then closes the socket like after any other write error.
+ */
+final class BoundedWebSocketHandler extends EngineIoWebSocket implements WebSocketListener {
+    private final EngineIoServer server;
+    private final long writeTimeoutMillis;
+    private final TransportMetrics transportMetrics;
+
+    private volatile Session session;
+    private Map<String, String> query;
+    private Map<String, List<String>> headers;
+
+    /**
+     * Creates the handler of one web socket.
+     * @param server the engine io server the socket is handed to
+     * @param writeTimeoutMillis how long a write may wait for the client
+     * @param transportMetrics counts the aborted connections
+     */
+    BoundedWebSocketHandler(EngineIoServer server, long writeTimeoutMillis, TransportMetrics transportMetrics) {
+        this.server = server;
+        this.writeTimeoutMillis = writeTimeoutMillis;
+        this.transportMetrics = transportMetrics;
+    }
+
+    @Override
+    public Map<String, String> getQuery() {
+        return this.query;
+    }
+
+    @Override
+    public Map<String, List<String>> getConnectionHeaders() {
+        return this.headers;
+    }
+
+    @Override
+    public void write(String message) throws IOException {
+        Session session = this.getOpenSession();
+        this.await(session, session.getRemote().sendStringByFuture(message));
+    }
+
+    @Override
+    public void write(byte[] message) throws IOException {
+        Session session = this.getOpenSession();
+        this.await(session, session.getRemote().sendBytesByFuture(ByteBuffer.wrap(message)));
+    }
+
+    @Override
+    public void close() {
+        Session session = this.session;
+        if (session != null)
+            session.close();
+    }
+
+    @Override
+    public void onWebSocketConnect(Session session) {
+        this.session = session;
+        this.query = ParseQS.decode(session.getUpgradeRequest().getQueryString());
+        this.headers = session.getUpgradeRequest().getHeaders();
+        this.server.handleWebSocket(this);
+    }
+
+    @Override
+    public void onWebSocketClose(int statusCode, String reason) {
+        this.emit("close");
+        this.session = null;
+    }
+
+    @Override
+    public void onWebSocketError(Throwable cause) {
+        this.emit("error", "write error", cause.getMessage());
+    }
+
+    @Override
+    public void onWebSocketBinary(byte[] payload, int offset, int length) {
+        byte[] message = payload;
+        if (offset != 0 || length != payload.length) {
+            message = new byte[length];
+            System.arraycopy(payload, offset, message, 0, length);
+        }
+        this.emit("message", (Object) message);
+    }
+
+    @Override
+    public void onWebSocketText(String message) {
+        this.emit("message", message);
+    }
+
+    private Session getOpenSession() throws IOException {
+        Session session = this.session;
+        if (session == null)
+            throw new IOException("The web socket is closed.");
+        return session;
+    }
+
+    /**
+     * Waits for a write, aborting the connection if the client does not take it in time.
+     */
+    private void await(Session session, Future<Void> write) throws IOException {
+        try {
+            write.get(this.writeTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            // a close handshake would queue behind the stuck write, so the connection is dropped at once
+            this.transportMetrics.onWriteTimeout();
+            session.disconnect();
+            throw new IOException("The client did not take a write within " + this.writeTimeoutMillis + "ms.");
+        } catch (ExecutionException e) {
+            throw new IOException("The write failed.", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while writing.");
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package de.backend.snakefever.socketio;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import io.socket.engineio.server.EngineIoServer;
+
+/**
+ * Handles the engine io http requests, i.e. long-polling.<p>
+ * A poll without data to send is parked as async request, so it waits without holding a jetty thread.
+ * The amount of parked polls is limited, polls over the limit are rejected with 503 and the client
+ * retries them.
+ */
+final class EngineIoServlet extends HttpServlet {
+    private final transient EngineIoServer eioServer;
+    private final transient TransportMetrics metrics;
+    // the maximum amount of parked polls
+    private final int maxParkedPolls;
+
+    EngineIoServlet(EngineIoServer eioServer, TransportMetrics metrics, int maxParkedPolls) {
+        this.eioServer = eioServer;
+        this.metrics = metrics;
+        this.maxParkedPolls = maxParkedPolls;
+    }
+
+    @Override
+    protected void service(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        // only GET requests wait for data, POST requests deliver the client packets and return right away
+        boolean poll = "GET".equals(request.getMethod()) && "polling".equals(request.getParameter("transport"));
+        if (poll && !this.metrics.tryPark(this.maxParkedPolls)) {
+            response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            return;
+        }
+
+        try {
+            this.eioServer.handleRequest(request, response);
+        } catch (IOException | RuntimeException e) {
+            if (poll && !request.isAsyncStarted())
+                this.metrics.unpark();
+            throw e;
+        }
+
+        if (!poll)
+            return;
+
+        if (request.isAsyncStarted()) {
+            // jetty runs async listeners only after this dispatch returned, so no completion is missed
+            request.getAsyncContext().addListener(new UnparkListener());
+        } else {
+            this.metrics.unpark();
+        }
+    }
+
+    /**
+     * Frees the parked slot once the poll completed, timed out or failed.
+     */
+    private final class UnparkListener implements AsyncListener {
+        private final AtomicBoolean unparked = new AtomicBoolean();
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            this.unpark();
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            this.unpark();
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            this.unpark();
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+            // not restarted by engine io
+        }
+
+        private void unpark() {
+            if (this.unparked.compareAndSet(false, true))
+                EngineIoServlet.this.metrics.unpark();
+        }
+    }
+}
@@ -1,14 +1,12 @@
 package de.backend.snakefever.socketio;
 
-import java.io.IOException;
+import java.lang.management.ManagementFactory;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
-import javax.servlet.http.HttpServletRequest;
-import javax.servlet.http.HttpServletRequestWrapper;
-import javax.servlet.http.HttpServletResponse;
 
 import org.eclipse.jetty.http.pathmap.ServletPathSpec;
+import org.eclipse.jetty.jmx.MBeanContainer;
 import org.eclipse.jetty.server.Handler;
 import org.eclipse.jetty.server.Server;
 import org.eclipse.jetty.server.ServerConnector;
@@ -16,19 +14,29 @@ import org.eclipse.jetty.server.handler.HandlerList;
 import org.eclipse.jetty.servlet.DefaultServlet;
 import org.eclipse.jetty.servlet.ServletContextHandler;
 import org.eclipse.jetty.servlet.ServletHolder;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.eclipse.jetty.util.thread.ThreadPool;
+import org.eclipse.jetty.websocket.api.WebSocketPolicy;
 import org.eclipse.jetty.websocket.server.WebSocketUpgradeFilter;
 
+import de.backend.snakefever.ServerConfig;
 import de.backend.snakefever.SnakeFever;
 import io.socket.engineio.server.EngineIoServer;
 import io.socket.engineio.server.EngineIoServerOptions;
-import io.socket.engineio.server.JettyWebSocketHandler;
 import io.socket.socketio.server.SocketIoServer;
 
 public final class ServerWrapper {
+    /** the name of the admin connector, its context only answers requests of this connector */
+    private static final String ADMIN_CONNECTOR = "admin";
+
     /** the jetty server */
     private final Server server;
     /** the jetty server connector */
     private final ServerConnector connector;
+    /** the servlet context, serving the client and socket io */
+    private final ServletContextHandler context;
+    /** the servlet context of the admin connector, serving the metrics, null if there is no admin connector */
+    private final ServletContextHandler adminContext;
 
     /** the engine io settings */
     private final EngineIoServerOptions eioOptions;
@@ -38,18 +46,41 @@ public final class ServerWrapper {
     /** the socket io server */
     private final SocketIoServer socketIoServer;
 
+    /** the session and polling counters */
+    private final TransportMetrics transportMetrics;
+
     /**
      * This class contains code to start the webserver and socket io handler.
-     * @param port
-     * @param allowedCorsOrigins
+     * @param config the thread, connector, web socket and engine io settings
      */
-    public ServerWrapper(int port, String[] allowedCorsOrigins) {
-        this.server = new Server();
-        this.connector = new ServerConnector(server);
-        this.connector.setPort(port);
+    public ServerWrapper(ServerConfig config) {
+        this.server = new Server(createThreadPool(config));
+        this.connector = new ServerConnector(server, config.getAcceptors(), config.getSelectors());
+        this.connector.setPort(config.getPort());
+        this.connector.setIdleTimeout(config.getIdleTimeout());
+        this.connector.setAcceptQueueSize(config.getAcceptQueueSize());
         server.addConnector(connector);
 
-        ServletContextHandler context = new ServletContextHandler(ServletContextHandler.SESSIONS);
+        // metrics and stats are only served on their own connector, by default reachable from this host only
+        if (config.getAdminPort() >= 0) {
+            ServerConnector adminConnector = new ServerConnector(server, 1, 1);
+            adminConnector.setName(ADMIN_CONNECTOR);
+            adminConnector.setHost(config.getAdminHost());
+            adminConnector.setPort(config.getAdminPort());
+            server.addConnector(adminConnector);
+
+            this.adminContext = new ServletContextHandler(ServletContextHandler.NO_SESSIONS);
+            adminContext.setContextPath("/");
+            adminContext.setVirtualHosts(new String[] { "@" + ADMIN_CONNECTOR });
+        } else {
+            this.adminContext = null;
+            SnakeFever.LOGGER.info("The admin connector is disabled, metrics and stats are not served.");
+        }
+
+        // expose jetty's thread pool, connector, etc. over JMX
+        server.addBean(new MBeanContainer(ManagementFactory.getPlatformMBeanServer()));
+
+        this.context = new ServletContextHandler(ServletContextHandler.SESSIONS);
         context.setContextPath("/");
         context.setResourceBase(SnakeFever.class.getClassLoader().getResource("WEB-INF").toExternalForm());
 
@@ -61,42 +92,84 @@ public final class ServerWrapper {
 
         // engine io settings
         eioOptions = EngineIoServerOptions.newFromDefault();
-        eioOptions.setAllowedCorsOrigins(allowedCorsOrigins);
+        eioOptions.setAllowedCorsOrigins(config.getCorsOrigins());
+        eioOptions.setPingInterval(config.getPingInterval());
+        eioOptions.setPingTimeout(config.getPingTimeout());
+        eioOptions.setMaxTimeoutThreadPoolSize(config.getMaxTimeoutThreadPoolSize());
         
         // initialize the engine io server
         eioServer = new EngineIoServer(eioOptions);
         // initialize the socket io server
         socketIoServer = new SocketIoServer(eioServer);
         
-        // socket io servlet for http connections
-        context.addServlet(new ServletHolder(new HttpServlet() {
-            @Override
-            protected void service(HttpServletRequest request, HttpServletResponse response) throws IOException {
-                eioServer.handleRequest(new HttpServletRequestWrapper(request) {
-                    @Override
-                    public boolean isAsyncSupported() {
-                        return false;
-                    }
-                }, response);
-            }
-        }), "/socket.io/*");
+        // count the sessions by transport
+        transportMetrics = new TransportMetrics();
+        transportMetrics.track(eioServer);
+
+        // socket io servlet for http connections, polls are parked async instead of holding a thread
+        ServletHolder eioHolder = new ServletHolder(new EngineIoServlet(eioServer, transportMetrics, config.getMaxParkedPolls()));
+        eioHolder.setAsyncSupported(true);
+        context.addServlet(eioHolder, "/socket.io/*");
 
         // socket io handler for websocket connections
         try {
             WebSocketUpgradeFilter webSocketUpgradeFilter = WebSocketUpgradeFilter.configureContext(context);
+            WebSocketPolicy policy = webSocketUpgradeFilter.getFactory().getPolicy();
+            policy.setIdleTimeout(config.getWebSocketIdleTimeout());
+            policy.setInputBufferSize(config.getWebSocketInputBufferSize());
+            policy.setMaxTextMessageSize(config.getWebSocketMaxTextMessageSize());
+            policy.setMaxBinaryMessageSize(config.getWebSocketMaxBinaryMessageSize());
             webSocketUpgradeFilter.addMapping(
                     new ServletPathSpec("/socket.io/*"),
-                    (servletUpgradeRequest, servletUpgradeResponse) -> new JettyWebSocketHandler(eioServer));
+                    (servletUpgradeRequest, servletUpgradeResponse) -> new BoundedWebSocketHandler(eioServer, config.getWebSocketWriteTimeout(), transportMetrics));
         } catch (ServletException ex) {
             ex.printStackTrace();
         }
 
         // finally make the handlers
         HandlerList handlerList = new HandlerList();
-        handlerList.setHandlers(new Handler[] { context });
+        handlerList.setHandlers(adminContext != null ? new Handler[] { adminContext, context } : new Handler[] { context });
         server.setHandler(handlerList);
     }
 
+    /**
+     * Creates the thread pool handling the connections, virtual threads if enabled and supported.
+     */
+    private static ThreadPool createThreadPool(ServerConfig config) {
+        if (config.isVirtualThreads()) {
+            ThreadPool virtualThreadPool = VirtualThreadPool.tryCreate();
+            if (virtualThreadPool != null) {
+                SnakeFever.LOGGER.info("Handling connections on virtual threads.");
+                return virtualThreadPool;
+            }
+            SnakeFever.LOGGER.warn("Virtual threads are not supported by this JVM, using a thread pool.");
+        }
+
+        QueuedThreadPool threadPool = new QueuedThreadPool(config.getMaxThreads(), config.getMinThreads(), config.getThreadIdleTimeout());
+        threadPool.setName("jetty");
+        return threadPool;
+    }
+
+    /**
+     * Adds a servlet, must be called before the server is started.
+     * @param servlet the servlet
+     * @param pathSpec the path the servlet is mapped to
+     */
+    public void addServlet(HttpServlet servlet, String pathSpec) {
+        context.addServlet(new ServletHolder(servlet), pathSpec);
+    }
+
+    /**
+     * Adds a servlet to the admin connector only, must be called before the server is started.<p>
+     * Does nothing if the admin connector is disabled.
+     * @param servlet the servlet
+     * @param pathSpec the path the servlet is mapped to
+     */
+    public void addAdminServlet(HttpServlet servlet, String pathSpec) {
+        if (adminContext != null)
+            adminContext.addServlet(new ServletHolder(servlet), pathSpec);
+    }
+
     /**
      * Starts the server.
      * @throws Exception
@@ -116,5 +189,9 @@ public final class ServerWrapper {
     public SocketIoServer getSocketIoServer() {
         return socketIoServer;
     }
+
+    public TransportMetrics getTransportMetrics() {
+        return transportMetrics;
+    }
     
 }
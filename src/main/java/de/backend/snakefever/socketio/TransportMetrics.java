@@ -0,0 +1,117 @@
+package de.backend.snakefever.socketio;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import io.socket.engineio.server.EngineIoServer;
+import io.socket.engineio.server.EngineIoSocket;
+
+/**
+ * Counts the engine io sessions by transport and the parked long-polling requests.
+ */
+public final class TransportMetrics {
+    private final AtomicInteger pollingSessions = new AtomicInteger();
+    private final AtomicInteger webSocketSessions = new AtomicInteger();
+    private final LongAdder upgrades = new LongAdder();
+
+    private final AtomicInteger parkedPolls = new AtomicInteger();
+    private final LongAdder rejectedPolls = new LongAdder();
+
+    private final LongAdder writeTimeouts = new LongAdder();
+
+    /**
+     * Starts counting the sessions of an engine io server.
+     */
+    void track(EngineIoServer server) {
+        server.on("connection", args -> {
+            EngineIoSocket socket = (EngineIoSocket) args[0];
+            // the transport the session is currently counted on, only changed by upgrade and close
+            boolean[] webSocket = { "websocket".equals(socket.getInitialQuery().get("transport")) };
+            (webSocket[0] ? this.webSocketSessions : this.pollingSessions).incrementAndGet();
+
+            socket.on("upgrade", upgradeArgs -> {
+                synchronized (webSocket) {
+                    if (!webSocket[0]) {
+                        webSocket[0] = true;
+                        this.pollingSessions.decrementAndGet();
+                        this.webSocketSessions.incrementAndGet();
+                        this.upgrades.increment();
+                    }
+                }
+            });
+            socket.on("close", closeArgs -> {
+                synchronized (webSocket) {
+                    (webSocket[0] ? this.webSocketSessions : this.pollingSessions).decrementAndGet();
+                }
+            });
+        });
+    }
+
+    /**
+     * Tries to take a slot for a parked poll.
+     * @param maxParked the maximum amount of parked polls
+     * @return false if the limit is reached, the poll is counted as rejected then.
+     */
+    boolean tryPark(int maxParked) {
+        int parked;
+        do {
+            parked = this.parkedPolls.get();
+            if (parked >= maxParked) {
+                this.rejectedPolls.increment();
+                return false;
+            }
+        } while (!this.parkedPolls.compareAndSet(parked, parked + 1));
+
+        return true;
+    }
+
+    void unpark() {
+        this.parkedPolls.decrementAndGet();
+    }
+
+    void onWriteTimeout() {
+        this.writeTimeouts.increment();
+    }
+
+    /**
+     * Returns the amount of sessions using long-polling.
+     */
+    public int getPollingSessions() {
+        return this.pollingSessions.get();
+    }
+
+    /**
+     * Returns the amount of sessions using a web socket, including upgraded polling sessions.
+     */
+    public int getWebSocketSessions() {
+        return this.webSocketSessions.get();
+    }
+
+    /**
+     * Returns the amount of sessions upgraded from polling to web socket.
+     */
+    public long getUpgrades() {
+        return this.upgrades.sum();
+    }
+
+    /**
+     * Returns the amount of polls currently waiting for data without holding a thread.
+     */
+    public int getParkedPolls() {
+        return this.parkedPolls.get();
+    }
+
+    /**
+     * Returns the amount of polls rejected because too many polls were parked.
+     */
+    public long getRejectedPolls() {
+        return this.rejectedPolls.sum();
+    }
+
+    /**
+     * Returns the amount of web sockets dropped because the client did not take a write in time.
+     */
+    public long getWriteTimeouts() {
+        return this.writeTimeouts.sum();
+    }
+}
@@ -0,0 +1,78 @@
+package de.backend.snakefever.socketio;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.jetty.util.component.AbstractLifeCycle;
+import org.eclipse.jetty.util.thread.ThreadPool;
+
+/**
+ * A jetty thread pool running every task on a new virtual thread.<p>
+ * Virtual threads need Java 21, the server is built for Java 8, so the executor is looked up by
+ * reflection. The pool never runs low on threads, a blocked connection only parks its own virtual
+ * thread. Code holding a monitor while blocking still pins the carrier thread, so this pays off for
+ * many mostly idle sockets, not for CPU bound work.
+ */
+public final class VirtualThreadPool extends AbstractLifeCycle implements ThreadPool {
+    private final ExecutorService executor;
+
+    // the amount of tasks currently running
+    private final AtomicInteger running = new AtomicInteger();
+
+    private VirtualThreadPool(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Creates a pool, if the JVM supports virtual threads.
+     * @return null if virtual threads are not supported.
+     */
+    public static VirtualThreadPool tryCreate() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return new VirtualThreadPool((ExecutorService) factory.invoke(null));
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        this.running.incrementAndGet();
+        this.executor.execute(() -> {
+            try {
+                task.run();
+            } finally {
+                this.running.decrementAndGet();
+            }
+        });
+    }
+
+    @Override
+    protected void doStop() throws Exception {
+        this.executor.shutdown();
+    }
+
+    @Override
+    public void join() throws InterruptedException {
+        this.executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public int getThreads() {
+        return this.running.get();
+    }
+
+    @Override
+    public int getIdleThreads() {
+        return 0;
+    }
+
+    @Override
+    public boolean isLowOnThreads() {
+        return false;
+    }
+}
@@ -0,0 +1,127 @@
+package de.backend.snakefever.tick;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed size histogram with log-linear buckets, like a HDR histogram with a precision of about 6%.<p>
+ * Values below 32 are counted exactly, every following power of two range is split into 16 buckets.
+ * Values above the highest trackable value are counted in the last bucket.<p>
+ * The histogram must only be written by one thread, but can be read from any thread. Readers may see
+ * a recording that is only half applied, which is fine for monitoring.
+ */
+public final class LatencyHistogram {
+    // the amount of bits used for the exact buckets
+    private static final int SUB_BUCKET_BITS = 5;
+    // the amount of exact buckets
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    // the amount of buckets per power of two range
+    private static final int SUB_BUCKET_HALF_COUNT = SUB_BUCKET_COUNT >> 1;
+
+    // the bucket counts
+    private final AtomicLongArray counts;
+    // the highest value that is tracked with full precision
+    private final long highestTrackableValue;
+
+    // the amount of recorded values
+    private volatile long totalCount;
+    // the sum of all recorded values, used for the mean
+    private volatile long sum;
+    // the highest recorded value
+    private volatile long max;
+
+    /**
+     * Creates a histogram.
+     * @param highestTrackableValue the highest value tracked in its own bucket, must be at least 32
+     */
+    public LatencyHistogram(long highestTrackableValue) {
+        this.highestTrackableValue = Math.max(SUB_BUCKET_COUNT, highestTrackableValue);
+        this.counts = new AtomicLongArray(bucketIndex(this.highestTrackableValue) + 1);
+    }
+
+    /**
+     * Records a value.
+     * @param value the value, negative values are counted as 0
+     */
+    public void record(long value) {
+        value = Math.max(0, value);
+        int index = bucketIndex(Math.min(value, this.highestTrackableValue));
+
+        // single writer, so no atomic increments needed
+        this.counts.lazySet(index, this.counts.get(index) + 1);
+        this.sum = this.sum + value;
+        this.totalCount = this.totalCount + 1;
+        if (value > this.max)
+            this.max = value;
+    }
+
+    /**
+     * Removes all recorded values, must only be called by the writing thread or while nothing is recorded.
+     */
+    public void reset() {
+        for (int i = 0; i < this.counts.length(); i++) {
+            this.counts.lazySet(i, 0);
+        }
+        this.sum = 0;
+        this.totalCount = 0;
+        this.max = 0;
+    }
+
+    public long getTotalCount() {
+        return this.totalCount;
+    }
+
+    public long getMax() {
+        return this.max;
+    }
+
+    /**
+     * Returns the mean of all recorded values.
+     */
+    public double getMean() {
+        long count = this.totalCount;
+        return count == 0 ? 0 : (double) this.sum / count;
+    }
+
+    /**
+     * Returns the value at the given percentile.
+     * @param percentile the percentile between 0 and 100
+     * @return the highest value equivalent to the bucket containing the percentile, or 0 if empty.
+     */
+    public long getValueAtPercentile(double percentile) {
+        long total = 0;
+        for (int i = 0; i < this.counts.length(); i++) {
+            total += this.counts.get(i);
+        }
+        if (total == 0)
+            return 0;
+
+        long target = Math.max(1, (long) Math.ceil(Math.min(100, percentile) / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < this.counts.length(); i++) {
+            seen += this.counts.get(i);
+            if (seen >= target)
+                return Math.min(highestValueInBucket(i), this.max);
+        }
+
+        return this.max;
+    }
+
+    private static int bucketIndex(long value) {
+        if (value < SUB_BUCKET_COUNT)
+            return (int) value;
+
+        int msb = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (msb - SUB_BUCKET_BITS + 1)) & (SUB_BUCKET_HALF_COUNT - 1);
+        return SUB_BUCKET_COUNT + (msb - SUB_BUCKET_BITS) * SUB_BUCKET_HALF_COUNT + subBucket;
+    }
+
+    private static long highestValueInBucket(int index) {
+        if (index < SUB_BUCKET_COUNT)
+            return index;
+
+        int msb = (index - SUB_BUCKET_COUNT) / SUB_BUCKET_HALF_COUNT + SUB_BUCKET_BITS;
+        int subBucket = (index - SUB_BUCKET_COUNT) % SUB_BUCKET_HALF_COUNT;
+        int shift = msb - SUB_BUCKET_BITS + 1;
+        return (((long) (SUB_BUCKET_HALF_COUNT + subBucket + 1)) << shift) - 1;
+    }
+}
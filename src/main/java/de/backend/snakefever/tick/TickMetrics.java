@@ -0,0 +1,126 @@
+package de.backend.snakefever.tick;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Timing statistics of one tick shard.<p>
+ * Written only by the shard thread, readable from any thread.
+ */
+public final class TickMetrics {
+    /**
+     * The highest latency tracked with full precision (10 seconds).
+     */
+    public static final long HIGHEST_TRACKABLE_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    // the duration of a whole shard tick
+    private final LatencyHistogram shardTickLatency = new LatencyHistogram(HIGHEST_TRACKABLE_NANOS);
+    // the duration of a single room tick, over all rooms of the shard
+    private final LatencyHistogram roomTickLatency = new LatencyHistogram(HIGHEST_TRACKABLE_NANOS);
+    // the duration of a single player tick, over all players of the shard
+    private final LatencyHistogram playerTickLatency = new LatencyHistogram(HIGHEST_TRACKABLE_NANOS);
+    // how late a shard tick started compared to its schedule
+    private final LatencyHistogram schedulerDrift = new LatencyHistogram(HIGHEST_TRACKABLE_NANOS);
+
+    // the tick budget
+    private final long budgetNanos;
+
+    // the amount of ticks that took longer than the budget
+    private volatile long overruns;
+
+    // the start time of the first tick, the schedule is based on it
+    private long firstTickStart = -1;
+    // the amount of ticks started
+    private long tickCount;
+
+    /**
+     * Creates new tick metrics.
+     * @param budgetNanos the time a tick is allowed to take
+     */
+    public TickMetrics(long budgetNanos) {
+        this.budgetNanos = budgetNanos;
+    }
+
+    /**
+     * Marks the start of a shard tick and records the drift against the fixed rate schedule.
+     * @param startNanos the start time from {@link System#nanoTime()}
+     */
+    public void onTickStart(long startNanos) {
+        if (this.firstTickStart < 0)
+            this.firstTickStart = startNanos;
+
+        long expectedStart = this.firstTickStart + this.tickCount * this.budgetNanos;
+        this.schedulerDrift.record(startNanos - expectedStart);
+        this.tickCount++;
+    }
+
+    /**
+     * Marks the end of a shard tick.
+     * @param durationNanos how long the tick took
+     * @return true if the tick took longer than the budget
+     */
+    public boolean onTickEnd(long durationNanos) {
+        this.shardTickLatency.record(durationNanos);
+
+        if (durationNanos > this.budgetNanos) {
+            this.overruns = this.overruns + 1;
+            return true;
+        }
+
+        return false;
+    }
+
+    public void recordRoomTick(long durationNanos) {
+        this.roomTickLatency.record(durationNanos);
+    }
+
+    public void recordPlayerTick(long durationNanos) {
+        this.playerTickLatency.record(durationNanos);
+    }
+
+    public LatencyHistogram getShardTickLatency() {
+        return this.shardTickLatency;
+    }
+
+    public LatencyHistogram getRoomTickLatency() {
+        return this.roomTickLatency;
+    }
+
+    public LatencyHistogram getPlayerTickLatency() {
+        return this.playerTickLatency;
+    }
+
+    public LatencyHistogram getSchedulerDrift() {
+        return this.schedulerDrift;
+    }
+
+    public long getBudgetNanos() {
+        return this.budgetNanos;
+    }
+
+    /**
+     * Returns the amount of shard ticks that took longer than the budget.
+     */
+    public long getOverruns() {
+        return this.overruns;
+    }
+
+    /**
+     * Returns a short human readable summary.
+     */
+    @Override
+    public String toString() {
+        return "ticks=" + this.shardTickLatency.getTotalCount()
+            + " overruns=" + this.overruns
+            + " tick p50/p99/max=" + micros(this.shardTickLatency.getValueAtPercentile(50))
+            + "/" + micros(this.shardTickLatency.getValueAtPercentile(99))
+            + "/" + micros(this.shardTickLatency.getMax()) + "us"
+            + " room p99=" + micros(this.roomTickLatency.getValueAtPercentile(99)) + "us"
+            + " player p99=" + micros(this.playerTickLatency.getValueAtPercentile(99)) + "us"
+            + " drift p99/max=" + micros(this.schedulerDrift.getValueAtPercentile(99))
+            + "/" + micros(this.schedulerDrift.getMax()) + "us";
+    }
+
+    private static long micros(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+}
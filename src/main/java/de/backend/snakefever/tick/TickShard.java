@@ -0,0 +1,324 @@
+package de.backend.snakefever.tick;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import de.backend.snakefever.Room;
+import de.backend.snakefever.SnakeFever;
+import de.backend.snakefever.journal.JournalRecorder;
+
+/**
+ * A tick shard owns a subset of all rooms and ticks them on its own thread.<p>
+ * The shard thread advances a {@link TimingWheel} at a fixed resolution. Every room is ticked by its
+ * own timer at its own rate, see {@link Room#getTickIntervalMillis()}, so idle rooms cost a tick per
+ * second instead of one per game tick, and rooms added at different times are spread over the
+ * resolution steps instead of all ticking at once. Rooms can schedule their own timers on the same
+ * wheel.<p>
+ * The shard thread is the only one touching the rooms and the wheel, rooms added, removed or woken
+ * from other threads are queued and applied at the start of the next shard tick. A room that finished
+ * is removed on the shard thread, before it is handed to the finish listener, so it is never ticked
+ * again once it can be reused.<p>
+ * If the shard has a {@link JournalRecorder}, every room added from then on records into it.
+ */
+public final class TickShard implements Runnable {
+    // the index of this shard on the server
+    private final int index;
+
+    // the timers of the rooms, only accessed by the shard thread
+    private final TimingWheel timers;
+    // the ticker of every room owned by this shard, only accessed by the shard thread
+    private final Map<Room, RoomTicker> tickers = new HashMap<>();
+
+    // rooms that should be added on the next tick
+    private final Queue<Room> pendingAdds = new ConcurrentLinkedQueue<>();
+    // rooms that should be removed on the next tick
+    private final Queue<Room> pendingRemoves = new ConcurrentLinkedQueue<>();
+    // rooms that should be ticked on the next tick, e.g. because a player joined
+    private final Queue<Room> pendingWakeups = new ConcurrentLinkedQueue<>();
+    // tasks that should run on the shard thread on the next tick
+    private final Queue<Runnable> pendingTasks = new ConcurrentLinkedQueue<>();
+
+    // the journal of the rooms added from now on, null if they are not recorded
+    private volatile JournalRecorder journal;
+
+    // called on the shard thread for every room that finished
+    private final Consumer<Room> finishListener;
+    // the amount of rooms owned and the amount of rooms with players
+    private volatile int roomCount;
+    private volatile int activeRoomCount;
+
+    // the thread ticking this shard, null if the shard is not started
+    private ScheduledExecutorService executor;
+
+    // the timing statistics of this shard
+    private final TickMetrics metrics;
+
+    // when the last overrun warning was logged, to not flood the log
+    private long lastOverrunWarning;
+
+    /**
+     * Creates a new shard.
+     * @param index the index of this shard on the server
+     * @param resolutionMillis the time between two shard ticks, used as tick budget and timer resolution
+     * @param finishListener called on the shard thread for every room that finished, after it was removed
+     */
+    public TickShard(int index, long resolutionMillis, Consumer<Room> finishListener) {
+        this.index = index;
+        this.finishListener = finishListener;
+        this.timers = new TimingWheel(resolutionMillis);
+        this.metrics = new TickMetrics(TimeUnit.MILLISECONDS.toNanos(resolutionMillis));
+    }
+
+    public int getIndex() {
+        return this.index;
+    }
+
+    /**
+     * Queues a room to be ticked by this shard, starting with the next tick.
+     * @param room the room to add
+     */
+    public void addRoom(Room room) {
+        this.pendingAdds.add(room);
+    }
+
+    /**
+     * Queues a room to be no longer ticked by this shard, starting with the next tick.
+     * @param room the room to remove
+     */
+    public void removeRoom(Room room) {
+        this.pendingRemoves.add(room);
+    }
+
+    /**
+     * Sets the journal the rooms added from now on record into.
+     * @param journal the recorder, only used by this shard, or null to stop recording new rooms
+     */
+    public void setJournal(JournalRecorder journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * Ticks a room on the next shard tick instead of waiting for its timer, can be called from any thread.
+     * @param room the room, ignored if it is not owned by this shard
+     */
+    public void wakeRoom(Room room) {
+        this.pendingWakeups.add(room);
+    }
+
+    /**
+     * Runs a task on the shard thread at the start of the next shard tick, between two ticks of every room,
+     * can be called from any thread. While the shard is not started the task runs right away.
+     * @param task the task, it may use {@link #getRooms()}
+     */
+    public void execute(Runnable task) {
+        synchronized (this) {
+            if (this.executor != null) {
+                this.pendingTasks.add(task);
+                return;
+            }
+        }
+        task.run();
+    }
+
+    /**
+     * Starts ticking this shard on its own thread.
+     * @param resolutionMillis the time between two shard ticks
+     * @param initialDelayNanos the phase offset of this shard
+     */
+    public synchronized void start(long resolutionMillis, long initialDelayNanos) {
+        if (this.executor != null)
+            return;
+
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "tick-shard-" + this.index);
+            thread.setDaemon(false);
+            return thread;
+        });
+        this.executor.scheduleAtFixedRate(this, initialDelayNanos, TimeUnit.MILLISECONDS.toNanos(resolutionMillis), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Stops ticking this shard and waits a moment for the running tick to finish, so the rooms are not
+     * touched by the shard thread anymore afterwards.
+     */
+    public void stop() {
+        ScheduledExecutorService executor;
+        synchronized (this) {
+            executor = this.executor;
+            this.executor = null;
+        }
+        if (executor == null)
+            return;
+
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(1, TimeUnit.SECONDS))
+                SnakeFever.LOGGER.warn("Tick shard " + this.index + " did not stop in time.");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // tasks queued while stopping must not wait forever
+        Runnable task;
+        while ((task = this.pendingTasks.poll()) != null) {
+            task.run();
+        }
+    }
+
+    /**
+     * Ticks all rooms and timers that are due now.
+     */
+    @Override
+    public void run() {
+        this.tick(System.nanoTime());
+    }
+
+    /**
+     * Ticks all rooms and timers that are due at the given time.<p>
+     * Must only be called by one thread at a time, either the shard thread or, while the shard is not
+     * started, a thread driving it with its own clock.
+     * @param now the current time in nanoseconds, only used for the timers
+     */
+    public void tick(long now) {
+        long start = System.nanoTime();
+        this.metrics.onTickStart(now);
+
+        this.applyPendingChanges();
+        this.timers.advance(now);
+
+        long end = System.nanoTime();
+        if (this.metrics.onTickEnd(end - start) && end - this.lastOverrunWarning > TimeUnit.SECONDS.toNanos(1)) {
+            this.lastOverrunWarning = end;
+            SnakeFever.LOGGER.warn("Tick shard " + this.index + " took " + TimeUnit.NANOSECONDS.toMillis(end - start)
+                + "ms with " + this.activeRoomCount + " active rooms (" + this.metrics + ")");
+        }
+    }
+
+    public TickMetrics getMetrics() {
+        return this.metrics;
+    }
+
+    /**
+     * Returns the timers of this shard, must only be used by the shard thread, e.g. by a ticking room.
+     */
+    public TimingWheel getTimers() {
+        return this.timers;
+    }
+
+    /**
+     * Returns the rooms owned by this shard, must only be used by the shard thread.
+     */
+    public Collection<Room> getRooms() {
+        return this.tickers.keySet();
+    }
+
+    /**
+     * Returns the amount of rooms owned by this shard.
+     */
+    public int getRoomCount() {
+        return this.roomCount;
+    }
+
+    /**
+     * Returns the amount of rooms with players, as of their last tick.
+     */
+    public int getActiveRoomCount() {
+        return this.activeRoomCount;
+    }
+
+    private void applyPendingChanges() {
+        Room room;
+        while ((room = this.pendingRemoves.poll()) != null) {
+            this.remove(room);
+        }
+        while ((room = this.pendingAdds.poll()) != null) {
+            if (this.tickers.containsKey(room))
+                continue;
+
+            RoomTicker ticker = new RoomTicker(room);
+            this.tickers.put(room, ticker);
+            room.attachTimers(this.timers);
+            room.attachJournal(this.journal);
+            // the first tick applies the join of the creating player right away
+            this.timers.schedule(ticker, 0);
+        }
+        while ((room = this.pendingWakeups.poll()) != null) {
+            RoomTicker ticker = this.tickers.get(room);
+            if (ticker != null)
+                this.timers.schedule(ticker, 0);
+        }
+        this.roomCount = this.tickers.size();
+
+        Runnable task;
+        while ((task = this.pendingTasks.poll()) != null) {
+            try {
+                task.run();
+            } catch (Exception e) {
+                SnakeFever.LOGGER.error("A task on shard " + this.index + " failed.", e);
+            }
+        }
+    }
+
+    private void remove(Room room) {
+        RoomTicker ticker = this.tickers.remove(room);
+        if (ticker == null)
+            return;
+
+        ticker.cancel();
+        if (ticker.active)
+            this.activeRoomCount--;
+        room.detachTimers();
+        this.roomCount = this.tickers.size();
+    }
+
+    /**
+     * The timer ticking one room at the rate the room asks for.
+     */
+    private final class RoomTicker extends TimingWheel.Timer {
+        private final Room room;
+        // true if the room had players on its last tick
+        private boolean active;
+
+        private RoomTicker(Room room) {
+            this.room = room;
+        }
+
+        @Override
+        protected void run() {
+            Room room = this.room;
+            long roomStart = System.nanoTime();
+            boolean active = false;
+            try {
+                active = room.updateLifecycle(roomStart);
+                if (active) {
+                    room.tick(TickShard.this.metrics);
+                } else if (room.getLifecycle() == Room.Lifecycle.FINISHED) {
+                    TickShard.this.remove(room);
+                    TickShard.this.finishListener.accept(room);
+                    return;
+                }
+            } catch (Exception e) {
+                // never let one room stop the whole shard
+                SnakeFever.LOGGER.error("Ticking room " + room.getId() + " on shard " + TickShard.this.index + " failed.", e);
+            }
+
+            if (active != this.active) {
+                this.active = active;
+                TickShard.this.activeRoomCount += active ? 1 : -1;
+            }
+            if (active) {
+                long roomDuration = System.nanoTime() - roomStart;
+                room.getTickLatency().record(roomDuration);
+                TickShard.this.metrics.recordRoomTick(roomDuration);
+            }
+
+            TickShard.this.timers.schedule(this, TimeUnit.MILLISECONDS.toNanos(room.getTickIntervalMillis()));
+        }
+    }
+}
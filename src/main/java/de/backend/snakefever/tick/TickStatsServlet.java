@@ -0,0 +1,110 @@
+package de.backend.snakefever.tick;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+import de.backend.snakefever.RoomDirectory;
+import de.backend.snakefever.RoomPool;
+import de.backend.snakefever.Server;
+import de.backend.snakefever.journal.InputJournal;
+import de.backend.snakefever.socketio.TransportMetrics;
+
+/**
+ * Serves the tick statistics of all shards and the transport counters as JSON, used by the load test to
+ * report tick overruns.<p>
+ * All latencies are in microseconds.
+ */
+public final class TickStatsServlet extends HttpServlet {
+    /**
+     * The path the servlet is mapped to.
+     */
+    public static final String PATH = "/stats";
+
+    private final transient Server server;
+    private final transient TransportMetrics transportMetrics;
+
+    public TickStatsServlet(Server server, TransportMetrics transportMetrics) {
+        this.server = server;
+        this.transportMetrics = transportMetrics;
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        JsonObject stats = new JsonObject();
+        stats.addProperty("players", this.server.getPlayerCount());
+        stats.addProperty("rooms", this.server.getRooms().size());
+
+        long overruns = 0;
+        int activeRooms = 0;
+        JsonArray shards = new JsonArray();
+        for (TickShard shard : this.server.getShards()) {
+            TickMetrics metrics = shard.getMetrics();
+            LatencyHistogram ticks = metrics.getShardTickLatency();
+            overruns += metrics.getOverruns();
+            activeRooms += shard.getActiveRoomCount();
+
+            JsonObject json = new JsonObject();
+            json.addProperty("index", shard.getIndex());
+            json.addProperty("rooms", shard.getRoomCount());
+            json.addProperty("activeRooms", shard.getActiveRoomCount());
+            json.addProperty("ticks", ticks.getTotalCount());
+            json.addProperty("overruns", metrics.getOverruns());
+            json.addProperty("tickP50", micros(ticks.getValueAtPercentile(50)));
+            json.addProperty("tickP99", micros(ticks.getValueAtPercentile(99)));
+            json.addProperty("tickMax", micros(ticks.getMax()));
+            json.addProperty("roomTickP99", micros(metrics.getRoomTickLatency().getValueAtPercentile(99)));
+            json.addProperty("driftP99", micros(metrics.getSchedulerDrift().getValueAtPercentile(99)));
+            shards.add(json);
+        }
+        stats.addProperty("activeRooms", activeRooms);
+        stats.addProperty("overruns", overruns);
+        stats.add("shards", shards);
+
+        RoomPool pool = this.server.getRoomPool();
+        JsonObject rooms = new JsonObject();
+        rooms.addProperty("pooled", pool.getSize());
+        rooms.addProperty("created", pool.getCreated());
+        rooms.addProperty("reused", pool.getReused());
+        rooms.addProperty("finished", pool.getReleased());
+        stats.add("roomPool", rooms);
+
+        RoomDirectory directory = this.server.getRoomDirectory();
+        JsonObject roomList = new JsonObject();
+        roomList.addProperty("version", directory.getVersion());
+        roomList.addProperty("rooms", directory.size());
+        stats.add("roomList", roomList);
+
+        InputJournal journal = this.server.getInputJournal();
+        if (journal != null) {
+            JsonObject journalStats = new JsonObject();
+            journalStats.addProperty("writtenBytes", journal.getWrittenBytes());
+            journalStats.addProperty("segments", journal.getSegmentCount());
+            journalStats.addProperty("dropped", journal.getDropped());
+            stats.add("journal", journalStats);
+        }
+
+        JsonObject transport = new JsonObject();
+        transport.addProperty("pollingSessions", this.transportMetrics.getPollingSessions());
+        transport.addProperty("webSocketSessions", this.transportMetrics.getWebSocketSessions());
+        transport.addProperty("upgrades", this.transportMetrics.getUpgrades());
+        transport.addProperty("parkedPolls", this.transportMetrics.getParkedPolls());
+        transport.addProperty("rejectedPolls", this.transportMetrics.getRejectedPolls());
+        transport.addProperty("writeTimeouts", this.transportMetrics.getWriteTimeouts());
+        stats.add("transport", transport);
+
+        response.setContentType("application/json");
+        response.setCharacterEncoding("UTF-8");
+        response.getWriter().write(stats.toString());
+    }
+
+    private static long micros(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+}
@@ -0,0 +1,194 @@
+package de.backend.snakefever.tick;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A hierarchical timing wheel: timers are sorted into slots by their deadline, so scheduling and
+ * cancelling a timer is O(1) no matter how many timers are pending.<p>
+ * There are {@value #LEVELS} wheels of {@value #SLOTS} slots. The first wheel has one slot per wheel
+ * tick, every further wheel has one slot per turn of the wheel below it. Whenever a wheel completes a
+ * turn, the next slot of the wheel above is cascaded down, its timers are sorted into the finer wheels.
+ * Timers further away than all wheels are parked in the last wheel and cascaded again until they are
+ * due.<p>
+ * Timers are intrusive list nodes and can be scheduled again after they ran, so a room ticking on a
+ * timer never allocates. The wheel is not thread safe, it must only be used by the thread advancing it.
+ */
+public final class TimingWheel {
+    /**
+     * The amount of wheels.
+     */
+    public static final int LEVELS = 4;
+    /**
+     * The amount of slots per wheel.
+     */
+    public static final int SLOTS = 64;
+
+    private static final int SLOT_BITS = 6;
+    private static final int SLOT_MASK = SLOTS - 1;
+
+    // the first timer of every slot, linked through the timers
+    private final Timer[][] slots = new Timer[LEVELS][SLOTS];
+
+    // the duration of one wheel tick
+    private final long tickNanos;
+
+    // the time of wheel tick 0, set on the first advance
+    private long startNanos;
+    private boolean started;
+    // the last wheel tick that was processed
+    private long currentTick;
+
+    // the amount of scheduled timers
+    private int size;
+
+    /**
+     * Creates an empty wheel.
+     * @param tickMillis the duration of one wheel tick, timers fire at a multiple of it
+     */
+    public TimingWheel(long tickMillis) {
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+    }
+
+    /**
+     * Schedules a timer, a scheduled timer is moved to the new deadline.
+     * @param timer the timer
+     * @param delayNanos the time until the timer fires, rounded up to whole wheel ticks, at least one tick
+     */
+    public void schedule(Timer timer, long delayNanos) {
+        if (timer.wheel != null)
+            timer.wheel.unlink(timer);
+
+        long ticks = Math.max(1, (delayNanos + this.tickNanos - 1) / this.tickNanos);
+        timer.deadline = this.currentTick + ticks;
+        timer.wheel = this;
+        this.size++;
+        this.place(timer);
+    }
+
+    /**
+     * Runs all timers that are due at the given time, in the order of their deadlines.<p>
+     * Timers can schedule and cancel timers while they run, timers scheduled now fire on a later wheel tick.
+     * @param now the current time in nanoseconds, e.g. {@link System#nanoTime()}
+     */
+    public void advance(long now) {
+        if (!this.started) {
+            this.started = true;
+            this.startNanos = now - this.currentTick * this.tickNanos;
+        }
+
+        long targetTick = (now - this.startNanos) / this.tickNanos;
+        while (this.currentTick < targetTick) {
+            this.currentTick++;
+
+            // cascade the coarsest wheel first, so the timers fall through all finer wheels
+            for (int level = LEVELS - 1; level > 0; level--) {
+                if ((this.currentTick & ((1L << (SLOT_BITS * level)) - 1)) == 0)
+                    this.cascade(level, (int) (this.currentTick >>> (SLOT_BITS * level)) & SLOT_MASK);
+            }
+
+            Timer[] due = this.slots[0];
+            int slot = (int) this.currentTick & SLOT_MASK;
+            Timer timer;
+            while ((timer = due[slot]) != null) {
+                this.unlink(timer);
+                timer.run();
+            }
+        }
+    }
+
+    /**
+     * Returns the amount of scheduled timers.
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Sorts the timers of a slot into the finer wheels.
+     */
+    private void cascade(int level, int slot) {
+        Timer timer = this.slots[level][slot];
+        this.slots[level][slot] = null;
+
+        while (timer != null) {
+            Timer next = timer.next;
+            timer.prev = null;
+            timer.next = null;
+            this.place(timer);
+            timer = next;
+        }
+    }
+
+    /**
+     * Puts a timer into the slot of the finest wheel that reaches its deadline.
+     */
+    private void place(Timer timer) {
+        long remaining = Math.max(0, timer.deadline - this.currentTick);
+
+        int level = 0;
+        while (level < LEVELS - 1 && remaining >= 1L << (SLOT_BITS * (level + 1))) {
+            level++;
+        }
+
+        // overdue timers go to the current slot and fire on this wheel tick
+        long tick = remaining == 0 ? this.currentTick : timer.deadline;
+        int slot = (int) (tick >>> (SLOT_BITS * level)) & SLOT_MASK;
+
+        Timer head = this.slots[level][slot];
+        timer.level = level;
+        timer.slot = slot;
+        timer.prev = null;
+        timer.next = head;
+        if (head != null)
+            head.prev = timer;
+        this.slots[level][slot] = timer;
+    }
+
+    private void unlink(Timer timer) {
+        if (timer.prev != null) {
+            timer.prev.next = timer.next;
+        } else {
+            this.slots[timer.level][timer.slot] = timer.next;
+        }
+        if (timer.next != null)
+            timer.next.prev = timer.prev;
+
+        timer.prev = null;
+        timer.next = null;
+        timer.wheel = null;
+        this.size--;
+    }
+
+    /**
+     * A timer that can be scheduled on a wheel, again and again.
+     */
+    public abstract static class Timer {
+        // the wheel the timer is scheduled on, null if it is not scheduled
+        private TimingWheel wheel;
+        // the wheel tick the timer fires on
+        private long deadline;
+
+        // the position in the wheel
+        private int level;
+        private int slot;
+        private Timer prev;
+        private Timer next;
+
+        /**
+         * Called on the thread advancing the wheel when the timer is due.
+         */
+        protected abstract void run();
+
+        /**
+         * Removes the timer from its wheel, does nothing if it is not scheduled.
+         */
+        public final void cancel() {
+            if (this.wheel != null)
+                this.wheel.unlink(this);
+        }
+
+        public final boolean isScheduled() {
+            return this.wheel != null;
+        }
+    }
+}